@@ -0,0 +1,62 @@
+package com.rehabai.api_gateway;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mapa concorrente com validade por entrada e tamanho limitado. Entradas vencidas nunca são devolvidas e saem na
+ * leitura. Um {@link #put} com o mapa cheio descarta primeiro as vencidas e, se não bastar, quaisquer entradas até
+ * 90% da capacidade, contadas em {@code evictions}; com puts concorrentes o limite é aproximado.
+ */
+final class BoundedExpiringMap<K, V> {
+
+    private record Entry<V>(V value, Instant expiresAt) {}
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final Counter evictions;
+
+    BoundedExpiringMap(int maxEntries, Counter evictions) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.evictions = evictions;
+    }
+
+    /** O valor de {@code key}, ou null se não existir ou estiver vencido em {@code now}. */
+    V get(K key, Instant now) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.expiresAt().isAfter(now)) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    void put(K key, V value, Instant expiresAt, Instant now) {
+        if (entries.size() >= maxEntries) {
+            evict(now);
+        }
+        entries.put(key, new Entry<>(value, expiresAt));
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void evict(Instant now) {
+        entries.values().removeIf(e -> !e.expiresAt().isAfter(now));
+        int target = maxEntries - Math.max(1, maxEntries / 10);
+        Iterator<K> it = entries.keySet().iterator();
+        while (entries.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+}
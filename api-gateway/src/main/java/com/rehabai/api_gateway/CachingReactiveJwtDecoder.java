@@ -0,0 +1,77 @@
+package com.rehabai.api_gateway;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Decoder que guarda os tokens já verificados até o {@code exp}, indexados pelo SHA-256 do token.
+ * <p>
+ * O mesmo token chega várias vezes por sessão; só o primeiro paga a verificação da assinatura (ES256 com a chave
+ * do JWKS, ou HS256 nos tokens legados enquanto {@code JWT_SECRET} estiver definido) e o parse do JSON, os demais
+ * custam um hash e uma consulta ao mapa. Falhas de verificação não são guardadas. O tamanho é limitado
+ * por {@code auth.jwt.cache.max-entries}; acertos e erros saem em {@code gateway.jwt.cache.requests}.
+ */
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+
+    private final ReactiveJwtDecoder delegate;
+    private final BoundedExpiringMap<String, Jwt> entries;
+    private final Clock clock;
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, MeterRegistry registry, int maxEntries) {
+        this(delegate, registry, maxEntries, Clock.systemUTC());
+    }
+
+    CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, MeterRegistry registry, int maxEntries, Clock clock) {
+        this.delegate = delegate;
+        this.clock = clock;
+        this.hits = registry.counter("gateway.jwt.cache.requests", "result", "hit");
+        this.misses = registry.counter("gateway.jwt.cache.requests", "result", "miss");
+        this.entries = new BoundedExpiringMap<>(maxEntries, registry.counter("gateway.jwt.cache.evictions"));
+        Gauge.builder("gateway.jwt.cache.size", entries, BoundedExpiringMap::size).register(registry);
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) {
+        String key = hash(token);
+        Jwt cached = entries.get(key, clock.instant());
+        if (cached != null) {
+            hits.increment();
+            return Mono.just(cached);
+        }
+        misses.increment();
+        return delegate.decode(token).doOnNext(jwt -> put(key, jwt));
+    }
+
+    private void put(String key, Jwt jwt) {
+        Instant now = clock.instant();
+        if (jwt.getExpiresAt() != null && jwt.getExpiresAt().isAfter(now)) {
+            entries.put(key, jwt, jwt.getExpiresAt(), now);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
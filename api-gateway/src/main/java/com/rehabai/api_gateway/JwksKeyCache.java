@@ -0,0 +1,137 @@
+package com.rehabai.api_gateway;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cópia local do JWKS do auth-service, consultada pelo {@code kid} do token.
+ * <p>
+ * O conjunto é baixado na subida e depois a cada {@code auth.jwt.jwks.refresh-ms}, fora do caminho da requisição.
+ * Como o auth-service publica a próxima chave antes de usá-la, um {@code kid} desconhecido é raro; nesse caso o
+ * JWKS é rebaixado na hora, no máximo uma vez a cada {@link #MISS_REFRESH_INTERVAL}, para que tokens com
+ * {@code kid} inventado não virem uma chamada ao auth-service por requisição. Downloads simultâneos são
+ * compartilhados. Consultas saem em {@code gateway.jwks.lookups{result}} e downloads em
+ * {@code gateway.jwks.refresh{result}}.
+ */
+public class JwksKeyCache {
+
+    private static final Logger log = LoggerFactory.getLogger(JwksKeyCache.class);
+    static final Duration MISS_REFRESH_INTERVAL = Duration.ofSeconds(10);
+    private static final Duration FETCH_TIMEOUT = Duration.ofSeconds(5);
+
+    private final Mono<String> source;
+    private final Duration refreshInterval;
+    private final Clock clock;
+    private final AtomicReference<Mono<JWKSet>> inFlight = new AtomicReference<>();
+    private final AtomicReference<Instant> lastMissRefresh = new AtomicReference<>(Instant.EPOCH);
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter refreshed;
+    private final Counter failed;
+    private volatile JWKSet keys = new JWKSet();
+    private volatile Disposable schedule;
+
+    public JwksKeyCache(WebClient client, String jwksUri, Duration refreshInterval, MeterRegistry registry) {
+        this(client.get().uri(jwksUri).retrieve().bodyToMono(String.class), refreshInterval, registry, Clock.systemUTC());
+    }
+
+    JwksKeyCache(Mono<String> source, Duration refreshInterval, MeterRegistry registry, Clock clock) {
+        this.source = source;
+        this.refreshInterval = refreshInterval;
+        this.clock = clock;
+        this.hits = registry.counter("gateway.jwks.lookups", "result", "hit");
+        this.misses = registry.counter("gateway.jwks.lookups", "result", "miss");
+        this.refreshed = registry.counter("gateway.jwks.refresh", "result", "success");
+        this.failed = registry.counter("gateway.jwks.refresh", "result", "failure");
+        Gauge.builder("gateway.jwks.keys", this, c -> c.keys.size()).register(registry);
+    }
+
+    /** Baixa o JWKS agora e depois periodicamente; falhas só ficam no log e a cópia atual continua valendo. */
+    public void start() {
+        schedule = Flux.interval(Duration.ZERO, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> refresh().onErrorResume(e -> Mono.empty()))
+                .subscribe();
+    }
+
+    public void close() {
+        Disposable s = schedule;
+        if (s != null) {
+            s.dispose();
+        }
+    }
+
+    /** Chaves candidatas para o {@code kid}; sem {@code kid}, todas as publicadas. */
+    public Flux<JWK> keysFor(String kid) {
+        JWKSet current = keys;
+        if (kid == null) {
+            return Flux.fromIterable(current.getKeys());
+        }
+        JWK key = current.getKeyByKeyId(kid);
+        if (key != null) {
+            hits.increment();
+            return Flux.just(key);
+        }
+        misses.increment();
+        Mono<JWKSet> pending = inFlight.get();
+        if (pending == null) {
+            Instant now = clock.instant();
+            Instant last = lastMissRefresh.get();
+            pending = last.plus(MISS_REFRESH_INTERVAL).isBefore(now) && lastMissRefresh.compareAndSet(last, now)
+                    ? refresh()
+                    : Mono.just(current);
+        }
+        return pending.onErrorResume(e -> Mono.just(keys))
+                .flatMapMany(set -> Mono.justOrEmpty(set.getKeyByKeyId(kid)));
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    Mono<JWKSet> refresh() {
+        Mono<JWKSet> pending = inFlight.get();
+        if (pending != null) {
+            return pending;
+        }
+        Mono<JWKSet> fetch = source
+                .timeout(FETCH_TIMEOUT)
+                .map(body -> {
+                    try {
+                        return JWKSet.parse(body);
+                    } catch (ParseException e) {
+                        throw new IllegalStateException("JWKS inválido: " + e.getMessage(), e);
+                    }
+                })
+                .doOnNext(set -> {
+                    keys = set;
+                    refreshed.increment();
+                })
+                .doOnError(e -> {
+                    failed.increment();
+                    log.warn("Falha ao atualizar o JWKS, mantendo {} chave(s): {}", keys.size(), e.getMessage());
+                })
+                .doFinally(signal -> inFlight.set(null))
+                .cache();
+        if (inFlight.compareAndSet(null, fetch)) {
+            return fetch;
+        }
+        pending = inFlight.get();
+        return pending != null ? pending : Mono.just(keys);
+    }
+}
@@ -1,5 +1,6 @@
 package com.rehabai.api_gateway;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,6 +11,7 @@ import org.springframework.security.config.annotation.web.reactive.EnableWebFlux
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
 import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
@@ -17,11 +19,18 @@ import org.springframework.security.oauth2.server.resource.authentication.JwtAut
 import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverterAdapter;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.util.Base64URL;
+
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.Duration;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -34,18 +43,45 @@ public class SecurityConfig {
 
     private static final Logger log = LoggerFactory.getLogger(SecurityConfig.class);
 
-    @Bean
-    public ReactiveJwtDecoder jwtDecoder(@Value("${auth.jwt.secret}") String secret) {
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public JwksKeyCache jwksKeyCache(@Value("${auth.jwt.jwks.uri}") String jwksUri,
+                                     @Value("${auth.jwt.jwks.refresh-ms:300000}") long refreshMs,
+                                     MeterRegistry registry) {
+        return new JwksKeyCache(WebClient.create(), jwksUri, Duration.ofMillis(refreshMs), registry);
+    }
 
-        /* log.warn("================== API-GATEWAY ==================");
-        log.warn("API-GATEWAY usando JWT SECRET: [{}]", secret);
-        log.warn("SECRET LENGTH: {}", secret.length());
-        log.warn("===================================================="); */
+    @Bean
+    public ReactiveJwtDecoder jwtDecoder(JwksKeyCache jwks,
+                                         @Value("${auth.jwt.secret:}") String legacySecret,
+                                         @Value("${auth.jwt.cache.max-entries:10000}") int cacheMaxEntries,
+                                         MeterRegistry registry) {
 
-        SecretKey secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
-        return NimbusReactiveJwtDecoder.withSecretKey(secretKey)
-                .macAlgorithm(MacAlgorithm.HS256)
+        ReactiveJwtDecoder signed = NimbusReactiveJwtDecoder.withJwkSource(jwt -> jwks.keysFor(jwt.getHeader().getKeyID()))
+                .jwsAlgorithm(SignatureAlgorithm.ES256)
                 .build();
+        ReactiveJwtDecoder decoder = signed;
+        if (!legacySecret.isBlank()) {
+            // Tokens HS256 emitidos antes da troca para ES256 continuam valendo até o exp
+            SecretKey secretKey = new SecretKeySpec(legacySecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+            ReactiveJwtDecoder hmac = NimbusReactiveJwtDecoder.withSecretKey(secretKey)
+                    .macAlgorithm(MacAlgorithm.HS256)
+                    .build();
+            decoder = token -> isHmac(token) ? hmac.decode(token) : signed.decode(token);
+        }
+        return cacheMaxEntries > 0 ? new CachingReactiveJwtDecoder(decoder, registry, cacheMaxEntries) : decoder;
+    }
+
+    /** Lê só o cabeçalho do token, sem decodificar o payload. */
+    static boolean isHmac(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return false;
+        }
+        try {
+            return JWSAlgorithm.HS256.equals(JWSHeader.parse(new Base64URL(token.substring(0, dot))).getAlgorithm());
+        } catch (ParseException e) {
+            return false;
+        }
     }
 
     @Bean
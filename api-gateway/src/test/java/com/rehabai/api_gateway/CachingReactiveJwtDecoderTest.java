@@ -0,0 +1,56 @@
+package com.rehabai.api_gateway;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingReactiveJwtDecoderTest {
+
+    static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void decode_verifiesEachTokenOnce() {
+        AtomicInteger decodes = new AtomicInteger();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CachingReactiveJwtDecoder decoder = new CachingReactiveJwtDecoder(token -> {
+            decodes.incrementAndGet();
+            return Mono.just(jwt(token, NOW.plusSeconds(60)));
+        }, registry, 100, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertThat(decoder.decode("a").block().getSubject()).isEqualTo("a");
+        assertThat(decoder.decode("a").block().getSubject()).isEqualTo("a");
+        decoder.decode("b").block();
+
+        assertThat(decodes).hasValue(2);
+        assertThat(registry.counter("gateway.jwt.cache.requests", "result", "hit").count()).isEqualTo(1);
+    }
+
+    @Test
+    void decode_invalidTokenIsNotCached() {
+        AtomicInteger decodes = new AtomicInteger();
+        CachingReactiveJwtDecoder decoder = new CachingReactiveJwtDecoder(token -> {
+            decodes.incrementAndGet();
+            return Mono.error(new BadJwtException("bad"));
+        }, new SimpleMeterRegistry(), 100, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertThatThrownBy(() -> decoder.decode("x").block()).isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> decoder.decode("x").block()).isInstanceOf(BadJwtException.class);
+        assertThat(decodes).hasValue(2);
+        assertThat(decoder.size()).isZero();
+    }
+
+    private static Jwt jwt(String subject, Instant exp) {
+        return Jwt.withTokenValue(subject).header("alg", "HS256").subject(subject)
+                .issuedAt(exp.minusSeconds(120)).expiresAt(exp).build();
+    }
+}
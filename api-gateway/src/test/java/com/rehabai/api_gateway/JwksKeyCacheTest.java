@@ -0,0 +1,112 @@
+package com.rehabai.api_gateway;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwksKeyCacheTest {
+
+    static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void knownKid_isServedLocally_unknownKidRefreshesOnce() throws Exception {
+        ECKey first = key("k1");
+        ECKey second = key("k2");
+        AtomicReference<JWKSet> published = new AtomicReference<>(new JWKSet(first));
+        AtomicInteger fetches = new AtomicInteger();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        JwksKeyCache cache = new JwksKeyCache(Mono.fromSupplier(() -> {
+            fetches.incrementAndGet();
+            return published.get().toPublicJWKSet().toString();
+        }), Duration.ofMinutes(5), registry, Clock.fixed(NOW, ZoneOffset.UTC));
+        cache.refresh().block();
+
+        assertThat(cache.keysFor("k1").collectList().block()).hasSize(1);
+        assertThat(fetches).hasValue(1);
+
+        published.set(new JWKSet(List.of(first, second)));
+        assertThat(cache.keysFor("k2").collectList().block()).hasSize(1);
+        assertThat(cache.keysFor("k3").collectList().block()).isEmpty();
+        assertThat(fetches).hasValue(2);
+        assertThat(registry.counter("gateway.jwks.lookups", "result", "hit").count()).isEqualTo(1);
+    }
+
+    @Test
+    void failedRefresh_keepsCurrentKeys() throws Exception {
+        AtomicReference<Mono<String>> next = new AtomicReference<>(Mono.just(new JWKSet(key("k1")).toPublicJWKSet().toString()));
+        JwksKeyCache cache = new JwksKeyCache(Mono.defer(next::get), Duration.ofMinutes(5),
+                new SimpleMeterRegistry(), Clock.fixed(NOW, ZoneOffset.UTC));
+        cache.refresh().block();
+
+        next.set(Mono.error(new IllegalStateException("auth-service fora")));
+        assertThatThrownBy(() -> cache.refresh().block()).hasMessageContaining("auth-service fora");
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.keysFor("k1").collectList().block()).hasSize(1);
+    }
+
+    @Test
+    void decoder_verifiesEs256ByKid_andKeepsLegacyHs256WhileSecretIsSet() throws Exception {
+        ECKey signing = key("k1");
+        JwksKeyCache cache = new JwksKeyCache(Mono.just(new JWKSet(signing).toPublicJWKSet().toString()),
+                Duration.ofMinutes(5), new SimpleMeterRegistry(), Clock.systemUTC());
+        cache.refresh().block();
+        String secret = "0123456789abcdef0123456789abcdef";
+        ReactiveJwtDecoder decoder = new SecurityConfig().jwtDecoder(cache, secret, 0, new SimpleMeterRegistry());
+
+        String token = new NimbusJwtEncoder(new ImmutableJWKSet<>(new JWKSet(signing))).encode(JwtEncoderParameters.from(
+                JwsHeader.with(SignatureAlgorithm.ES256).keyId("k1").build(), claims())).getTokenValue();
+
+        assertThat(decoder.decode(token).block().getSubject()).isEqualTo("ana@x.com");
+        assertThat(SecurityConfig.isHmac(token)).isFalse();
+        String legacy = hs256Token(secret);
+        assertThat(SecurityConfig.isHmac(legacy)).isTrue();
+        assertThat(decoder.decode(legacy).block().getSubject()).isEqualTo("ana@x.com");
+        assertThatThrownBy(() -> new SecurityConfig().jwtDecoder(cache, "", 0, new SimpleMeterRegistry()).decode(legacy).block())
+                .isInstanceOf(JwtException.class);
+    }
+
+    static ECKey key(String kid) throws Exception {
+        return new ECKeyGenerator(Curve.P_256).keyID(kid).algorithm(JWSAlgorithm.ES256).generate();
+    }
+
+    static String hs256Token(String secret) {
+        SecretKey key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        return new NimbusJwtEncoder(new ImmutableSecret<>(key)).encode(JwtEncoderParameters.from(
+                JwsHeader.with(MacAlgorithm.HS256).build(), claims())).getTokenValue();
+    }
+
+    static JwtClaimsSet claims() {
+        Instant now = Instant.now();
+        return JwtClaimsSet.builder().subject("ana@x.com").issuedAt(now).expiresAt(now.plusSeconds(600)).build();
+    }
+}
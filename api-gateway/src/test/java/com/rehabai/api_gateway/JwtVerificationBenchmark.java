@@ -0,0 +1,79 @@
+package com.rehabai.api_gateway;
+
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark de verificação de JWT no gateway: HS256 com segredo compartilhado x ES256 com chave do JWKS local.
+ * <p>
+ * Não faz parte da suíte (o nome não casa com o padrão do surefire); rode explicitamente:
+ * <pre>
+ * mvn test -Dtest=JwtVerificationBenchmark [-Dbench.tokens=2000 -Dbench.rounds=5]
+ * </pre>
+ * Usa os decoders montados pelo {@link SecurityConfig}, com o JWKS já carregado, então mede só a verificação da
+ * assinatura e o parse (sem rede). A linha {@code cached} repete os mesmos tokens atrás do
+ * {@link CachingReactiveJwtDecoder}, que é o caso comum de uma sessão.
+ */
+class JwtVerificationBenchmark {
+
+    private static final int TOKENS = Integer.getInteger("bench.tokens", 2000);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 5);
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    @Test
+    void compareAlgorithms() throws Exception {
+        ECKey key = JwksKeyCacheTest.key("bench");
+        JwksKeyCache jwks = new JwksKeyCache(Mono.just(new JWKSet(key).toPublicJWKSet().toString()),
+                Duration.ofMinutes(5), new SimpleMeterRegistry(), Clock.systemUTC());
+        jwks.refresh().block();
+        SecurityConfig config = new SecurityConfig();
+        NimbusJwtEncoder es256 = new NimbusJwtEncoder(new ImmutableJWKSet<>(new JWKSet(key)));
+
+        List<String> hmacTokens = new ArrayList<>();
+        List<String> ecTokens = new ArrayList<>();
+        for (int i = 0; i < TOKENS; i++) {
+            hmacTokens.add(JwksKeyCacheTest.hs256Token(SECRET));
+            ecTokens.add(es256.encode(JwtEncoderParameters.from(JwsHeader.with(SignatureAlgorithm.ES256).keyId("bench").build(),
+                    JwksKeyCacheTest.claims())).getTokenValue());
+        }
+
+        System.out.printf("%n%-14s %8s %10s %12s%n", "decoder", "tokens", "us/token", "tokens/s");
+        print("HS256", run(config.jwtDecoder(jwks, SECRET, 0, new SimpleMeterRegistry()), hmacTokens));
+        print("ES256 (JWKS)", run(config.jwtDecoder(jwks, "", 0, new SimpleMeterRegistry()), ecTokens));
+        print("ES256 cached", run(config.jwtDecoder(jwks, "", TOKENS, new SimpleMeterRegistry()), ecTokens));
+    }
+
+    /** Média por token da melhor rodada; a primeira serve de aquecimento. */
+    private static double run(ReactiveJwtDecoder decoder, List<String> tokens) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String token : tokens) {
+                decoder.decode(token).block();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (round > 0) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best / 1000.0 / tokens.size();
+    }
+
+    private static void print(String name, double microsPerToken) {
+        System.out.printf("%-14s %8d %10.1f %12.0f%n", name, TOKENS, microsPerToken, 1_000_000 / microsPerToken);
+    }
+}
@@ -0,0 +1,42 @@
+package com.rehabai.auth_service.config;
+
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.annotation.EnableRabbit;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableRabbit
+public class AmqpConfig {
+
+    @Bean
+    public TopicExchange userEventsExchange(@Value("${amqp.userExchange:user.events}") String name) {
+        return new TopicExchange(name, true, false);
+    }
+
+    /**
+     * Every instance keeps its own user cache, so each one needs every event: a server-named, exclusive,
+     * auto-delete queue per instance rather than a shared work queue.
+     */
+    @Bean
+    public Queue userEventsQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding userEventsBinding(Queue userEventsQueue, TopicExchange userEventsExchange) {
+        return BindingBuilder.bind(userEventsQueue).to(userEventsExchange).with("user.#");
+    }
+
+    @Bean
+    public MessageConverter messageConverter() {
+        return new Jackson2JsonMessageConverter();
+    }
+}
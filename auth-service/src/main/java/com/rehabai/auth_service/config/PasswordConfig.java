@@ -1,20 +1,28 @@
 package com.rehabai.auth_service.config;
 
+import com.rehabai.auth_service.security.BoundedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 
 /**
  * Configuração separada para expor o PasswordEncoder e evitar ciclos de dependência
  * entre SecurityConfig e beans que precisam do PasswordEncoder (por exemplo UserService).
+ * <p>
+ * O BCrypt roda num pool próprio do tamanho do número de CPUs ({@code auth.password.hashing.threads}, {@code 0} =
+ * CPUs) com fila limitada; fila cheia responde 503. Aumentar {@code auth.password.bcrypt.strength} faz os hashes
+ * antigos serem refeitos no próximo login.
  */
 @Configuration
 public class PasswordConfig {
 
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    @Bean(destroyMethod = "shutdown")
+    public BoundedPasswordEncoder passwordEncoder(MeterRegistry registry,
+                                                  @Value("${auth.password.bcrypt.strength:10}") int strength,
+                                                  @Value("${auth.password.hashing.threads:0}") int threads,
+                                                  @Value("${auth.password.hashing.queue-capacity:64}") int queueCapacity) {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(strength), registry, threads, queueCapacity);
     }
 }
-
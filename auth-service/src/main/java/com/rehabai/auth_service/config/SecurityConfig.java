@@ -35,7 +35,7 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
-                    .requestMatchers("/auth/register", "/auth/login", "/auth/refresh", "/h2-console/**", "/actuator/**").permitAll()
+                    .requestMatchers("/auth/register", "/auth/login", "/auth/refresh", "/auth/.well-known/jwks.json", "/h2-console/**", "/actuator/**").permitAll()
                     .anyRequest().authenticated()
             )
             .headers(headers -> headers.frameOptions(frame -> frame.sameOrigin()))
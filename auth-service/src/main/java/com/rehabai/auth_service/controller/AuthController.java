@@ -6,10 +6,13 @@ import com.rehabai.auth_service.dto.RefreshRequest;
 import com.rehabai.auth_service.dto.RegisterRequest;
 import com.rehabai.auth_service.dto.LogoutRequest;
 import com.rehabai.auth_service.security.JwtUtil;
+import com.rehabai.auth_service.security.PasswordHashingBusyException;
 import com.rehabai.auth_service.service.RefreshTokenService;
 import com.rehabai.auth_service.service.UserService;
 import com.rehabai.auth_service.service.UserServiceClient;
 import com.rehabai.auth_service.model.UserRole;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -27,6 +30,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpClientErrorException;
 
 import java.util.Map;
 import java.util.UUID;
@@ -233,6 +237,8 @@ public class AuthController {
                     .body(Map.of("error", "email_already_exists", "message", "Email já cadastrado"));
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+        } catch (PasswordHashingBusyException ex) {
+            return hashingBusy();
         } catch (Exception ex) {
             org.slf4j.LoggerFactory.getLogger(AuthController.class)
                 .error("Unexpected error during registration for {}", req.email(), ex);
@@ -369,6 +375,18 @@ public class AuthController {
                 )
             )
             @Valid @RequestBody LoginRequest req) {
+        // Global registry: Spring Boot adds its registries to it, and the controller keeps its dependency set
+        Timer.Sample sample = Timer.start(Metrics.globalRegistry);
+        ResponseEntity<?> response = authenticate(req);
+        sample.stop(Timer.builder("auth.login.duration")
+                .description("Login latency, from request to tokens issued or rejected")
+                .tag("status", String.valueOf(response.getStatusCode().value()))
+                .publishPercentiles(0.5, 0.99)
+                .register(Metrics.globalRegistry));
+        return response;
+    }
+
+    private ResponseEntity<?> authenticate(LoginRequest req) {
         try {
             UserDetails ud = userService.loadUserByUsername(req.email());
             if (ud == null) {
@@ -378,8 +396,9 @@ public class AuthController {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("invalid_credentials");
             }
 
-
+            // Served from the entry loadUserByUsername just cached: the login makes a single user-service call
             UserServiceClient.CredentialsResponse creds = userService.getCredentialsByEmail(req.email());
+            userService.upgradePasswordHashIfNeeded(creds.id(), req.password(), ud.getPassword());
             String token = jwtUtil.generateToken(ud, Map.of("user_id", creds.id().toString()));
             long expiresIn = jwtUtil.getExpirationMs();
 
@@ -389,6 +408,8 @@ public class AuthController {
             return ResponseEntity.ok(new AuthResponse(token, "Bearer", expiresIn, rt.getTokenId().toString(), refreshExpiresIn));
         } catch (org.springframework.security.core.userdetails.UsernameNotFoundException ex) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("invalid_credentials");
+        } catch (PasswordHashingBusyException ex) {
+            return hashingBusy();
         } catch (org.springframework.web.client.HttpClientErrorException ex) {
             org.slf4j.LoggerFactory.getLogger(AuthController.class)
                 .error("User service error during login for {}: {}", req.email(), ex.getMessage());
@@ -402,6 +423,13 @@ public class AuthController {
         }
     }
 
+    /** The password-hashing queue is full: ask the client to retry instead of queueing more BCrypt work. */
+    private static ResponseEntity<?> hashingBusy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .body(Map.of("error", "server_busy", "message", "Too many concurrent authentications, try again shortly"));
+    }
+
     @Operation(
         summary = "Renovar access token",
         description = """
@@ -504,7 +532,14 @@ public class AuthController {
         try {
             UUID tokenId = UUID.fromString(req.refreshToken());
             var newRt = refreshTokenService.rotate(tokenId);
-            UserServiceClient.UserResponse u = userService.getUserById(newRt.getUserId());
+            UserServiceClient.UserResponse u;
+            try {
+                u = userService.getUserById(newRt.getUserId());
+            } catch (HttpClientErrorException.NotFound ex) {
+                // User deleted but its tokens survived (lost user.deleted event): don't leave the rotated token behind
+                refreshTokenService.revokeToken(newRt.getTokenId());
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("invalid_refresh_token");
+            }
             UserDetails ud = userService.buildUserDetailsFrom(u);
             String token = jwtUtil.generateToken(ud, Map.of("user_id", u.id().toString()));
             long expiresIn = jwtUtil.getExpirationMs();
@@ -0,0 +1,35 @@
+package com.rehabai.auth_service.controller;
+
+import com.rehabai.auth_service.security.JwtKeyManager;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/auth")
+@RequiredArgsConstructor
+@Tag(name = "Authentication")
+public class JwksController {
+
+    private final JwtKeyManager keys;
+
+    @Operation(
+        summary = "🔑 Chaves públicas (JWKS)",
+        description = "Chaves públicas ES256 usadas para validar os access tokens, identificadas pelo `kid`. " +
+                "Inclui a próxima chave antes de ela começar a assinar."
+    )
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(1)).cachePublic())
+                .body(keys.publicJwkSet().toJSONObject());
+    }
+}
@@ -0,0 +1,10 @@
+package com.rehabai.auth_service.events;
+
+import java.util.UUID;
+
+/** Published by user-service on {@code user.events} with routing key {@code user.changed} or {@code user.deleted}. */
+public record UserChangedEvent(
+        UUID userId,
+        String email,
+        String change
+) {}
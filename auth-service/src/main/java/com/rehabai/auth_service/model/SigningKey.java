@@ -0,0 +1,39 @@
+package com.rehabai.auth_service.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * One JWT signing key, shared by every auth-service instance through the database. {@code jwk} holds the public JWK;
+ * {@code privateJwk} holds the full key encrypted by {@link com.rehabai.auth_service.security.SigningKeyCipher}, so
+ * the table never stores a usable private key in plaintext.
+ */
+@Entity
+@Table(name = "jwt_signing_keys")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString(exclude = "privateJwk")
+@EqualsAndHashCode(of = "kid")
+public class SigningKey {
+
+    @Id
+    @Column(name = "kid", updatable = false, nullable = false, length = 64)
+    private String kid;
+
+    @Column(name = "jwk", nullable = false, columnDefinition = "text")
+    private String jwk;
+
+    /** Null only on rows written before encryption at rest; {@code JwtKeyManager} seals them on its next refresh. */
+    @Column(name = "private_jwk", columnDefinition = "text")
+    private String privateJwk;
+
+    @Column(name = "activates_at", nullable = false, unique = true)
+    private Instant activatesAt;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt = Instant.now();
+}
@@ -1,15 +1,16 @@
 package com.rehabai.auth_service.repository;
 
 import com.rehabai.auth_service.model.RefreshToken;
-import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -19,9 +20,18 @@ public interface RefreshTokenRepository extends JpaRepository<RefreshToken, UUID
     List<RefreshToken> findByUserIdAndRevokedFalse(UUID userId);
     Optional<RefreshToken> findByTokenIdAndRevokedFalse(UUID tokenId);
 
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @Query("SELECT rt FROM RefreshToken rt WHERE rt.tokenId = :tokenId AND rt.revoked = false")
-    Optional<RefreshToken> findByTokenIdAndRevokedFalseWithLock(@Param("tokenId") UUID tokenId);
+    /** First page of distinct token owners, in id order; continue with {@link #findUserIdsAfter}. */
+    @Query("SELECT DISTINCT rt.userId FROM RefreshToken rt ORDER BY rt.userId")
+    List<UUID> findUserIds(Pageable page);
+
+    /** Keyset page: owners after {@code after}, so rows deleted behind the cursor never shift the next page. */
+    @Query("SELECT DISTINCT rt.userId FROM RefreshToken rt WHERE rt.userId > :after ORDER BY rt.userId")
+    List<UUID> findUserIdsAfter(@Param("after") UUID after, Pageable page);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RefreshToken rt WHERE rt.userId IN :userIds")
+    int deleteByUserIdIn(@Param("userIds") Collection<UUID> userIds);
 
     @Modifying
     @Query("DELETE FROM RefreshToken rt WHERE rt.userId = :userId AND rt.revoked = true")
@@ -0,0 +1,12 @@
+package com.rehabai.auth_service.repository;
+
+import com.rehabai.auth_service.model.SigningKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SigningKeyRepository extends JpaRepository<SigningKey, String> {
+    List<SigningKey> findAllByOrderByActivatesAtAsc();
+}
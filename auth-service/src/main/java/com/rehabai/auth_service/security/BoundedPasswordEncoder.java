@@ -0,0 +1,122 @@
+package com.rehabai.auth_service.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the delegate's {@code encode}/{@code matches} on a dedicated pool sized to the CPU count, with a bounded
+ * queue. BCrypt is deliberately slow CPU work; keeping it off the request pool stops a login burst from starving
+ * every other endpoint, health checks included. When the queue is full the call fails fast with
+ * {@link PasswordHashingBusyException} (503) rather than piling up more work.
+ * <p>
+ * Hash time is published as {@code auth.password.hash.duration{op}}, time spent queued as
+ * {@code auth.password.hash.queue.wait}, and rejections as {@code auth.password.hash.rejected}.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer queueWait;
+    private final Counter rejected;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, MeterRegistry registry, int threads, int queueCapacity) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.delegate = delegate;
+        this.executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofPlatform().name("password-hash-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.encodeTimer = hashTimer(registry, "encode");
+        this.matchesTimer = hashTimer(registry, "matches");
+        this.queueWait = Timer.builder("auth.password.hash.queue.wait")
+                .description("Time a hashing task waited for a free hashing thread")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.rejected = registry.counter("auth.password.hash.rejected");
+        Gauge.builder("auth.password.hash.queue.size", executor, e -> e.getQueue().size()).register(registry);
+    }
+
+    private static Timer hashTimer(MeterRegistry registry, String op) {
+        return Timer.builder("auth.password.hash.duration")
+                .description("Time spent hashing or verifying a password")
+                .tag("op", op)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return await(submit(encodeTimer, () -> delegate.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return await(submit(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    /** Only parses the stored hash's cost factor; no hashing involved, so it stays on the caller's thread. */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /** Encodes in the background; when the queue is full the future fails with {@link PasswordHashingBusyException}. */
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+        try {
+            return submit(encodeTimer, () -> delegate.encode(rawPassword));
+        } catch (PasswordHashingBusyException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Timer timer, Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long enqueued = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                queueWait.record(start - enqueued, TimeUnit.NANOSECONDS);
+                T value;
+                try {
+                    value = task.get();
+                } catch (RuntimeException e) {
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    result.completeExceptionally(e);
+                    return;
+                }
+                // Recorded before completing, so the caller never observes the result ahead of its metric
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                result.complete(value);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingBusyException();
+        }
+        return result;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+}
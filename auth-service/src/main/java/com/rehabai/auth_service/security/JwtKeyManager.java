@@ -0,0 +1,222 @@
+package com.rehabai.auth_service.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.rehabai.auth_service.model.SigningKey;
+import com.rehabai.auth_service.repository.SigningKeyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Owns the ES256 keys that sign access tokens. Keys live in {@code jwt_signing_keys} so every auth-service instance
+ * signs with the same key and publishes the same JWKS; each instance reloads them every
+ * {@code auth.jwt.keys.refresh-ms}.
+ * <p>
+ * Rotation is publish-before-use: a successor is written {@code auth.jwt.keys.publish-ahead-ms} before it starts
+ * signing, so verifiers that refresh the JWKS on a shorter interval already hold it when the first token carrying its
+ * {@code kid} arrives. Its activation time is derived from the current key ({@code activatesAt + rotation}), which is
+ * unique in the table, so when several instances rotate at once only one insert wins. A replaced key stays published
+ * until the tokens it signed have expired.
+ * <p>
+ * Private keys are stored encrypted by {@link SigningKeyCipher} and only decrypted into the in-memory snapshot.
+ */
+@Component
+public class JwtKeyManager implements JWKSource<SecurityContext> {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyManager.class);
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(1);
+
+    private record Snapshot(ECKey signing, JWKSet keys, JWKSet publicKeys) {}
+
+    private final SigningKeyRepository repository;
+    private final SigningKeyCipher cipher;
+    private final Duration rotation;
+    private final Duration publishAhead;
+    private final Duration retention;
+    private final Clock clock;
+    private final Counter rotations;
+    private volatile Snapshot snapshot = new Snapshot(null, new JWKSet(), new JWKSet());
+
+    @Autowired
+    public JwtKeyManager(SigningKeyRepository repository,
+                         SigningKeyCipher cipher,
+                         MeterRegistry registry,
+                         @Value("${auth.jwt.keys.rotation-ms:86400000}") long rotationMs,
+                         @Value("${auth.jwt.keys.publish-ahead-ms:900000}") long publishAheadMs,
+                         @Value("${auth.jwt.expiration-ms}") long tokenExpirationMs) {
+        this(repository, cipher, registry, rotationMs, publishAheadMs, tokenExpirationMs, Clock.systemUTC());
+    }
+
+    JwtKeyManager(SigningKeyRepository repository, SigningKeyCipher cipher, MeterRegistry registry, long rotationMs,
+                  long publishAheadMs, long tokenExpirationMs, Clock clock) {
+        if (publishAheadMs >= rotationMs) {
+            throw new IllegalArgumentException("auth.jwt.keys.publish-ahead-ms must be shorter than auth.jwt.keys.rotation-ms");
+        }
+        this.repository = repository;
+        this.cipher = cipher;
+        this.rotation = Duration.ofMillis(rotationMs);
+        this.publishAhead = Duration.ofMillis(publishAheadMs);
+        this.retention = Duration.ofMillis(tokenExpirationMs).plus(CLOCK_SKEW);
+        this.clock = clock;
+        this.rotations = registry.counter("auth.jwt.keys.rotations");
+        Gauge.builder("auth.jwt.keys.published", this, m -> m.snapshot.keys().size()).register(registry);
+    }
+
+    @PostConstruct
+    void init() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${auth.jwt.keys.refresh-ms:60000}", initialDelayString = "${auth.jwt.keys.refresh-ms:60000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Could not reload JWT signing keys, keeping the current set: {}", e.getMessage());
+        }
+    }
+
+    /** Reloads the keys, creating the successor or purging expired keys when due. */
+    public synchronized void refresh() {
+        Instant now = clock.instant();
+        List<SigningKey> rows = new ArrayList<>(repository.findAllByOrderByActivatesAtAsc());
+        if (rows.isEmpty()) {
+            rows = create(now);
+        } else {
+            Instant next = rows.get(rows.size() - 1).getActivatesAt().plus(rotation);
+            if (!next.minus(publishAhead).isAfter(now)) {
+                rows = create(next.isAfter(now.plus(publishAhead)) ? next : now.plus(publishAhead));
+            }
+        }
+        rows = purge(rows, now);
+        seal(rows);
+        snapshot = load(rows, now);
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector selector, SecurityContext context) {
+        return selector.select(snapshot.keys());
+    }
+
+    /** The key new tokens are signed with. */
+    public String currentKeyId() {
+        ECKey signing = snapshot.signing();
+        if (signing == null) {
+            throw new IllegalStateException("No active JWT signing key");
+        }
+        return signing.getKeyID();
+    }
+
+    /** Public halves of every published key, including the successor that has not started signing yet. */
+    public JWKSet publicJwkSet() {
+        return snapshot.publicKeys();
+    }
+
+    private List<SigningKey> create(Instant activatesAt) {
+        try {
+            ECKey key = new ECKeyGenerator(Curve.P_256)
+                    .keyID(UUID.randomUUID().toString())
+                    .keyUse(KeyUse.SIGNATURE)
+                    .algorithm(JWSAlgorithm.ES256)
+                    .generate();
+            repository.saveAndFlush(new SigningKey(key.getKeyID(), key.toPublicJWK().toJSONString(), cipher.encrypt(key),
+                    activatesAt, clock.instant()));
+            rotations.increment();
+            log.info("Created JWT signing key {} active from {}", key.getKeyID(), activatesAt);
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Another instance already created the signing key active from {}", activatesAt);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Could not generate JWT signing key", e);
+        }
+        return new ArrayList<>(repository.findAllByOrderByActivatesAtAsc());
+    }
+
+    /** Drops keys whose successor has been signing for longer than a token lives. */
+    private List<SigningKey> purge(List<SigningKey> rows, Instant now) {
+        List<SigningKey> expired = new ArrayList<>();
+        for (int i = 0; i + 1 < rows.size(); i++) {
+            if (rows.get(i + 1).getActivatesAt().plus(retention).isBefore(now)) {
+                expired.add(rows.get(i));
+            }
+        }
+        if (expired.isEmpty()) {
+            return rows;
+        }
+        repository.deleteAllInBatch(expired);
+        log.info("Retired {} JWT signing key(s)", expired.size());
+        List<SigningKey> kept = new ArrayList<>(rows);
+        kept.removeAll(expired);
+        return kept;
+    }
+
+    /** Encrypts rows written before the private key was sealed, replacing the plaintext JWK with its public half. */
+    private void seal(List<SigningKey> rows) {
+        for (SigningKey row : rows) {
+            if (row.getPrivateJwk() != null) {
+                continue;
+            }
+            try {
+                ECKey key = ECKey.parse(row.getJwk());
+                if (!key.isPrivate()) {
+                    continue;
+                }
+                row.setPrivateJwk(cipher.encrypt(key));
+                row.setJwk(key.toPublicJWK().toJSONString());
+                repository.saveAndFlush(row);
+                log.info("Encrypted JWT signing key {} at rest", row.getKid());
+            } catch (ParseException e) {
+                log.error("Cannot encrypt unreadable JWT signing key {}: {}", row.getKid(), e.getMessage());
+            }
+        }
+    }
+
+    private Snapshot load(List<SigningKey> rows, Instant now) {
+        List<JWK> keys = new ArrayList<>(rows.size());
+        ECKey signing = null;
+        for (SigningKey row : rows) {
+            if (row.getPrivateJwk() == null) {
+                log.error("Skipping JWT signing key {} without an encrypted private key", row.getKid());
+                continue;
+            }
+            ECKey key;
+            try {
+                key = cipher.decrypt(row.getKid(), row.getPrivateJwk());
+            } catch (ParseException | JOSEException e) {
+                log.error("Skipping unreadable JWT signing key {}: {}", row.getKid(), e.getMessage());
+                continue;
+            }
+            keys.add(key);
+            if (!row.getActivatesAt().isAfter(now)) {
+                signing = key;
+            }
+        }
+        JWKSet set = new JWKSet(keys);
+        return new Snapshot(signing, set, set.toPublicJWKSet());
+    }
+}
@@ -8,7 +8,11 @@ import org.springframework.security.oauth2.jwt.JwtClaimsSet;
 import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
 import org.springframework.security.oauth2.jwt.Jwt;
 
-import com.nimbusds.jose.jwk.source.ImmutableSecret;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
 import javax.crypto.spec.SecretKeySpec;
 import javax.crypto.SecretKey;
 
@@ -16,40 +20,59 @@ import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.oauth2.jwt.JwsHeader;
-import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 
+/**
+ * Issues ES256 access tokens signed with the current key of {@link JwtKeyManager}; the {@code kid} header lets
+ * verifiers pick the public key from the JWKS. When {@code auth.jwt.secret} is set, HS256 tokens signed with it are
+ * still accepted, so tokens issued before the switch keep working until they expire.
+ */
 @Component
 public class JwtUtil {
 
+    private final JwtKeyManager keys;
     private final NimbusJwtEncoder encoder;
     private final NimbusJwtDecoder decoder;
+    private final VerifiedTokenCache cache;
     private final long expirationMs;
 
-    public JwtUtil(@Value("${auth.jwt.secret}") String secret,
-                   @Value("${auth.jwt.expiration-ms}") long expirationMs) {
-
-        if (secret == null || secret.isBlank()) {
-            throw new IllegalArgumentException("JWT secret cannot be null or empty");
+    public JwtUtil(JwtKeyManager keys,
+                   @Value("${auth.jwt.secret:}") String legacySecret,
+                   @Value("${auth.jwt.expiration-ms}") long expirationMs,
+                   VerifiedTokenCache cache) {
+
+        JWSKeySelector<SecurityContext> signed = new JWSVerificationKeySelector<>(JWSAlgorithm.ES256, keys);
+        JWSKeySelector<SecurityContext> selector = signed;
+        if (legacySecret != null && !legacySecret.isBlank()) {
+            if (legacySecret.length() < 32) {
+                throw new IllegalArgumentException(
+                    "JWT secret must be at least 32 characters (256 bits) for HS256. " +
+                    "Current length: " + legacySecret.length() + " characters. " +
+                    "SECURITY RISK: Short secrets are vulnerable to brute force attacks!"
+                );
+            }
+            SecretKey secretKey = new SecretKeySpec(legacySecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+            selector = (header, context) -> JWSAlgorithm.HS256.equals(header.getAlgorithm())
+                    ? List.of(secretKey)
+                    : signed.selectJWSKeys(header, context);
         }
 
-        if (secret.length() < 32) {
-            throw new IllegalArgumentException(
-                "JWT secret must be at least 32 characters (256 bits) for HS256. " +
-                "Current length: " + secret.length() + " characters. " +
-                "SECURITY RISK: Short secrets are vulnerable to brute force attacks!"
-            );
-        }
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector(selector);
+        // Expiry and not-before are checked by the Spring validator, as with the builder-made decoders
+        processor.setJWTClaimsSetVerifier((claims, context) -> { });
 
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        SecretKey secretKey = new SecretKeySpec(keyBytes, "HmacSHA256");
-        this.encoder = new NimbusJwtEncoder(new ImmutableSecret<>(secretKey));
-        this.decoder = NimbusJwtDecoder.withSecretKey(secretKey).macAlgorithm(org.springframework.security.oauth2.jose.jws.MacAlgorithm.HS256).build();
+        this.keys = keys;
+        this.encoder = new NimbusJwtEncoder(keys);
+        this.decoder = new NimbusJwtDecoder(processor);
         this.expirationMs = expirationMs;
+        this.cache = cache;
     }
 
     public String generateToken(UserDetails userDetails) {
@@ -73,29 +96,40 @@ public class JwtUtil {
         }
 
         JwtClaimsSet claims = builder.build();
-        JwsHeader header = JwsHeader.with(MacAlgorithm.HS256).build();
+        JwsHeader header = JwsHeader.with(SignatureAlgorithm.ES256).keyId(keys.currentKeyId()).build();
         JwtEncoderParameters encoderParameters = JwtEncoderParameters.from(header, claims);
         return this.encoder.encode(encoderParameters).getTokenValue();
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * Verifies the token (signature and expiry) and returns its claims. Each distinct token is decoded once;
+     * later calls are served from {@link VerifiedTokenCache} until {@code exp}.
+     */
+    public Optional<Jwt> verify(String token) {
         try {
-            Jwt jwt = decoder.decode(token);
-            // Optionally validate exp/nbf automatically thrown by decoder
-            return jwt.getExpiresAt() == null || jwt.getExpiresAt().isAfter(Instant.now());
+            Jwt jwt = decode(token);
+            if (jwt.getExpiresAt() != null && !jwt.getExpiresAt().isAfter(Instant.now())) {
+                return Optional.empty();
+            }
+            return Optional.of(jwt);
         } catch (Exception ex) {
-            return false;
+            return Optional.empty();
         }
     }
 
+    public boolean validateToken(String token) {
+        return verify(token).isPresent();
+    }
+
     public String getUsernameFromToken(String token) {
-        Jwt jwt = decoder.decode(token);
-        return jwt.getSubject();
+        return decode(token).getSubject();
     }
 
-    @SuppressWarnings("unchecked")
     public List<String> getRolesFromToken(String token) {
-        Jwt jwt = decoder.decode(token);
+        return getRoles(decode(token));
+    }
+
+    public static List<String> getRoles(Jwt jwt) {
         Object rolesObj = jwt.getClaims().get("roles");
         if (rolesObj instanceof List) {
             return ((List<?>) rolesObj).stream().map(Object::toString).collect(Collectors.toList());
@@ -107,11 +141,15 @@ public class JwtUtil {
     }
 
     public String getClaimAsString(String token, String claimName) {
-        Jwt jwt = decoder.decode(token);
+        Jwt jwt = decode(token);
         Object v = jwt.getClaims().get(claimName);
         return v != null ? v.toString() : null;
     }
 
+    private Jwt decode(String token) {
+        return cache.get(token, decoder::decode);
+    }
+
     public long getExpirationMs() {
         return expirationMs;
     }
@@ -0,0 +1,9 @@
+package com.rehabai.auth_service.security;
+
+/** The password-hashing queue is full; callers answer 503 instead of queueing more BCrypt work. */
+public class PasswordHashingBusyException extends RuntimeException {
+
+    public PasswordHashingBusyException() {
+        super("password_hashing_busy");
+    }
+}
@@ -0,0 +1,78 @@
+package com.rehabai.auth_service.security;
+
+import com.nimbusds.jose.EncryptionMethod;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWEAlgorithm;
+import com.nimbusds.jose.JWEHeader;
+import com.nimbusds.jose.JWEObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.DirectDecrypter;
+import com.nimbusds.jose.crypto.DirectEncrypter;
+import com.nimbusds.jose.jwk.ECKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.ParseException;
+import java.util.Base64;
+
+/**
+ * Encrypts the private half of the JWT signing keys before they reach {@code jwt_signing_keys}. The master key comes
+ * from {@code auth.jwt.keys.master-key} (base64, 256 bits) and never touches the database, so a dump of the table
+ * alone cannot mint tokens.
+ * <p>
+ * Ciphertexts are compact JWEs ({@code dir} + {@code A256GCM}) whose protected header carries the {@code kid}; the
+ * header is authenticated, so a ciphertext copied onto another row fails to open.
+ */
+@Component
+public class SigningKeyCipher {
+
+    private static final int KEY_BYTES = 32;
+
+    private final DirectEncrypter encrypter;
+    private final DirectDecrypter decrypter;
+
+    public SigningKeyCipher(@Value("${auth.jwt.keys.master-key:}") String masterKey) {
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(masterKey.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("auth.jwt.keys.master-key must be base64", e);
+        }
+        if (key.length != KEY_BYTES) {
+            throw new IllegalStateException("auth.jwt.keys.master-key must be a base64-encoded 256-bit key");
+        }
+        try {
+            this.encrypter = new DirectEncrypter(key);
+            this.decrypter = new DirectDecrypter(key);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Invalid auth.jwt.keys.master-key", e);
+        }
+    }
+
+    /** Seals the private JWK of {@code key}, bound to its {@code kid}. */
+    public String encrypt(ECKey key) {
+        JWEObject jwe = new JWEObject(new JWEHeader.Builder(JWEAlgorithm.DIR, EncryptionMethod.A256GCM)
+                .keyID(key.getKeyID())
+                .build(), new Payload(key.toJSONString()));
+        try {
+            jwe.encrypt(encrypter);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Could not encrypt JWT signing key " + key.getKeyID(), e);
+        }
+        return jwe.serialize();
+    }
+
+    /** Opens a value produced by {@link #encrypt}; fails if it was not sealed for {@code kid}. */
+    public ECKey decrypt(String kid, String sealed) throws ParseException, JOSEException {
+        JWEObject jwe = JWEObject.parse(sealed);
+        if (!kid.equals(jwe.getHeader().getKeyID())) {
+            throw new JOSEException("Encrypted key belongs to " + jwe.getHeader().getKeyID());
+        }
+        jwe.decrypt(decrypter);
+        ECKey key = ECKey.parse(jwe.getPayload().toString());
+        if (!kid.equals(key.getKeyID()) || !key.isPrivate()) {
+            throw new JOSEException("Encrypted key does not match its row");
+        }
+        return key;
+    }
+}
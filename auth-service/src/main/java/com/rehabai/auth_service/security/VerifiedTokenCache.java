@@ -0,0 +1,85 @@
+package com.rehabai.auth_service.security;
+
+import com.rehabai.auth_service.service.BoundedExpiringMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of already-verified access tokens, keyed by the SHA-256 of the token (the raw bearer value is never
+ * kept). An entry lives until the token's {@code exp}; only successful verifications are cached, so forged or
+ * expired tokens always go through the decoder. Hit/miss counts are published as {@code auth.jwt.cache.requests}.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private final BoundedExpiringMap<String, Jwt> entries;
+    private final int maxEntries;
+    private final Clock clock;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public VerifiedTokenCache(MeterRegistry registry,
+                              @Value("${auth.jwt.cache.max-entries:10000}") int maxEntries) {
+        this(registry, maxEntries, Clock.systemUTC());
+    }
+
+    VerifiedTokenCache(MeterRegistry registry, int maxEntries, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.hits = registry.counter("auth.jwt.cache.requests", "result", "hit");
+        this.misses = registry.counter("auth.jwt.cache.requests", "result", "miss");
+        this.entries = new BoundedExpiringMap<>(maxEntries, registry.counter("auth.jwt.cache.evictions"));
+        Gauge.builder("auth.jwt.cache.size", entries, BoundedExpiringMap::size).register(registry);
+    }
+
+    /**
+     * Returns the cached claims for {@code token}, or runs {@code verifier} once and caches its result until
+     * {@code exp}. Exceptions from the verifier propagate and nothing is cached.
+     */
+    public Jwt get(String token, Function<String, Jwt> verifier) {
+        if (maxEntries <= 0) {
+            return verifier.apply(token);
+        }
+        String key = hash(token);
+        Instant now = clock.instant();
+        Jwt cached = entries.get(key, now);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        Jwt jwt = verifier.apply(token);
+        Instant exp = jwt.getExpiresAt();
+        if (exp != null && exp.isAfter(now)) {
+            entries.put(key, jwt, exp, now);
+        }
+        return jwt;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
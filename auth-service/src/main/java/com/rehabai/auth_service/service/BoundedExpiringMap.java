@@ -0,0 +1,78 @@
+package com.rehabai.auth_service.service;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Concurrent map whose entries carry their own expiry and whose size is capped. Expired entries are never returned
+ * and are removed lazily on read. A {@link #put} that finds the map full first drops expired entries and, if the
+ * map is still full, arbitrary ones down to 90% of capacity, counting those in {@code evictions}; the cap is soft
+ * under concurrent puts. Callers pass the current instant so each can keep its own clock.
+ */
+public final class BoundedExpiringMap<K, V> {
+
+    private record Entry<V>(V value, Instant expiresAt) {}
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final Counter evictions;
+
+    public BoundedExpiringMap(int maxEntries, Counter evictions) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.evictions = evictions;
+    }
+
+    /** The value for {@code key}, or null if absent or expired at {@code now}. */
+    public V get(K key, Instant now) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.expiresAt().isAfter(now)) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    public void put(K key, V value, Instant expiresAt, Instant now) {
+        if (entries.size() >= maxEntries) {
+            evict(now);
+        }
+        entries.put(key, new Entry<>(value, expiresAt));
+    }
+
+    /** Removes and returns the value for {@code key}, expired or not. */
+    public V remove(K key) {
+        Entry<V> removed = entries.remove(key);
+        return removed != null ? removed.value() : null;
+    }
+
+    public void removeIf(Predicate<? super V> filter) {
+        entries.values().removeIf(e -> filter.test(e.value()));
+    }
+
+    public void removeExpired(Instant now) {
+        entries.values().removeIf(e -> !e.expiresAt().isAfter(now));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(Instant now) {
+        removeExpired(now);
+        int target = maxEntries - Math.max(1, maxEntries / 10);
+        Iterator<K> it = entries.keySet().iterator();
+        while (entries.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+}
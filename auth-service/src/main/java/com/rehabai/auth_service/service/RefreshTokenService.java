@@ -2,14 +2,19 @@ package com.rehabai.auth_service.service;
 
 import com.rehabai.auth_service.model.RefreshToken;
 import com.rehabai.auth_service.repository.RefreshTokenRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 
@@ -17,58 +22,89 @@ import java.util.UUID;
 public class RefreshTokenService {
 
     private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+    /** user-service rejects {@code POST /internal/users/missing} with more IDs than this ({@code @Size(max = 5000)}). */
+    static final int MAX_ORPHAN_BATCH_SIZE = 5000;
 
     private final RefreshTokenRepository repository;
     private final UserServiceClient userServiceClient;
+    private final RefreshTokenStore store;
+    private final Timer rotateTimer;
     private final long refreshExpirationMs;
+    private final int orphanBatchSize;
 
     public RefreshTokenService(RefreshTokenRepository repository,
                                UserServiceClient userServiceClient,
-                               @Value("${auth.refresh.expiration-ms}") long refreshExpirationMs) {
+                               RefreshTokenStore store,
+                               MeterRegistry registry,
+                               @Value("${auth.refresh.expiration-ms}") long refreshExpirationMs,
+                               @Value("${auth.refresh.orphan-cleanup.batch-size:2000}") int orphanBatchSize) {
         this.repository = repository;
         this.userServiceClient = userServiceClient;
+        this.store = store;
+        this.rotateTimer = Timer.builder("auth.refresh.rotate.duration")
+                .description("Refresh-token rotation, from claim to the successor being committed")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
         this.refreshExpirationMs = refreshExpirationMs;
+        this.orphanBatchSize = Math.min(MAX_ORPHAN_BATCH_SIZE, Math.max(1, orphanBatchSize));
     }
 
     public long getRefreshExpirationMs() {
         return refreshExpirationMs;
     }
 
-    @Transactional
+    /**
+     * Issues a refresh token for a user the caller has just authenticated or created. There is no user-service
+     * round trip: tokens of deleted users are revoked by the {@code user.deleted} event instead.
+     */
     public RefreshToken issueForUser(UUID userId) {
+        RefreshToken rt = newToken(userId);
+        store.write(null, rt);
+        return rt;
+    }
+
+    /**
+     * Revokes {@code tokenId} and issues its successor. The token is claimed from the in-memory index and both writes
+     * go out in the store's next batch; if another request (or instance) already used the token, the conditional
+     * revoke matches no row and the rotation fails as {@code invalid_refresh_token}.
+     * <p>
+     * User existence is not checked here; the caller loads the user afterwards and must {@link #revokeToken} the
+     * successor if user-service no longer knows it.
+     */
+    public RefreshToken rotate(UUID tokenId) {
+        Timer.Sample sample = Timer.start();
         try {
-            userServiceClient.getById(userId);
-        } catch (Exception e) {
-            log.warn("Attempted to create refresh token for non-existent user: {}", userId);
-            throw new IllegalArgumentException("user_not_found");
+            RefreshTokenStore.Active active = store.claim(tokenId)
+                    .orElseThrow(() -> new IllegalArgumentException("invalid_refresh_token"));
+
+            if (active.expiresAt().isBefore(Instant.now())) {
+                store.write(tokenId, null);
+                throw new IllegalArgumentException("expired_refresh_token");
+            }
+
+            RefreshToken next = newToken(active.userId());
+            if (!store.write(tokenId, next)) {
+                log.warn("Refresh token {} was already used or revoked; rotation rejected", tokenId);
+                throw new IllegalArgumentException("invalid_refresh_token");
+            }
+            return next;
+        } finally {
+            sample.stop(rotateTimer);
         }
+    }
 
+    private RefreshToken newToken(UUID userId) {
         RefreshToken rt = new RefreshToken();
+        rt.setTokenId(UUID.randomUUID());
         rt.setUserId(userId);
         rt.setExpiresAt(Instant.now().plusMillis(refreshExpirationMs));
         rt.setRevoked(false);
-        return repository.save(rt);
-    }
-
-    @Transactional
-    public RefreshToken rotate(UUID tokenId) {
-        RefreshToken existing = repository.findByTokenIdAndRevokedFalseWithLock(tokenId)
-                .orElseThrow(() -> new IllegalArgumentException("invalid_refresh_token"));
-
-        if (existing.getExpiresAt().isBefore(Instant.now())) {
-            existing.setRevoked(true);
-            repository.save(existing);
-            throw new IllegalArgumentException("expired_refresh_token");
-        }
-
-        existing.setRevoked(true);
-        repository.save(existing);
-        repository.flush();
-        return issueForUser(existing.getUserId());
+        return rt;
     }
 
     @Transactional
     public void revokeAllForUser(UUID userId) {
+        store.forgetUser(userId);
         List<RefreshToken> active = repository.findByUserIdAndRevokedFalse(userId);
         for (RefreshToken t : active) {
             t.setRevoked(true);
@@ -78,6 +114,7 @@ public class RefreshTokenService {
 
     @Transactional
     public void revokeToken(UUID tokenId) {
+        store.forget(tokenId);
         repository.findById(tokenId).ifPresent(t -> {
             t.setRevoked(true);
             repository.save(t);
@@ -87,7 +124,9 @@ public class RefreshTokenService {
     @Transactional
     public long cleanupExpired() {
         log.debug("Starting cleanup of expired refresh tokens at {}", Instant.now());
-        int deleted = repository.deleteByExpiresAtBefore(Instant.now());
+        Instant now = Instant.now();
+        store.forgetExpired(now);
+        int deleted = repository.deleteByExpiresAtBefore(now);
         if (deleted > 0) {
             log.info("Cleanup removed {} expired refresh tokens", deleted);
         } else {
@@ -96,50 +135,33 @@ public class RefreshTokenService {
         return deleted;
     }
 
-    @Transactional
+    /**
+     * Deletes the tokens of users that no longer exist. Walks the distinct token owners with keyset pagination,
+     * asks user-service which of each batch are gone in one call, and deletes their tokens with one statement per
+     * batch. Safety net for missed {@code user.deleted} events; a user-service failure stops the run.
+     */
     public long cleanupOrphaned() {
-        log.info("Starting cleanup of orphaned refresh tokens (paginated)");
-        int deleted = 0;
-        int page = 0;
-        int pageSize = 50;
-        boolean hasMore = true;
-
-        while (hasMore) {
-            List<RefreshToken> batch = repository.findAll(
-                org.springframework.data.domain.PageRequest.of(page, pageSize)
-            ).getContent();
-
-            if (batch.isEmpty()) {
-                hasMore = false;
-                break;
+        long started = System.nanoTime();
+        long deleted = 0;
+        long checked = 0;
+        Pageable page = PageRequest.of(0, orphanBatchSize);
+        List<UUID> userIds = repository.findUserIds(page);
+        while (!userIds.isEmpty()) {
+            checked += userIds.size();
+            Set<UUID> missing = userServiceClient.findMissing(userIds);
+            if (!missing.isEmpty()) {
+                deleted += repository.deleteByUserIdIn(missing);
+                store.forgetUsers(missing);
             }
-
-            for (RefreshToken token : batch) {
-                try {
-                    userServiceClient.getById(token.getUserId());
-                } catch (org.springframework.web.client.HttpClientErrorException.NotFound e) {
-                    repository.delete(token);
-                    deleted++;
-                    log.debug("Removed orphaned token {} for non-existent user {}",
-                            token.getTokenId(), token.getUserId());
-                } catch (Exception e) {
-                    log.warn("Could not verify user {} for token {}: {}",
-                            token.getUserId(), token.getTokenId(), e.getMessage());
-                }
-            }
-
-            page++;
-            if (page > 1000) {
-                log.error("Orphan cleanup exceeded 1000 pages, stopping. Consider increasing page size.");
+            if (userIds.size() < orphanBatchSize) {
                 break;
             }
+            userIds = repository.findUserIdsAfter(userIds.get(userIds.size() - 1), page);
         }
 
-        if (deleted > 0) {
-            log.info("Cleanup removed {} orphaned refresh tokens (processed {} pages)", deleted, page);
-        } else {
-            log.info("No orphaned tokens found (processed {} pages)", page);
-        }
+        double seconds = Math.max((System.nanoTime() - started) / 1e9, 1e-3);
+        log.info("Orphan cleanup: checked {} users, deleted {} tokens in {} s ({} rows/s)",
+                checked, deleted, String.format("%.1f", seconds), Math.round(deleted / seconds));
         return deleted;
     }
 }
@@ -0,0 +1,204 @@
+package com.rehabai.auth_service.service;
+
+import com.rehabai.auth_service.model.RefreshToken;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hot path for refresh tokens: an in-memory index of active token ids in front of {@code refresh_tokens}, plus a
+ * group-commit writer.
+ * <p>
+ * {@link #claim} removes the token from the index (a compare-and-swap on the map, no row lock); on a miss it reads
+ * the row once, so tokens issued by another instance still work. {@link #write} queues the revoke of the old token
+ * and the insert of its successor; a single writer thread flushes whatever has queued as one JDBC batch in one
+ * transaction and completes the callers' futures, so under load many rotations share one round trip and at low
+ * load nothing waits for a timer. The revoke is conditional ({@code AND revoked = false}): if the token was
+ * already rotated or revoked, by this instance or another, the successor is not inserted and the rotation fails.
+ * Postgres stays the source of truth; the index is bounded by {@code auth.refresh.index.max-entries} and an evicted
+ * token just costs one read on its next use.
+ */
+@Component
+public class RefreshTokenStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenStore.class);
+
+    public record Active(UUID userId, Instant expiresAt) {}
+
+    private record Write(UUID revoke, RefreshToken insert, CompletableFuture<Boolean> done) {}
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final BoundedExpiringMap<UUID, Active> index;
+    private final Queue<Write> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final ExecutorService writer =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("refresh-token-writer").daemon().factory());
+    private final int batchSize;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSize;
+
+    public RefreshTokenStore(JdbcTemplate jdbc,
+                             TransactionTemplate tx,
+                             MeterRegistry registry,
+                             @Value("${auth.refresh.index.max-entries:100000}") int maxEntries,
+                             @Value("${auth.refresh.write.batch-size:500}") int batchSize) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.index = new BoundedExpiringMap<>(maxEntries, registry.counter("auth.refresh.index.evictions"));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushTimer = Timer.builder("auth.refresh.write.flush")
+                .description("One group-commit batch of refresh-token writes")
+                .register(registry);
+        this.flushSize = DistributionSummary.builder("auth.refresh.write.batch").register(registry);
+        Gauge.builder("auth.refresh.index.size", index, BoundedExpiringMap::size).register(registry);
+    }
+
+    /** Takes {@code tokenId} out of the index, reading it from the database if this instance has not seen it. */
+    public Optional<Active> claim(UUID tokenId) {
+        Active active = index.remove(tokenId);
+        if (active != null) {
+            return Optional.of(active);
+        }
+        return jdbc.query("SELECT user_id, expires_at FROM refresh_tokens WHERE token_id = ? AND revoked = false",
+                (rs, i) -> new Active(rs.getObject("user_id", UUID.class), rs.getTimestamp("expires_at").toInstant()),
+                tokenId).stream().findFirst();
+    }
+
+    /**
+     * Revokes {@code revoke} (if not null) and inserts {@code insert} (if not null) in the next batch, and waits for
+     * it to commit. Returns false when {@code revoke} was no longer active, in which case nothing was inserted.
+     */
+    public boolean write(UUID revoke, RefreshToken insert) {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        pending.add(new Write(revoke, insert, done));
+        if (flushing.compareAndSet(false, true)) {
+            writer.execute(this::flushLoop);
+        }
+        boolean applied;
+        try {
+            applied = done.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+        if (applied && insert != null) {
+            index.put(insert.getTokenId(), new Active(insert.getUserId(), insert.getExpiresAt()), insert.getExpiresAt(),
+                    Instant.now());
+        }
+        return applied;
+    }
+
+    public void forget(UUID tokenId) {
+        index.remove(tokenId);
+    }
+
+    public void forgetUser(UUID userId) {
+        index.removeIf(a -> a.userId().equals(userId));
+    }
+
+    public void forgetUsers(Set<UUID> userIds) {
+        index.removeIf(a -> userIds.contains(a.userId()));
+    }
+
+    public void forgetExpired(Instant now) {
+        index.removeExpired(now);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdown();
+    }
+
+    private void flushLoop() {
+        do {
+            List<Write> batch = new ArrayList<>();
+            Write w;
+            while ((w = pending.poll()) != null) {
+                batch.add(w);
+                if (batch.size() == batchSize) {
+                    flush(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+            flushing.set(false);
+            // A write queued after the last poll but before the flag was cleared would otherwise wait forever
+        } while (!pending.isEmpty() && flushing.compareAndSet(false, true));
+    }
+
+    private void flush(List<Write> batch) {
+        Timer.Sample sample = Timer.start();
+        try {
+            boolean[] applied = tx.execute(status -> apply(batch));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).done().complete(applied[i]);
+            }
+        } catch (RuntimeException e) {
+            log.error("Refresh token batch of {} writes failed: {}", batch.size(), e.getMessage());
+            batch.forEach(w -> w.done().completeExceptionally(e));
+        } finally {
+            sample.stop(flushTimer);
+            flushSize.record(batch.size());
+        }
+    }
+
+    private boolean[] apply(List<Write> batch) {
+        boolean[] applied = new boolean[batch.size()];
+        List<Integer> revokes = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            applied[i] = true;
+            if (batch.get(i).revoke() != null) {
+                revokes.add(i);
+            }
+        }
+        if (!revokes.isEmpty()) {
+            int[][] counts = jdbc.batchUpdate("UPDATE refresh_tokens SET revoked = true WHERE token_id = ? AND revoked = false",
+                    revokes, revokes.size(), (ps, i) -> ps.setObject(1, batch.get(i).revoke()));
+            for (int k = 0; k < revokes.size(); k++) {
+                applied[revokes.get(k)] = counts[0][k] != 0;
+            }
+        }
+        List<RefreshToken> inserts = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (applied[i] && batch.get(i).insert() != null) {
+                inserts.add(batch.get(i).insert());
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbc.batchUpdate("INSERT INTO refresh_tokens (token_id, user_id, expires_at, revoked, created_at) VALUES (?, ?, ?, ?, ?)",
+                    inserts, inserts.size(), (ps, t) -> {
+                        ps.setObject(1, t.getTokenId());
+                        ps.setObject(2, t.getUserId());
+                        ps.setTimestamp(3, Timestamp.from(t.getExpiresAt()));
+                        ps.setBoolean(4, false);
+                        ps.setTimestamp(5, Timestamp.from(t.getCreatedAt()));
+                    });
+        }
+        return applied;
+    }
+}
@@ -0,0 +1,31 @@
+package com.rehabai.auth_service.service;
+
+import com.rehabai.auth_service.events.UserChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+@Component
+public class UserEventListener {
+
+    private static final Logger log = LoggerFactory.getLogger(UserEventListener.class);
+
+    private final UserSnapshotCache userCache;
+    private final RefreshTokenService refreshTokenService;
+
+    public UserEventListener(UserSnapshotCache userCache, RefreshTokenService refreshTokenService) {
+        this.userCache = userCache;
+        this.refreshTokenService = refreshTokenService;
+    }
+
+    @RabbitListener(queues = "#{userEventsQueue.name}")
+    public void onUserChanged(UserChangedEvent event) {
+        log.debug("Invalidating cached user: userId={}, change={}", event.userId(), event.change());
+        userCache.invalidate(event.userId(), event.email());
+        if ("DELETED".equals(event.change())) {
+            refreshTokenService.revokeAllForUser(event.userId());
+            log.info("Revoked refresh tokens of deleted user {}", event.userId());
+        }
+    }
+}
@@ -2,26 +2,40 @@ package com.rehabai.auth_service.service;
 
 import com.rehabai.auth_service.dto.RegisterRequest;
 import com.rehabai.auth_service.model.UserRole;
+import com.rehabai.auth_service.security.BoundedPasswordEncoder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class UserService implements UserDetailsService {
 
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
+
     private final UserServiceClient userClient;
-    private final PasswordEncoder passwordEncoder;
+    private final UserSnapshotCache userCache;
+    private final BoundedPasswordEncoder passwordEncoder;
+    // Blocking user-service calls for hash upgrades; a full queue just leaves the upgrade to a later login
+    private final ThreadPoolExecutor upgradeWriter = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(256), Thread.ofPlatform().name("password-upgrade-writer").daemon().factory(),
+            new ThreadPoolExecutor.AbortPolicy());
 
-    public UserService(UserServiceClient userClient, PasswordEncoder passwordEncoder) {
+    public UserService(UserServiceClient userClient, UserSnapshotCache userCache, BoundedPasswordEncoder passwordEncoder) {
         this.userClient = userClient;
+        this.userCache = userCache;
         this.passwordEncoder = passwordEncoder;
     }
 
@@ -31,17 +45,53 @@ public class UserService implements UserDetailsService {
         UserServiceClient.CreateUserRequest createReq = new UserServiceClient.CreateUserRequest(
                 req.email(), req.fullName(), passwordHash, role
         );
+        UserServiceClient.UserResponse created;
         try {
-            userClient.createUser(createReq);
+            created = userClient.createUser(createReq);
         } catch (HttpClientErrorException.BadRequest ex) {
             throw new IllegalArgumentException("email_exists");
         }
+        // The token and refresh token that follow are built from this entry instead of reading the user back
+        userCache.prime(new UserServiceClient.CredentialsResponse(
+                created.id(), created.email(), passwordHash, created.role(), created.active()));
+    }
+
+    /**
+     * Re-hashes a password stored with a lower BCrypt cost than configured, after a successful login. Hashes on the
+     * hashing pool and writes from {@code upgradeWriter}, never affecting the login; if either is busy the upgrade
+     * is simply retried on a later login. The write only applies while {@code storedHash} is still the stored hash,
+     * so a password change made in the meantime is never reverted to the password used at this login.
+     */
+    public void upgradePasswordHashIfNeeded(UUID userId, String rawPassword, String storedHash) {
+        if (!passwordEncoder.upgradeEncoding(storedHash)) {
+            return;
+        }
+        passwordEncoder.encodeAsync(rawPassword)
+                .thenApplyAsync(hash -> {
+                    boolean upgraded = userClient.upgradePasswordHash(userId, storedHash, hash);
+                    userCache.invalidate(userId, null);
+                    return upgraded;
+                }, upgradeWriter)
+                .whenComplete((upgraded, ex) -> {
+                    if (ex != null) {
+                        log.warn("Password hash upgrade skipped for userId={}: {}", userId, ex.getMessage());
+                    } else if (upgraded) {
+                        log.info("Password hash upgraded for userId={}", userId);
+                    } else {
+                        log.info("Password hash upgrade skipped for userId={}: password changed since login", userId);
+                    }
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        upgradeWriter.shutdown();
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         try {
-            UserServiceClient.CredentialsResponse creds = userClient.getCredentialsByEmail(username);
+            UserServiceClient.CredentialsResponse creds = userCache.credentials(username);
             List<GrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("ROLE_" + creds.role().name()));
             boolean disabled = creds.active() != null && !creds.active();
             return org.springframework.security.core.userdetails.User.withUsername(creds.email())
@@ -62,11 +112,11 @@ public class UserService implements UserDetailsService {
     }
 
     public UserServiceClient.UserResponse getUserById(UUID id) {
-        return userClient.getById(id);
+        return userCache.user(id);
     }
 
     public UserServiceClient.CredentialsResponse getCredentialsByEmail(String email) {
-        return userClient.getCredentialsByEmail(email);
+        return userCache.credentials(email);
     }
 
     public UserDetails buildUserDetailsFrom(UserServiceClient.UserResponse u) {
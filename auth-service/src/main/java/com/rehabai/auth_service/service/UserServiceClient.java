@@ -4,8 +4,11 @@ import com.rehabai.auth_service.model.UserRole;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.Collection;
+import java.util.Set;
 import java.util.UUID;
 
 @Component
@@ -69,6 +72,32 @@ public class UserServiceClient {
         return response;
     }
 
+    /**
+     * Replaces the stored hash only if it still equals {@code expectedHash}; returns false when user-service
+     * answers 409 because the password changed in between.
+     */
+    public boolean upgradePasswordHash(UUID id, String expectedHash, String passwordHash) {
+        String url = baseUrl + "/internal/users/{id}/password-hash";
+        try {
+            restTemplate.postForEntity(url, new UpgradePasswordHashRequest(expectedHash, passwordHash), Void.class, id);
+            return true;
+        } catch (HttpClientErrorException.Conflict ex) {
+            return false;
+        }
+    }
+
+    /** Of {@code ids}, the ones user-service has no user for. */
+    public Set<UUID> findMissing(Collection<UUID> ids) {
+        String url = baseUrl + "/internal/users/missing";
+        MissingUsersResponse response = restTemplate.postForObject(url, new MissingUsersRequest(Set.copyOf(ids)), MissingUsersResponse.class);
+
+        if (response == null || response.missing() == null) {
+            throw new IllegalStateException("User service returned empty response for bulk existence check");
+        }
+
+        return response.missing();
+    }
+
     public long countUsers() {
         String url = baseUrl + "/internal/users/count";
         Long c = restTemplate.getForObject(url, Long.class);
@@ -83,6 +112,9 @@ public class UserServiceClient {
 
     // DTOs used to communicate with user-service
     public record CreateUserRequest(String email, String fullName, String passwordHash, UserRole role) {}
+    public record UpgradePasswordHashRequest(String expectedPasswordHash, String passwordHash) {}
+    public record MissingUsersRequest(Set<UUID> ids) {}
+    public record MissingUsersResponse(Set<UUID> missing) {}
     public record UserResponse(UUID id, String email, String fullName, UserRole role, Boolean active) {}
     public record CredentialsResponse(UUID id, String email, String passwordHash, UserRole role, Boolean active) {}
 }
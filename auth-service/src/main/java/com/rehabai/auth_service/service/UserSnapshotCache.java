@@ -0,0 +1,145 @@
+package com.rehabai.auth_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of user-service lookups, so one login or register costs at most one HTTP call.
+ * <p>
+ * Credentials are cached by email and also indexed by id, which lets the refresh-token and user-by-id paths reuse
+ * the same entry. Concurrent misses for the same key share a single request. Entries expire after
+ * {@code auth.user-cache.ttl-ms} and are dropped earlier when user-service publishes a {@code user.*} event for
+ * the user. A load that races with an invalidation is returned to its callers but not cached. A TTL of {@code 0}
+ * disables caching. Hit/miss/coalesced counts are published as {@code auth.user.cache.requests}.
+ */
+@Component
+public class UserSnapshotCache {
+
+    private final UserServiceClient client;
+    private final BoundedExpiringMap<String, UserServiceClient.CredentialsResponse> byEmail;
+    private final BoundedExpiringMap<UUID, UserServiceClient.UserResponse> byId;
+    private final Map<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final long ttlMs;
+    private final Clock clock;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+
+    @Autowired
+    public UserSnapshotCache(UserServiceClient client,
+                             MeterRegistry registry,
+                             @Value("${auth.user-cache.ttl-ms:30000}") long ttlMs,
+                             @Value("${auth.user-cache.max-entries:10000}") int maxEntries) {
+        this(client, registry, ttlMs, maxEntries, Clock.systemUTC());
+    }
+
+    UserSnapshotCache(UserServiceClient client, MeterRegistry registry, long ttlMs, int maxEntries, Clock clock) {
+        this.client = client;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+        this.hits = registry.counter("auth.user.cache.requests", "result", "hit");
+        this.misses = registry.counter("auth.user.cache.requests", "result", "miss");
+        this.coalesced = registry.counter("auth.user.cache.requests", "result", "coalesced");
+        Counter evictions = registry.counter("auth.user.cache.evictions");
+        this.byEmail = new BoundedExpiringMap<>(maxEntries, evictions);
+        this.byId = new BoundedExpiringMap<>(maxEntries, evictions);
+        Gauge.builder("auth.user.cache.size", byEmail, BoundedExpiringMap::size).register(registry);
+    }
+
+    /** Credentials for {@code email}; a 404 from user-service propagates as {@code HttpClientErrorException.NotFound}. */
+    public UserServiceClient.CredentialsResponse credentials(String email) {
+        return lookup(byEmail, email, () -> client.getCredentialsByEmail(email), this::store);
+    }
+
+    /**
+     * User by id. When the entry comes from a credentials lookup, {@code fullName} is null: the credentials
+     * projection does not carry it, and auth-service only needs id, email, role and active.
+     */
+    public UserServiceClient.UserResponse user(UUID id) {
+        return lookup(byId, id, () -> client.getById(id), u -> put(byId, id, u));
+    }
+
+    /** Seeds the cache with credentials that auth-service already knows, e.g. right after creating the user. */
+    public void prime(UserServiceClient.CredentialsResponse creds) {
+        if (ttlMs > 0) {
+            store(creds);
+        }
+    }
+
+    /** Drops everything cached for the user, including lookups still in flight. */
+    public void invalidate(UUID id, String email) {
+        if (id != null) {
+            inFlight.remove(id);
+            UserServiceClient.UserResponse removed = byId.remove(id);
+            if (email == null && removed != null) {
+                email = removed.email();
+            }
+        }
+        if (email != null) {
+            inFlight.remove(email);
+            byEmail.remove(email);
+        }
+    }
+
+    private void store(UserServiceClient.CredentialsResponse creds) {
+        put(byEmail, creds.email(), creds);
+        if (creds.id() != null) {
+            put(byId, creds.id(), new UserServiceClient.UserResponse(creds.id(), creds.email(), null, creds.role(), creds.active()));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K, V> V lookup(BoundedExpiringMap<K, V> map, K key, Supplier<V> loader, Consumer<V> store) {
+        if (ttlMs <= 0) {
+            return loader.get();
+        }
+        V cached = map.get(key, clock.instant());
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return (V) existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+        misses.increment();
+        try {
+            V value = loader.get();
+            // Invalidated while loading: hand the value to the waiting callers but do not cache it
+            if (inFlight.remove(key, mine)) {
+                store.accept(value);
+            }
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private <K, V> void put(BoundedExpiringMap<K, V> map, K key, V value) {
+        Instant now = clock.instant();
+        map.put(key, value, now.plusMillis(ttlMs), now);
+    }
+}
@@ -1,5 +1,6 @@
 package com.rehabai.auth_service.controller;
 
+import com.rehabai.auth_service.model.RefreshToken;
 import com.rehabai.auth_service.security.JwtUtil;
 import com.rehabai.auth_service.service.RefreshTokenService;
 import com.rehabai.auth_service.service.UserService;
@@ -9,13 +10,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.UUID;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(AuthController.class)
@@ -46,4 +53,23 @@ class AuthControllerErrorTest {
         mvc.perform(post("/auth/refresh").contentType(MediaType.APPLICATION_JSON).content(body))
                 .andExpect(status().isUnauthorized());
     }
+
+    @Test
+    void refresh_deletedUser_revokesRotatedTokenAndReturns401() throws Exception {
+        UUID oldId = UUID.randomUUID();
+        RefreshToken rotated = new RefreshToken();
+        rotated.setTokenId(UUID.randomUUID());
+        rotated.setUserId(UUID.randomUUID());
+        Mockito.when(refreshTokenService.rotate(oldId)).thenReturn(rotated);
+        Mockito.when(userService.getUserById(rotated.getUserId())).thenThrow(
+                HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", HttpHeaders.EMPTY, new byte[0], null));
+
+        String body = "{\"refreshToken\":\"" + oldId + "\"}";
+        mvc.perform(post("/auth/refresh").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isUnauthorized())
+                .andExpect(content().string("invalid_refresh_token"));
+
+        Mockito.verify(refreshTokenService).revokeToken(rotated.getTokenId());
+        Mockito.verify(jwtUtil, Mockito.never()).generateToken(Mockito.any(), Mockito.anyMap());
+    }
 }
@@ -0,0 +1,66 @@
+package com.rehabai.auth_service.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BoundedPasswordEncoderTest {
+
+    @Test
+    void hashesOnPool_andFlagsWeakerCostForUpgrade() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(5), registry, 2, 4);
+        try {
+            String hash = encoder.encode("secret");
+
+            assertThat(encoder.matches("secret", hash)).isTrue();
+            assertThat(encoder.matches("wrong", hash)).isFalse();
+            assertThat(encoder.upgradeEncoding(hash)).isFalse();
+            assertThat(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("secret"))).isTrue();
+            assertThat(registry.timer("auth.password.hash.duration", "op", "matches").count()).isEqualTo(2);
+            assertThat(registry.timer("auth.password.hash.queue.wait").count()).isEqualTo(3);
+        } finally {
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void fullQueue_rejectsFast() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder slow = mock(PasswordEncoder.class);
+        when(slow.encode(any())).thenAnswer(inv -> {
+            running.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "hash";
+        });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(slow, registry, 1, 1);
+        try {
+            CompletableFuture<String> inProgress = encoder.encodeAsync("a");
+            assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+            CompletableFuture<String> queued = encoder.encodeAsync("b");
+
+            assertThatThrownBy(() -> encoder.encode("c")).isInstanceOf(PasswordHashingBusyException.class);
+            assertThat(encoder.encodeAsync("d")).isCompletedExceptionally();
+            assertThat(registry.counter("auth.password.hash.rejected").count()).isEqualTo(2);
+
+            release.countDown();
+            assertThat(inProgress.get(5, TimeUnit.SECONDS)).isEqualTo("hash");
+            assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("hash");
+        } finally {
+            encoder.shutdown();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.rehabai.auth_service.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.rehabai.auth_service.model.SigningKey;
+import com.rehabai.auth_service.repository.SigningKeyRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class JwtKeyManagerTest {
+
+    static final long ROTATION_MS = Duration.ofHours(24).toMillis();
+    static final long PUBLISH_AHEAD_MS = Duration.ofMinutes(15).toMillis();
+    static final long TOKEN_TTL_MS = 60_000;
+    static final SigningKeyCipher CIPHER = new SigningKeyCipher(Base64.getEncoder().encodeToString(new byte[32]));
+    static final UserDetails USER = User.withUsername("ana@x.com").password("p").roles("CLINICIAN").build();
+
+    @Test
+    void bootstrapsKey_signsWithKid_andPublishesOnlyPublicHalf() {
+        List<SigningKey> rows = new ArrayList<>();
+        JwtKeyManager keys = keyManager(rows, Clock.systemUTC());
+        JwtUtil jwtUtil = jwtUtil(keys, "");
+
+        String token = jwtUtil.generateToken(USER);
+
+        assertThat(rows).hasSize(1);
+        assertThat(jwtUtil.verify(token)).hasValueSatisfying(jwt -> {
+            assertThat(jwt.getHeaders()).containsEntry("alg", "ES256").containsEntry("kid", keys.currentKeyId());
+            assertThat(jwt.getSubject()).isEqualTo("ana@x.com");
+        });
+        List<JWK> published = keys.publicJwkSet().getKeys();
+        assertThat(published).extracting(JWK::getKeyID).containsExactly(keys.currentKeyId());
+        assertThat(published).noneMatch(JWK::isPrivate);
+    }
+
+    @Test
+    void successorIsPublishedBeforeItSigns_andOldKeyIsRetiredAfterItsTokensExpire() {
+        List<SigningKey> rows = new ArrayList<>();
+        Instant start = Instant.now();
+        VerifiedTokenCacheTest.MutableClock clock = new VerifiedTokenCacheTest.MutableClock(start);
+        JwtKeyManager keys = keyManager(rows, clock);
+        JwtUtil jwtUtil = jwtUtil(keys, "");
+        String first = keys.currentKeyId();
+        String oldToken = jwtUtil.generateToken(USER);
+
+        clock.now = start.plusMillis(ROTATION_MS - PUBLISH_AHEAD_MS);
+        keys.refresh();
+        assertThat(keys.currentKeyId()).isEqualTo(first);
+        assertThat(keys.publicJwkSet().getKeys()).hasSize(2);
+
+        clock.now = start.plusMillis(ROTATION_MS);
+        keys.refresh();
+        assertThat(keys.currentKeyId()).isNotEqualTo(first);
+        assertThat(jwtUtil.validateToken(oldToken)).isTrue();
+
+        clock.now = start.plusMillis(ROTATION_MS + TOKEN_TTL_MS).plus(Duration.ofMinutes(2));
+        keys.refresh();
+        assertThat(keys.publicJwkSet().getKeys()).extracting(JWK::getKeyID).containsExactly(keys.currentKeyId());
+        assertThat(rows).hasSize(1);
+    }
+
+    @Test
+    void privateKeyIsStoredEncrypted_andBoundToItsKid() throws Exception {
+        List<SigningKey> rows = new ArrayList<>();
+        JwtKeyManager keys = keyManager(rows, Clock.systemUTC());
+        SigningKey row = rows.get(0);
+
+        assertThat(JWK.parse(row.getJwk()).isPrivate()).isFalse();
+        assertThat(row.getPrivateJwk()).doesNotContain("\"d\"");
+        assertThat(CIPHER.decrypt(keys.currentKeyId(), row.getPrivateJwk()).isPrivate()).isTrue();
+        assertThatThrownBy(() -> CIPHER.decrypt("other-kid", row.getPrivateJwk())).isInstanceOf(JOSEException.class);
+        assertThatThrownBy(() -> new SigningKeyCipher(Base64.getEncoder().encodeToString(new byte[32]).substring(4)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void plaintextRowsFromBeforeEncryption_areSealedOnRefresh() throws Exception {
+        ECKey legacy = new ECKeyGenerator(Curve.P_256).keyID("legacy").keyUse(KeyUse.SIGNATURE)
+                .algorithm(JWSAlgorithm.ES256).generate();
+        List<SigningKey> rows = new ArrayList<>(List.of(
+                new SigningKey("legacy", legacy.toJSONString(), null, Instant.now(), Instant.now())));
+
+        JwtKeyManager keys = keyManager(rows, Clock.systemUTC());
+
+        assertThat(keys.currentKeyId()).isEqualTo("legacy");
+        assertThat(JWK.parse(rows.get(0).getJwk()).isPrivate()).isFalse();
+        assertThat(CIPHER.decrypt("legacy", rows.get(0).getPrivateJwk())).isEqualTo(legacy);
+    }
+
+    @Test
+    void legacyHs256Tokens_onlyAcceptedWhileSecretIsConfigured() {
+        String secret = "0123456789abcdef0123456789abcdef";
+        NimbusJwtEncoder hmac = new NimbusJwtEncoder(new ImmutableSecret<>(
+                new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256")));
+        Instant now = Instant.now();
+        String legacy = hmac.encode(JwtEncoderParameters.from(JwsHeader.with(MacAlgorithm.HS256).build(),
+                JwtClaimsSet.builder().subject("ana@x.com").issuedAt(now).expiresAt(now.plusSeconds(60))
+                        .claims(c -> c.putAll(Map.of("roles", List.of("ROLE_CLINICIAN")))).build())).getTokenValue();
+        JwtKeyManager keys = keyManager(new ArrayList<>(), Clock.systemUTC());
+
+        assertThat(jwtUtil(keys, secret).validateToken(legacy)).isTrue();
+        assertThat(jwtUtil(keys, "").validateToken(legacy)).isFalse();
+    }
+
+    static JwtKeyManager keyManager(List<SigningKey> rows, Clock clock) {
+        SigningKeyRepository repository = mock(SigningKeyRepository.class);
+        when(repository.findAllByOrderByActivatesAtAsc()).thenAnswer(i ->
+                rows.stream().sorted(Comparator.comparing(SigningKey::getActivatesAt)).toList());
+        when(repository.saveAndFlush(any())).thenAnswer(i -> {
+            if (!rows.contains(i.<SigningKey>getArgument(0))) rows.add(i.getArgument(0));
+            return i.getArgument(0);
+        });
+        doAnswer(i -> {
+            ((Iterable<?>) i.getArgument(0)).forEach(rows::remove);
+            return null;
+        }).when(repository).deleteAllInBatch(any());
+        JwtKeyManager keys = new JwtKeyManager(repository, CIPHER, new SimpleMeterRegistry(), ROTATION_MS,
+                PUBLISH_AHEAD_MS, TOKEN_TTL_MS, clock);
+        keys.init();
+        return keys;
+    }
+
+    private static JwtUtil jwtUtil(JwtKeyManager keys, String legacySecret) {
+        return new JwtUtil(keys, legacySecret, TOKEN_TTL_MS, new VerifiedTokenCache(new SimpleMeterRegistry(), 100));
+    }
+}
@@ -0,0 +1,89 @@
+package com.rehabai.auth_service.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerifiedTokenCacheTest {
+
+    @Test
+    void jwtUtil_decodesEachTokenOnce() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        JwtUtil jwtUtil = new JwtUtil(JwtKeyManagerTest.keyManager(new ArrayList<>(), Clock.systemUTC()), "",
+                60_000, new VerifiedTokenCache(registry, 100));
+        String token = jwtUtil.generateToken(User.withUsername("ana@x.com").password("p").roles("CLINICIAN").build(),
+                Map.of("user_id", "42"));
+
+        assertThat(jwtUtil.validateToken(token)).isTrue();
+        assertThat(jwtUtil.getUsernameFromToken(token)).isEqualTo("ana@x.com");
+        assertThat(jwtUtil.getRolesFromToken(token)).containsExactly("ROLE_CLINICIAN");
+        assertThat(jwtUtil.getClaimAsString(token, "user_id")).isEqualTo("42");
+
+        assertThat(registry.counter("auth.jwt.cache.requests", "result", "miss").count()).isEqualTo(1);
+        assertThat(registry.counter("auth.jwt.cache.requests", "result", "hit").count()).isEqualTo(3);
+        assertThat(jwtUtil.validateToken(token + "x")).isFalse();
+    }
+
+    @Test
+    void entryExpiresWithToken() {
+        MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+        VerifiedTokenCache cache = new VerifiedTokenCache(new SimpleMeterRegistry(), 100, clock);
+        AtomicInteger decodes = new AtomicInteger();
+        Jwt jwt = jwt(clock.instant().plusSeconds(60));
+
+        cache.get("t", t -> { decodes.incrementAndGet(); return jwt; });
+        cache.get("t", t -> { decodes.incrementAndGet(); return jwt; });
+        clock.now = clock.now.plusSeconds(61);
+        cache.get("t", t -> { decodes.incrementAndGet(); return jwt; });
+
+        assertThat(decodes).hasValue(2);
+    }
+
+    @Test
+    void staysBounded() {
+        Instant now = Instant.parse("2026-01-01T00:00:00Z");
+        VerifiedTokenCache cache = new VerifiedTokenCache(new SimpleMeterRegistry(), 10, Clock.fixed(now, ZoneOffset.UTC));
+        for (int i = 0; i < 50; i++) {
+            cache.get("t" + i, t -> jwt(now.plusSeconds(60)));
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+    }
+
+    private static Jwt jwt(Instant exp) {
+        return Jwt.withTokenValue("t").header("alg", "HS256").subject("u").issuedAt(exp.minusSeconds(120)).expiresAt(exp).build();
+    }
+
+    static class MutableClock extends Clock {
+        Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.rehabai.auth_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedExpiringMapTest {
+
+    static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void expiredEntry_isNotReturned() {
+        BoundedExpiringMap<String, String> map = new BoundedExpiringMap<>(10, new SimpleMeterRegistry().counter("e"));
+        map.put("a", "1", NOW.plusSeconds(60), NOW);
+
+        assertThat(map.get("a", NOW.plusSeconds(59))).isEqualTo("1");
+        assertThat(map.get("a", NOW.plusSeconds(60))).isNull();
+        assertThat(map.size()).isZero();
+    }
+
+    @Test
+    void fullMap_dropsExpiredFirstThenDownToNinetyPercent() {
+        Counter evictions = new SimpleMeterRegistry().counter("e");
+        BoundedExpiringMap<Integer, Integer> map = new BoundedExpiringMap<>(10, evictions);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, i, NOW.plusSeconds(i < 5 ? 1 : 60), NOW);
+        }
+
+        map.put(10, 10, NOW.plusSeconds(60), NOW.plusSeconds(2));
+        assertThat(map.size()).isEqualTo(6);
+        assertThat(evictions.count()).isZero();
+
+        for (int i = 11; i < 15; i++) {
+            map.put(i, i, NOW.plusSeconds(60), NOW.plusSeconds(2));
+        }
+        map.put(15, 15, NOW.plusSeconds(60), NOW.plusSeconds(2));
+        assertThat(map.size()).isEqualTo(10);
+        assertThat(evictions.count()).isEqualTo(1);
+    }
+
+    @Test
+    void removeIf_matchesOnValues() {
+        BoundedExpiringMap<String, String> map = new BoundedExpiringMap<>(10, new SimpleMeterRegistry().counter("e"));
+        map.put("a", "user-1", NOW.plusSeconds(60), NOW);
+        map.put("b", "user-2", NOW.plusSeconds(60), NOW);
+
+        map.removeIf("user-1"::equals);
+
+        assertThat(map.get("a", NOW)).isNull();
+        assertThat(map.remove("b")).isEqualTo("user-2");
+    }
+}
@@ -0,0 +1,51 @@
+package com.rehabai.auth_service.service;
+
+import com.rehabai.auth_service.repository.RefreshTokenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RefreshTokenServiceTest {
+
+    final RefreshTokenRepository repository = mock(RefreshTokenRepository.class);
+    final UserServiceClient userClient = mock(UserServiceClient.class);
+    final RefreshTokenStore store = mock(RefreshTokenStore.class);
+    final RefreshTokenService service =
+            new RefreshTokenService(repository, userClient, store, new SimpleMeterRegistry(), 60_000, 2);
+
+    @Test
+    void cleanupOrphaned_walksOwnersByKeyset_andDeletesMissingPerBatch() {
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+        when(repository.findUserIds(any())).thenReturn(List.of(a, b));
+        when(repository.findUserIdsAfter(eq(b), any())).thenReturn(List.of(c));
+        when(userClient.findMissing(List.of(a, b))).thenReturn(Set.of(b));
+        when(userClient.findMissing(List.of(c))).thenReturn(Set.of());
+        when(repository.deleteByUserIdIn(Set.of(b))).thenReturn(3);
+
+        assertThat(service.cleanupOrphaned()).isEqualTo(3);
+
+        verify(repository, times(1)).deleteByUserIdIn(any());
+        verify(store).forgetUsers(Set.of(b));
+        verify(userClient, never()).getById(any());
+    }
+
+    @Test
+    void cleanupOrphaned_clampsBatchSizeToUserServiceLimit() {
+        RefreshTokenService oversized =
+                new RefreshTokenService(repository, userClient, store, new SimpleMeterRegistry(), 60_000, 50_000);
+        when(repository.findUserIds(any())).thenReturn(List.of());
+
+        oversized.cleanupOrphaned();
+
+        verify(repository).findUserIds(PageRequest.of(0, RefreshTokenService.MAX_ORPHAN_BATCH_SIZE));
+    }
+}
@@ -0,0 +1,99 @@
+package com.rehabai.auth_service.service;
+
+import com.rehabai.auth_service.model.RefreshToken;
+import com.rehabai.auth_service.repository.RefreshTokenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class RefreshTokenStoreTest {
+
+    JdbcTemplate jdbc;
+    TransactionTemplate tx;
+    List<RefreshTokenStore> stores = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        DriverManagerDataSource ds = new DriverManagerDataSource(
+                "jdbc:h2:mem:rt" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbc = new JdbcTemplate(ds);
+        tx = new TransactionTemplate(new DataSourceTransactionManager(ds));
+        jdbc.execute("CREATE TABLE refresh_tokens (token_id UUID PRIMARY KEY, user_id UUID NOT NULL, "
+                + "expires_at TIMESTAMP WITH TIME ZONE NOT NULL, revoked BOOLEAN NOT NULL, "
+                + "created_at TIMESTAMP WITH TIME ZONE NOT NULL)");
+    }
+
+    @AfterEach
+    void close() {
+        stores.forEach(RefreshTokenStore::shutdown);
+    }
+
+    @Test
+    void rotate_revokesOldInsertsSuccessor_andRejectsReplay() {
+        RefreshTokenService service = service(store());
+        UUID userId = UUID.randomUUID();
+        RefreshToken first = service.issueForUser(userId);
+
+        RefreshToken second = service.rotate(first.getTokenId());
+
+        assertThat(second.getUserId()).isEqualTo(userId);
+        assertThat(jdbc.queryForObject("SELECT revoked FROM refresh_tokens WHERE token_id = ?", Boolean.class, first.getTokenId())).isTrue();
+        assertThat(jdbc.queryForObject("SELECT revoked FROM refresh_tokens WHERE token_id = ?", Boolean.class, second.getTokenId())).isFalse();
+        assertThatThrownBy(() -> service.rotate(first.getTokenId())).hasMessage("invalid_refresh_token");
+        assertThatThrownBy(() -> service.rotate(UUID.randomUUID())).hasMessage("invalid_refresh_token");
+    }
+
+    @Test
+    void concurrentRotationOnTwoInstances_onlyOneWins() throws Exception {
+        RefreshTokenService a = service(store());
+        RefreshTokenService b = service(store());
+        RefreshToken token = a.issueForUser(UUID.randomUUID());
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<RefreshToken>> results = List.of(
+                    pool.submit(() -> a.rotate(token.getTokenId())),
+                    pool.submit(() -> b.rotate(token.getTokenId())));
+            int ok = 0;
+            for (Future<RefreshToken> f : results) {
+                try {
+                    f.get();
+                    ok++;
+                } catch (java.util.concurrent.ExecutionException e) {
+                    assertThat(e.getCause()).hasMessage("invalid_refresh_token");
+                }
+            }
+            assertThat(ok).isEqualTo(1);
+            assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM refresh_tokens WHERE revoked = false", Integer.class)).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private RefreshTokenStore store() {
+        RefreshTokenStore store = new RefreshTokenStore(jdbc, tx, new SimpleMeterRegistry(), 100, 50);
+        stores.add(store);
+        return store;
+    }
+
+    private static RefreshTokenService service(RefreshTokenStore store) {
+        return new RefreshTokenService(mock(RefreshTokenRepository.class), mock(UserServiceClient.class), store,
+                new SimpleMeterRegistry(), 60_000, 100);
+    }
+}
@@ -0,0 +1,92 @@
+package com.rehabai.auth_service.service;
+
+import com.rehabai.auth_service.model.UserRole;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+class UserSnapshotCacheTest {
+
+    static final UUID ID = UUID.randomUUID();
+    static final UserServiceClient.CredentialsResponse CREDS =
+            new UserServiceClient.CredentialsResponse(ID, "ana@x.com", "hash", UserRole.PATIENT, true);
+
+    final UserServiceClient client = mock(UserServiceClient.class);
+    final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    final UserSnapshotCache cache = new UserSnapshotCache(client, registry, 30_000, 100,
+            Clock.fixed(Instant.parse("2026-01-01T00:00:00Z"), ZoneOffset.UTC));
+
+    @Test
+    void loginPath_callsUserServiceOnce() {
+        when(client.getCredentialsByEmail("ana@x.com")).thenReturn(CREDS);
+
+        cache.credentials("ana@x.com");
+        cache.credentials("ana@x.com");
+        UserServiceClient.UserResponse user = cache.user(ID);
+
+        assertThat(user.email()).isEqualTo("ana@x.com");
+        assertThat(user.role()).isEqualTo(UserRole.PATIENT);
+        verify(client, times(1)).getCredentialsByEmail("ana@x.com");
+        verify(client, never()).getById(any());
+    }
+
+    @Test
+    void invalidate_forcesReload_andNotFoundIsNotCached() {
+        when(client.getCredentialsByEmail("ana@x.com"))
+                .thenReturn(CREDS)
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "nf", null, null, null));
+        cache.credentials("ana@x.com");
+
+        cache.invalidate(ID, null);
+
+        assertThatThrownBy(() -> cache.credentials("ana@x.com")).isInstanceOf(HttpClientErrorException.NotFound.class);
+        assertThatThrownBy(() -> cache.credentials("ana@x.com")).isInstanceOf(HttpClientErrorException.NotFound.class);
+        verify(client, times(3)).getCredentialsByEmail("ana@x.com");
+        cache.user(ID);
+        verify(client).getById(ID);
+    }
+
+    @Test
+    void concurrentMisses_shareOneRequest() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(client.getCredentialsByEmail("ana@x.com")).thenAnswer(inv -> {
+            entered.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return CREDS;
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<UserServiceClient.CredentialsResponse> first = pool.submit(() -> cache.credentials("ana@x.com"));
+            assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<UserServiceClient.CredentialsResponse> second = pool.submit(() -> cache.credentials("ana@x.com"));
+            Future<UserServiceClient.CredentialsResponse> third = pool.submit(() -> cache.credentials("ana@x.com"));
+            while (registry.counter("auth.user.cache.requests", "result", "coalesced").count() < 2) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            assertThat(first.get()).isEqualTo(CREDS);
+            assertThat(second.get()).isEqualTo(CREDS);
+            assertThat(third.get()).isEqualTo(CREDS);
+            verify(client, times(1)).getCredentialsByEmail("ana@x.com");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
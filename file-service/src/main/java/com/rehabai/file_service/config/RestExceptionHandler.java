@@ -1,5 +1,6 @@
 package com.rehabai.file_service.config;
 
+import com.rehabai.file_service.service.UploadVerificationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -16,6 +17,13 @@ public class RestExceptionHandler {
         return pd;
     }
 
+    @ExceptionHandler(UploadVerificationException.class)
+    public ProblemDetail handleUploadVerification(UploadVerificationException ex) {
+        ProblemDetail pd = ProblemDetail.forStatus(HttpStatus.UNPROCESSABLE_ENTITY);
+        pd.setDetail(ex.getMessage());
+        return pd;
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ProblemDetail handleValidation(MethodArgumentNotValidException ex) {
         ProblemDetail pd = ProblemDetail.forStatus(HttpStatus.BAD_REQUEST);
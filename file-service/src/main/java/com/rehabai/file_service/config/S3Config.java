@@ -9,6 +9,7 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
 import java.net.URI;
 
@@ -33,4 +34,23 @@ public class S3Config {
         }
         return builder.build();
     }
+
+    /**
+     * Assina URLs para o cliente falar direto com o S3/MinIO. O endpoint público pode ser diferente do
+     * interno (ex.: {@code http://minio:9000} só existe dentro da rede do compose).
+     */
+    @Bean(destroyMethod = "close")
+    public S3Presigner s3Presigner(@Value("${S3_ACCESS_KEY_ID:minioadmin}") String accessKey,
+                                   @Value("${S3_SECRET_ACCESS_KEY:minioadmin}") String secretKey,
+                                   @Value("${AWS_REGION:us-east-1}") String region,
+                                   @Value("${S3_PUBLIC_ENDPOINT:${S3_ENDPOINT:}}") String endpoint) {
+        var builder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        if (endpoint != null && !endpoint.isBlank()) {
+            builder = builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
 }
@@ -1,11 +1,15 @@
 package com.rehabai.file_service.controller;
 
+import com.rehabai.file_service.dto.FilePage;
+import com.rehabai.file_service.dto.FileSummary;
 import com.rehabai.file_service.security.SecurityHelper;
 import com.rehabai.file_service.model.AnonymizationLog;
 import com.rehabai.file_service.model.FileStatus;
 import com.rehabai.file_service.model.FileType;
 import com.rehabai.file_service.model.IngestionFile;
 import com.rehabai.file_service.service.AnonymizationLogService;
+import com.rehabai.file_service.service.ByteRange;
+import com.rehabai.file_service.service.PresignedTransferService;
 import com.rehabai.file_service.service.StorageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -17,14 +21,19 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
@@ -50,6 +59,12 @@ public class FileController {
     private final StorageService storageService;
     private final AnonymizationLogService anonymizationLogService;
     private final SecurityHelper securityHelper;
+    private final PresignedTransferService presignedTransferService;
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /** Dado clínico: só o navegador guarda, e revalida a cada uso (barato com o ETag). */
+    private static final CacheControl DOWNLOAD_CACHE = CacheControl.noCache().cachePrivate();
 
     @Operation(
         summary = "Health Check",
@@ -118,6 +133,142 @@ public class FileController {
         return ResponseEntity.ok(saved);
     }
 
+    @Operation(
+        summary = "Iniciar upload direto ao S3",
+        description = """
+            # 🚀 Upload Direto (URL pré-assinada)
+            
+            Registra o arquivo como `PENDING_UPLOAD` e devolve uma URL de `PUT` temporária. O cliente envia os
+            bytes direto ao S3/MinIO, repetindo os `headers` devolvidos, e depois chama
+            `POST /files/{id}/complete`.
+            
+            O tamanho e o SHA-256 declarados fazem parte da assinatura: o S3 recusa conteúdo diferente.
+            Se o conteúdo já estiver armazenado, o arquivo é criado na hora (`alreadyStored: true`, sem URL).
+            
+            ## 🔒 Requer: CLINICIAN ou ADMIN
+            """,
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "✅ URL de upload emitida"),
+        @ApiResponse(responseCode = "422", description = "❌ Tamanho inválido")
+    })
+    @PostMapping("/uploads")
+    public ResponseEntity<PresignedTransferService.PresignedUrl> initiateDirectUpload(
+            @Parameter(description = "UUID do usuário/paciente", required = true) @RequestParam("userId") UUID userId,
+            @Parameter(description = "Nome original do arquivo") @RequestParam(value = "originalName", required = false) String originalName,
+            @Parameter(description = "Tipo do arquivo", schema = @Schema(allowableValues = {"PRESCRIPTION", "EXAM", "REPORT", "IMAGE", "OTHER"}))
+            @RequestParam(value = "fileType", required = false, defaultValue = "OTHER") FileType fileType,
+            @Parameter(description = "Tamanho em bytes", required = true) @RequestParam("sizeBytes") long sizeBytes,
+            @Parameter(description = "SHA-256 do conteúdo (hex)", required = true) @RequestParam("sha256") String sha256,
+            @Parameter(description = "Content-Type do arquivo") @RequestParam(value = "contentType", required = false) String contentType) {
+        securityHelper.requireClinician();
+        return ResponseEntity.ok(presignedTransferService.initiateUpload(userId, originalName, fileType, sizeBytes, sha256, contentType));
+    }
+
+    @Operation(
+        summary = "Confirmar upload direto",
+        description = """
+            # ✅ Confirmar Upload Direto
+            
+            Confere tamanho e SHA-256 do objeto enviado, move para o armazenamento definitivo, marca o arquivo
+            como `UPLOADED` e dispara o processamento. Pode ser repetido com segurança.
+            
+            ## 🔒 Requer: CLINICIAN ou ADMIN
+            """,
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "✅ Upload confirmado"),
+        @ApiResponse(responseCode = "404", description = "❌ Arquivo não encontrado"),
+        @ApiResponse(responseCode = "422", description = "❌ Objeto ausente ou diferente do declarado")
+    })
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<IngestionFile> completeDirectUpload(
+            @Parameter(description = "UUID do arquivo") @PathVariable UUID id) {
+        securityHelper.requireClinician();
+        return ResponseEntity.ok(presignedTransferService.completeUpload(id));
+    }
+
+    @Operation(
+        summary = "URL de download direto",
+        description = """
+            # 🔗 Download Direto (URL pré-assinada)
+            
+            Devolve uma URL de `GET` temporária para baixar o arquivo direto do S3/MinIO (aceita `Range`).
+            
+            ## Acesso:
+            - Dono do arquivo
+            - ADMIN
+            """,
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "✅ URL de download emitida"),
+        @ApiResponse(responseCode = "403", description = "🔒 Acesso negado"),
+        @ApiResponse(responseCode = "404", description = "❌ Arquivo não encontrado")
+    })
+    @GetMapping("/{id}/download-url")
+    public ResponseEntity<PresignedTransferService.PresignedUrl> downloadUrl(
+            @Parameter(description = "UUID do arquivo") @PathVariable UUID id) {
+        IngestionFile f = storageService.get(id);
+        securityHelper.validateResourceAccess(f.getUserId());
+        return ResponseEntity.ok(presignedTransferService.presignDownload(f));
+    }
+
+    @Operation(
+        summary = "Verificar conteúdo por hash",
+        description = """
+            # 🔎 Conteúdo já armazenado?
+            
+            Consulta se um conteúdo com o SHA-256 informado já existe. Use antes do upload: se existir,
+            crie o arquivo com `POST /files/content/{sha256}/link` e pule a transferência.
+            
+            ## 🔒 Requer: CLINICIAN ou ADMIN
+            
+            Também responde a `HEAD` (sem corpo).
+            """,
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "✅ Conteúdo já armazenado"),
+        @ApiResponse(responseCode = "404", description = "❌ Conteúdo não encontrado - faça o upload")
+    })
+    @GetMapping("/content/{sha256}")
+    public ResponseEntity<Map<String, Object>> contentExists(
+            @Parameter(description = "SHA-256 do conteúdo (hex)") @PathVariable String sha256) {
+        securityHelper.requireClinician();
+        return storageService.findContent(sha256)
+                .map(o -> ResponseEntity.ok(Map.<String, Object>of("sha256", o.getHashSha256(), "sizeBytes", o.getSizeBytes())))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(
+        summary = "Criar arquivo a partir de conteúdo existente",
+        description = """
+            # 🔗 Upload sem transferência
+            
+            Cria um novo arquivo apontando para um conteúdo já armazenado (mesmo SHA-256) e publica o evento de upload.
+            
+            ## 🔒 Requer: CLINICIAN ou ADMIN
+            """,
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "✅ Arquivo criado"),
+        @ApiResponse(responseCode = "404", description = "❌ Conteúdo não encontrado - faça o upload")
+    })
+    @PostMapping("/content/{sha256}/link")
+    public ResponseEntity<IngestionFile> linkContent(
+            @Parameter(description = "SHA-256 do conteúdo (hex)") @PathVariable String sha256,
+            @Parameter(description = "UUID do usuário/paciente", required = true) @RequestParam("userId") UUID userId,
+            @Parameter(description = "Nome original do arquivo") @RequestParam(value = "originalName", required = false) String originalName,
+            @Parameter(description = "Tipo do arquivo", schema = @Schema(allowableValues = {"PRESCRIPTION", "EXAM", "REPORT", "IMAGE", "OTHER"}))
+            @RequestParam(value = "fileType", required = false, defaultValue = "OTHER") FileType fileType) {
+        securityHelper.requireClinician();
+        return ResponseEntity.ok(storageService.linkExisting(sha256, userId, originalName, fileType));
+    }
+
     @Operation(
         summary = "Pseudonimizar arquivo",
         description = """
@@ -187,7 +338,7 @@ public class FileController {
         description = """
             # 📋 Listar Arquivos
             
-            Lista arquivos com filtros opcionais.
+            Lista arquivos com filtros opcionais, do mais recente para o mais antigo, em páginas.
             
             ## Regras de Acesso:
             - **PATIENT**: Apenas próprios arquivos
@@ -195,19 +346,28 @@ public class FileController {
             
             ## Filtros:
             - `userId` - Filtrar por usuário (obrigatório para CLINICIAN/ADMIN)
-            - `status` - Filtrar por status (UPLOADED, PSEUDONYMIZED, etc.)
+            - `status` - Filtrar por status (UPLOADED, ANONYMIZED, etc.)
+            - `fileType` - Filtrar por tipo de arquivo
+            
+            ## Paginação:
+            - `limit` - Itens por página (padrão 50, máximo 200)
+            - `cursor` - Valor do header `X-Next-Cursor` da página anterior; sem o header, não há mais páginas
             """,
         security = @SecurityRequirement(name = "bearerAuth")
     )
     @ApiResponse(responseCode = "200", description = "✅ Lista de arquivos")
     @GetMapping
-    public ResponseEntity<List<IngestionFile>> list(
+    public ResponseEntity<List<FileSummary>> list(
             @Parameter(description = "UUID do usuário") @RequestParam(required = false) UUID userId,
             @Parameter(
                 description = "Status do arquivo",
-                schema = @Schema(allowableValues = {"UPLOADED", "PSEUDONYMIZED", "PROCESSING", "READY", "ERROR"})
+                schema = @Schema(allowableValues = {"PENDING_UPLOAD", "UPLOADED", "ANONYMIZED", "ERROR"})
             )
-            @RequestParam(required = false) FileStatus status) {
+            @RequestParam(required = false) FileStatus status,
+            @Parameter(description = "Tipo do arquivo", schema = @Schema(allowableValues = {"PRESCRIPTION", "EXAM", "REPORT", "IMAGE", "OTHER"}))
+            @RequestParam(required = false) FileType fileType,
+            @Parameter(description = "Cursor da próxima página (header X-Next-Cursor)") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Itens por página (máx. 200)") @RequestParam(defaultValue = "50") int limit) {
         // ...existing code...
         UUID authenticatedUserId = securityHelper.getAuthenticatedUserId();
         boolean isStaff = securityHelper.hasAnyRole("ADMIN", "CLINICIAN");
@@ -223,7 +383,12 @@ public class FileController {
                 return ResponseEntity.badRequest().build();
             }
         }
-        return ResponseEntity.ok(storageService.list(userId, status));
+        FilePage page = storageService.list(userId, status, fileType, cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
     }
 
     @Operation(
@@ -231,12 +396,18 @@ public class FileController {
         description = """
             # 📥 Download de Arquivo
             
-            Recupera o conteúdo binário do arquivo do S3.
+            Transmite o conteúdo do arquivo direto do S3, sem carregá-lo em memória.
             
             ## Retorna:
             - Content-Type: application/octet-stream
             - Content-Disposition: attachment
-            - Bytes do arquivo
+            - ETag: SHA-256 do conteúdo
+            - Accept-Ranges: bytes
+            
+            ## Cabeçalhos suportados:
+            - `Range: bytes=inicio-fim` → 206 com apenas o trecho pedido
+            - `If-Range: "<etag>"` → aplica o Range só se o conteúdo não mudou
+            - `If-None-Match: "<etag>"` → 304 sem corpo quando o cliente já tem o conteúdo
             
             ## Acesso:
             - Dono do arquivo
@@ -246,22 +417,69 @@ public class FileController {
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "✅ Download iniciado"),
+        @ApiResponse(responseCode = "206", description = "✂️ Trecho do arquivo (Range)"),
+        @ApiResponse(responseCode = "304", description = "♻️ Conteúdo não mudou"),
         @ApiResponse(responseCode = "403", description = "🔒 Acesso negado"),
-        @ApiResponse(responseCode = "404", description = "❌ Arquivo não encontrado")
+        @ApiResponse(responseCode = "404", description = "❌ Arquivo não encontrado"),
+        @ApiResponse(responseCode = "416", description = "⚠️ Range fora do tamanho do arquivo")
     })
     @GetMapping("/{id}/download")
-    public ResponseEntity<byte[]> download(
-            @Parameter(description = "UUID do arquivo") @PathVariable UUID id) throws IOException {
-        // ...existing code...
+    public ResponseEntity<StreamingResponseBody> download(
+            @Parameter(description = "UUID do arquivo") @PathVariable UUID id,
+            @RequestHeader HttpHeaders headers) {
         IngestionFile f = storageService.get(id);
         securityHelper.validateResourceAccess(f.getUserId());
+        if (f.getStatus() == FileStatus.PENDING_UPLOAD) {
+            throw new IllegalArgumentException("file_not_uploaded");
+        }
+
+        String etag = f.getHashSha256() != null ? "\"" + f.getHashSha256() + "\"" : null;
+        if (etag != null && matchesAny(headers.getIfNoneMatch(), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(DOWNLOAD_CACHE).build();
+        }
+
+        long size = storageService.sizeOf(f);
+        ByteRange range;
+        try {
+            // If-Range com outro ETag (ou data): o conteúdo pode ter mudado, então vai a resposta completa
+            String ifRange = headers.getFirst(HttpHeaders.IF_RANGE);
+            boolean rangeAllowed = ifRange == null || (etag != null && etag.equals(ifRange.trim()));
+            range = rangeAllowed ? ByteRange.parse(headers.getFirst(HttpHeaders.RANGE), size) : null;
+        } catch (ByteRange.UnsatisfiableException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + e.getSize())
+                    .build();
+        }
 
-        byte[] data = storageService.download(id);
         String filename = f.getOriginalName() != null ? f.getOriginalName() : "file";
-        return ResponseEntity.ok()
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(range != null ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                .body(data);
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .cacheControl(DOWNLOAD_CACHE)
+                .contentLength(range != null ? range.length() : size);
+        if (etag != null) {
+            response.eTag(etag);
+        }
+        if (range != null) {
+            response.header(HttpHeaders.CONTENT_RANGE, range.contentRange(size));
+        }
+        return response.body(out -> {
+            try (InputStream in = storageService.openStream(f, range)) {
+                in.transferTo(out);
+            }
+        });
+    }
+
+    private static boolean matchesAny(List<String> candidates, String etag) {
+        for (String candidate : candidates) {
+            String c = candidate.trim();
+            // Comparação fraca, como a RFC 9110 pede para If-None-Match
+            if (c.equals("*") || c.equals(etag) || c.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Operation(
@@ -0,0 +1,91 @@
+package com.rehabai.file_service.controller;
+
+import com.rehabai.file_service.model.PseudonymizationJob;
+import com.rehabai.file_service.security.SecurityHelper;
+import com.rehabai.file_service.service.PseudonymizationJobService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/files/pseudonymization-jobs")
+@RequiredArgsConstructor
+@Tag(name = "Pseudonymization Jobs", description = "Pseudonimização em lote para varreduras LGPD")
+public class PseudonymizationJobController {
+
+    private final PseudonymizationJobService jobService;
+    private final SecurityHelper securityHelper;
+
+    @Operation(
+        summary = "Criar job de pseudonimização em lote",
+        description = """
+            # 🕵️ Pseudonimização em Lote
+
+            Pseudonimiza todos os arquivos `UPLOADED` do usuário (opcional) criados no período, com cópias
+            server-side em paralelo no S3. O job roda em segundo plano e grava um checkpoint a cada página.
+
+            ## 🔒 Requer: ADMIN
+            """,
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponse(responseCode = "202", description = "✅ Job criado")
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> create(
+            @Parameter(description = "UUID do usuário/paciente (todos, se omitido)") @RequestParam(required = false) UUID userId,
+            @Parameter(description = "Início do período (ISO-8601)") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime createdFrom,
+            @Parameter(description = "Fim do período, exclusivo (ISO-8601); padrão: agora") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime createdTo) {
+        securityHelper.requireAdmin();
+        PseudonymizationJob job = jobService.create(userId, createdFrom, createdTo, securityHelper.getAuthenticatedUserId());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(view(job));
+    }
+
+    @Operation(
+        summary = "Status do job de pseudonimização",
+        description = "🔒 **ADMIN** - Progresso, falhas, checkpoint e vazão (arquivos/s, MB/s) do job.",
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "✅ Status do job"),
+        @ApiResponse(responseCode = "404", description = "❌ Job não encontrado")
+    })
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> get(@Parameter(description = "UUID do job") @PathVariable UUID id) {
+        securityHelper.requireAdmin();
+        return jobService.find(id)
+                .map(job -> ResponseEntity.ok(view(job)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(
+        summary = "Retomar job de pseudonimização",
+        description = "🔒 **ADMIN** - Retoma um job `FAILED` a partir do último checkpoint.",
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "202", description = "✅ Job retomado"),
+        @ApiResponse(responseCode = "404", description = "❌ Job não encontrado")
+    })
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<Map<String, Object>> resume(@Parameter(description = "UUID do job") @PathVariable UUID id) {
+        securityHelper.requireAdmin();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(view(jobService.resume(id)));
+    }
+
+    private static Map<String, Object> view(PseudonymizationJob job) {
+        return Map.of("job", job, "report", PseudonymizationJobService.report(job));
+    }
+}
@@ -0,0 +1,32 @@
+package com.rehabai.file_service.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Página da listagem por keyset. {@code nextCursor} é opaco para o cliente e {@code null} na última página.
+ */
+public record FilePage(List<FileSummary> items, String nextCursor) {
+
+    /** Posição {@code (createdAt, id)} do último item entregue. */
+    public record Cursor(OffsetDateTime createdAt, UUID id) {
+
+        public String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                return new Cursor(OffsetDateTime.parse(raw.substring(0, sep)), UUID.fromString(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("invalid_cursor");
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.rehabai.file_service.dto;
+
+import com.rehabai.file_service.model.FileStatus;
+import com.rehabai.file_service.model.FileType;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Linha da listagem de arquivos: só as colunas que a tela usa, lidas direto pela query.
+ */
+public record FileSummary(
+        UUID id,
+        UUID userId,
+        String originalName,
+        FileStatus status,
+        FileType fileType,
+        Long sizeBytes,
+        String hashSha256,
+        OffsetDateTime createdAt
+) {}
@@ -1,6 +1,8 @@
 package com.rehabai.file_service.model;
 
 public enum FileStatus {
+    /** Criado para upload direto ao S3 (URL pré-assinada); aguarda a confirmação. */
+    PENDING_UPLOAD,
     UPLOADED,
     ANONYMIZED,
     ERROR
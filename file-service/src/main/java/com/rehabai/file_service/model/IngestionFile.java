@@ -10,7 +10,10 @@ import java.util.UUID;
 @Table(name = "ingestion_files", indexes = {
         @Index(name = "idx_ingestion_user", columnList = "user_id"),
         @Index(name = "idx_ingestion_files_type", columnList = "file_type"),
-        @Index(name = "idx_ingestion_files_user_type", columnList = "user_id, file_type")
+        @Index(name = "idx_ingestion_files_user_type", columnList = "user_id, file_type"),
+        @Index(name = "idx_ingestion_files_hash", columnList = "hash_sha256"),
+        @Index(name = "idx_ingestion_files_user_created", columnList = "user_id, created_at, id"),
+        @Index(name = "idx_ingestion_files_user_type_created", columnList = "user_id, file_type, created_at, id")
 })
 @Getter
 @Setter
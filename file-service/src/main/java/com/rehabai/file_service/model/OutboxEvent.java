@@ -0,0 +1,56 @@
+package com.rehabai.file_service.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Evento a publicar no RabbitMQ, gravado na mesma transação da mudança que o originou. O relay publica e apaga;
+ * o {@code id} vira o {@code message_id} da mensagem, para o consumidor descartar reentregas.
+ */
+@Entity
+@Table(name = "outbox_events", indexes = {
+        @Index(name = "idx_outbox_events_available", columnList = "available_at, created_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString(exclude = "payload")
+@EqualsAndHashCode(of = "id")
+public class OutboxEvent {
+    @Id
+    @GeneratedValue
+    private UUID id;
+
+    @Column(name = "exchange", nullable = false)
+    private String exchange;
+
+    @Column(name = "routing_key", nullable = false)
+    private String routingKey;
+
+    /** Classe do evento, enviada no cabeçalho {@code __TypeId__} como faz o conversor JSON. */
+    @Column(name = "type_id")
+    private String typeId;
+
+    @Column(name = "content_type", nullable = false, length = 100)
+    private String contentType;
+
+    @Column(name = "payload", nullable = false, columnDefinition = "text")
+    private String payload;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    /** Antes disso o relay não tenta de novo (backoff após falha de publicação). */
+    @Column(name = "available_at", nullable = false)
+    private OffsetDateTime availableAt = OffsetDateTime.now();
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+}
@@ -0,0 +1,80 @@
+package com.rehabai.file_service.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Pseudonimização em lote (varredura LGPD). Guarda os critérios e o checkpoint {@code (created_at, id)} do último
+ * arquivo processado, para retomar de onde parou.
+ */
+@Entity
+@Table(name = "pseudonymization_jobs", indexes = {
+        @Index(name = "idx_pseudonymization_jobs_status", columnList = "status")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode(of = "id")
+public class PseudonymizationJob {
+    @Id
+    @GeneratedValue
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private PseudonymizationJobStatus status = PseudonymizationJobStatus.RUNNING;
+
+    // Critérios: arquivos UPLOADED do usuário (opcional) criados em [createdFrom, createdTo)
+    @Column(name = "user_id")
+    private UUID userId;
+
+    @Column(name = "created_from", nullable = false)
+    private OffsetDateTime createdFrom;
+
+    @Column(name = "created_to", nullable = false)
+    private OffsetDateTime createdTo;
+
+    @Column(name = "requested_by")
+    private UUID requestedBy;
+
+    // Checkpoint
+    @Column(name = "cursor_created_at")
+    private OffsetDateTime cursorCreatedAt;
+
+    @Column(name = "cursor_id")
+    private UUID cursorId;
+
+    @Column(name = "processed_count", nullable = false)
+    private long processedCount;
+
+    @Column(name = "failed_count", nullable = false)
+    private long failedCount;
+
+    @Column(name = "bytes_copied", nullable = false)
+    private long bytesCopied;
+
+    /** Tempo efetivamente trabalhando (sem contar pausas entre falha e retomada), para a vazão. */
+    @Column(name = "active_millis", nullable = false)
+    private long activeMillis;
+
+    // Lease da instância que está processando o job; outra instância só assume depois que expirar
+    @Column(name = "lease_owner", length = 64)
+    private String leaseOwner;
+
+    @Column(name = "lease_until")
+    private OffsetDateTime leaseUntil;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "finished_at")
+    private OffsetDateTime finishedAt;
+}
@@ -0,0 +1,7 @@
+package com.rehabai.file_service.model;
+
+public enum PseudonymizationJobStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
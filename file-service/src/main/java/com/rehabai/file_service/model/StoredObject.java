@@ -0,0 +1,39 @@
+package com.rehabai.file_service.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Conteúdo armazenado no S3 endereçado pelo SHA-256. Vários {@link IngestionFile} podem apontar para o mesmo
+ * objeto; {@code refCount} conta essas referências e o objeto só é removido do S3 quando chega a zero.
+ */
+@Entity
+@Table(name = "stored_objects")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode(of = "hashSha256")
+public class StoredObject {
+    @Id
+    @Column(name = "hash_sha256", length = 64)
+    private String hashSha256;
+
+    @Column(name = "s3_key", nullable = false, length = 500)
+    private String s3Key;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    @Column(name = "content_type", length = 255)
+    private String contentType;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+}
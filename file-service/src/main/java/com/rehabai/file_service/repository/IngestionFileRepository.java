@@ -1,13 +1,83 @@
 package com.rehabai.file_service.repository;
 
+import com.rehabai.file_service.dto.FileSummary;
 import com.rehabai.file_service.model.FileStatus;
+import com.rehabai.file_service.model.FileType;
 import com.rehabai.file_service.model.IngestionFile;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface IngestionFileRepository extends JpaRepository<IngestionFile, UUID> {
-    List<IngestionFile> findByUserIdOrderByCreatedAtDesc(UUID userId);
-    List<IngestionFile> findByUserIdAndStatusOrderByCreatedAtDesc(UUID userId, FileStatus status);
+    /** Primeira página da listagem (mais recentes primeiro); usa {@code idx_ingestion_files_user_created}. */
+    @Query("""
+            select new com.rehabai.file_service.dto.FileSummary(
+                f.id, f.userId, f.originalName, f.status, f.fileType, f.sizeBytes, f.hashSha256, f.createdAt)
+            from IngestionFile f
+            where f.userId = :userId
+              and (:status is null or f.status = :status)
+              and (:fileType is null or f.fileType = :fileType)
+            order by f.createdAt desc, f.id desc""")
+    List<FileSummary> findPage(@Param("userId") UUID userId,
+                               @Param("status") FileStatus status,
+                               @Param("fileType") FileType fileType,
+                               Limit limit);
+
+    /** Páginas seguintes: continua depois de {@code (createdAt, id)} sem OFFSET. */
+    @Query("""
+            select new com.rehabai.file_service.dto.FileSummary(
+                f.id, f.userId, f.originalName, f.status, f.fileType, f.sizeBytes, f.hashSha256, f.createdAt)
+            from IngestionFile f
+            where f.userId = :userId
+              and (:status is null or f.status = :status)
+              and (:fileType is null or f.fileType = :fileType)
+              and (f.createdAt, f.id) < (:createdAt, :id)
+            order by f.createdAt desc, f.id desc""")
+    List<FileSummary> findPageAfter(@Param("userId") UUID userId,
+                                    @Param("status") FileStatus status,
+                                    @Param("fileType") FileType fileType,
+                                    @Param("createdAt") OffsetDateTime createdAt,
+                                    @Param("id") UUID id,
+                                    Limit limit);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from IngestionFile f where f.id = :id")
+    Optional<IngestionFile> lockById(@Param("id") UUID id);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from IngestionFile f where f.id in :ids")
+    List<IngestionFile> lockAllById(@Param("ids") List<UUID> ids);
+
+    /** Próxima página da pseudonimização em lote, em ordem de {@code (created_at, id)} a partir do checkpoint. */
+    @Query("""
+            select f from IngestionFile f
+            where f.status = com.rehabai.file_service.model.FileStatus.UPLOADED
+              and (:userId is null or f.userId = :userId)
+              and f.createdAt >= :createdFrom and f.createdAt < :createdTo
+              and (f.createdAt, f.id) > (:cursorCreatedAt, :cursorId)
+            order by f.createdAt, f.id""")
+    List<IngestionFile> findPseudonymizationPage(@Param("userId") UUID userId,
+                                                 @Param("createdFrom") OffsetDateTime createdFrom,
+                                                 @Param("createdTo") OffsetDateTime createdTo,
+                                                 @Param("cursorCreatedAt") OffsetDateTime cursorCreatedAt,
+                                                 @Param("cursorId") UUID cursorId,
+                                                 Limit limit);
+
+    List<IngestionFile> findTop100ByStatusAndCreatedAtBefore(FileStatus status, OffsetDateTime cutoff);
+
+    /** Expira o upload só se ele ainda estiver pendente; 0 quando a confirmação chegou antes. */
+    @Modifying
+    @Query("""
+            update IngestionFile f set f.status = com.rehabai.file_service.model.FileStatus.ERROR
+            where f.id = :id and f.status = com.rehabai.file_service.model.FileStatus.PENDING_UPLOAD""")
+    int expirePending(@Param("id") UUID id);
 }
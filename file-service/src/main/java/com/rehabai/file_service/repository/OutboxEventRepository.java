@@ -0,0 +1,26 @@
+package com.rehabai.file_service.repository;
+
+import com.rehabai.file_service.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, UUID> {
+
+    /**
+     * Próximo lote disponível, travado até o fim da transação. {@code SKIP LOCKED} deixa cada instância do
+     * serviço com um lote diferente.
+     */
+    @Query(value = """
+            SELECT * FROM outbox_events
+            WHERE available_at <= :now
+            ORDER BY created_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<OutboxEvent> lockBatch(@Param("now") OffsetDateTime now, @Param("limit") int limit);
+}
@@ -0,0 +1,32 @@
+package com.rehabai.file_service.repository;
+
+import com.rehabai.file_service.model.PseudonymizationJob;
+import com.rehabai.file_service.model.PseudonymizationJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface PseudonymizationJobRepository extends JpaRepository<PseudonymizationJob, UUID> {
+    List<PseudonymizationJob> findByStatusOrderByCreatedAtAsc(PseudonymizationJobStatus status);
+
+    /** Assume o job se estiver RUNNING e sem lease válido de outra instância; retorna 1 para quem conseguiu. */
+    @Modifying
+    @Query("UPDATE PseudonymizationJob j SET j.leaseOwner = :owner, j.leaseUntil = :until " +
+           "WHERE j.id = :id AND j.status = :status " +
+           "AND (j.leaseOwner IS NULL OR j.leaseOwner = :owner OR j.leaseUntil < :now)")
+    int claim(@Param("id") UUID id,
+              @Param("status") PseudonymizationJobStatus status,
+              @Param("owner") String owner,
+              @Param("until") OffsetDateTime until,
+              @Param("now") OffsetDateTime now);
+
+    /** Estende o lease só se ele ainda for desta instância; 0 significa que outra instância assumiu o job. */
+    @Modifying
+    @Query("UPDATE PseudonymizationJob j SET j.leaseUntil = :until WHERE j.id = :id AND j.leaseOwner = :owner")
+    int renewLease(@Param("id") UUID id, @Param("owner") String owner, @Param("until") OffsetDateTime until);
+}
@@ -0,0 +1,33 @@
+package com.rehabai.file_service.repository;
+
+import com.rehabai.file_service.model.StoredObject;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+public interface StoredObjectRepository extends JpaRepository<StoredObject, String> {
+
+    /** Cria o registro com uma referência; devolve 0 se o hash já existe (inclusive criado em paralelo). */
+    @Modifying
+    @Query(value = """
+            INSERT INTO stored_objects (hash_sha256, s3_key, size_bytes, content_type, ref_count, created_at)
+            VALUES (:hash, :key, :size, :contentType, 1, :now)
+            ON CONFLICT (hash_sha256) DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(@Param("hash") String hash,
+                       @Param("key") String key,
+                       @Param("size") long size,
+                       @Param("contentType") String contentType,
+                       @Param("now") OffsetDateTime now);
+
+    /** Trava a linha até o fim da transação: serializa incrementos e a remoção quando a contagem zera. */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM StoredObject o WHERE o.hashSha256 = :hash")
+    Optional<StoredObject> lockByHash(@Param("hash") String hash);
+}
@@ -23,11 +23,21 @@ public class AnonymizationLogService {
 
     @Transactional
     public AnonymizationLog add(UUID fileId, String ruleApplied, String fieldChanged) {
+        return repo.save(entry(fileId, ruleApplied, fieldChanged));
+    }
+
+    /** Grava vários registros numa transação só (inserts agrupados em lote pelo Hibernate). */
+    @Transactional
+    public List<AnonymizationLog> addAll(List<AnonymizationLog> entries) {
+        return repo.saveAll(entries);
+    }
+
+    public static AnonymizationLog entry(UUID fileId, String ruleApplied, String fieldChanged) {
         AnonymizationLog log = new AnonymizationLog();
         log.setFileId(fileId);
         log.setRuleApplied(ruleApplied);
         log.setFieldChanged(fieldChanged);
         log.setTimestamp(OffsetDateTime.now());
-        return repo.save(log);
+        return log;
     }
 }
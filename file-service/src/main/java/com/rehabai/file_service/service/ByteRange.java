@@ -0,0 +1,66 @@
+package com.rehabai.file_service.service;
+
+import org.springframework.http.HttpRange;
+
+import java.util.List;
+
+/**
+ * Trecho {@code [start, end]} (inclusivo) de um download parcial.
+ */
+public record ByteRange(long start, long end) {
+
+    /**
+     * Interpreta o header {@code Range} para um conteúdo de {@code size} bytes.
+     * <p>
+     * Header ausente, malformado ou com vários trechos devolve {@code null} (resposta completa, como a RFC 9110
+     * permite). Trecho fora do conteúdo lança {@link UnsatisfiableException} (416).
+     */
+    public static ByteRange parse(String header, long size) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (ranges.size() != 1) {
+            return null;
+        }
+        HttpRange range = ranges.get(0);
+        long start = range.getRangeStart(size);
+        long end = Math.min(range.getRangeEnd(size), size - 1);
+        if (start < 0 || start >= size || end < start) {
+            throw new UnsatisfiableException(size);
+        }
+        return new ByteRange(start, end);
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    /** Valor para o header {@code Range} do GetObject. */
+    public String toHeader() {
+        return "bytes=" + start + "-" + end;
+    }
+
+    /** Valor para o header {@code Content-Range} da resposta 206. */
+    public String contentRange(long size) {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+
+    public static class UnsatisfiableException extends RuntimeException {
+        private final long size;
+
+        public UnsatisfiableException(long size) {
+            super("range_not_satisfiable");
+            this.size = size;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.rehabai.file_service.service;
+
+import com.rehabai.file_service.model.StoredObject;
+import com.rehabai.file_service.repository.StoredObjectRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+
+import java.time.OffsetDateTime;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Armazenamento endereçado por conteúdo: cada SHA-256 distinto existe uma única vez no S3, em
+ * {@code objects/<2 primeiros hex>/<hash>}, com contagem de referências em {@code stored_objects}.
+ * <p>
+ * Incremento, decremento e remoção acontecem com a linha travada, então um upload concorrente nunca aponta
+ * para um objeto que está sendo removido: ou a remoção termina antes (e o upload recria o objeto), ou ela vê a
+ * nova referência e mantém o objeto.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContentStore {
+
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+    private final S3Client s3;
+    private final StoredObjectRepository repo;
+
+    @Value("${s3.bucket}")
+    private String bucket;
+
+    public static String keyFor(String hash) {
+        return "objects/" + hash.substring(0, 2) + "/" + hash;
+    }
+
+    /** Normaliza e valida o hash recebido de clientes. */
+    public static String normalizeHash(String hash) {
+        String h = hash != null ? hash.trim().toLowerCase(Locale.ROOT) : "";
+        if (!SHA256.matcher(h).matches()) {
+            throw new IllegalArgumentException("invalid_sha256");
+        }
+        return h;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<StoredObject> find(String hash) {
+        return repo.findById(hash);
+    }
+
+    /**
+     * Registra uma referência ao conteúdo recém-enviado para {@code stagingKey}. Se o hash é novo, o objeto é
+     * copiado (no próprio S3) para a chave definitiva; se já existia, só a contagem sobe. O chamador remove o staging.
+     */
+    @Transactional
+    public StoredObject acquire(String hash, long size, String contentType, String stagingKey) {
+        String key = keyFor(hash);
+        if (repo.insertIfAbsent(hash, key, size, contentType, OffsetDateTime.now()) == 1) {
+            s3.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket).sourceKey(stagingKey)
+                    .destinationBucket(bucket).destinationKey(key)
+                    .build());
+            log.info("Novo conteúdo armazenado. Hash: {}, chave: {}", hash, key);
+            return repo.lockByHash(hash).orElseThrow();
+        }
+        StoredObject existing = repo.lockByHash(hash)
+                .orElseThrow(() -> new IllegalStateException("stored_object_vanished"));
+        existing.setRefCount(existing.getRefCount() + 1);
+        log.info("Conteúdo duplicado reaproveitado. Hash: {}, referências: {}", hash, existing.getRefCount());
+        return repo.save(existing);
+    }
+
+    /** Nova referência a um conteúdo já armazenado, sem transferência. Vazio se o hash não existe. */
+    @Transactional
+    public Optional<StoredObject> link(String hash) {
+        return repo.lockByHash(hash).map(o -> {
+            o.setRefCount(o.getRefCount() + 1);
+            return repo.save(o);
+        });
+    }
+
+    /** Remove uma referência; na última, apaga o objeto do S3 e o registro. */
+    @Transactional
+    public void release(String hash) {
+        StoredObject object = repo.lockByHash(hash).orElse(null);
+        if (object == null) {
+            log.warn("Referência liberada para conteúdo inexistente. Hash: {}", hash);
+            return;
+        }
+        if (object.getRefCount() > 1) {
+            object.setRefCount(object.getRefCount() - 1);
+            repo.save(object);
+            return;
+        }
+        // Registro sai primeiro: se o S3 falhar, a transação volta e a referência continua válida
+        repo.delete(object);
+        repo.flush();
+        s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(object.getS3Key()).build());
+        log.info("Última referência removida; conteúdo apagado do S3. Chave: {}", object.getS3Key());
+    }
+}
@@ -0,0 +1,185 @@
+package com.rehabai.file_service.service;
+
+import com.rehabai.file_service.model.OutboxEvent;
+import com.rehabai.file_service.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Outbox transacional dos eventos do serviço.
+ * <p>
+ * {@link #enqueue} grava o evento na transação de quem chama, então a requisição paga um INSERT e nenhuma ida ao
+ * broker; se a transação não confirmar, o evento não existe. Após o commit o relay é acordado e, depois de
+ * {@code outbox.lingerMs} para juntar eventos, publica em lotes de até {@code outbox.batchSize} com publisher
+ * confirms e apaga o lote só depois da confirmação. Entrega é at-least-once: o {@code message_id} é o id do evento
+ * e o prescription-service descarta reentregas pelo id do arquivo.
+ * Uma varredura periódica cobre restarts e falhas do broker, com backoff exponencial por evento.
+ */
+@Component
+@Slf4j
+public class EventOutbox {
+
+    private final OutboxEventRepository repo;
+    private final RabbitTemplate rabbit;
+    private final MessageConverter converter;
+    private final TransactionTemplate tx;
+    private final MeterRegistry registry;
+    private final Timer batchTimer;
+    private final int batchSize;
+    private final long lingerMs;
+    private final long confirmTimeoutMs;
+    private final long maxBackoffMs;
+    private final ScheduledExecutorService relay =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("outbox-relay").daemon().factory());
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public EventOutbox(OutboxEventRepository repo,
+                       RabbitTemplate rabbit,
+                       MessageConverter converter,
+                       TransactionTemplate tx,
+                       MeterRegistry registry,
+                       @Value("${outbox.batchSize:100}") int batchSize,
+                       @Value("${outbox.lingerMs:20}") long lingerMs,
+                       @Value("${outbox.confirmTimeoutMs:5000}") long confirmTimeoutMs,
+                       @Value("${outbox.maxBackoffMs:60000}") long maxBackoffMs) {
+        this.repo = repo;
+        this.rabbit = rabbit;
+        this.converter = converter;
+        this.tx = tx;
+        this.registry = registry;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMs = Math.max(0, lingerMs);
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.batchTimer = Timer.builder("outbox.publish.batch")
+                .description("Publicação de um lote do outbox, até a confirmação do broker")
+                .register(registry);
+    }
+
+    /** Grava o evento para publicação. Precisa de uma transação ativa: o evento é confirmado junto com ela. */
+    public void enqueue(String exchange, String routingKey, Object event) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("outbox_requires_transaction");
+        }
+        Message message = converter.toMessage(event, new MessageProperties());
+        OutboxEvent row = new OutboxEvent();
+        row.setExchange(exchange);
+        row.setRoutingKey(routingKey);
+        row.setTypeId(message.getMessageProperties().getHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME));
+        row.setContentType(message.getMessageProperties().getContentType());
+        row.setPayload(new String(message.getBody(), StandardCharsets.UTF_8));
+        repo.save(row);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wake();
+            }
+        });
+    }
+
+    /** Agenda a drenagem após o linger; chamadas durante a espera entram no mesmo lote. */
+    void wake() {
+        if (!scheduled.compareAndSet(false, true)) return;
+        try {
+            relay.schedule(this::drain, lingerMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            scheduled.set(false);
+            log.warn("Não foi possível agendar a publicação do outbox: {}", e.getMessage());
+        }
+    }
+
+    /** Rede de segurança: eventos de antes de um restart e os que aguardavam backoff. */
+    @Scheduled(fixedDelayString = "${outbox.pollIntervalMs:5000}")
+    public void poll() {
+        wake();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        relay.shutdownNow();
+    }
+
+    void drain() {
+        scheduled.set(false);
+        try {
+            int published;
+            do {
+                published = tx.execute(status -> publishBatch());
+            } while (published == batchSize);
+        } catch (Exception e) {
+            log.error("Falha ao drenar o outbox; nova tentativa na próxima varredura", e);
+        }
+    }
+
+    /** Publica um lote e o apaga; em falha, o lote fica para depois com backoff. Devolve quantos foram publicados. */
+    int publishBatch() {
+        List<OutboxEvent> batch = repo.lockBatch(OffsetDateTime.now(), batchSize);
+        if (batch.isEmpty()) return 0;
+        Timer.Sample sample = Timer.start(registry);
+        try {
+            rabbit.invoke(ops -> {
+                for (OutboxEvent event : batch) {
+                    ops.send(event.getExchange(), event.getRoutingKey(), toMessage(event));
+                }
+                ops.waitForConfirmsOrDie(confirmTimeoutMs);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            sample.stop(batchTimer);
+            registry.counter("outbox.publish.failed").increment(batch.size());
+            OffsetDateTime now = OffsetDateTime.now();
+            for (OutboxEvent event : batch) {
+                event.setAttempts(event.getAttempts() + 1);
+                event.setLastError(truncate(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+                event.setAvailableAt(now.plusNanos(TimeUnit.MILLISECONDS.toNanos(backoffMs(event.getAttempts()))));
+            }
+            repo.saveAll(batch);
+            log.warn("Falha ao publicar {} eventos do outbox: {}", batch.size(), e.getMessage());
+            return 0;
+        }
+        sample.stop(batchTimer);
+        repo.deleteAllInBatch(batch);
+        registry.counter("outbox.published").increment(batch.size());
+        return batch.size();
+    }
+
+    private static Message toMessage(OutboxEvent event) {
+        MessageProperties props = new MessageProperties();
+        props.setMessageId(event.getId().toString());
+        props.setContentType(event.getContentType());
+        props.setContentEncoding(StandardCharsets.UTF_8.name());
+        if (event.getTypeId() != null) {
+            props.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, event.getTypeId());
+        }
+        return new Message(event.getPayload().getBytes(StandardCharsets.UTF_8), props);
+    }
+
+    long backoffMs(int attempts) {
+        return Math.min(maxBackoffMs, 1000L << Math.min(attempts - 1, 20));
+    }
+
+    private static String truncate(String message) {
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
@@ -0,0 +1,237 @@
+package com.rehabai.file_service.service;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdfwriter.compress.CompressParameters;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Remoção de metadados identificáveis sem decodificar o conteúdo.
+ * <p>
+ * JPEG e PNG são reescritos segmento a segmento: blocos de metadados são pulados e o resto (inclusive os dados
+ * da imagem) é copiado byte a byte, com memória limitada ao maior segmento. No PDF saem o dicionário Info e os
+ * fluxos XMP do catálogo e das páginas; os streams de conteúdo são regravados sem decodificação.
+ */
+final class MetadataRedactor {
+
+    enum Format { JPEG, PNG, PDF }
+
+    /** Bytes necessários para {@link #detect}. */
+    static final int MAGIC_LENGTH = 8;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] PDF_SIGNATURE = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+
+    /** Chunks PNG com texto livre, EXIF ou data de modificação. */
+    private static final Set<String> PNG_METADATA_CHUNKS = Set.of("tEXt", "zTXt", "iTXt", "eXIf", "tIME");
+
+    private static final int SOS = 0xDA;
+    private static final int COM = 0xFE;
+    private static final int APP0 = 0xE0;
+    private static final int APP15 = 0xEF;
+
+    private MetadataRedactor() {}
+
+    /** Formato pelos primeiros bytes do arquivo; {@code null} quando não há redação para ele. */
+    static Format detect(byte[] head) {
+        if (head.length >= 3 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xD8 && (head[2] & 0xFF) == 0xFF) {
+            return Format.JPEG;
+        }
+        if (startsWith(head, PNG_SIGNATURE)) return Format.PNG;
+        if (startsWith(head, PDF_SIGNATURE)) return Format.PDF;
+        return null;
+    }
+
+    /**
+     * Copia o JPEG sem APPn de metadados (EXIF, XMP, IPTC/Photoshop, miniaturas) e comentários. Mantém JFIF,
+     * perfil ICC e o marcador Adobe, que afetam a exibição. A partir do SOS o restante é copiado sem leitura.
+     *
+     * @return blocos removidos
+     */
+    static List<String> stripJpeg(InputStream in, OutputStream out) throws IOException {
+        Set<String> removed = new LinkedHashSet<>();
+        if (in.read() != 0xFF || in.read() != 0xD8) {
+            throw new IOException("invalid_jpeg");
+        }
+        out.write(0xFF);
+        out.write(0xD8);
+        while (true) {
+            int marker = nextMarker(in);
+            if (marker == 0xD9 || (marker >= 0xD0 && marker <= 0xD7) || marker == 0x01) {
+                // Marcadores sem payload
+                out.write(0xFF);
+                out.write(marker);
+                if (marker == 0xD9) return List.copyOf(removed);
+                continue;
+            }
+            int length = (readByte(in) << 8) | readByte(in);
+            if (length < 2) {
+                throw new IOException("invalid_jpeg_segment");
+            }
+            if (marker == COM) {
+                in.skipNBytes(length - 2);
+                removed.add("COM");
+                continue;
+            }
+            if (marker >= APP0 && marker <= APP15) {
+                byte[] payload = in.readNBytes(length - 2);
+                if (payload.length < length - 2) throw new EOFException("truncated_jpeg");
+                String kind = appKind(marker, payload);
+                if (kind != null) {
+                    removed.add(kind);
+                    continue;
+                }
+                writeSegment(out, marker, length);
+                out.write(payload);
+                continue;
+            }
+            writeSegment(out, marker, length);
+            copyExactly(in, out, length - 2);
+            if (marker == SOS) {
+                // Dados comprimidos da imagem e o que vier depois: cópia direta
+                in.transferTo(out);
+                return List.copyOf(removed);
+            }
+        }
+    }
+
+    /**
+     * Copia o PNG sem chunks de texto, EXIF e data. Chunks de imagem são copiados com o CRC original; nada depois
+     * do IEND é mantido.
+     *
+     * @return chunks removidos
+     */
+    static List<String> stripPng(InputStream in, OutputStream out) throws IOException {
+        byte[] signature = in.readNBytes(PNG_SIGNATURE.length);
+        if (!Arrays.equals(signature, PNG_SIGNATURE)) {
+            throw new IOException("invalid_png");
+        }
+        out.write(signature);
+        Set<String> removed = new LinkedHashSet<>();
+        byte[] header = new byte[8];
+        while (true) {
+            if (in.readNBytes(header, 0, 8) < 8) throw new EOFException("truncated_png");
+            long length = ((header[0] & 0xFFL) << 24) | ((header[1] & 0xFF) << 16) | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+            if (length > Integer.MAX_VALUE) throw new IOException("invalid_png_chunk");
+            String type = new String(header, 4, 4, StandardCharsets.US_ASCII);
+            if (PNG_METADATA_CHUNKS.contains(type)) {
+                in.skipNBytes(length + 4);
+                removed.add(type);
+                continue;
+            }
+            out.write(header);
+            copyExactly(in, out, length + 4);
+            if (type.equals("IEND")) return List.copyOf(removed);
+        }
+    }
+
+    /**
+     * Regrava o PDF sem o dicionário Info e sem XMP. Os objetos ficam em disco ({@code source} é lido sob demanda e o
+     * cache de streams é um arquivo temporário), então o heap não cresce com o tamanho do documento.
+     *
+     * @return entradas removidas; {@code null} se o PDF é criptografado e não pode ser regravado sem a senha
+     */
+    static List<String> stripPdf(File source, File target) throws IOException {
+        PDDocument document;
+        try {
+            document = Loader.loadPDF(source, IOUtils.createTempFileOnlyStreamCache());
+        } catch (InvalidPasswordException e) {
+            return null;
+        }
+        try (document) {
+            if (document.isEncrypted()) {
+                return null;
+            }
+            Set<String> removed = new LinkedHashSet<>();
+            PDDocumentInformation info = document.getDocumentInformation();
+            if (!info.getCOSObject().keySet().isEmpty()) {
+                info.getCOSObject().keySet().forEach(key -> removed.add("Info/" + key.getName()));
+                document.getDocument().getTrailer().removeItem(COSName.INFO);
+            }
+            if (document.getDocumentCatalog().getCOSObject().containsKey(COSName.METADATA)) {
+                document.getDocumentCatalog().getCOSObject().removeItem(COSName.METADATA);
+                removed.add("XMP");
+            }
+            for (PDPage page : document.getPages()) {
+                if (page.getCOSObject().containsKey(COSName.METADATA)) {
+                    page.getCOSObject().removeItem(COSName.METADATA);
+                    removed.add("XMP/page");
+                }
+            }
+            document.save(target, CompressParameters.NO_COMPRESSION);
+            return List.copyOf(removed);
+        }
+    }
+
+    /** Nome do bloco APPn a remover; {@code null} para os que ficam. */
+    private static String appKind(int marker, byte[] payload) {
+        int n = marker - APP0;
+        return switch (n) {
+            case 0 -> startsWith(payload, "JFIF\0") ? null : "APP0/JFXX";
+            case 1 -> startsWith(payload, "Exif\0") ? "APP1/Exif" : "APP1/XMP";
+            case 2 -> startsWith(payload, "ICC_PROFILE\0") ? null : "APP2";
+            case 13 -> "APP13/IPTC";
+            case 14 -> startsWith(payload, "Adobe") ? null : "APP14";
+            default -> "APP" + n;
+        };
+    }
+
+    /** Próximo marcador, ignorando bytes de preenchimento 0xFF. */
+    private static int nextMarker(InputStream in) throws IOException {
+        if (readByte(in) != 0xFF) {
+            throw new IOException("invalid_jpeg_marker");
+        }
+        int marker;
+        do {
+            marker = readByte(in);
+        } while (marker == 0xFF);
+        return marker;
+    }
+
+    private static void writeSegment(OutputStream out, int marker, int length) throws IOException {
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+    }
+
+    private static void copyExactly(InputStream in, OutputStream out, long length) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(length, 64 * 1024)];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) throw new EOFException("truncated_image");
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException("truncated_jpeg");
+        return b;
+    }
+
+    private static boolean startsWith(byte[] data, String prefix) {
+        return startsWith(data, prefix.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        return data.length >= prefix.length && Arrays.equals(data, 0, prefix.length, prefix, 0, prefix.length);
+    }
+}
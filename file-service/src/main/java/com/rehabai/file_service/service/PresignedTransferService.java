@@ -0,0 +1,234 @@
+package com.rehabai.file_service.service;
+
+import com.rehabai.file_service.model.FileStatus;
+import com.rehabai.file_service.model.FileType;
+import com.rehabai.file_service.model.IngestionFile;
+import com.rehabai.file_service.model.StoredObject;
+import com.rehabai.file_service.repository.IngestionFileRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Upload e download direto entre o cliente e o S3/MinIO por URLs pré-assinadas; os bytes não passam por aqui.
+ * <p>
+ * O upload cria o arquivo como {@link FileStatus#PENDING_UPLOAD} e assina um PUT com tamanho e SHA-256
+ * declarados, então o próprio S3 recusa conteúdo diferente. A confirmação confere tamanho e checksum,
+ * move o conteúdo para o armazenamento deduplicado e registra o {@code FileUploadedEvent} no outbox.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PresignedTransferService {
+
+    /** Limite de um PUT único no S3. */
+    static final long MAX_PUT_SIZE = 5L * 1024 * 1024 * 1024;
+
+    public record PresignedUrl(UUID fileId, String url, String method, Map<String, String> headers,
+                               Instant expiresAt, boolean alreadyStored) {}
+
+    private final S3Client s3;
+    private final S3Presigner presigner;
+    private final IngestionFileRepository repo;
+    private final ContentStore contentStore;
+    private final StorageService storageService;
+    private final TransactionTemplate tx;
+
+    @Value("${s3.bucket}")
+    private String bucket;
+
+    @Value("${storage.presign.ttlSeconds:900}")
+    private long ttlSeconds;
+
+    @Value("${storage.presign.pendingExpiryMinutes:60}")
+    private long pendingExpiryMinutes;
+
+    /**
+     * Registra o arquivo pendente e assina o PUT. Se o conteúdo já estiver armazenado, cria o arquivo na hora
+     * e não devolve URL.
+     */
+    public PresignedUrl initiateUpload(UUID userId, String originalName, FileType fileType,
+                                       long sizeBytes, String sha256, String contentType) {
+        String hash = ContentStore.normalizeHash(sha256);
+        if (sizeBytes <= 0 || sizeBytes > MAX_PUT_SIZE) {
+            throw new UploadVerificationException("invalid_size");
+        }
+        if (contentStore.find(hash).isPresent()) {
+            IngestionFile linked = storageService.linkExisting(hash, userId, originalName, fileType);
+            return new PresignedUrl(linked.getId(), null, null, Map.of(), null, true);
+        }
+
+        IngestionFile file = new IngestionFile();
+        file.setUserId(userId);
+        file.setOriginalName(originalName);
+        file.setFileType(fileType);
+        file.setStatus(FileStatus.PENDING_UPLOAD);
+        file.setSizeBytes(sizeBytes);
+        file.setHashSha256(hash);
+        file.setS3Path("staging/direct/" + UUID.randomUUID());
+        IngestionFile saved = repo.save(file);
+
+        PutObjectRequest put = PutObjectRequest.builder()
+                .bucket(bucket)
+                .key(saved.getS3Path())
+                .contentLength(sizeBytes)
+                .contentType(contentType)
+                .checksumSHA256(toBase64(hash))
+                .build();
+        PresignedPutObjectRequest presigned = presigner.presignPutObject(r -> r
+                .signatureDuration(Duration.ofSeconds(ttlSeconds))
+                .putObjectRequest(put));
+        log.info("Upload direto iniciado para o arquivo ID: {} ({} bytes)", saved.getId(), sizeBytes);
+        return new PresignedUrl(saved.getId(), presigned.url().toString(), "PUT",
+                clientHeaders(presigned.signedHeaders()), presigned.expiration(), false);
+    }
+
+    /**
+     * Confirma o upload direto. Idempotente: repetir a chamada para um arquivo já confirmado só o devolve.
+     */
+    public IngestionFile completeUpload(UUID fileId) {
+        Completion done = tx.execute(status -> confirm(fileId));
+        // O objeto temporário sai depois do commit: ou já foi copiado para a chave definitiva, ou foi recusado
+        if (done.stagingKey() != null) {
+            deleteQuietly(done.stagingKey());
+        }
+        if (done.file().getStatus() == FileStatus.ERROR) {
+            throw new UploadVerificationException("upload_verification_failed");
+        }
+        return done.file();
+    }
+
+    private record Completion(IngestionFile file, String stagingKey) {}
+
+    private Completion confirm(UUID fileId) {
+        IngestionFile file = repo.lockById(fileId)
+                .orElseThrow(() -> new IllegalArgumentException("file_not_found"));
+        if (file.getStatus() != FileStatus.PENDING_UPLOAD) {
+            return new Completion(file, null);
+        }
+
+        String stagingKey = file.getS3Path();
+        HeadObjectResponse head;
+        try {
+            head = s3.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket).key(stagingKey).checksumMode(ChecksumMode.ENABLED).build());
+        } catch (NoSuchKeyException e) {
+            throw new UploadVerificationException("upload_not_found");
+        }
+        if (head.contentLength() != file.getSizeBytes().longValue()
+                || !file.getHashSha256().equals(sha256Of(stagingKey, head))) {
+            log.warn("Upload direto do arquivo {} não confere com o declarado; descartando", fileId);
+            file.setStatus(FileStatus.ERROR);
+            return new Completion(repo.save(file), stagingKey);
+        }
+
+        StoredObject object = contentStore.acquire(file.getHashSha256(), file.getSizeBytes(), head.contentType(), stagingKey);
+        file.setS3Path(object.getS3Key());
+        file.setStatus(FileStatus.UPLOADED);
+        IngestionFile saved = repo.save(file);
+        storageService.enqueueUploaded(saved);
+        log.info("Upload direto confirmado para o arquivo ID: {}", fileId);
+        return new Completion(saved, stagingKey);
+    }
+
+    /** URL de download temporária; o cliente baixa (com Range, se quiser) direto do S3. */
+    public PresignedUrl presignDownload(IngestionFile file) {
+        if (file.getStatus() == FileStatus.PENDING_UPLOAD) {
+            throw new IllegalArgumentException("file_not_uploaded");
+        }
+        String filename = file.getOriginalName() != null ? file.getOriginalName() : "file";
+        GetObjectRequest get = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(file.getS3Path())
+                .responseContentDisposition("attachment; filename=\"" + filename + "\"")
+                .build();
+        PresignedGetObjectRequest presigned = presigner.presignGetObject(r -> r
+                .signatureDuration(Duration.ofSeconds(ttlSeconds))
+                .getObjectRequest(get));
+        return new PresignedUrl(file.getId(), presigned.url().toString(), "GET", Map.of(), presigned.expiration(), false);
+    }
+
+    /**
+     * Uploads iniciados e nunca confirmados viram ERROR e perdem o objeto temporário. A troca de status é um UPDATE
+     * condicional: uma confirmação concorrente que já levou o arquivo a UPLOADED não é sobrescrita.
+     */
+    @Scheduled(fixedDelayString = "${storage.presign.sweepIntervalMs:600000}")
+    public void expirePendingUploads() {
+        OffsetDateTime cutoff = OffsetDateTime.now().minusMinutes(pendingExpiryMinutes);
+        List<IngestionFile> stale = repo.findTop100ByStatusAndCreatedAtBefore(FileStatus.PENDING_UPLOAD, cutoff);
+        int expired = 0;
+        for (IngestionFile file : stale) {
+            Integer updated = tx.execute(status -> repo.expirePending(file.getId()));
+            if (updated == null || updated == 0) continue;
+            deleteQuietly(file.getS3Path());
+            expired++;
+        }
+        if (expired > 0) {
+            log.info("{} uploads diretos expirados sem confirmação", expired);
+        }
+    }
+
+    /**
+     * SHA-256 do objeto enviado. O S3 devolve o checksum verificado no PUT; só provedores sem suporte a
+     * checksum obrigam a ler o objeto.
+     */
+    private String sha256Of(String key, HeadObjectResponse head) {
+        String checksum = head.checksumSHA256();
+        if (checksum != null && !checksum.contains("-")) {
+            return HexFormat.of().formatHex(Base64.getDecoder().decode(checksum));
+        }
+        log.warn("Objeto {} sem checksum SHA-256 no S3; calculando a partir do conteúdo", key);
+        try (InputStream in = s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key).build());
+             DigestInputStream digest = new DigestInputStream(in, MessageDigest.getInstance("SHA-256"))) {
+            digest.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(digest.getMessageDigest().digest());
+        } catch (Exception e) {
+            throw new IllegalStateException("hash_failed", e);
+        }
+    }
+
+    static String toBase64(String hexHash) {
+        return Base64.getEncoder().encodeToString(HexFormat.of().parseHex(hexHash));
+    }
+
+    /** Cabeçalhos que o cliente precisa repetir no PUT (o {@code host} ele já envia). */
+    private static Map<String, String> clientHeaders(Map<String, List<String>> signed) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        signed.forEach((name, values) -> {
+            if (!name.equalsIgnoreCase("host")) {
+                headers.put(name, String.join(",", values));
+            }
+        });
+        return headers;
+    }
+
+    private void deleteQuietly(String key) {
+        try {
+            s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key).build());
+        } catch (Exception e) {
+            log.warn("Falha ao remover objeto temporário {}: {}", key, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.rehabai.file_service.service;
+
+import com.rehabai.file_service.model.AnonymizationLog;
+import com.rehabai.file_service.model.FileStatus;
+import com.rehabai.file_service.model.IngestionFile;
+import com.rehabai.file_service.model.PseudonymizationJob;
+import com.rehabai.file_service.model.PseudonymizationJobStatus;
+import com.rehabai.file_service.repository.IngestionFileRepository;
+import com.rehabai.file_service.repository.PseudonymizationJobRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Pseudonimização em lote para as varreduras LGPD.
+ * <p>
+ * Seleciona os arquivos UPLOADED do usuário (opcional) e do intervalo de criação em páginas por keyset, copia cada
+ * página no S3 com até {@code pseudonymization.concurrency} cópias em paralelo ({@link RedactingCopier}: server-side,
+ * ou com remoção de metadados para PDFs e imagens) e grava numa única transação os metadados, os registros de
+ * auditoria (em lote) e o checkpoint. Após um restart ou uma falha o job continua da última página gravada.
+ * <p>
+ * Cada instância só processa um job depois de assumir o lease dele ({@code pseudonymization.leaseMs}), renovado a
+ * cada página; se o lease foi perdido para outra instância, a página é descartada sem gravar nada.
+ */
+@Service
+@Slf4j
+public class PseudonymizationJobService {
+
+    private static final UUID MIN_UUID = new UUID(0L, 0L);
+
+    private final PseudonymizationJobRepository jobRepo;
+    private final IngestionFileRepository fileRepo;
+    private final AnonymizationLogService anonymizationLogService;
+    private final ContentStore contentStore;
+    private final RedactingCopier copier;
+    private final S3Client s3;
+    private final TransactionTemplate tx;
+    private final MeterRegistry registry;
+    private final String bucket;
+    private final int pageSize;
+    private final Duration leaseDuration;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ExecutorService copyPool;
+    private final ExecutorService runner =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("pseudonymization-runner").factory());
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /** Resultado da cópia de um arquivo; {@code error} preenchido quando a cópia falhou. */
+    record Copy(IngestionFile file, String sourceKey, String sourceHash, String targetKey,
+                RedactingCopier.Result result, String error) {
+        long bytes() {
+            return result != null ? result.bytes() : 0;
+        }
+    }
+
+    public PseudonymizationJobService(PseudonymizationJobRepository jobRepo,
+                                      IngestionFileRepository fileRepo,
+                                      AnonymizationLogService anonymizationLogService,
+                                      ContentStore contentStore,
+                                      RedactingCopier copier,
+                                      S3Client s3,
+                                      TransactionTemplate tx,
+                                      MeterRegistry registry,
+                                      @Value("${s3.bucket}") String bucket,
+                                      @Value("${pseudonymization.pageSize:200}") int pageSize,
+                                      @Value("${pseudonymization.concurrency:16}") int concurrency,
+                                      @Value("${pseudonymization.leaseMs:600000}") long leaseMs) {
+        this.jobRepo = jobRepo;
+        this.fileRepo = fileRepo;
+        this.anonymizationLogService = anonymizationLogService;
+        this.contentStore = contentStore;
+        this.copier = copier;
+        this.s3 = s3;
+        this.tx = tx;
+        this.registry = registry;
+        this.bucket = bucket;
+        this.pageSize = Math.max(1, pageSize);
+        this.leaseDuration = Duration.ofMillis(leaseMs);
+        this.copyPool = Executors.newFixedThreadPool(Math.max(1, concurrency),
+                Thread.ofPlatform().name("pseudonymization-copy-", 1).daemon().factory());
+    }
+
+    public PseudonymizationJob create(UUID userId, OffsetDateTime createdFrom, OffsetDateTime createdTo, UUID requestedBy) {
+        PseudonymizationJob job = new PseudonymizationJob();
+        job.setUserId(userId);
+        job.setCreatedFrom(createdFrom != null ? createdFrom : OffsetDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC));
+        // Sem limite superior, fixa o instante da criação: arquivos novos não entram numa varredura já iniciada
+        job.setCreatedTo(createdTo != null ? createdTo : OffsetDateTime.now(ZoneOffset.UTC));
+        if (!job.getCreatedFrom().isBefore(job.getCreatedTo())) {
+            throw new IllegalArgumentException("invalid_date_range");
+        }
+        job.setRequestedBy(requestedBy);
+        job.setStatus(PseudonymizationJobStatus.RUNNING);
+        PseudonymizationJob saved = jobRepo.save(job);
+        log.info("Job de pseudonimização {} criado (usuário: {}, período: {} a {})",
+                saved.getId(), userId, saved.getCreatedFrom(), saved.getCreatedTo());
+        trigger();
+        return saved;
+    }
+
+    public Optional<PseudonymizationJob> find(UUID id) {
+        return jobRepo.findById(id);
+    }
+
+    /** Retoma um job FAILED a partir do checkpoint; para os demais estados só devolve o job. */
+    public PseudonymizationJob resume(UUID id) {
+        PseudonymizationJob job = jobRepo.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("job_not_found"));
+        if (job.getStatus() != PseudonymizationJobStatus.FAILED) {
+            return job;
+        }
+        job.setStatus(PseudonymizationJobStatus.RUNNING);
+        job.setFinishedAt(null);
+        PseudonymizationJob saved = jobRepo.save(job);
+        log.info("Job de pseudonimização {} retomado", id);
+        trigger();
+        return saved;
+    }
+
+    @Scheduled(fixedDelayString = "${pseudonymization.pollIntervalMs:15000}")
+    public void poll() {
+        trigger();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        copyPool.shutdownNow();
+    }
+
+    private void trigger() {
+        if (!running.compareAndSet(false, true)) return;
+        try {
+            runner.execute(() -> {
+                try {
+                    advanceAll();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (Exception e) {
+            running.set(false);
+            log.warn("Não foi possível agendar a pseudonimização em lote: {}", e.getMessage());
+        }
+    }
+
+    void advanceAll() {
+        List<PseudonymizationJob> jobs;
+        try {
+            jobs = jobRepo.findByStatusOrderByCreatedAtAsc(PseudonymizationJobStatus.RUNNING);
+        } catch (Exception e) {
+            log.error("Falha ao carregar jobs de pseudonimização; nova tentativa no próximo ciclo", e);
+            return;
+        }
+        for (PseudonymizationJob job : jobs) {
+            claim(job).ifPresent(this::advance);
+        }
+    }
+
+    /** Assume o lease do job e relê o checkpoint, que outra instância pode ter avançado desde a listagem. */
+    private Optional<PseudonymizationJob> claim(PseudonymizationJob job) {
+        try {
+            OffsetDateTime now = OffsetDateTime.now();
+            Integer claimed = tx.execute(status -> jobRepo.claim(job.getId(), PseudonymizationJobStatus.RUNNING,
+                    instanceId, now.plus(leaseDuration), now));
+            if (claimed == null || claimed == 0) return Optional.empty();
+            return jobRepo.findById(job.getId());
+        } catch (Exception e) {
+            log.error("Falha ao assumir o job de pseudonimização {}", job.getId(), e);
+            return Optional.empty();
+        }
+    }
+
+    void advance(PseudonymizationJob job) {
+        try {
+            while (true) {
+                long started = System.nanoTime();
+                List<IngestionFile> page = fileRepo.findPseudonymizationPage(job.getUserId(),
+                        job.getCreatedFrom(), job.getCreatedTo(),
+                        job.getCursorCreatedAt() != null ? job.getCursorCreatedAt() : job.getCreatedFrom(),
+                        job.getCursorId() != null ? job.getCursorId() : MIN_UUID,
+                        Limit.of(pageSize));
+                if (!page.isEmpty()) {
+                    commit(job, copyAll(page), page.getLast(), started);
+                }
+                if (page.size() < pageSize) {
+                    finish(job, PseudonymizationJobStatus.COMPLETED, null);
+                    log.info("Job de pseudonimização {} concluído: {} arquivos, {} falhas, {} bytes copiados",
+                            job.getId(), job.getProcessedCount(), job.getFailedCount(), job.getBytesCopied());
+                    return;
+                }
+            }
+        } catch (LeaseLostException e) {
+            log.warn("Job de pseudonimização {} assumido por outra instância; interrompendo aqui", job.getId());
+        } catch (Exception e) {
+            log.error("Job de pseudonimização {} falhou", job.getId(), e);
+            fail(job, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    /** Cópias da página em paralelo; falha de um arquivo não interrompe os outros. */
+    private List<Copy> copyAll(List<IngestionFile> page) {
+        List<CompletableFuture<Copy>> copies = page.stream()
+                .map(file -> CompletableFuture.supplyAsync(() -> copy(file), copyPool))
+                .toList();
+        return copies.stream().map(CompletableFuture::join).toList();
+    }
+
+    private Copy copy(IngestionFile file) {
+        String source = file.getS3Path();
+        String hash = file.getHashSha256();
+        String target = StorageService.anonymizedKey(file, UUID.randomUUID());
+        try {
+            RedactingCopier.Result result = copier.copy(bucket, source, target, file.getSizeBytes());
+            registry.counter("pseudonymization.files", "outcome", "copied").increment();
+            return new Copy(file, source, hash, target, result, null);
+        } catch (S3Exception e) {
+            registry.counter("pseudonymization.files", "outcome", "failed").increment();
+            String message = e.awsErrorDetails() != null ? e.awsErrorDetails().errorMessage() : e.getMessage();
+            return new Copy(file, source, hash, target, null, message);
+        } catch (RuntimeException e) {
+            registry.counter("pseudonymization.files", "outcome", "failed").increment();
+            return new Copy(file, source, hash, target, null, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Grava a página inteira numa transação: metadados, auditoria e checkpoint. Arquivos que mudaram desde a
+     * leitura (excluídos ou pseudonimizados por outra via) ficam como estão e a cópia feita é descartada; como cada
+     * cópia tem chave própria, o descarte nunca apaga o objeto para o qual o arquivo aponta agora. Se a transação não
+     * chega a gravar (lease perdido, erro de banco), todas as cópias da página são descartadas.
+     */
+    private void commit(PseudonymizationJob job, List<Copy> copies, IngestionFile last, long startedNanos) {
+        List<Copy> applied = new ArrayList<>();
+        List<String> orphans = new ArrayList<>();
+        try {
+            tx.executeWithoutResult(status -> {
+                holdLease(job);
+                Map<UUID, IngestionFile> current = fileRepo.lockAllById(copies.stream().map(c -> c.file().getId()).toList())
+                        .stream().collect(Collectors.toMap(IngestionFile::getId, Function.identity()));
+                List<AnonymizationLog> entries = new ArrayList<>();
+                long processed = 0, failed = 0, bytes = 0;
+                for (Copy copy : copies) {
+                    IngestionFile file = current.get(copy.file().getId());
+                    boolean unchanged = file != null && file.getStatus() == FileStatus.UPLOADED
+                            && copy.sourceKey().equals(file.getS3Path());
+                    if (!unchanged) {
+                        if (copy.error() == null) orphans.add(copy.targetKey());
+                        continue;
+                    }
+                    if (copy.error() != null) {
+                        file.setStatus(FileStatus.ERROR);
+                        entries.add(AnonymizationLogService.entry(file.getId(), "pseudonymize_error", copy.error()));
+                        failed++;
+                        continue;
+                    }
+                    entries.addAll(StorageService.applyPseudonymization(file, copy.targetKey(), copy.result()));
+                    applied.add(copy);
+                    processed++;
+                    bytes += copy.bytes();
+                }
+                fileRepo.saveAll(current.values());
+                anonymizationLogService.addAll(entries);
+
+                job.setCursorCreatedAt(last.getCreatedAt());
+                job.setCursorId(last.getId());
+                job.setProcessedCount(job.getProcessedCount() + processed);
+                job.setFailedCount(job.getFailedCount() + failed);
+                job.setBytesCopied(job.getBytesCopied() + bytes);
+                job.setActiveMillis(job.getActiveMillis() + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos));
+                if (failed > 0) {
+                    copies.stream().filter(c -> c.error() != null).findFirst()
+                            .ifPresent(c -> job.setLastError(truncate(c.file().getId() + ": " + c.error())));
+                }
+                jobRepo.save(job);
+            });
+        } catch (RuntimeException e) {
+            copies.stream().filter(c -> c.error() == null).map(Copy::targetKey).forEach(this::deleteQuietly);
+            throw e;
+        }
+        registry.counter("pseudonymization.bytes").increment(applied.stream().mapToLong(Copy::bytes).sum());
+
+        // Depois do commit: o conteúdo compartilhado perde a referência e cópias sem uso saem do bucket
+        for (Copy copy : applied) {
+            if (StorageService.isContentAddressed(copy.sourceKey(), copy.sourceHash())) {
+                releaseQuietly(copy.sourceHash());
+            }
+        }
+        orphans.forEach(this::deleteQuietly);
+    }
+
+    private void fail(PseudonymizationJob job, String message) {
+        try {
+            finish(job, PseudonymizationJobStatus.FAILED, truncate(message));
+        } catch (LeaseLostException e) {
+            log.warn("Job de pseudonimização {} assumido por outra instância; falha não registrada", job.getId());
+        } catch (Exception e) {
+            log.error("Falha ao marcar o job de pseudonimização {} como FAILED", job.getId(), e);
+        }
+    }
+
+    /**
+     * Grava o estado final e libera o lease, desde que o job ainda seja desta instância. Parte do que está no banco:
+     * contadores e checkpoint de uma página cuja transação falhou não podem ser gravados junto.
+     */
+    private void finish(PseudonymizationJob job, PseudonymizationJobStatus status, String lastError) {
+        tx.executeWithoutResult(s -> {
+            holdLease(job);
+            PseudonymizationJob current = jobRepo.findById(job.getId()).orElse(job);
+            current.setStatus(status);
+            if (lastError != null) current.setLastError(lastError);
+            current.setFinishedAt(OffsetDateTime.now());
+            current.setLeaseOwner(null);
+            current.setLeaseUntil(null);
+            jobRepo.save(current);
+        });
+    }
+
+    /** Renova o lease dentro da transação corrente; lança {@link LeaseLostException} se outra instância assumiu. */
+    private void holdLease(PseudonymizationJob job) {
+        OffsetDateTime until = OffsetDateTime.now().plus(leaseDuration);
+        if (jobRepo.renewLease(job.getId(), instanceId, until) == 0) {
+            throw new LeaseLostException();
+        }
+        job.setLeaseOwner(instanceId);
+        job.setLeaseUntil(until);
+    }
+
+    private static class LeaseLostException extends RuntimeException {
+    }
+
+    /** Vazão do job, para o endpoint de status. */
+    public static Map<String, Object> report(PseudonymizationJob job) {
+        double seconds = job.getActiveMillis() / 1000.0;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("processed", job.getProcessedCount());
+        report.put("failed", job.getFailedCount());
+        report.put("bytesCopied", job.getBytesCopied());
+        report.put("activeSeconds", seconds);
+        report.put("filesPerSecond", seconds > 0 ? Math.round((job.getProcessedCount() + job.getFailedCount()) / seconds * 100) / 100.0 : 0);
+        report.put("megabytesPerSecond", seconds > 0 ? Math.round(job.getBytesCopied() / 1048576.0 / seconds * 100) / 100.0 : 0);
+        return report;
+    }
+
+    private static String truncate(String message) {
+        return message != null && message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    private void releaseQuietly(String hash) {
+        try {
+            contentStore.release(hash);
+        } catch (Exception e) {
+            log.error("Falha ao liberar referência do conteúdo {}: {}", hash, e.getMessage(), e);
+        }
+    }
+
+    private void deleteQuietly(String key) {
+        try {
+            s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key).build());
+        } catch (Exception e) {
+            log.warn("Falha ao remover cópia descartada {}: {}", key, e.getMessage());
+        }
+    }
+}
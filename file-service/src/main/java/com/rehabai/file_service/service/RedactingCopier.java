@@ -0,0 +1,143 @@
+package com.rehabai.file_service.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Cópia do conteúdo para a chave pseudonimizada, removendo metadados de PDFs e imagens no caminho.
+ * <p>
+ * O formato é detectado pelos primeiros bytes do objeto. JPEG, PNG e PDF são baixados em stream, passam pelo
+ * {@link MetadataRedactor} para um arquivo temporário e sobem pelo {@link S3MultipartUploader}; os demais seguem
+ * por cópia server-side. O tempo de cada redação é publicado em {@code pseudonymization.redaction.duration},
+ * por formato e resultado.
+ */
+@Component
+@Slf4j
+public class RedactingCopier {
+
+    /**
+     * Resultado da cópia.
+     *
+     * @param sha256  hash do conteúdo gravado, quando diferente do original; {@code null} se o conteúdo não mudou
+     * @param removed metadados removidos, no formato {@code "JPEG: APP1/Exif"}
+     */
+    public record Result(long bytes, String sha256, List<String> removed) {
+        public boolean rewritten() {
+            return sha256 != null;
+        }
+    }
+
+    private final S3Client s3;
+    private final S3ServerSideCopier copier;
+    private final S3MultipartUploader uploader;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+
+    public RedactingCopier(S3Client s3,
+                           S3ServerSideCopier copier,
+                           S3MultipartUploader uploader,
+                           MeterRegistry registry,
+                           @Value("${pseudonymization.redaction.enabled:true}") boolean enabled) {
+        this.s3 = s3;
+        this.copier = copier;
+        this.uploader = uploader;
+        this.registry = registry;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Copia {@code sourceKey} para {@code targetKey}.
+     *
+     * @param size tamanho conhecido do objeto; {@code null} consulta o S3
+     */
+    public Result copy(String bucket, String sourceKey, String targetKey, Long size) {
+        MetadataRedactor.Format format = enabled && (size == null || size > 0) ? detect(bucket, sourceKey) : null;
+        if (format == null) {
+            return new Result(copier.copy(bucket, sourceKey, targetKey, size), null, List.of());
+        }
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "failed";
+        try {
+            Result result = redact(bucket, sourceKey, targetKey, format);
+            if (result == null) {
+                // PDF criptografado: sem a senha não dá para regravar, segue como está
+                outcome = "skipped";
+                log.warn("PDF criptografado {}; metadados mantidos na cópia pseudonimizada", sourceKey);
+                return new Result(copier.copy(bucket, sourceKey, targetKey, size), null, List.of());
+            }
+            outcome = result.removed().isEmpty() ? "clean" : "redacted";
+            registry.summary("pseudonymization.redaction.bytes", "format", format.name()).record(result.bytes());
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("redaction_failed: " + sourceKey, e);
+        } finally {
+            sample.stop(registry.timer("pseudonymization.redaction.duration", "format", format.name(), "outcome", outcome));
+        }
+    }
+
+    private MetadataRedactor.Format detect(String bucket, String key) {
+        GetObjectRequest head = GetObjectRequest.builder()
+                .bucket(bucket).key(key).range("bytes=0-" + (MetadataRedactor.MAGIC_LENGTH - 1)).build();
+        try (InputStream in = s3.getObject(head)) {
+            return MetadataRedactor.detect(in.readNBytes(MetadataRedactor.MAGIC_LENGTH));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Baixa, remove os metadados e envia; {@code null} quando o conteúdo não pode ser regravado. */
+    private Result redact(String bucket, String sourceKey, String targetKey, MetadataRedactor.Format format) throws IOException {
+        Path redacted = Files.createTempFile("redacted-", null);
+        Path original = null;
+        try {
+            String contentType;
+            List<String> removed;
+            try (ResponseInputStream<GetObjectResponse> in = s3.getObject(
+                    GetObjectRequest.builder().bucket(bucket).key(sourceKey).build())) {
+                contentType = in.response().contentType();
+                if (format == MetadataRedactor.Format.PDF) {
+                    // O PDF precisa de acesso aleatório (xref no fim do arquivo)
+                    original = Files.createTempFile("original-", ".pdf");
+                    Files.copy(in, original, StandardCopyOption.REPLACE_EXISTING);
+                    removed = MetadataRedactor.stripPdf(original.toFile(), redacted.toFile());
+                    if (removed == null) return null;
+                } else {
+                    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(redacted))) {
+                        removed = format == MetadataRedactor.Format.JPEG
+                                ? MetadataRedactor.stripJpeg(in, out)
+                                : MetadataRedactor.stripPng(in, out);
+                    }
+                }
+            }
+            S3MultipartUploader.Result stored;
+            try (InputStream in = Files.newInputStream(redacted)) {
+                stored = uploader.upload(bucket, targetKey, contentType, in, Files.size(redacted));
+            }
+            if (!removed.isEmpty()) {
+                log.info("Metadados removidos de {}: {}", sourceKey, removed);
+            }
+            return new Result(stored.size(), stored.sha256(),
+                    removed.stream().map(kind -> format.name() + ": " + kind).toList());
+        } finally {
+            Files.deleteIfExists(redacted);
+            if (original != null) Files.deleteIfExists(original);
+        }
+    }
+}
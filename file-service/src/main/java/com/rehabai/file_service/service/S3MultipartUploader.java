@@ -0,0 +1,232 @@
+package com.rehabai.file_service.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Envia um {@link InputStream} para o S3 sem carregá-lo inteiro em memória, calculando o SHA-256 no caminho.
+ * <p>
+ * Conteúdo menor que uma parte vai num único PutObject. Acima disso usa multipart upload: o stream é lido em
+ * partes de {@code storage.upload.partSizeMb} e até {@code storage.upload.concurrency} partes sobem em paralelo.
+ * Quem lê bloqueia quando todas as vagas estão ocupadas, então a memória por upload fica limitada a
+ * {@code (concurrency + 1) × partSize}; quando o tamanho é conhecido, o primeiro buffer tem
+ * {@code min(partSize, tamanho)} para que arquivos pequenos não reservem uma parte inteira. Em qualquer falha o
+ * multipart é abortado para não deixar partes órfãs, mas só depois que as partes em andamento terminam: uma parte
+ * que completa depois do abort recriaria armazenamento cobrado que nenhum upload referencia.
+ */
+@Component
+@Slf4j
+public class S3MultipartUploader {
+
+    /** Menor parte aceita pelo S3 (exceto a última). */
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    public record Result(long size, String sha256) {}
+
+    private final S3Client s3;
+    private final int partSize;
+    private final int concurrency;
+    private final ExecutorService executor;
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+    private final Timer uploadTimer;
+    private final DistributionSummary uploadBytes;
+    private final MeterRegistry registry;
+
+    public S3MultipartUploader(S3Client s3,
+                               MeterRegistry registry,
+                               @Value("${storage.upload.partSizeMb:8}") int partSizeMb,
+                               @Value("${storage.upload.concurrency:4}") int concurrency,
+                               @Value("${storage.upload.threads:16}") int threads) {
+        this.s3 = s3;
+        this.registry = registry;
+        this.partSize = Math.max(MIN_PART_SIZE, partSizeMb * 1024 * 1024);
+        this.concurrency = Math.max(1, concurrency);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), Thread.ofPlatform().name("s3-upload-", 1).daemon().factory());
+        this.uploadTimer = Timer.builder("storage.upload.duration")
+                .description("Tempo total do upload para o S3")
+                .register(registry);
+        this.uploadBytes = DistributionSummary.builder("storage.upload.bytes")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("storage.upload.parts.inflight", partsInFlight, AtomicInteger::get).register(registry);
+    }
+
+    public Result upload(String bucket, String key, String contentType, InputStream in) throws IOException {
+        return upload(bucket, key, contentType, in, -1);
+    }
+
+    /** @param sizeHint tamanho esperado do conteúdo, ou negativo se desconhecido; só dimensiona o primeiro buffer */
+    public Result upload(String bucket, String key, String contentType, InputStream in, long sizeHint) throws IOException {
+        Timer.Sample sample = Timer.start(registry);
+        MessageDigest digest = newDigest();
+        DigestInputStream source = new DigestInputStream(in, digest);
+
+        int initial = sizeHint >= 0 ? (int) Math.min(partSize, sizeHint) : partSize;
+        byte[] first = new byte[initial];
+        int firstLength = source.readNBytes(first, 0, initial);
+        if (firstLength == initial && initial < partSize) {
+            // O tamanho informado não é garantia: se ainda houver dados, completa a parte com o buffer inteiro
+            int next = source.read();
+            if (next >= 0) {
+                first = Arrays.copyOf(first, partSize);
+                first[firstLength++] = (byte) next;
+                firstLength += source.readNBytes(first, firstLength, partSize - firstLength);
+            }
+        }
+        Result result;
+        if (firstLength < partSize) {
+            s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key).contentType(contentType).build(),
+                    body(first, firstLength));
+            result = new Result(firstLength, HexFormat.of().formatHex(digest.digest()));
+        } else {
+            result = multipart(bucket, key, contentType, source, digest, first);
+        }
+        sample.stop(uploadTimer);
+        uploadBytes.record(result.size());
+        return result;
+    }
+
+    private Result multipart(String bucket, String key, String contentType, InputStream source,
+                             MessageDigest digest, byte[] first) throws IOException {
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket).key(key).contentType(contentType).build()).uploadId();
+        Semaphore slots = new Semaphore(concurrency);
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        try {
+            long size = 0;
+            byte[] buffer = first;
+            int length = first.length;
+            for (int partNumber = 1; length > 0; partNumber++) {
+                size += length;
+                acquire(slots);
+                // Falha numa parte já enviada interrompe a leitura do restante
+                failFast(parts);
+                parts.add(uploadPart(bucket, key, uploadId, partNumber, buffer, length, slots));
+
+                buffer = new byte[partSize];
+                length = source.readNBytes(buffer, 0, partSize);
+            }
+
+            List<CompletedPart> completed = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completed.add(part.join());
+            }
+            completed.sort(Comparator.comparing(CompletedPart::partNumber));
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                    .build());
+            log.info("Upload multipart concluído. Chave: {}, partes: {}, bytes: {}", key, completed.size(), size);
+            return new Result(size, HexFormat.of().formatHex(digest.digest()));
+        } catch (IOException | RuntimeException e) {
+            // cancel(true) não interrompe o uploadPart em andamento; espera todas as partes assentarem antes do abort
+            awaitSettled(parts);
+            abort(bucket, key, uploadId);
+            if (e instanceof CompletionException ce && ce.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private CompletableFuture<CompletedPart> uploadPart(String bucket, String key, String uploadId, int partNumber,
+                                                        byte[] buffer, int length, Semaphore slots) {
+        partsInFlight.incrementAndGet();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                UploadPartResponse resp = s3.uploadPart(UploadPartRequest.builder()
+                                .bucket(bucket).key(key).uploadId(uploadId)
+                                .partNumber(partNumber)
+                                .contentLength((long) length)
+                                .build(),
+                        body(buffer, length));
+                registry.counter("storage.upload.parts").increment();
+                return CompletedPart.builder().partNumber(partNumber).eTag(resp.eTag()).build();
+            }, executor).whenComplete((r, e) -> {
+                partsInFlight.decrementAndGet();
+                slots.release();
+            });
+        } catch (RuntimeException e) {
+            partsInFlight.decrementAndGet();
+            slots.release();
+            throw e;
+        }
+    }
+
+    /** Envia o buffer sem copiá-lo ({@code fromBytes} duplicaria cada parte); o stream suporta reset para retries. */
+    private static RequestBody body(byte[] buffer, int length) {
+        return RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, length), length);
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder().bucket(bucket).key(key).uploadId(uploadId).build());
+            log.warn("Upload multipart abortado. Chave: {}", key);
+        } catch (Exception e) {
+            log.error("Falha ao abortar upload multipart {} (chave {}): {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    private static void awaitSettled(List<CompletableFuture<CompletedPart>> parts) {
+        try {
+            CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException | CancellationException ignored) {
+            // As falhas das partes já foram tratadas; aqui só importa que nenhuma esteja mais em andamento
+        }
+    }
+
+    private static void failFast(List<CompletableFuture<CompletedPart>> parts) {
+        for (CompletableFuture<CompletedPart> part : parts) {
+            if (part.isCompletedExceptionally()) part.join();
+        }
+    }
+
+    private static void acquire(Semaphore slots) throws IOException {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload interrupted", e);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            log.error("FATAL: Algoritmo SHA-256 não está disponível.", e);
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
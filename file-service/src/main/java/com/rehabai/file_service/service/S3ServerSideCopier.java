@@ -0,0 +1,118 @@
+package com.rehabai.file_service.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cópia dentro do bucket feita pelo próprio S3 (os bytes não passam por aqui).
+ * <p>
+ * Objetos a partir de {@code storage.copy.multipartThresholdMb} usam multipart copy ({@code UploadPartCopy}) com as
+ * partes copiadas em paralelo; um CopyObject simples não aceita mais de 5 GB e é lento para objetos grandes.
+ */
+@Component
+@Slf4j
+public class S3ServerSideCopier {
+
+    /** Maior objeto aceito por um CopyObject único. */
+    static final long MAX_SINGLE_COPY = 5L * 1024 * 1024 * 1024;
+
+    private final S3Client s3;
+    private final long multipartThreshold;
+    private final long partSize;
+    private final ExecutorService executor;
+
+    public S3ServerSideCopier(S3Client s3,
+                              @Value("${storage.copy.multipartThresholdMb:512}") long multipartThresholdMb,
+                              @Value("${storage.copy.partSizeMb:128}") long partSizeMb,
+                              @Value("${storage.copy.threads:8}") int threads) {
+        this.s3 = s3;
+        this.multipartThreshold = Math.min(MAX_SINGLE_COPY, Math.max(1, multipartThresholdMb) * 1024 * 1024);
+        this.partSize = Math.max(S3MultipartUploader.MIN_PART_SIZE, partSizeMb * 1024 * 1024);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), Thread.ofPlatform().name("s3-copy-", 1).daemon().factory());
+    }
+
+    /**
+     * Copia {@code sourceKey} para {@code destinationKey}.
+     *
+     * @param size tamanho conhecido do objeto; {@code null} consulta o S3
+     * @return bytes copiados
+     */
+    public long copy(String bucket, String sourceKey, String destinationKey, Long size) {
+        long length = size != null ? size : head(bucket, sourceKey).contentLength();
+        if (length < multipartThreshold) {
+            s3.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket).sourceKey(sourceKey)
+                    .destinationBucket(bucket).destinationKey(destinationKey)
+                    .build());
+            return length;
+        }
+        multipartCopy(bucket, sourceKey, destinationKey, length);
+        return length;
+    }
+
+    private void multipartCopy(String bucket, String sourceKey, String destinationKey, long length) {
+        // O CreateMultipartUpload não herda o Content-Type da origem como o CopyObject
+        HeadObjectResponse head = head(bucket, sourceKey);
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket).key(destinationKey).contentType(head.contentType()).build()).uploadId();
+        try {
+            List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+            int partNumber = 1;
+            for (long start = 0; start < length; start += partSize, partNumber++) {
+                long end = Math.min(start + partSize, length) - 1;
+                int number = partNumber;
+                String range = "bytes=" + start + "-" + end;
+                parts.add(CompletableFuture.supplyAsync(() -> {
+                    UploadPartCopyResponse r = s3.uploadPartCopy(UploadPartCopyRequest.builder()
+                            .sourceBucket(bucket).sourceKey(sourceKey)
+                            .destinationBucket(bucket).destinationKey(destinationKey)
+                            .uploadId(uploadId).partNumber(number).copySourceRange(range)
+                            .build());
+                    return CompletedPart.builder().partNumber(number).eTag(r.copyPartResult().eTag()).build();
+                }, executor));
+            }
+            CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).join();
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(destinationKey).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder()
+                            .parts(parts.stream().map(CompletableFuture::join).toList())
+                            .build())
+                    .build());
+            log.info("Cópia multipart concluída: {} -> {} ({} partes)", sourceKey, destinationKey, partNumber - 1);
+        } catch (RuntimeException e) {
+            abortQuietly(bucket, destinationKey, uploadId);
+            if (e instanceof CompletionException && e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private HeadObjectResponse head(String bucket, String key) {
+        return s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+    }
+
+    private void abortQuietly(String bucket, String key, String uploadId) {
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder().bucket(bucket).key(key).uploadId(uploadId).build());
+        } catch (Exception e) {
+            log.warn("Falha ao abortar cópia multipart {} de {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
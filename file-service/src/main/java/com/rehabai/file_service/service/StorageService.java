@@ -1,26 +1,31 @@
 package com.rehabai.file_service.service;
 
+import com.rehabai.file_service.dto.FilePage;
+import com.rehabai.file_service.dto.FileSummary;
 import com.rehabai.file_service.events.FileUploadedEvent;
+import com.rehabai.file_service.model.AnonymizationLog;
 import com.rehabai.file_service.model.IngestionFile;
 import com.rehabai.file_service.model.FileStatus;
 import com.rehabai.file_service.model.FileType;
+import com.rehabai.file_service.model.StoredObject;
 import com.rehabai.file_service.repository.IngestionFileRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.DirectExchange;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.HexFormat;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Service
@@ -28,11 +33,17 @@ import java.util.UUID;
 @Slf4j
 public class StorageService {
 
+    public static final int MAX_PAGE_SIZE = 200;
+
     private final S3Client s3;
     private final IngestionFileRepository repo;
-    private final RabbitTemplate rabbit;
+    private final EventOutbox outbox;
     private final DirectExchange exchange;
+    private final TransactionTemplate tx;
     private final AnonymizationLogService anonymizationLogService;
+    private final S3MultipartUploader uploader;
+    private final ContentStore contentStore;
+    private final RedactingCopier copier;
 
     @Value("${s3.bucket}")
     private String bucket;
@@ -42,59 +53,92 @@ public class StorageService {
 
     public IngestionFile upload(MultipartFile file, UUID userId, FileType fileType) throws IOException {
         String original = file.getOriginalFilename();
-        String key = "uploads/" + UUID.randomUUID() + (original != null ? ("_" + original) : "");
+        String stagingKey = "staging/" + UUID.randomUUID();
+
+        // Stream do multipart direto para o S3; o hash é calculado durante o envio e define a chave definitiva
+        S3MultipartUploader.Result stored;
+        try (InputStream in = file.getInputStream()) {
+            stored = uploader.upload(bucket, stagingKey, file.getContentType(), in, file.getSize());
+        }
+        StoredObject object;
+        try {
+            object = contentStore.acquire(stored.sha256(), stored.size(), file.getContentType(), stagingKey);
+        } finally {
+            deleteQuietly(stagingKey);
+        }
+        log.info("Arquivo enviado ao S3. Chave: {}", object.getS3Key());
+        return register(object, userId, original, fileType);
+    }
 
-        PutObjectRequest put = PutObjectRequest.builder()
-                .bucket(bucket)
-                .key(key)
-                .contentType(file.getContentType())
-                .build();
-        s3.putObject(put, RequestBody.fromBytes(file.getBytes()));
-        log.info("Arquivo enviado ao S3. Chave: {}", key);
+    /** Cria um arquivo a partir de conteúdo já armazenado (mesmo SHA-256), sem nova transferência. */
+    public IngestionFile linkExisting(String sha256, UUID userId, String originalName, FileType fileType) {
+        String hash = ContentStore.normalizeHash(sha256);
+        StoredObject object = contentStore.link(hash)
+                .orElseThrow(() -> new IllegalArgumentException("content_not_found"));
+        log.info("Arquivo criado a partir de conteúdo existente. Hash: {}", hash);
+        return register(object, userId, originalName, fileType);
+    }
 
+    public Optional<StoredObject> findContent(String sha256) {
+        return contentStore.find(ContentStore.normalizeHash(sha256));
+    }
+
+    private IngestionFile register(StoredObject object, UUID userId, String original, FileType fileType) {
         IngestionFile ent = new IngestionFile();
         ent.setUserId(userId);
         ent.setOriginalName(original);
-        ent.setS3Path(key);
+        ent.setS3Path(object.getS3Key());
         ent.setStatus(FileStatus.UPLOADED);
         ent.setFileType(fileType);
-        ent.setSizeBytes(file.getSize());
-        ent.setHashSha256(sha256(file.getBytes()));
-        IngestionFile saved = repo.save(ent);
-
-        FileUploadedEvent evt = new FileUploadedEvent(saved.getId(), userId, bucket, key, original, file.getSize(), saved.getHashSha256(), fileType);
-        rabbit.convertAndSend(exchange.getName(), routingKeyUploaded, evt);
-        log.info("Evento FileUploadedEvent publicado para o arquivo ID: {} (tipo: {}, userId: {})", saved.getId(), fileType, userId);
+        ent.setSizeBytes(object.getSizeBytes());
+        ent.setHashSha256(object.getHashSha256());
+        try {
+            // Arquivo e evento no mesmo commit: a publicação fica com o relay do outbox
+            return tx.execute(status -> {
+                IngestionFile saved = repo.save(ent);
+                enqueueUploaded(saved);
+                return saved;
+            });
+        } catch (RuntimeException e) {
+            contentStore.release(object.getHashSha256());
+            throw e;
+        }
+    }
 
-        return saved;
+    /**
+     * Registra no outbox o aviso ao pipeline de que o conteúdo do arquivo está disponível no S3. Chamado dentro
+     * da transação que grava o arquivo.
+     */
+    public void enqueueUploaded(IngestionFile saved) {
+        FileUploadedEvent evt = new FileUploadedEvent(saved.getId(), saved.getUserId(), bucket, saved.getS3Path(), saved.getOriginalName(), saved.getSizeBytes(), saved.getHashSha256(), saved.getFileType());
+        outbox.enqueue(exchange.getName(), routingKeyUploaded, evt);
+        log.info("Evento FileUploadedEvent registrado no outbox para o arquivo ID: {} (tipo: {}, userId: {})", saved.getId(), saved.getFileType(), saved.getUserId());
     }
 
     public IngestionFile pseudonymize(UUID fileId) {
         IngestionFile file = repo.findById(fileId)
                 .orElseThrow(() -> new IllegalArgumentException("file_not_found"));
         try {
-            String srcKey = file.getS3Path();
-            String anonymizedKey = "anonymized/" + file.getId() + "/" + (file.getOriginalName() != null ? file.getOriginalName() : "file");
-
-            CopyObjectRequest copyReq = CopyObjectRequest.builder()
-                    .copySource(bucket + "/" + srcKey)
-                    .destinationBucket(bucket)
-                    .destinationKey(anonymizedKey)
-                    .build();
-            s3.copyObject(copyReq);
+            String anonymizedKey = anonymizedKey(file);
+            RedactingCopier.Result copied = copier.copy(bucket, file.getS3Path(), anonymizedKey, file.getSizeBytes());
             log.info("Arquivo copiado para o local pseudonimizado: {}", anonymizedKey);
 
-            String oldPath = file.getS3Path();
-            file.setS3Path(anonymizedKey);
-            String oldName = file.getOriginalName();
-            if (oldName != null) {
-                file.setOriginalName("[REDACTED]");
-                anonymizationLogService.add(fileId, "mask_original_name", "original_name");
+            String sourceHash = file.getHashSha256();
+            boolean shared = isContentAddressed(file);
+            List<AnonymizationLog> entries = applyPseudonymization(file, anonymizedKey, copied);
+            IngestionFile saved = repo.save(file);
+            anonymizationLogService.addAll(entries);
+            // A cópia pseudonimizada é só deste arquivo; o conteúdo compartilhado perde uma referência
+            if (shared) {
+                releaseQuietly(sourceHash);
             }
-            anonymizationLogService.add(fileId, "s3_path_relocation", "s3_path: " + oldPath + " -> " + anonymizedKey);
-            file.setStatus(FileStatus.ANONYMIZED);
-
-            return repo.save(file);
+            return saved;
+        } catch (UncheckedIOException e) {
+            log.error("Falha ao remover metadados do arquivo {}: {}", fileId, e.getMessage(), e);
+            file.setStatus(FileStatus.ERROR);
+            repo.save(file);
+            anonymizationLogService.add(fileId, "pseudonymize_error", e.getMessage());
+            throw new IllegalStateException("pseudonymize_failed", e);
         } catch (S3Exception e) {
             log.error("Falha ao pseudonimizar o arquivo {}: {}", fileId, e.getMessage(), e);
             file.setStatus(FileStatus.ERROR);
@@ -104,27 +148,93 @@ public class StorageService {
         }
     }
 
+    /** Chave do objeto pseudonimizado: fica fora do armazenamento deduplicado, pertence só a este arquivo. */
+    static String anonymizedKey(IngestionFile file) {
+        return "anonymized/" + file.getId() + "/" + (file.getOriginalName() != null ? file.getOriginalName() : "file");
+    }
+
+    /** Chave exclusiva de uma cópia do job em lote: descartá-la nunca apaga um objeto gravado por outro caminho. */
+    static String anonymizedKey(IngestionFile file, UUID copyId) {
+        return "anonymized/" + file.getId() + "/" + copyId + "/" + (file.getOriginalName() != null ? file.getOriginalName() : "file");
+    }
+
+    /**
+     * Aplica a pseudonimização nos metadados (chave nova, nome mascarado, status, hash do conteúdo regravado) e
+     * devolve os registros de auditoria correspondentes, ainda não gravados.
+     */
+    static List<AnonymizationLog> applyPseudonymization(IngestionFile file, String anonymizedKey, RedactingCopier.Result copied) {
+        List<AnonymizationLog> entries = new ArrayList<>(3);
+        if (copied.rewritten()) {
+            file.setHashSha256(copied.sha256());
+            file.setSizeBytes(copied.bytes());
+            if (!copied.removed().isEmpty()) {
+                entries.add(AnonymizationLogService.entry(file.getId(), "strip_metadata", String.join(", ", copied.removed())));
+            }
+        }
+        String oldPath = file.getS3Path();
+        file.setS3Path(anonymizedKey);
+        if (file.getOriginalName() != null) {
+            file.setOriginalName("[REDACTED]");
+            entries.add(AnonymizationLogService.entry(file.getId(), "mask_original_name", "original_name"));
+        }
+        entries.add(AnonymizationLogService.entry(file.getId(), "s3_path_relocation", "s3_path: " + oldPath + " -> " + anonymizedKey));
+        file.setStatus(FileStatus.ANONYMIZED);
+        return entries;
+    }
+
     public IngestionFile get(UUID id) {
         return repo.findById(id).orElseThrow(() -> new IllegalArgumentException("file_not_found"));
     }
 
-    public List<IngestionFile> list(UUID userId, FileStatus status) {
-        if (status == null) {
-            return repo.findByUserIdOrderByCreatedAtDesc(userId);
+    /**
+     * Lista os arquivos do usuário por keyset em {@code (created_at, id)}: o custo depende do tamanho da página,
+     * não do histórico. Busca um item a mais para saber se há próxima página.
+     */
+    public FilePage list(UUID userId, FileStatus status, FileType fileType, String cursor, int limit) {
+        int size = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        List<FileSummary> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = repo.findPage(userId, status, fileType, Limit.of(size + 1));
+        } else {
+            FilePage.Cursor after = FilePage.Cursor.decode(cursor);
+            rows = repo.findPageAfter(userId, status, fileType, after.createdAt(), after.id(), Limit.of(size + 1));
+        }
+        if (rows.size() <= size) {
+            return new FilePage(rows, null);
         }
-        return repo.findByUserIdAndStatusOrderByCreatedAtDesc(userId, status);
+        List<FileSummary> items = rows.subList(0, size);
+        FileSummary last = items.get(size - 1);
+        return new FilePage(items, new FilePage.Cursor(last.createdAt(), last.id()).encode());
     }
 
-    public byte[] download(UUID id) throws IOException {
-        IngestionFile file = get(id);
-        GetObjectRequest req = GetObjectRequest.builder().bucket(bucket).key(file.getS3Path()).build();
-        try (var is = s3.getObject(req)) {
-            return is.readAllBytes();
+    /**
+     * Abre o objeto no S3 sem carregá-lo em memória; com {@code range}, só os bytes {@code [start, end]}.
+     * Quem chama fecha o stream.
+     */
+    public InputStream openStream(IngestionFile file, ByteRange range) {
+        GetObjectRequest.Builder req = GetObjectRequest.builder().bucket(bucket).key(file.getS3Path());
+        if (range != null) {
+            req.range(range.toHeader());
+        }
+        return s3.getObject(req.build());
+    }
+
+    /** Tamanho do conteúdo; arquivos antigos sem {@code sizeBytes} consultam o S3. */
+    public long sizeOf(IngestionFile file) {
+        if (file.getSizeBytes() != null) {
+            return file.getSizeBytes();
         }
+        return s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(file.getS3Path()).build()).contentLength();
     }
 
     public void delete(UUID id) {
         IngestionFile file = get(id);
+        if (isContentAddressed(file)) {
+            repo.deleteById(id);
+            log.info("Metadados do arquivo deletados do banco de dados: {}", id);
+            contentStore.release(file.getHashSha256());
+            return;
+        }
         try {
             s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(file.getS3Path()).build());
             log.info("Arquivo deletado do S3: {}", file.getS3Path());
@@ -135,14 +245,28 @@ public class StorageService {
         log.info("Metadados do arquivo deletados do banco de dados: {}", id);
     }
 
-    private String sha256(byte[] data) {
+    /** Arquivos enviados antes da deduplicação (ou já pseudonimizados) têm objeto próprio no S3. */
+    static boolean isContentAddressed(IngestionFile file) {
+        return isContentAddressed(file.getS3Path(), file.getHashSha256());
+    }
+
+    static boolean isContentAddressed(String s3Path, String hash) {
+        return hash != null && hash.length() == 64 && ContentStore.keyFor(hash).equals(s3Path);
+    }
+
+    private void releaseQuietly(String hash) {
+        try {
+            contentStore.release(hash);
+        } catch (Exception e) {
+            log.error("Falha ao liberar referência do conteúdo {}: {}", hash, e.getMessage(), e);
+        }
+    }
+
+    private void deleteQuietly(String key) {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(data);
-            return HexFormat.of().formatHex(digest);
-        } catch (NoSuchAlgorithmException e) {
-            log.error("FATAL: Algoritmo SHA-256 não está disponível.", e);
-            throw new IllegalStateException("SHA-256 not available", e);
+            s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key).build());
+        } catch (Exception e) {
+            log.warn("Falha ao remover objeto temporário {}: {}", key, e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package com.rehabai.file_service.service;
+
+/**
+ * O upload direto não bate com o que foi declarado (tamanho, hash) ou ainda não chegou ao S3.
+ */
+public class UploadVerificationException extends RuntimeException {
+    public UploadVerificationException(String message) {
+        super(message);
+    }
+}
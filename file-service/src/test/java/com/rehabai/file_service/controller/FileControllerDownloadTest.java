@@ -0,0 +1,126 @@
+package com.rehabai.file_service.controller;
+
+import com.rehabai.file_service.model.IngestionFile;
+import com.rehabai.file_service.security.SecurityHelper;
+import com.rehabai.file_service.service.AnonymizationLogService;
+import com.rehabai.file_service.service.ByteRange;
+import com.rehabai.file_service.service.StorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileControllerDownloadTest {
+
+    static final String HASH = "c".repeat(64);
+    static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Mock StorageService storageService;
+    @Mock AnonymizationLogService anonymizationLogService;
+    @Mock SecurityHelper securityHelper;
+    @InjectMocks FileController controller;
+
+    IngestionFile file;
+
+    @BeforeEach
+    void setup() {
+        file = new IngestionFile();
+        file.setId(UUID.randomUUID());
+        file.setUserId(UUID.randomUUID());
+        file.setOriginalName("exame.pdf");
+        file.setSizeBytes((long) CONTENT.length);
+        file.setHashSha256(HASH);
+        when(storageService.get(file.getId())).thenReturn(file);
+    }
+
+    @Test
+    void fullDownload_streamsWithEtag() throws Exception {
+        when(storageService.sizeOf(file)).thenReturn((long) CONTENT.length);
+        when(storageService.openStream(file, null)).thenReturn(new ByteArrayInputStream(CONTENT));
+
+        ResponseEntity<StreamingResponseBody> r = controller.download(file.getId(), new HttpHeaders());
+
+        assertThat(r.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(r.getHeaders().getETag()).isEqualTo("\"" + HASH + "\"");
+        assertThat(r.getHeaders().getContentLength()).isEqualTo(10);
+        assertThat(body(r)).isEqualTo("0123456789");
+    }
+
+    @Test
+    void range_returnsPartialContent() throws Exception {
+        when(storageService.sizeOf(file)).thenReturn((long) CONTENT.length);
+        when(storageService.openStream(eq(file), any())).thenReturn(new ByteArrayInputStream(CONTENT, 2, 4));
+        HttpHeaders h = new HttpHeaders();
+        h.set(HttpHeaders.RANGE, "bytes=2-5");
+        h.set(HttpHeaders.IF_RANGE, "\"" + HASH + "\"");
+
+        ResponseEntity<StreamingResponseBody> r = controller.download(file.getId(), h);
+
+        assertThat(r.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(r.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-5/10");
+        assertThat(r.getHeaders().getContentLength()).isEqualTo(4);
+        assertThat(body(r)).isEqualTo("2345");
+        verify(storageService).openStream(file, new ByteRange(2, 5));
+    }
+
+    @Test
+    void staleIfRange_ignoresRange() throws Exception {
+        when(storageService.sizeOf(file)).thenReturn((long) CONTENT.length);
+        HttpHeaders h = new HttpHeaders();
+        h.set(HttpHeaders.RANGE, "bytes=2-5");
+        h.set(HttpHeaders.IF_RANGE, "\"outro\"");
+
+        ResponseEntity<StreamingResponseBody> r = controller.download(file.getId(), h);
+
+        assertThat(r.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(r.getHeaders().getContentLength()).isEqualTo(10);
+    }
+
+    @Test
+    void matchingIfNoneMatch_returns304WithoutTouchingS3() {
+        HttpHeaders h = new HttpHeaders();
+        h.setIfNoneMatch("W/\"" + HASH + "\"");
+
+        ResponseEntity<StreamingResponseBody> r = controller.download(file.getId(), h);
+
+        assertThat(r.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(r.getBody()).isNull();
+        verify(storageService, never()).sizeOf(any());
+        verify(storageService, never()).openStream(any(), any());
+    }
+
+    @Test
+    void rangePastEnd_returns416() {
+        when(storageService.sizeOf(file)).thenReturn((long) CONTENT.length);
+        HttpHeaders h = new HttpHeaders();
+        h.set(HttpHeaders.RANGE, "bytes=20-");
+
+        ResponseEntity<StreamingResponseBody> r = controller.download(file.getId(), h);
+
+        assertThat(r.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(r.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+    }
+
+    private static String body(ResponseEntity<StreamingResponseBody> r) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        r.getBody().writeTo(out);
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,5 +1,6 @@
 package com.rehabai.file_service.controller;
 
+import com.rehabai.file_service.service.PresignedTransferService;
 import com.rehabai.file_service.service.StorageService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,6 +19,7 @@ class FileControllerErrorTest {
     @Autowired MockMvc mvc;
 
     @MockitoBean StorageService storageService;
+    @MockitoBean PresignedTransferService presignedTransferService;
 
     @Test
     void upload_missingPart_returns400() throws Exception {
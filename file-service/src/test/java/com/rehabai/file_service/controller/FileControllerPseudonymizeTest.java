@@ -3,6 +3,7 @@ package com.rehabai.file_service.controller;
 import com.rehabai.file_service.model.FileStatus;
 import com.rehabai.file_service.model.IngestionFile;
 import com.rehabai.file_service.service.AnonymizationLogService;
+import com.rehabai.file_service.service.PresignedTransferService;
 import com.rehabai.file_service.service.StorageService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -24,6 +25,7 @@ class FileControllerPseudonymizeTest {
     @Autowired MockMvc mvc;
 
     @MockitoBean StorageService storageService;
+    @MockitoBean PresignedTransferService presignedTransferService;
     @MockitoBean AnonymizationLogService anonymizationLogService;
 
     @Test
@@ -1,10 +1,13 @@
 package com.rehabai.file_service.controller;
 
+import com.rehabai.file_service.dto.FilePage;
+import com.rehabai.file_service.dto.FileSummary;
 import com.rehabai.file_service.model.FileType;
 import com.rehabai.file_service.security.SecurityHelper;
 import com.rehabai.file_service.model.FileStatus;
 import com.rehabai.file_service.model.IngestionFile;
 import com.rehabai.file_service.service.AnonymizationLogService;
+import com.rehabai.file_service.service.PresignedTransferService;
 import com.rehabai.file_service.service.StorageService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -15,6 +18,7 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -28,6 +32,7 @@ class FileControllerTest {
     @Autowired MockMvc mvc;
 
     @MockitoBean StorageService storageService;
+    @MockitoBean PresignedTransferService presignedTransferService;
     @MockitoBean AnonymizationLogService anonymizationLogService;
     @MockitoBean SecurityHelper securityHelper;
 
@@ -153,14 +158,12 @@ class FileControllerTest {
     void list_whenPatient_shouldOnlyListOwnFiles() throws Exception {
         UUID patientId = UUID.randomUUID();
 
-        IngestionFile file1 = new IngestionFile();
-        file1.setId(UUID.randomUUID());
-        file1.setUserId(patientId);
+        FileSummary file1 = new FileSummary(UUID.randomUUID(), patientId, "a.pdf", FileStatus.UPLOADED, FileType.OTHER, 10L, null, OffsetDateTime.now());
 
         Mockito.when(securityHelper.getAuthenticatedUserId()).thenReturn(patientId);
         Mockito.when(securityHelper.hasAnyRole("ADMIN", "CLINICIAN")).thenReturn(false);
 
-        Mockito.when(storageService.list(patientId, null)).thenReturn(List.of(file1));
+        Mockito.when(storageService.list(patientId, null, null, null, 50)).thenReturn(new FilePage(List.of(file1), null));
 
         mvc.perform(get("/files")
                         .header("X-User-Id", patientId.toString())
@@ -174,21 +177,20 @@ class FileControllerTest {
         UUID clinicianId = UUID.randomUUID();
         UUID patientId = UUID.randomUUID();
 
-        IngestionFile file1 = new IngestionFile();
-        file1.setId(UUID.randomUUID());
-        file1.setUserId(patientId);
+        FileSummary file1 = new FileSummary(UUID.randomUUID(), patientId, "a.pdf", FileStatus.UPLOADED, FileType.OTHER, 10L, null, OffsetDateTime.now());
 
         Mockito.when(securityHelper.getAuthenticatedUserId()).thenReturn(clinicianId);
         Mockito.when(securityHelper.hasAnyRole("ADMIN", "CLINICIAN")).thenReturn(true);
 
-        Mockito.when(storageService.list(patientId, null)).thenReturn(List.of(file1));
+        Mockito.when(storageService.list(patientId, null, null, null, 50)).thenReturn(new FilePage(List.of(file1), "next"));
 
         mvc.perform(get("/files")
                         .param("userId", patientId.toString())
                         .header("X-User-Id", clinicianId.toString())
                         .header("X-User-Roles", "ROLE_CLINICIAN"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].userId").value(patientId.toString()));
+                .andExpect(jsonPath("$[0].userId").value(patientId.toString()))
+                .andExpect(header().string("X-Next-Cursor", "next"));
     }
 
     @Test
@@ -0,0 +1,26 @@
+package com.rehabai.file_service.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FilePageTest {
+
+    @Test
+    void cursor_roundTrips() {
+        FilePage.Cursor cursor = new FilePage.Cursor(OffsetDateTime.parse("2025-03-01T10:15:30.123456-03:00"), UUID.randomUUID());
+
+        assertThat(FilePage.Cursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void cursor_rejectsGarbage() {
+        assertThatThrownBy(() -> FilePage.Cursor.decode("not-a-cursor"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("invalid_cursor");
+    }
+}
@@ -0,0 +1,89 @@
+package com.rehabai.file_service.service;
+
+import com.rehabai.file_service.model.StoredObject;
+import com.rehabai.file_service.repository.StoredObjectRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ContentStoreTest {
+
+    static final String HASH = "ab" + "0".repeat(62);
+
+    @Mock S3Client s3;
+    @Mock StoredObjectRepository repo;
+    @InjectMocks ContentStore store;
+
+    @BeforeEach
+    void setup() {
+        ReflectionTestUtils.setField(store, "bucket", "rehab-files");
+    }
+
+    @Test
+    void acquire_newHash_copiesStagingToContentKey() {
+        when(repo.insertIfAbsent(eq(HASH), eq("objects/ab/" + HASH), eq(10L), any(), any())).thenReturn(1);
+        when(repo.lockByHash(HASH)).thenReturn(Optional.of(object(1)));
+
+        StoredObject o = store.acquire(HASH, 10, "application/pdf", "staging/x");
+
+        assertThat(o.getRefCount()).isEqualTo(1);
+        ArgumentCaptor<CopyObjectRequest> copy = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        verify(s3).copyObject(copy.capture());
+        assertThat(copy.getValue().sourceKey()).isEqualTo("staging/x");
+        assertThat(copy.getValue().destinationKey()).isEqualTo("objects/ab/" + HASH);
+    }
+
+    @Test
+    void acquire_existingHash_onlyIncrementsRefCount() {
+        when(repo.insertIfAbsent(any(), any(), anyLong(), any(), any())).thenReturn(0);
+        when(repo.lockByHash(HASH)).thenReturn(Optional.of(object(2)));
+        when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+        StoredObject o = store.acquire(HASH, 10, null, "staging/x");
+
+        assertThat(o.getRefCount()).isEqualTo(3);
+        verify(s3, never()).copyObject(any(CopyObjectRequest.class));
+    }
+
+    @Test
+    void release_deletesObjectOnlyOnLastReference() {
+        StoredObject shared = object(2);
+        when(repo.lockByHash(HASH)).thenReturn(Optional.of(shared));
+        when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+        store.release(HASH);
+        assertThat(shared.getRefCount()).isEqualTo(1);
+        verify(s3, never()).deleteObject(any(DeleteObjectRequest.class));
+
+        store.release(HASH);
+        verify(repo).delete(shared);
+        verify(s3).deleteObject(DeleteObjectRequest.builder().bucket("rehab-files").key("objects/ab/" + HASH).build());
+    }
+
+    @Test
+    void normalizeHash_rejectsNonSha256() {
+        assertThat(ContentStore.normalizeHash(" " + HASH.toUpperCase() + " ")).isEqualTo(HASH);
+        assertThatThrownBy(() -> ContentStore.normalizeHash("abc")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static StoredObject object(int refCount) {
+        return new StoredObject(HASH, "objects/ab/" + HASH, 10, "application/pdf", refCount, OffsetDateTime.now());
+    }
+}
@@ -0,0 +1,100 @@
+package com.rehabai.file_service.service;
+
+import com.rehabai.file_service.model.OutboxEvent;
+import com.rehabai.file_service.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventOutboxTest {
+
+    @Mock OutboxEventRepository repo;
+    @Mock RabbitTemplate rabbit;
+    @Mock RabbitOperations ops;
+    @Mock TransactionTemplate tx;
+
+    EventOutbox outbox;
+
+    @BeforeEach
+    void setup() {
+        outbox = new EventOutbox(repo, rabbit, new Jackson2JsonMessageConverter(), tx, new SimpleMeterRegistry(),
+                2, 0, 1000, 60000);
+    }
+
+    @AfterEach
+    void close() {
+        outbox.shutdown();
+    }
+
+    @Test
+    void enqueue_withoutTransaction_isRejected() {
+        assertThatThrownBy(() -> outbox.enqueue("file.events", "file.uploaded", "x"))
+                .isInstanceOf(IllegalStateException.class);
+        verify(repo, never()).save(any());
+    }
+
+    @Test
+    void publishBatch_sendsWithMessageIdWaitsForConfirmsAndDeletes() {
+        List<OutboxEvent> batch = List.of(event(), event());
+        when(repo.lockBatch(any(), eq(2))).thenReturn(batch);
+        when(rabbit.invoke(any(RabbitOperations.OperationsCallback.class)))
+                .thenAnswer(inv -> inv.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(ops));
+
+        assertThat(outbox.publishBatch()).isEqualTo(2);
+
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(ops, times(2)).send(eq("file.events"), eq("file.uploaded"), sent.capture());
+        assertThat(sent.getAllValues().get(0).getMessageProperties().getMessageId()).isEqualTo(batch.get(0).getId().toString());
+        assertThat(sent.getAllValues().get(0).getMessageProperties().<String>getHeader("__TypeId__")).isEqualTo("com.example.Evt");
+        verify(ops).waitForConfirmsOrDie(1000);
+        verify(repo).deleteAllInBatch(batch);
+    }
+
+    @Test
+    void publishBatch_brokerFailure_keepsEventsWithBackoff() {
+        OutboxEvent event = event();
+        when(repo.lockBatch(any(), eq(2))).thenReturn(List.of(event));
+        when(rabbit.invoke(any(RabbitOperations.OperationsCallback.class))).thenThrow(new AmqpTimeoutException("nack"));
+
+        assertThat(outbox.publishBatch()).isZero();
+
+        assertThat(event.getAttempts()).isEqualTo(1);
+        assertThat(event.getLastError()).isEqualTo("nack");
+        assertThat(event.getAvailableAt()).isAfter(OffsetDateTime.now());
+        verify(repo).saveAll(List.of(event));
+        verify(repo, never()).deleteAllInBatch(any());
+        assertThat(outbox.backoffMs(10)).isEqualTo(60000);
+    }
+
+    private static OutboxEvent event() {
+        OutboxEvent event = new OutboxEvent();
+        event.setId(UUID.randomUUID());
+        event.setExchange("file.events");
+        event.setRoutingKey("file.uploaded");
+        event.setTypeId("com.example.Evt");
+        event.setContentType("application/json");
+        event.setPayload("{\"id\":1}");
+        return event;
+    }
+}
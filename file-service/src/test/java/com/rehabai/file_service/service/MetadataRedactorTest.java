@@ -0,0 +1,113 @@
+package com.rehabai.file_service.service;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetadataRedactorTest {
+
+    @Test
+    void detect_recognizesByMagicBytes() {
+        assertThat(MetadataRedactor.detect(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0})).isEqualTo(MetadataRedactor.Format.JPEG);
+        assertThat(MetadataRedactor.detect(png())).isEqualTo(MetadataRedactor.Format.PNG);
+        assertThat(MetadataRedactor.detect("%PDF-1.7".getBytes(StandardCharsets.US_ASCII))).isEqualTo(MetadataRedactor.Format.PDF);
+        assertThat(MetadataRedactor.detect("PK\3\4".getBytes(StandardCharsets.US_ASCII))).isNull();
+    }
+
+    @Test
+    void stripJpeg_dropsExifIptcAndCommentsKeepsImageData() throws Exception {
+        byte[] jfif = segment(0xE0, "JFIF\0\1\1\0\0\1\0\1\0\0");
+        byte[] exif = segment(0xE1, "Exif\0\0Canon EOS / Paciente Joao");
+        byte[] iptc = segment(0xED, "Photoshop 3.0\0 8BIM");
+        byte[] comment = segment(0xFE, "Joao da Silva");
+        byte[] dqt = segment(0xDB, "\0quantization-table");
+        byte[] sos = segment(0xDA, "\1\1\0\0\77\0");
+        byte[] scan = {0x12, (byte) 0xFF, 0x00, 0x34, (byte) 0xFF, (byte) 0xD9};
+        byte[] jpeg = concat(new byte[]{(byte) 0xFF, (byte) 0xD8}, jfif, exif, iptc, comment, dqt, sos, scan);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        var removed = MetadataRedactor.stripJpeg(new ByteArrayInputStream(jpeg), out);
+
+        assertThat(removed).containsExactly("APP1/Exif", "APP13/IPTC", "COM");
+        assertThat(out.toByteArray()).isEqualTo(concat(new byte[]{(byte) 0xFF, (byte) 0xD8}, jfif, dqt, sos, scan));
+    }
+
+    @Test
+    void stripPng_dropsTextChunksKeepsImageChunks() throws Exception {
+        byte[] ihdr = chunk("IHDR", new byte[13]);
+        byte[] text = chunk("tEXt", "Author\0Joao da Silva".getBytes(StandardCharsets.ISO_8859_1));
+        byte[] exif = chunk("eXIf", new byte[]{'M', 'M', 0, 42});
+        byte[] idat = chunk("IDAT", new byte[]{1, 2, 3, 4});
+        byte[] iend = chunk("IEND", new byte[0]);
+        byte[] png = concat(png(), ihdr, text, idat, exif, iend, "trailer".getBytes(StandardCharsets.US_ASCII));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        var removed = MetadataRedactor.stripPng(new ByteArrayInputStream(png), out);
+
+        assertThat(removed).containsExactly("tEXt", "eXIf");
+        assertThat(out.toByteArray()).isEqualTo(concat(png(), ihdr, idat, iend));
+    }
+
+    @Test
+    void stripPdf_removesInfoAndXmp(@TempDir Path dir) throws Exception {
+        File source = dir.resolve("in.pdf").toFile();
+        File target = dir.resolve("out.pdf").toFile();
+        try (PDDocument doc = new PDDocument()) {
+            doc.addPage(new PDPage());
+            doc.getDocumentInformation().setAuthor("Joao da Silva");
+            doc.getDocumentInformation().setTitle("Laudo");
+            PDMetadata xmp = new PDMetadata(doc);
+            xmp.importXMPMetadata("<x:xmpmeta xmlns:x='adobe:ns:meta/'/>".getBytes(StandardCharsets.UTF_8));
+            doc.getDocumentCatalog().setMetadata(xmp);
+            doc.save(source);
+        }
+
+        var removed = MetadataRedactor.stripPdf(source, target);
+
+        assertThat(removed).contains("Info/Author", "Info/Title", "XMP");
+        try (PDDocument doc = Loader.loadPDF(target)) {
+            assertThat(doc.getDocumentInformation().getAuthor()).isNull();
+            assertThat(doc.getDocumentCatalog().getMetadata()).isNull();
+            assertThat(doc.getNumberOfPages()).isEqualTo(1);
+        }
+    }
+
+    private static byte[] png() {
+        return new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    }
+
+    private static byte[] segment(int marker, String payload) {
+        byte[] data = payload.getBytes(StandardCharsets.ISO_8859_1);
+        int length = data.length + 2;
+        return concat(new byte[]{(byte) 0xFF, (byte) marker, (byte) (length >> 8), (byte) length}, data);
+    }
+
+    private static byte[] chunk(String type, byte[] data) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        long c = crc.getValue();
+        int n = data.length;
+        return concat(new byte[]{(byte) (n >> 24), (byte) (n >> 16), (byte) (n >> 8), (byte) n}, typeBytes, data,
+                new byte[]{(byte) (c >> 24), (byte) (c >> 16), (byte) (c >> 8), (byte) c});
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.writeBytes(part);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,173 @@
+package com.rehabai.file_service.service;
+
+import com.rehabai.file_service.model.FileStatus;
+import com.rehabai.file_service.model.FileType;
+import com.rehabai.file_service.model.IngestionFile;
+import com.rehabai.file_service.model.StoredObject;
+import com.rehabai.file_service.repository.IngestionFileRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PresignedTransferServiceTest {
+
+    static final String HASH = "ab" + "1".repeat(62);
+
+    @Mock S3Client s3;
+    @Mock IngestionFileRepository repo;
+    @Mock ContentStore contentStore;
+    @Mock StorageService storageService;
+    @Mock TransactionTemplate tx;
+
+    S3Presigner presigner;
+    PresignedTransferService service;
+
+    @BeforeEach
+    void setup() {
+        presigner = S3Presigner.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
+                .endpointOverride(URI.create("http://localhost:9000"))
+                .build();
+        service = new PresignedTransferService(s3, presigner, repo, contentStore, storageService, tx);
+        ReflectionTestUtils.setField(service, "bucket", "rehab-files");
+        ReflectionTestUtils.setField(service, "ttlSeconds", 900L);
+    }
+
+    @AfterEach
+    void close() {
+        presigner.close();
+    }
+
+    @Test
+    void initiate_signsSizeAndChecksum() {
+        when(contentStore.find(HASH)).thenReturn(Optional.empty());
+        when(repo.save(any())).thenAnswer(inv -> {
+            IngestionFile f = inv.getArgument(0);
+            f.setId(UUID.randomUUID());
+            return f;
+        });
+
+        PresignedTransferService.PresignedUrl url = service.initiateUpload(UUID.randomUUID(), "laudo.pdf", FileType.PRESCRIPTION, 1234, HASH, "application/pdf");
+
+        assertThat(url.alreadyStored()).isFalse();
+        assertThat(url.method()).isEqualTo("PUT");
+        assertThat(url.url()).startsWith("http://localhost:9000/rehab-files/staging/direct/");
+        assertThat(url.headers())
+                .containsEntry("content-length", "1234")
+                .containsEntry("x-amz-checksum-sha256", PresignedTransferService.toBase64(HASH))
+                .doesNotContainKey("host");
+    }
+
+    @Test
+    void initiate_knownContent_linksWithoutUrl() {
+        UUID userId = UUID.randomUUID();
+        IngestionFile linked = pending();
+        linked.setStatus(FileStatus.UPLOADED);
+        when(contentStore.find(HASH)).thenReturn(Optional.of(new StoredObject()));
+        when(storageService.linkExisting(HASH, userId, "a.pdf", FileType.OTHER)).thenReturn(linked);
+
+        PresignedTransferService.PresignedUrl url = service.initiateUpload(userId, "a.pdf", FileType.OTHER, 10, HASH, null);
+
+        assertThat(url.alreadyStored()).isTrue();
+        assertThat(url.url()).isNull();
+        verify(repo, never()).save(any());
+    }
+
+    @Test
+    void complete_verifiedUpload_movesContentAndPublishes() {
+        IngestionFile file = pending();
+        inTransaction();
+        when(repo.lockById(file.getId())).thenReturn(Optional.of(file));
+        when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+        when(s3.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder()
+                .contentLength(10L).checksumSHA256(PresignedTransferService.toBase64(HASH)).build());
+        when(contentStore.acquire(HASH, 10L, null, "staging/direct/x"))
+                .thenReturn(new StoredObject(HASH, ContentStore.keyFor(HASH), 10, null, 1, OffsetDateTime.now()));
+
+        IngestionFile done = service.completeUpload(file.getId());
+
+        assertThat(done.getStatus()).isEqualTo(FileStatus.UPLOADED);
+        assertThat(done.getS3Path()).isEqualTo(ContentStore.keyFor(HASH));
+        verify(storageService).enqueueUploaded(done);
+        verify(s3).deleteObject(DeleteObjectRequest.builder().bucket("rehab-files").key("staging/direct/x").build());
+    }
+
+    @Test
+    void complete_checksumMismatch_marksErrorWithoutPublishing() {
+        IngestionFile file = pending();
+        inTransaction();
+        when(repo.lockById(file.getId())).thenReturn(Optional.of(file));
+        when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+        when(s3.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder()
+                .contentLength(10L).checksumSHA256(PresignedTransferService.toBase64("f".repeat(64))).build());
+
+        assertThatThrownBy(() -> service.completeUpload(file.getId()))
+                .isInstanceOf(UploadVerificationException.class);
+
+        assertThat(file.getStatus()).isEqualTo(FileStatus.ERROR);
+        verify(contentStore, never()).acquire(any(), anyLong(), any(), any());
+        verify(storageService, never()).enqueueUploaded(any());
+    }
+
+    @Test
+    void expirePendingUploads_skipsUploadConfirmedConcurrently() {
+        IngestionFile stale = pending();
+        IngestionFile confirmed = pending();
+        confirmed.setS3Path("staging/direct/y");
+        inTransaction();
+        when(repo.findTop100ByStatusAndCreatedAtBefore(eq(FileStatus.PENDING_UPLOAD), any())).thenReturn(List.of(stale, confirmed));
+        when(repo.expirePending(stale.getId())).thenReturn(1);
+        when(repo.expirePending(confirmed.getId())).thenReturn(0);
+
+        service.expirePendingUploads();
+
+        verify(s3).deleteObject(DeleteObjectRequest.builder().bucket("rehab-files").key("staging/direct/x").build());
+        verify(s3, never()).deleteObject(DeleteObjectRequest.builder().bucket("rehab-files").key("staging/direct/y").build());
+        verify(repo, never()).save(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void inTransaction() {
+        when(tx.execute(any())).thenAnswer(inv -> ((TransactionCallback<Object>) inv.getArgument(0)).doInTransaction(null));
+    }
+
+    private static IngestionFile pending() {
+        IngestionFile file = new IngestionFile();
+        file.setId(UUID.randomUUID());
+        file.setUserId(UUID.randomUUID());
+        file.setStatus(FileStatus.PENDING_UPLOAD);
+        file.setSizeBytes(10L);
+        file.setHashSha256(HASH);
+        file.setS3Path("staging/direct/x");
+        return file;
+    }
+}
@@ -0,0 +1,179 @@
+package com.rehabai.file_service.service;
+
+import com.rehabai.file_service.model.AnonymizationLog;
+import com.rehabai.file_service.model.FileStatus;
+import com.rehabai.file_service.model.IngestionFile;
+import com.rehabai.file_service.model.PseudonymizationJob;
+import com.rehabai.file_service.model.PseudonymizationJobStatus;
+import com.rehabai.file_service.repository.IngestionFileRepository;
+import com.rehabai.file_service.repository.PseudonymizationJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PseudonymizationJobServiceTest {
+
+    static final String HASH = "d".repeat(64);
+
+    @Mock PseudonymizationJobRepository jobRepo;
+    @Mock IngestionFileRepository fileRepo;
+    @Mock AnonymizationLogService anonymizationLogService;
+    @Mock ContentStore contentStore;
+    @Mock RedactingCopier copier;
+    @Mock S3Client s3;
+    @Mock TransactionTemplate tx;
+
+    PseudonymizationJobService service;
+
+    @BeforeEach
+    void setup() {
+        service = new PseudonymizationJobService(jobRepo, fileRepo, anonymizationLogService, contentStore, copier, s3, tx,
+                new SimpleMeterRegistry(), "rehab-files", 2, 4, 60_000);
+    }
+
+    @AfterEach
+    void close() {
+        service.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void advance_copiesPageCommitsOnceAndCheckpoints() {
+        IngestionFile shared = file(ContentStore.keyFor(HASH), HASH, "laudo.pdf", 1);
+        IngestionFile broken = file("legacy/x.pdf", null, null, 2);
+        PseudonymizationJob job = job();
+        when(fileRepo.findPseudonymizationPage(any(), any(), any(), any(), any(), any()))
+                .thenReturn(List.of(shared, broken), List.of());
+        when(fileRepo.lockAllById(anyList())).thenReturn(List.of(shared, broken));
+        when(copier.copy(eq("rehab-files"), eq(shared.getS3Path()), anyString(), eq(100L))).thenReturn(new RedactingCopier.Result(100L, null, List.of()));
+        when(copier.copy(eq("rehab-files"), eq("legacy/x.pdf"), anyString(), any()))
+                .thenThrow(S3Exception.builder().awsErrorDetails(AwsErrorDetails.builder().errorMessage("AccessDenied").build()).build());
+        doAnswer(inv -> {
+            ((Consumer<Object>) inv.getArgument(0)).accept(null);
+            return null;
+        }).when(tx).executeWithoutResult(any());
+        when(jobRepo.renewLease(eq(job.getId()), anyString(), any())).thenReturn(1);
+
+        service.advance(job);
+
+        assertThat(shared.getStatus()).isEqualTo(FileStatus.ANONYMIZED);
+        assertThat(shared.getS3Path()).startsWith("anonymized/" + shared.getId() + "/").endsWith("/laudo.pdf");
+        assertThat(shared.getOriginalName()).isEqualTo("[REDACTED]");
+        assertThat(broken.getStatus()).isEqualTo(FileStatus.ERROR);
+
+        ArgumentCaptor<List<AnonymizationLog>> logs = ArgumentCaptor.forClass(List.class);
+        verify(anonymizationLogService, times(1)).addAll(logs.capture());
+        assertThat(logs.getValue()).extracting(AnonymizationLog::getRuleApplied)
+                .containsExactlyInAnyOrder("mask_original_name", "s3_path_relocation", "pseudonymize_error");
+
+        assertThat(job.getCursorId()).isEqualTo(broken.getId());
+        assertThat(job.getProcessedCount()).isEqualTo(1);
+        assertThat(job.getFailedCount()).isEqualTo(1);
+        assertThat(job.getBytesCopied()).isEqualTo(100);
+        assertThat(job.getLastError()).contains("AccessDenied");
+        verify(contentStore).release(HASH);
+        // A página veio cheia: busca a seguinte, que está vazia, e conclui
+        verify(fileRepo, times(2)).findPseudonymizationPage(any(), any(), any(), any(), any(), any());
+        assertThat(job.getStatus()).isEqualTo(PseudonymizationJobStatus.COMPLETED);
+    }
+
+    @Test
+    void advance_skipsFilesChangedSinceRead() {
+        IngestionFile file = file("legacy/a.pdf", null, "a.pdf", 1);
+        IngestionFile meanwhile = file("anonymized/other", null, "[REDACTED]", 1);
+        meanwhile.setId(file.getId());
+        meanwhile.setStatus(FileStatus.ANONYMIZED);
+        PseudonymizationJob job = job();
+        when(fileRepo.findPseudonymizationPage(any(), any(), any(), any(), any(), any())).thenReturn(List.of(file));
+        when(fileRepo.lockAllById(anyList())).thenReturn(List.of(meanwhile));
+        when(copier.copy(any(), any(), any(), any())).thenReturn(new RedactingCopier.Result(10L, null, List.of()));
+        doAnswer(inv -> {
+            inv.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(tx).executeWithoutResult(any());
+        when(jobRepo.renewLease(eq(job.getId()), anyString(), any())).thenReturn(1);
+
+        service.advance(job);
+
+        assertThat(meanwhile.getS3Path()).isEqualTo("anonymized/other");
+        assertThat(job.getProcessedCount()).isZero();
+        ArgumentCaptor<DeleteObjectRequest> deleted = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3).deleteObject(deleted.capture());
+        // A cópia descartada tem chave própria, nunca a chave para a qual o arquivo aponta agora
+        assertThat(deleted.getValue().key()).startsWith("anonymized/" + file.getId() + "/").isNotEqualTo("anonymized/other");
+        assertThat(job.getStatus()).isEqualTo(PseudonymizationJobStatus.COMPLETED);
+    }
+
+    @Test
+    void advance_leaseLost_discardsPageWithoutFailingJob() {
+        IngestionFile file = file("legacy/a.pdf", null, "a.pdf", 1);
+        PseudonymizationJob job = job();
+        when(fileRepo.findPseudonymizationPage(any(), any(), any(), any(), any(), any())).thenReturn(List.of(file));
+        when(copier.copy(any(), any(), any(), any())).thenReturn(new RedactingCopier.Result(10L, null, List.of()));
+        doAnswer(inv -> {
+            inv.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(tx).executeWithoutResult(any());
+        when(jobRepo.renewLease(eq(job.getId()), anyString(), any())).thenReturn(0);
+
+        service.advance(job);
+
+        verify(fileRepo, never()).lockAllById(anyList());
+        verify(jobRepo, never()).save(any());
+        verify(s3).deleteObject(any(DeleteObjectRequest.class));
+        assertThat(job.getStatus()).isEqualTo(PseudonymizationJobStatus.RUNNING);
+    }
+
+    @Test
+    void advanceAll_skipsJobsClaimedByAnotherInstance() {
+        PseudonymizationJob job = job();
+        when(jobRepo.findByStatusOrderByCreatedAtAsc(PseudonymizationJobStatus.RUNNING)).thenReturn(List.of(job));
+        when(tx.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(jobRepo.claim(eq(job.getId()), eq(PseudonymizationJobStatus.RUNNING), anyString(), any(), any())).thenReturn(0);
+
+        service.advanceAll();
+
+        verifyNoInteractions(fileRepo, copier);
+    }
+
+    private static PseudonymizationJob job() {
+        PseudonymizationJob job = new PseudonymizationJob();
+        job.setId(UUID.randomUUID());
+        job.setCreatedFrom(OffsetDateTime.now().minusDays(30));
+        job.setCreatedTo(OffsetDateTime.now());
+        return job;
+    }
+
+    private static IngestionFile file(String key, String hash, String name, int minutesAgo) {
+        IngestionFile f = new IngestionFile();
+        f.setId(UUID.randomUUID());
+        f.setUserId(UUID.randomUUID());
+        f.setS3Path(key);
+        f.setHashSha256(hash);
+        f.setOriginalName(name);
+        f.setSizeBytes(hash != null ? 100L : null);
+        f.setCreatedAt(OffsetDateTime.now().minusMinutes(minutesAgo));
+        return f;
+    }
+}
@@ -0,0 +1,144 @@
+package com.rehabai.file_service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class S3MultipartUploaderTest {
+
+    @Mock S3Client s3;
+
+    S3MultipartUploader uploader;
+
+    @AfterEach
+    void tearDown() {
+        if (uploader != null) uploader.shutdown();
+    }
+
+    @Test
+    void smallFile_usesSinglePut_andHashesWhileStreaming() throws Exception {
+        uploader = new S3MultipartUploader(s3, new SimpleMeterRegistry(), 5, 2, 2);
+        byte[] data = "laudo".getBytes();
+
+        var result = uploader.upload("bucket", "k", "application/pdf", new ByteArrayInputStream(data));
+
+        assertThat(result.size()).isEqualTo(5);
+        assertThat(result.sha256()).isEqualTo(sha256(data));
+        verify(s3).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void largeFile_uploadsPartsInParallel_andCompletesInOrder() throws Exception {
+        uploader = new S3MultipartUploader(s3, new SimpleMeterRegistry(), 5, 2, 2);
+        byte[] data = random(S3MultipartUploader.MIN_PART_SIZE * 2 + 1234);
+        when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("u1").build());
+        when(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenAnswer(inv -> UploadPartResponse.builder()
+                        .eTag("e" + inv.<UploadPartRequest>getArgument(0).partNumber()).build());
+
+        var result = uploader.upload("bucket", "k", "image/tiff", new ByteArrayInputStream(data));
+
+        assertThat(result.size()).isEqualTo(data.length);
+        assertThat(result.sha256()).isEqualTo(sha256(data));
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(s3, times(3)).uploadPart(parts.capture(), any(RequestBody.class));
+        assertThat(parts.getAllValues()).extracting(UploadPartRequest::contentLength)
+                .containsExactlyInAnyOrder((long) S3MultipartUploader.MIN_PART_SIZE, (long) S3MultipartUploader.MIN_PART_SIZE, 1234L);
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3).completeMultipartUpload(complete.capture());
+        assertThat(complete.getValue().multipartUpload().parts()).extracting(CompletedPart::eTag)
+                .containsExactly("e1", "e2", "e3");
+    }
+
+    @Test
+    void failedPart_abortsMultipartUpload() throws Exception {
+        uploader = new S3MultipartUploader(s3, new SimpleMeterRegistry(), 5, 1, 1);
+        byte[] data = random(S3MultipartUploader.MIN_PART_SIZE + 10);
+        when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("u1").build());
+        when(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().message("boom").build());
+
+        assertThatThrownBy(() -> uploader.upload("bucket", "k", null, new ByteArrayInputStream(data)))
+                .isInstanceOf(S3Exception.class);
+        verify(s3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void sizeHintSmallerThanContent_stillUploadsEverything() throws Exception {
+        uploader = new S3MultipartUploader(s3, new SimpleMeterRegistry(), 5, 2, 2);
+        byte[] data = "laudo completo".getBytes();
+
+        var result = uploader.upload("bucket", "k", "application/pdf", new ByteArrayInputStream(data), 5);
+
+        assertThat(result.size()).isEqualTo(data.length);
+        assertThat(result.sha256()).isEqualTo(sha256(data));
+        ArgumentCaptor<RequestBody> body = ArgumentCaptor.forClass(RequestBody.class);
+        verify(s3).putObject(any(PutObjectRequest.class), body.capture());
+        assertThat(body.getValue().optionalContentLength()).contains((long) data.length);
+    }
+
+    @Test
+    void failedPart_abortsOnlyAfterInFlightPartsSettle() throws Exception {
+        uploader = new S3MultipartUploader(s3, new SimpleMeterRegistry(), 5, 2, 2);
+        byte[] data = random(S3MultipartUploader.MIN_PART_SIZE * 2 + 10);
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("u1").build());
+        when(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenAnswer(inv -> {
+            if (inv.<UploadPartRequest>getArgument(0).partNumber() == 1) {
+                secondStarted.await(5, TimeUnit.SECONDS);
+                throw S3Exception.builder().message("boom").build();
+            }
+            secondStarted.countDown();
+            Thread.sleep(200);
+            events.add("part");
+            return UploadPartResponse.builder().eTag("e").build();
+        });
+        when(s3.abortMultipartUpload(any(AbortMultipartUploadRequest.class))).thenAnswer(inv -> {
+            events.add("abort");
+            return AbortMultipartUploadResponse.builder().build();
+        });
+
+        assertThatThrownBy(() -> uploader.upload("bucket", "k", null, new ByteArrayInputStream(data)))
+                .isInstanceOf(S3Exception.class);
+        assertThat(events).containsExactly("part", "abort");
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
@@ -0,0 +1,59 @@
+package com.rehabai.file_service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class S3ServerSideCopierTest {
+
+    static final long MB = 1024 * 1024;
+
+    @Mock S3Client s3;
+
+    S3ServerSideCopier copier;
+
+    @AfterEach
+    void close() {
+        copier.shutdown();
+    }
+
+    @Test
+    void smallObject_usesSingleCopy() {
+        copier = new S3ServerSideCopier(s3, 10, 5, 2);
+
+        assertThat(copier.copy("b", "src", "dst", 3 * MB)).isEqualTo(3 * MB);
+
+        verify(s3).copyObject(any(CopyObjectRequest.class));
+        verify(s3, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void largeObject_copiesRangesInParallelParts() {
+        copier = new S3ServerSideCopier(s3, 10, 5, 2);
+        when(s3.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().contentType("application/dicom").build());
+        when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class))).thenReturn(CreateMultipartUploadResponse.builder().uploadId("u1").build());
+        when(s3.uploadPartCopy(any(UploadPartCopyRequest.class))).thenAnswer(inv -> UploadPartCopyResponse.builder()
+                .copyPartResult(CopyPartResult.builder().eTag("e" + inv.<UploadPartCopyRequest>getArgument(0).partNumber()).build())
+                .build());
+
+        copier.copy("b", "src", "dst", 12 * MB);
+
+        ArgumentCaptor<UploadPartCopyRequest> parts = ArgumentCaptor.forClass(UploadPartCopyRequest.class);
+        verify(s3, times(3)).uploadPartCopy(parts.capture());
+        assertThat(parts.getAllValues()).extracting(UploadPartCopyRequest::copySourceRange)
+                .containsExactlyInAnyOrder("bytes=0-5242879", "bytes=5242880-10485759", "bytes=10485760-12582911");
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3).completeMultipartUpload(complete.capture());
+        assertThat(complete.getValue().multipartUpload().parts()).extracting(CompletedPart::eTag).containsExactly("e1", "e2", "e3");
+    }
+}
@@ -5,16 +5,24 @@ import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 
 @Configuration
 @EnableRabbit
 public class AmqpConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(AmqpConfig.class);
+
     @Bean
     public DirectExchange fileEventsExchange(@Value("${amqp.fileExchange:file.events}") String name) {
         return new DirectExchange(name, true, false);
@@ -35,4 +43,36 @@ public class AmqpConfig {
     public MessageConverter messageConverter() {
         return new Jackson2JsonMessageConverter();
     }
+
+    /**
+     * Container dos {@code @RabbitListener}. Com {@code amqp.listener.virtualThreads=true} cada consumidor
+     * roda numa virtual thread: o download do S3 e a espera pela extração não prendem threads de plataforma,
+     * então dá para subir a concorrência sem inflar o número de threads do processo.
+     * Concorrência {@code 0} usa o padrão do modo (1 em threads de plataforma, 64 em virtual threads).
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${amqp.listener.virtualThreads:false}") boolean virtualThreads,
+            @Value("${amqp.listener.prefetch:1}") int prefetch,
+            @Value("${amqp.listener.concurrency:0}") int concurrency,
+            @Value("${amqp.listener.maxConcurrency:0}") int maxConcurrency) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+
+        int consumers = concurrency > 0 ? concurrency : (virtualThreads ? 64 : 1);
+        factory.setConcurrentConsumers(consumers);
+        factory.setMaxConcurrentConsumers(Math.max(consumers, maxConcurrency));
+        // Cada mensagem é um arquivo inteiro para OCR/LLM: prefetch alto só deixa mensagens presas num consumidor ocupado
+        factory.setPrefetchCount(Math.max(1, prefetch));
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("amqp-vt-");
+            executor.setVirtualThreads(true);
+            factory.setTaskExecutor(executor);
+        }
+        log.info("Rabbit listeners: {} consumers (max {}), prefetch {}, {} threads",
+                consumers, Math.max(consumers, maxConcurrency), Math.max(1, prefetch), virtualThreads ? "virtual" : "platform");
+        return factory;
+    }
 }
@@ -0,0 +1,41 @@
+package com.rehabai.prescription_service.batch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Backend de inferência em lote usado pela regeneração de prescrições.
+ * <p>
+ * Entrada e saída são JSONL no formato de batch do Bedrock: cada linha de entrada é
+ * {@code {"recordId": ..., "modelInput": {...}}} e cada linha de saída repete o {@code recordId} com
+ * {@code modelOutput} (resposta da Messages API) ou {@code error}. A ordem da saída não é garantida.
+ */
+public interface BatchInferenceBackend {
+
+    enum State { IN_PROGRESS, COMPLETED, FAILED }
+
+    /** Situação do job no backend; {@code processed} é quantos registros já têm saída, se o backend souber. */
+    record Status(State state, long processed, String error) {}
+
+    /** Nome usado em {@code regeneration.backend}. */
+    String name();
+
+    /**
+     * Submete o JSONL de entrada e devolve o id do job no backend. Submeter de novo a mesma entrada continua o
+     * job anterior (usado ao retomar um job que falhou).
+     */
+    String submit(String jobName, String modelId, Path input) throws IOException;
+
+    Status status(String backendJobId);
+
+    /**
+     * Se o backend ainda tem a entrada (ou a saída) do job. Backends que guardam os arquivos no disco local da
+     * instância devolvem {@code false} quando o job foi assumido por outra instância ou o disco se perdeu.
+     */
+    default boolean available(String backendJobId) {
+        return true;
+    }
+
+    /** JSONL de saída disponível localmente; só chamado depois de {@link State#COMPLETED}. */
+    Path output(String backendJobId) throws IOException;
+}
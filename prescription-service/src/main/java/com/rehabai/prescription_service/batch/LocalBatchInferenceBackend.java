@@ -0,0 +1,238 @@
+package com.rehabai.prescription_service.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.rehabai.prescription_service.llm.LlmService;
+import com.rehabai.prescription_service.llm.LlmUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in local do batch do Bedrock: processa o JSONL de entrada nesta instância, chamando o modelo registro a
+ * registro (pelo limitador, em janelas de {@code regeneration.local.concurrency} chamadas paralelas) e gravando a
+ * saída ao lado da entrada ({@code output.jsonl}).
+ * <p>
+ * A saída é escrita na ordem da entrada e com flush a cada janela, então depois de um restart (ou de uma falha por
+ * indisponibilidade do Bedrock) o processamento continua a partir da última linha completa.
+ * O id do job no backend é a URI do arquivo de entrada. Os arquivos ficam no disco desta instância: se não
+ * existirem mais (outra instância assumiu o job, disco efêmero), {@link #available} devolve {@code false}.
+ */
+@Component
+public class LocalBatchInferenceBackend implements BatchInferenceBackend {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalBatchInferenceBackend.class);
+
+    static final String NAME = "local";
+    private static final String OUTPUT_FILE = "output.jsonl";
+    private static final String DONE_MARKER = "output.jsonl.done";
+
+    private record Run(CompletableFuture<Void> future, AtomicLong processed) {}
+
+    private final LlmService llmService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+    private final int concurrency;
+    private final ExecutorService runner;
+    private final ExecutorService workers;
+    private final Map<String, Run> runs = new ConcurrentHashMap<>();
+
+    public LocalBatchInferenceBackend(LlmService llmService,
+                                      ObjectMapper objectMapper,
+                                      MeterRegistry registry,
+                                      @Value("${regeneration.local.concurrency:8}") int concurrency) {
+        this.llmService = llmService;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+        this.concurrency = Math.max(1, concurrency);
+        this.runner = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("regeneration-local").factory());
+        this.workers = Executors.newFixedThreadPool(this.concurrency, Thread.ofPlatform().name("regeneration-local-", 1).factory());
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String submit(String jobName, String modelId, Path input) {
+        String backendJobId = input.toAbsolutePath().toUri().toString();
+        start(backendJobId, modelId, input.toAbsolutePath());
+        return backendJobId;
+    }
+
+    @Override
+    public Status status(String backendJobId) {
+        Path input = Path.of(URI.create(backendJobId));
+        if (Files.exists(input.resolveSibling(DONE_MARKER))) {
+            return new Status(State.COMPLETED, -1, null);
+        }
+        Run run = runs.get(backendJobId);
+        if (run == null && !Files.exists(input)) {
+            return new Status(State.FAILED, 0, "Batch input " + input + " is not on this instance");
+        }
+        if (run == null) {
+            // Instância reiniciada no meio do job: continua de onde a saída parou
+            log.info("Resuming local batch inference for {}", input);
+            run = start(backendJobId, null, input);
+        }
+        if (run.future().isCompletedExceptionally()) {
+            runs.remove(backendJobId, run);
+            Throwable cause = run.future().handle((v, e) -> e).join();
+            while (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+            return new Status(State.FAILED, run.processed().get(), cause != null ? cause.getMessage() : "unknown error");
+        }
+        return new Status(run.future().isDone() ? State.COMPLETED : State.IN_PROGRESS, run.processed().get(), null);
+    }
+
+    @Override
+    public boolean available(String backendJobId) {
+        Path input = Path.of(URI.create(backendJobId));
+        if (Files.exists(input.resolveSibling(DONE_MARKER))) {
+            return Files.exists(input.resolveSibling(OUTPUT_FILE));
+        }
+        return Files.exists(input);
+    }
+
+    @Override
+    public Path output(String backendJobId) {
+        return Path.of(URI.create(backendJobId)).resolveSibling(OUTPUT_FILE);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private synchronized Run start(String backendJobId, String modelId, Path input) {
+        Run existing = runs.get(backendJobId);
+        if (existing != null && !existing.future().isCompletedExceptionally()) return existing;
+        AtomicLong processed = new AtomicLong();
+        String model = modelId != null ? modelId : readModel(input);
+        Run run = new Run(CompletableFuture.runAsync(() -> process(input, model, processed), runner), processed);
+        runs.put(backendJobId, run);
+        return run;
+    }
+
+    private void process(Path input, String modelId, AtomicLong processed) {
+        Path output = input.resolveSibling(OUTPUT_FILE);
+        try {
+            Files.writeString(input.resolveSibling("model"), modelId, StandardCharsets.UTF_8);
+            long done = truncateToLastLine(output);
+            processed.set(done);
+            try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+                 BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8,
+                         StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                String line;
+                for (long skipped = 0; skipped < done && (line = reader.readLine()) != null; ) {
+                    if (!line.isBlank()) skipped++;
+                }
+
+                List<String> window = new ArrayList<>(concurrency);
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    window.add(line);
+                    if (window.size() == concurrency) {
+                        writeWindow(window, modelId, writer, processed);
+                    }
+                }
+                writeWindow(window, modelId, writer, processed);
+            }
+            Files.createFile(input.resolveSibling(DONE_MARKER));
+            log.info("Local batch inference finished for {} ({} records)", input, processed.get());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void writeWindow(List<String> window, String modelId, BufferedWriter writer, AtomicLong processed) throws IOException {
+        if (window.isEmpty()) return;
+        List<CompletableFuture<String>> results = new ArrayList<>(window.size());
+        for (String line : window) {
+            results.add(CompletableFuture.supplyAsync(() -> infer(line, modelId), workers));
+        }
+        // Escreve só depois da janela inteira: uma falha de disponibilidade não deixa buracos na saída
+        List<String> lines = new ArrayList<>(results.size());
+        for (CompletableFuture<String> result : results) {
+            lines.add(result.join());
+        }
+        for (String out : lines) {
+            writer.write(out);
+            writer.newLine();
+        }
+        writer.flush();
+        processed.addAndGet(lines.size());
+        registry.counter("regeneration.records", "phase", "inferred").increment(lines.size());
+        window.clear();
+    }
+
+    private String infer(String line, String modelId) {
+        ObjectNode out = objectMapper.createObjectNode();
+        try {
+            JsonNode record = objectMapper.readTree(line);
+            out.put("recordId", record.path("recordId").asText());
+            out.set("modelOutput", llmService.invokeModelInput(modelId, record.path("modelInput")));
+        } catch (LlmUnavailableException e) {
+            // Interrompe o job; ao retomar, este registro é processado de novo
+            throw e;
+        } catch (Exception e) {
+            out.putObject("error").put("errorMessage", e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+        try {
+            return objectMapper.writeValueAsString(out);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /** Descarta uma linha final incompleta (escrita interrompida) e devolve quantas linhas completas restam. */
+    static long truncateToLastLine(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long end = raf.length();
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') break;
+                end--;
+            }
+            raf.setLength(end);
+        }
+        long lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            while (reader.readLine() != null) lines++;
+        }
+        return lines;
+    }
+
+    private String readModel(Path input) {
+        try {
+            return Files.readString(input.resolveSibling("model"), StandardCharsets.UTF_8).strip();
+        } catch (IOException e) {
+            return llmService.currentModel();
+        }
+    }
+}
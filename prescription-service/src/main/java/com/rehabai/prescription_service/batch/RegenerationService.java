@@ -0,0 +1,561 @@
+package com.rehabai.prescription_service.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.rehabai.prescription_service.llm.LlmService;
+import com.rehabai.prescription_service.model.GuardrailStatus;
+import com.rehabai.prescription_service.model.Normalization;
+import com.rehabai.prescription_service.model.Prescription;
+import com.rehabai.prescription_service.model.RegenerationJob;
+import com.rehabai.prescription_service.model.RegenerationStatus;
+import com.rehabai.prescription_service.repository.NormalizationRepository;
+import com.rehabai.prescription_service.repository.PrescriptionRepository;
+import com.rehabai.prescription_service.repository.RegenerationJobRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Regeneração de prescrições em lote, para quando muda o prompt ou o modelo.
+ * <ol>
+ *   <li>EXPORTING: seleciona as normalizações (keyset por created_at/id) e escreve um JSONL com o
+ *   {@code modelInput} de cada uma; o checkpoint guarda o cursor e o tamanho do arquivo a cada página.</li>
+ *   <li>SUBMITTED: o JSONL vai para o {@link BatchInferenceBackend} configurado e o job é acompanhado por polling.</li>
+ *   <li>INGESTING: a saída vira prescrições em lotes; cada lote e o checkpoint de linhas são gravados na mesma
+ *   transação, então retomar não duplica nem perde registros.</li>
+ * </ol>
+ * Os jobs avançam numa thread própria (não ocupam o scheduler compartilhado). Normalizações que já têm prescrição
+ * com o modelo e a versão de prompt alvo ficam de fora.
+ * <p>
+ * Com várias instâncias, cada job só é avançado por quem assumiu o lease dele ({@code regeneration.leaseMs}); o
+ * lease é renovado em toda gravação de checkpoint, e uma instância que o perdeu para outra para sem gravar nada.
+ * O lease não leva os arquivos junto: os JSONL ficam em {@code regeneration.workDir}, no disco de quem exportou.
+ * Depois de um restart na mesma máquina o job continua do checkpoint; se quem assume não encontra os arquivos
+ * (outra instância, disco efêmero), a exportação recomeça do início. Isso não duplica prescrições, porque as
+ * normalizações já regeneradas não são mais selecionadas.
+ */
+@Service
+public class RegenerationService {
+
+    private static final Logger log = LoggerFactory.getLogger(RegenerationService.class);
+
+    private static final List<RegenerationStatus> ACTIVE =
+            List.of(RegenerationStatus.EXPORTING, RegenerationStatus.SUBMITTED, RegenerationStatus.INGESTING);
+    private static final UUID MIN_UUID = new UUID(0L, 0L);
+
+    private final RegenerationJobRepository jobRepo;
+    private final NormalizationRepository normalizationRepo;
+    private final PrescriptionRepository prescriptionRepo;
+    private final List<BatchInferenceBackend> backends;
+    private final LlmService llmService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate tx;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final String backendName;
+    private final Path workDir;
+    private final int pageSize;
+    private final int ingestBatchSize;
+    private final Duration leaseDuration;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ExecutorService runner =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("regeneration-runner").factory());
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public RegenerationService(RegenerationJobRepository jobRepo,
+                               NormalizationRepository normalizationRepo,
+                               PrescriptionRepository prescriptionRepo,
+                               List<BatchInferenceBackend> backends,
+                               LlmService llmService,
+                               ObjectMapper objectMapper,
+                               TransactionTemplate tx,
+                               MeterRegistry registry,
+                               @Value("${regeneration.enabled:true}") boolean enabled,
+                               @Value("${regeneration.backend:local}") String backendName,
+                               @Value("${regeneration.workDir:${java.io.tmpdir}/rehab-regeneration}") String workDir,
+                               @Value("${regeneration.exportPageSize:500}") int pageSize,
+                               @Value("${regeneration.ingestBatchSize:200}") int ingestBatchSize,
+                               @Value("${regeneration.leaseMs:600000}") long leaseMs) {
+        this.jobRepo = jobRepo;
+        this.normalizationRepo = normalizationRepo;
+        this.prescriptionRepo = prescriptionRepo;
+        this.backends = backends;
+        this.llmService = llmService;
+        this.objectMapper = objectMapper;
+        this.tx = tx;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.backendName = backendName;
+        this.workDir = Path.of(workDir);
+        this.pageSize = Math.max(1, pageSize);
+        this.ingestBatchSize = Math.max(1, ingestBatchSize);
+        this.leaseDuration = Duration.ofMillis(leaseMs);
+    }
+
+    /**
+     * Cria o job. Sem {@code createdTo} o limite é o instante da criação, para que o conjunto selecionado não
+     * cresça com normalizações novas (essas já saem com o prompt atual).
+     */
+    public RegenerationJob create(OffsetDateTime createdFrom, OffsetDateTime createdTo, Integer maxRecords, String modelId) {
+        if (!enabled) {
+            throw new IllegalStateException("Batch regeneration is disabled");
+        }
+        BatchInferenceBackend backend = backend();
+        RegenerationJob job = new RegenerationJob();
+        job.setCreatedFrom(createdFrom != null ? createdFrom : OffsetDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC));
+        job.setCreatedTo(createdTo != null ? createdTo : OffsetDateTime.now(ZoneOffset.UTC));
+        if (!job.getCreatedFrom().isBefore(job.getCreatedTo())) {
+            throw new IllegalArgumentException("createdFrom must be before createdTo");
+        }
+        job.setMaxRecords(maxRecords != null && maxRecords > 0 ? maxRecords : null);
+        job.setModelId(modelId != null && !modelId.isBlank() ? modelId : llmService.currentModel());
+        job.setPromptVersion(LlmService.PROMPT_VERSION);
+        job.setBackend(backend.name());
+        job.setStatus(RegenerationStatus.EXPORTING);
+        RegenerationJob saved = jobRepo.save(job);
+        log.info("Regeneration job {} created (model {}, prompt {}, backend {})",
+                saved.getId(), saved.getModelId(), saved.getPromptVersion(), saved.getBackend());
+        trigger();
+        return saved;
+    }
+
+    public Optional<RegenerationJob> find(UUID id) {
+        return jobRepo.findById(id);
+    }
+
+    /** Retoma um job FAILED na fase em que parou, a partir do checkpoint. */
+    public RegenerationJob resume(UUID id) {
+        RegenerationJob job = jobRepo.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Regeneration job not found: " + id));
+        if (job.getStatus() != RegenerationStatus.FAILED) {
+            throw new IllegalStateException("Only FAILED jobs can be resumed");
+        }
+        if (job.getInferredAt() != null) {
+            job.setStatus(RegenerationStatus.INGESTING);
+        } else if (job.getExportedAt() != null) {
+            job.setStatus(RegenerationStatus.SUBMITTED);
+        } else {
+            job.setStatus(RegenerationStatus.EXPORTING);
+        }
+        job.setError(null);
+        job.setFinishedAt(null);
+        RegenerationJob saved = jobRepo.save(job);
+        log.info("Regeneration job {} resumed at {}", id, saved.getStatus());
+        trigger();
+        return saved;
+    }
+
+    @Scheduled(fixedDelayString = "${regeneration.pollIntervalMs:15000}")
+    public void poll() {
+        if (enabled) trigger();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+    }
+
+    private void trigger() {
+        if (!running.compareAndSet(false, true)) return;
+        try {
+            runner.execute(() -> {
+                try {
+                    advanceAll();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (Exception e) {
+            running.set(false);
+            log.warn("Could not schedule regeneration run: {}", e.getMessage());
+        }
+    }
+
+    void advanceAll() {
+        List<RegenerationJob> jobs;
+        try {
+            jobs = jobRepo.findByStatusInOrderByCreatedAtAsc(ACTIVE);
+        } catch (Exception e) {
+            log.error("Failed to load regeneration jobs - will retry on next run", e);
+            return;
+        }
+        for (RegenerationJob job : jobs) {
+            claim(job).ifPresent(this::advance);
+        }
+    }
+
+    /** Assume o lease do job antes de consultar o backend e relê o checkpoint, que outra instância pode ter avançado. */
+    private Optional<RegenerationJob> claim(RegenerationJob job) {
+        try {
+            OffsetDateTime now = OffsetDateTime.now();
+            Integer claimed = tx.execute(status -> jobRepo.claim(job.getId(), ACTIVE, instanceId, now.plus(leaseDuration), now));
+            if (claimed == null || claimed == 0) return Optional.empty();
+            return jobRepo.findById(job.getId());
+        } catch (Exception e) {
+            log.error("Could not claim regeneration job {}", job.getId(), e);
+            return Optional.empty();
+        }
+    }
+
+    void advance(RegenerationJob job) {
+        try {
+            if (workFilesLost(job)) {
+                restartExport(job);
+            }
+            if (job.getStatus() == RegenerationStatus.EXPORTING) {
+                export(job);
+                if (job.getExportBytes() == 0) {
+                    log.info("Regeneration job {} selected no normalizations", job.getId());
+                    job.setExportedAt(OffsetDateTime.now());
+                    job.setInferredAt(job.getExportedAt());
+                    finish(job);
+                    return;
+                }
+                submit(job);
+            } else if (job.getStatus() == RegenerationStatus.SUBMITTED && job.getBackendJobId() == null) {
+                submit(job);
+            }
+            if (job.getStatus() == RegenerationStatus.SUBMITTED) {
+                BatchInferenceBackend.Status status = backend(job).status(job.getBackendJobId());
+                switch (status.state()) {
+                    case IN_PROGRESS -> {
+                        log.debug("Regeneration job {} still running in backend ({} records done)", job.getId(), status.processed());
+                        return;
+                    }
+                    case FAILED -> {
+                        fail(job, "Batch inference failed: " + status.error());
+                        return;
+                    }
+                    case COMPLETED -> {
+                        job.setInferredAt(OffsetDateTime.now());
+                        job.setStatus(RegenerationStatus.INGESTING);
+                        checkpoint(job);
+                    }
+                }
+            }
+            if (job.getStatus() == RegenerationStatus.INGESTING) {
+                ingest(job);
+                finish(job);
+            }
+        } catch (LeaseLostException e) {
+            log.warn("Regeneration job {} was taken over by another instance; stopping here", job.getId());
+        } catch (Exception e) {
+            log.error("Regeneration job {} failed in {}", job.getId(), job.getStatus(), e);
+            fail(job, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    /** Os arquivos que a fase atual precisa não estão neste disco (o checkpoint foi gravado por outra instância). */
+    private boolean workFilesLost(RegenerationJob job) throws IOException {
+        if (job.getBackendJobId() != null) {
+            return !backend(job).available(job.getBackendJobId());
+        }
+        if (job.getStatus() != RegenerationStatus.EXPORTING && job.getStatus() != RegenerationStatus.SUBMITTED) {
+            return false;
+        }
+        Path input = inputFile(job);
+        long size = Files.exists(input) ? Files.size(input) : -1;
+        return job.getExportBytes() > 0 && size < job.getExportBytes();
+    }
+
+    /**
+     * Volta o job para EXPORTING com cursor zerado. As prescrições já gravadas ficam e contam para o
+     * {@code maxRecords}; as normalizações delas não são selecionadas de novo.
+     */
+    private void restartExport(RegenerationJob job) throws IOException {
+        log.warn("Regeneration job {} has no local batch files for {} on this instance; exporting again",
+                job.getId(), job.getStatus());
+        Path dir = inputFile(job).getParent();
+        if (Files.isDirectory(dir)) {
+            try (var files = Files.list(dir)) {
+                for (Path file : files.toList()) Files.deleteIfExists(file);
+            }
+        }
+        job.setCursorCreatedAt(null);
+        job.setCursorId(null);
+        job.setExportBytes(0);
+        job.setExportedCount(job.getIngestedCount());
+        job.setBackendJobId(null);
+        job.setExportedAt(null);
+        job.setInferredAt(null);
+        job.setIngestedLines(0);
+        job.setStatus(RegenerationStatus.EXPORTING);
+        checkpoint(job);
+        registry.counter("regeneration.export.restarts").increment();
+    }
+
+    private void export(RegenerationJob job) throws Exception {
+        Path input = inputFile(job);
+        Files.createDirectories(input.getParent());
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Descarta o que foi escrito depois do último checkpoint; o cursor refaz essas linhas
+            channel.truncate(job.getExportBytes());
+            channel.position(job.getExportBytes());
+
+            while (true) {
+                long remaining = job.getMaxRecords() != null ? job.getMaxRecords() - job.getExportedCount() : pageSize;
+                if (remaining <= 0) break;
+                List<Normalization> page = normalizationRepo.findRegenerationPage(
+                        job.getCreatedFrom(), job.getCreatedTo(),
+                        job.getCursorCreatedAt() != null ? job.getCursorCreatedAt() : job.getCreatedFrom(),
+                        job.getCursorId() != null ? job.getCursorId() : MIN_UUID,
+                        job.getPromptVersion(), job.getModelId(),
+                        PageRequest.of(0, (int) Math.min(pageSize, remaining)));
+                if (page.isEmpty()) break;
+
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                for (Normalization n : page) {
+                    ObjectNode record = objectMapper.createObjectNode();
+                    record.put("recordId", n.getId().toString());
+                    record.set("modelInput", llmService.planModelInput(n.getNormalizedTerms()));
+                    buf.write(objectMapper.writeValueAsBytes(record));
+                    buf.write('\n');
+                }
+                channel.write(ByteBuffer.wrap(buf.toByteArray()));
+                channel.force(false);
+
+                Normalization last = page.get(page.size() - 1);
+                job.setCursorCreatedAt(last.getCreatedAt());
+                job.setCursorId(last.getId());
+                job.setExportBytes(channel.position());
+                job.setExportedCount(job.getExportedCount() + page.size());
+                checkpoint(job);
+                registry.counter("regeneration.records", "phase", "exported").increment(page.size());
+                if (page.size() < pageSize) break;
+            }
+        }
+        log.info("Regeneration job {} exported {} records to {}", job.getId(), job.getExportedCount(), input);
+    }
+
+    private void submit(RegenerationJob job) throws IOException {
+        String backendJobId = backend(job).submit("regeneration-" + job.getId(), job.getModelId(), inputFile(job));
+        job.setBackendJobId(backendJobId);
+        if (job.getExportedAt() == null) job.setExportedAt(OffsetDateTime.now());
+        job.setStatus(RegenerationStatus.SUBMITTED);
+        checkpoint(job);
+        log.info("Regeneration job {} submitted to {} backend as {}", job.getId(), job.getBackend(), backendJobId);
+    }
+
+    private void ingest(RegenerationJob job) throws IOException {
+        Path output = backend(job).output(job.getBackendJobId());
+        String params = objectMapper.writeValueAsString(objectMapper.createObjectNode()
+                .put("promptVersion", job.getPromptVersion())
+                .put("regenerationJobId", job.getId().toString()));
+
+        try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+            String line;
+            for (long skipped = 0; skipped < job.getIngestedLines() && (line = reader.readLine()) != null; skipped++) { }
+
+            Batch batch = new Batch();
+            while ((line = reader.readLine()) != null) {
+                batch.lines++;
+                if (!line.isBlank()) {
+                    Prescription p = toPrescription(job, line, params, batch);
+                    if (p != null) batch.prescriptions.add(p);
+                }
+                if (batch.lines >= ingestBatchSize) {
+                    commit(job, batch);
+                    batch = new Batch();
+                }
+            }
+            commit(job, batch);
+        }
+        log.info("Regeneration job {} ingested {} prescriptions ({} failed records)",
+                job.getId(), job.getIngestedCount(), job.getFailedCount());
+    }
+
+    private static final class Batch {
+        final List<Prescription> prescriptions = new ArrayList<>();
+        long lines;
+        long failed;
+        long inputTokens;
+        long outputTokens;
+    }
+
+    private Prescription toPrescription(RegenerationJob job, String line, String params, Batch batch) {
+        try {
+            JsonNode record = objectMapper.readTree(line);
+            JsonNode modelOutput = record.get("modelOutput");
+            // Mesma regra do caminho online: bloqueio do guardrail vira prescrição BLOCKED, não registro com falha
+            GuardrailStatus guardrail = LlmService.guardrailStatus(record);
+            if ((modelOutput == null || modelOutput.isNull()) && guardrail == GuardrailStatus.BLOCKED) {
+                return prescription(job, record, LlmService.BLOCKED_PLAN, params, guardrail);
+            }
+            if (modelOutput == null || modelOutput.isNull()) {
+                // Sem prescrição: a normalização volta a ser selecionada numa próxima execução
+                log.warn("Regeneration job {} record {} failed: {}", job.getId(),
+                        record.path("recordId").asText(), record.path("error").path("errorMessage").asText());
+                batch.failed++;
+                return null;
+            }
+            LlmService.Completion completion = llmService.readModelOutput(modelOutput);
+            batch.inputTokens += completion.inputTokens();
+            batch.outputTokens += completion.outputTokens();
+
+            return prescription(job, record, guardrail == GuardrailStatus.BLOCKED ? LlmService.BLOCKED_PLAN : completion.text(),
+                    params, guardrail);
+        } catch (Exception e) {
+            log.warn("Regeneration job {} skipped unreadable output line: {}", job.getId(), e.getMessage());
+            batch.failed++;
+            return null;
+        }
+    }
+
+    private static Prescription prescription(RegenerationJob job, JsonNode record, String text, String params, GuardrailStatus guardrail) {
+        Prescription p = new Prescription();
+        p.setNormalizationId(UUID.fromString(record.path("recordId").asText()));
+        p.setPrescriptionText(text);
+        p.setParametersJson(params);
+        p.setPromptVersion(job.getPromptVersion());
+        p.setModelUsed(job.getModelId());
+        p.setGuardrailStatus(guardrail);
+        return p;
+    }
+
+    private void commit(RegenerationJob job, Batch batch) {
+        if (batch.lines == 0) return;
+        add(job, batch, 1);
+        try {
+            tx.executeWithoutResult(status -> {
+                holdLease(job);
+                prescriptionRepo.saveAll(batch.prescriptions);
+                jobRepo.save(job);
+            });
+        } catch (RuntimeException e) {
+            // O checkpoint em memória não pode avançar além do que foi gravado
+            add(job, batch, -1);
+            throw e;
+        }
+        registry.counter("regeneration.records", "phase", "ingested").increment(batch.prescriptions.size());
+        registry.counter("regeneration.records", "phase", "failed").increment(batch.failed);
+    }
+
+    private static void add(RegenerationJob job, Batch batch, int sign) {
+        job.setIngestedLines(job.getIngestedLines() + sign * batch.lines);
+        job.setIngestedCount(job.getIngestedCount() + sign * batch.prescriptions.size());
+        job.setFailedCount(job.getFailedCount() + sign * batch.failed);
+        job.setInputTokens(job.getInputTokens() + sign * batch.inputTokens);
+        job.setOutputTokens(job.getOutputTokens() + sign * batch.outputTokens);
+    }
+
+    private void finish(RegenerationJob job) throws Exception {
+        job.setFinishedAt(OffsetDateTime.now());
+        job.setStatus(RegenerationStatus.COMPLETED);
+        job.setReport(objectMapper.writeValueAsString(report(job, objectMapper)));
+        job.setLeaseOwner(null);
+        job.setLeaseUntil(null);
+        checkpoint(job);
+        log.info("Regeneration job {} completed: {}", job.getId(), job.getReport());
+    }
+
+    private void fail(RegenerationJob job, String error) {
+        try {
+            job.setStatus(RegenerationStatus.FAILED);
+            job.setError(error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+            job.setFinishedAt(OffsetDateTime.now());
+            job.setLeaseOwner(null);
+            job.setLeaseUntil(null);
+            checkpoint(job);
+        } catch (LeaseLostException e) {
+            log.warn("Regeneration job {} was taken over by another instance; failure not recorded", job.getId());
+        } catch (Exception e) {
+            log.error("Could not mark regeneration job {} as failed - will retry on next run", job.getId(), e);
+        }
+    }
+
+    /** Grava o job só se esta instância ainda tiver o lease dele. */
+    private void checkpoint(RegenerationJob job) {
+        tx.executeWithoutResult(status -> {
+            holdLease(job);
+            jobRepo.save(job);
+        });
+    }
+
+    /**
+     * Renova o lease dentro da transação corrente; lança {@link LeaseLostException} se outra instância assumiu.
+     * Os campos de lease do objeto só são atualizados enquanto o job segue ativo: finish e fail os limpam antes.
+     */
+    private void holdLease(RegenerationJob job) {
+        OffsetDateTime until = OffsetDateTime.now().plus(leaseDuration);
+        if (jobRepo.renewLease(job.getId(), instanceId, until) == 0) {
+            throw new LeaseLostException();
+        }
+        if (ACTIVE.contains(job.getStatus())) {
+            job.setLeaseOwner(instanceId);
+            job.setLeaseUntil(until);
+        }
+    }
+
+    private static class LeaseLostException extends RuntimeException {
+    }
+
+    /**
+     * Relatório de vazão: registros por segundo em cada fase (tempo de parede entre os marcos do job, incluindo
+     * esperas e retomadas), contagens e tokens consumidos.
+     */
+    static ObjectNode report(RegenerationJob job, ObjectMapper objectMapper) {
+        ObjectNode report = objectMapper.createObjectNode();
+        report.put("exported", job.getExportedCount());
+        report.put("ingested", job.getIngestedCount());
+        report.put("failed", job.getFailedCount());
+        report.put("inputTokens", job.getInputTokens());
+        report.put("outputTokens", job.getOutputTokens());
+        ObjectNode phases = report.putObject("phases");
+        phase(phases, "export", job.getCreatedAt(), job.getExportedAt(), job.getExportedCount());
+        phase(phases, "inference", job.getExportedAt(), job.getInferredAt(), job.getExportedCount());
+        phase(phases, "ingest", job.getInferredAt(), job.getFinishedAt(), job.getIngestedLines());
+        phase(report, "total", job.getCreatedAt(), job.getFinishedAt(), job.getIngestedCount());
+        return report;
+    }
+
+    private static void phase(ObjectNode parent, String name, OffsetDateTime start, OffsetDateTime end, long records) {
+        if (start == null || end == null) return;
+        double seconds = Math.max(0, Duration.between(start, end).toMillis()) / 1000.0;
+        ObjectNode node = parent.putObject(name);
+        node.put("records", records);
+        node.put("seconds", seconds);
+        node.put("recordsPerSecond", seconds > 0 ? Math.round(records / seconds * 100) / 100.0 : records);
+    }
+
+    private Path inputFile(RegenerationJob job) {
+        return workDir.resolve(job.getId().toString()).resolve("input.jsonl");
+    }
+
+    private BatchInferenceBackend backend() {
+        return backends.stream().filter(b -> b.name().equals(backendName)).findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown regeneration backend: " + backendName));
+    }
+
+    private BatchInferenceBackend backend(RegenerationJob job) {
+        return backends.stream().filter(b -> b.name().equals(job.getBackend())).findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown regeneration backend: " + job.getBackend()));
+    }
+}
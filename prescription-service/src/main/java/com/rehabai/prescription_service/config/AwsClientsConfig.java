@@ -3,10 +3,14 @@ package com.rehabai.prescription_service.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 import software.amazon.awssdk.services.textract.TextractClient;
 
@@ -26,11 +30,17 @@ public class AwsClientsConfig {
         return builder.build();
     }
 
+    /**
+     * Com o {@code BedrockLimiter} ligado, é ele quem repete as chamadas em throttling (com backoff e ajuste do
+     * limite); o retry padrão do SDK multiplicaria as tentativas por baixo dele e esconderia o throttling do AIMD.
+     */
     @Bean
     public BedrockRuntimeClient bedrockRuntimeClient(@Value("${AWS_REGION:us-east-1}") String region,
                                                      @Value("${BEDROCK_AWS_ACCESS_KEY_ID:}") String bedrockAccessKey,
-                                                     @Value("${BEDROCK_AWS_SECRET_ACCESS_KEY:}") String bedrockSecretKey) {
-        var builder = BedrockRuntimeClient.builder().region(Region.of(region));
+                                                     @Value("${BEDROCK_AWS_SECRET_ACCESS_KEY:}") String bedrockSecretKey,
+                                                     @Value("${llm.limiter.enabled:true}") boolean limiterEnabled) {
+        var builder = BedrockRuntimeClient.builder().region(Region.of(region))
+                .overrideConfiguration(bedrockOverrides(limiterEnabled));
         if (bedrockAccessKey != null && !bedrockAccessKey.isBlank() && bedrockSecretKey != null && !bedrockSecretKey.isBlank()) {
             builder = builder.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(bedrockAccessKey, bedrockSecretKey)));
         } else {
@@ -38,4 +48,32 @@ public class AwsClientsConfig {
         }
         return builder.build();
     }
+
+    /**
+     * Cliente assíncrono (Netty), usado só no modo streaming ({@code llm.streaming.enabled}); lazy para não
+     * subir o event loop quando o streaming está desligado.
+     */
+    @Bean
+    @Lazy
+    public BedrockRuntimeAsyncClient bedrockRuntimeAsyncClient(@Value("${AWS_REGION:us-east-1}") String region,
+                                                               @Value("${BEDROCK_AWS_ACCESS_KEY_ID:}") String bedrockAccessKey,
+                                                               @Value("${BEDROCK_AWS_SECRET_ACCESS_KEY:}") String bedrockSecretKey,
+                                                               @Value("${llm.limiter.enabled:true}") boolean limiterEnabled) {
+        var builder = BedrockRuntimeAsyncClient.builder().region(Region.of(region))
+                .overrideConfiguration(bedrockOverrides(limiterEnabled));
+        if (bedrockAccessKey != null && !bedrockAccessKey.isBlank() && bedrockSecretKey != null && !bedrockSecretKey.isBlank()) {
+            builder = builder.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(bedrockAccessKey, bedrockSecretKey)));
+        } else {
+            builder = builder.credentialsProvider(DefaultCredentialsProvider.builder().build());
+        }
+        return builder.build();
+    }
+
+    private static ClientOverrideConfiguration bedrockOverrides(boolean limiterEnabled) {
+        var overrides = ClientOverrideConfiguration.builder();
+        if (limiterEnabled) {
+            overrides.retryStrategy(AwsRetryStrategy.doNotRetry());
+        }
+        return overrides.build();
+    }
 }
@@ -1,16 +1,24 @@
 package com.rehabai.prescription_service.consumer;
 
 import com.rehabai.prescription_service.events.FileUploadedEvent;
+import com.rehabai.prescription_service.ocr.SourceDocument;
 import com.rehabai.prescription_service.service.PipelineService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
+import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
+
 @Component
 public class FileUploadedListener {
 
@@ -18,10 +26,23 @@ public class FileUploadedListener {
 
     private final S3Client s3Client;
     private final PipelineService pipelineService;
+    private final Path tmpDir;
+    private final Timer downloadTimer;
+    private final DistributionSummary downloadSize;
 
-    public FileUploadedListener(S3Client s3Client, PipelineService pipelineService) {
+    public FileUploadedListener(S3Client s3Client,
+                                PipelineService pipelineService,
+                                MeterRegistry registry,
+                                @Value("${ocr.ingest.tmpDir:${java.io.tmpdir}}") String tmpDir) {
         this.s3Client = s3Client;
         this.pipelineService = pipelineService;
+        this.tmpDir = Path.of(tmpDir);
+        this.downloadTimer = Timer.builder("pipeline.ingest.download")
+                .description("Tempo para baixar o arquivo do S3 para o disco local")
+                .register(registry);
+        this.downloadSize = DistributionSummary.builder("pipeline.ingest.bytes")
+                .baseUnit("bytes")
+                .register(registry);
     }
 
     @RabbitListener(queues = "${amqp.prescriptionQueue:prescription.file.uploaded}")
@@ -36,16 +57,30 @@ public class FileUploadedListener {
             return;
         }
 
-        try {
-            ResponseBytes<GetObjectResponse> bytes = s3Client.getObjectAsBytes(GetObjectRequest.builder()
-                    .bucket(event.bucket())
-                    .key(event.s3Path())
-                    .build());
-            byte[] content = bytes.asByteArray();
-            String contentType = bytes.response() != null ? bytes.response().contentType() : null;
-            log.info("Downloaded file bytes: {} bytes (contentType={}). Starting pipeline...", content.length, contentType);
-            pipelineService.processFile(event.id(), event.userId(), content, event.originalName(), contentType);
-            log.info("[Prescription] Pipeline completed for file {}", event.id());
+        // Entrega at-least-once: uma reentrega do mesmo arquivo não pode disparar outro OCR e outra chamada ao Bedrock
+        if (!pipelineService.shouldProcess(event.id())) {
+            log.info("[Prescription] Skipping file {} - already processed or in progress", event.id());
+            return;
+        }
+
+        // O objeto vai direto do stream do S3 para um arquivo temporário: nenhuma cópia inteira no heap
+        Timer.Sample download = Timer.start();
+        try (ResponseInputStream<GetObjectResponse> object = s3Client.getObject(GetObjectRequest.builder()
+                     .bucket(event.bucket())
+                     .key(event.s3Path())
+                     .build());
+             SourceDocument document = SourceDocument.download(object, tmpDir)) {
+            download.stop(downloadTimer);
+            downloadSize.record(document.size());
+            String contentType = object.response() != null ? object.response().contentType() : null;
+            log.info("Downloaded file to {}: {} bytes (contentType={}). Starting pipeline...", document.path(), document.size(), contentType);
+            // Retorna depois da extração persistida; só então o arquivo temporário é apagado
+            pipelineService.processFile(event.id(), event.userId(), document, event.originalName(), contentType, event.hashSha256());
+            log.info("[Prescription] Extraction persisted for file {}; normalization and prescription continue asynchronously", event.id());
+        } catch (RejectedExecutionException e) {
+            // Executor de extração indisponível (shutdown): relança para a mensagem voltar à fila em vez de ser confirmada
+            log.warn("[Prescription] Extraction stage rejected file {}; requeueing: {}", event.id(), e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("[Prescription] Error processing file {}: {}", event.id(), e.getMessage(), e);
             // TODO: handle error status and publish failure event if needed
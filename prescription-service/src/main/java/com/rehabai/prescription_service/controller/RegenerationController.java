@@ -0,0 +1,74 @@
+package com.rehabai.prescription_service.controller;
+
+import com.rehabai.prescription_service.batch.RegenerationService;
+import com.rehabai.prescription_service.dto.RegenerationRequest;
+import com.rehabai.prescription_service.model.RegenerationJob;
+import com.rehabai.prescription_service.security.SecurityHelper;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/prescriptions/regenerations")
+@RequiredArgsConstructor
+@Tag(name = "Batch Regeneration", description = "Regeneração de prescrições em lote após mudança de prompt ou modelo")
+public class RegenerationController {
+
+    private final RegenerationService regenerationService;
+    private final SecurityHelper securityHelper;
+
+    @Operation(
+        summary = "Criar job de regeneração",
+        description = "🔒 ADMIN - Seleciona normalizações pelos critérios e regenera as prescrições em lote (export → batch → ingestão)",
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponse(responseCode = "202", description = "✅ Job criado")
+    @PostMapping
+    public ResponseEntity<RegenerationJob> create(@RequestBody RegenerationRequest req) {
+        securityHelper.requireAdmin();
+        RegenerationJob job = regenerationService.create(req.createdFrom(), req.createdTo(), req.maxRecords(), req.modelId());
+        return ResponseEntity.accepted()
+                .location(URI.create("/prescriptions/regenerations/" + job.getId()))
+                .body(job);
+    }
+
+    @Operation(
+        summary = "Status do job de regeneração",
+        description = "🔒 ADMIN - Fase, checkpoint e relatório de vazão do job",
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponse(responseCode = "200", description = "✅ Job encontrado")
+    @GetMapping("/{id}")
+    public ResponseEntity<?> get(@Parameter(description = "UUID do job") @PathVariable UUID id) {
+        securityHelper.requireAdmin();
+        return regenerationService.find(id)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(
+        summary = "Retomar job de regeneração",
+        description = "🔒 ADMIN - Retoma um job FAILED a partir do último checkpoint",
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponse(responseCode = "202", description = "✅ Job retomado")
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<?> resume(@Parameter(description = "UUID do job") @PathVariable UUID id) {
+        securityHelper.requireAdmin();
+        if (regenerationService.find(id).isEmpty()) return ResponseEntity.notFound().build();
+        try {
+            return ResponseEntity.accepted().body(regenerationService.resume(id));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", "job_not_failed"));
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.rehabai.prescription_service.controller;
 
 import com.rehabai.prescription_service.dto.PlanDraftResponse;
+import com.rehabai.prescription_service.llm.PlanStreamHub;
 import com.rehabai.prescription_service.security.SecurityHelper;
 import com.rehabai.prescription_service.model.*;
 import com.rehabai.prescription_service.repository.*;
@@ -11,8 +12,10 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
@@ -31,6 +34,7 @@ public class WorkflowController {
     private final PrescriptionRepository prescriptionRepo;
     private final AiTraceRepository aiTraceRepo;
     private final PlanDraftService planDraftService;
+    private final PlanStreamHub planStreamHub;
     private final SecurityHelper securityHelper;
 
     @Operation(summary = "Buscar workflow mais recente", description = "🔒 CLINICIAN - Último workflow de um arquivo", security = @SecurityRequirement(name = "bearerAuth"))
@@ -59,6 +63,42 @@ public class WorkflowController {
         ));
     }
 
+    /**
+     * Acompanha a geração do plano de um arquivo via Server-Sent Events.
+     * Eventos: {@code plan.partial} (plano parcial a cada campo/exercício concluído), {@code plan.done}
+     * (id da prescrição salva) e {@code plan.error}. Se o run já terminou, envia {@code plan.done} ou
+     * {@code plan.error} e encerra.
+     * <p>
+     * A inscrição vem antes da consulta ao run: um término entre as duas chega pelo canal, e um anterior já está
+     * gravado quando a consulta roda (o pipeline grava o estado antes de avisar o hub).
+     */
+    @Operation(summary = "Acompanhar geração do plano (SSE)", description = "🔒 CLINICIAN - Plano parcial enquanto o Bedrock gera a resposta", security = @SecurityRequirement(name = "bearerAuth"))
+    @ApiResponse(responseCode = "200", description = "✅ Stream de eventos aberto")
+    @GetMapping(value = "/files/{fileId}/plan-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPlan(@Parameter(description = "UUID do arquivo") @PathVariable UUID fileId) {
+        securityHelper.requireClinician();
+        SseEmitter emitter = planStreamHub.subscribe(fileId);
+        var run = runRepo.findTopByFileIdOrderByCreatedAtDesc(fileId).orElse(null);
+        if (run == null || run.getStatus() == WorkflowStatus.RUNNING) {
+            return emitter;
+        }
+        if (run.getStatus() == WorkflowStatus.FAILED) {
+            planStreamHub.close(fileId, emitter, PlanStreamHub.EVENT_ERROR, PlanStreamHub.errorPayload("Pipeline failed"));
+            return emitter;
+        }
+        var prescription = extractionRepo.findTopByFileIdOrderByCreatedAtDesc(fileId)
+                .flatMap(e -> normalizationRepo.findTopByExtractionIdOrderByCreatedAtDesc(e.getId()))
+                .flatMap(n -> prescriptionRepo.findTopByNormalizationIdOrderByCreatedAtDesc(n.getId()))
+                .orElse(null);
+        if (prescription != null) {
+            planStreamHub.close(fileId, emitter, PlanStreamHub.EVENT_DONE, Map.of("prescriptionId", prescription.getId(),
+                    "guardrailStatus", prescription.getGuardrailStatus()));
+        } else {
+            planStreamHub.close(fileId, emitter, PlanStreamHub.EVENT_ERROR, PlanStreamHub.errorPayload("Prescription not found"));
+        }
+        return emitter;
+    }
+
     @Operation(summary = "Buscar extraction por ID", security = @SecurityRequirement(name = "bearerAuth"))
     @ApiResponse(responseCode = "200", description = "✅ Extraction encontrada")
     @GetMapping("/extractions/{id}")
@@ -0,0 +1,20 @@
+package com.rehabai.prescription_service.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.OffsetDateTime;
+
+@Schema(description = "Critérios para regenerar prescrições em lote")
+public record RegenerationRequest(
+    @Schema(description = "Normalizações criadas a partir de (inclusivo, opcional)", example = "2025-01-01T00:00:00Z")
+    OffsetDateTime createdFrom,
+
+    @Schema(description = "Normalizações criadas antes de (exclusivo, opcional; padrão: agora)", example = "2025-07-01T00:00:00Z")
+    OffsetDateTime createdTo,
+
+    @Schema(description = "Máximo de normalizações no job (opcional)", example = "5000")
+    Integer maxRecords,
+
+    @Schema(description = "Modelo alvo (opcional; padrão: modelo configurado)", example = "anthropic.claude-haiku-4-5-20251001-v1:0")
+    String modelId
+) {}
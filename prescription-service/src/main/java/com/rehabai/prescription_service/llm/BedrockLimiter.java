@@ -0,0 +1,278 @@
+package com.rehabai.prescription_service.llm;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.bedrockruntime.model.ServiceQuotaExceededException;
+import software.amazon.awssdk.services.bedrockruntime.model.ServiceUnavailableException;
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.DoubleSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Limitador adaptativo na frente do Bedrock.
+ * <ul>
+ *   <li>Concorrência AIMD: cada sucesso soma {@code 1/limite} (≈ +1 por "rodada"); throttling multiplica o
+ *   limite por {@code backoffRatio}; latência acima de {@code latencyTargetMs} reduz de leve.</li>
+ *   <li>Cotas por minuto de requisições e de tokens (token buckets), para não estourar RPM/TPM da conta.
+ *   A reserva de tokens usa uma estimativa e é acertada com o uso real informado pelo Bedrock.</li>
+ * </ul>
+ * Sem vaga, quem chama espera (até {@code maxWaitMs}): o estágio de prescrição fica ocupado, a fila dele
+ * enche e a pressão volta para o consumidor AMQP em vez de gerar prescrições de erro.
+ */
+@Component
+public class BedrockLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(BedrockLimiter.class);
+
+    @FunctionalInterface
+    public interface Invocation<T> {
+        T invoke() throws Exception;
+    }
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition changed = lock.newCondition();
+
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyTargetNanos;
+    private final long maxWaitNanos;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+    private final TokenBucket requests;
+    private final TokenBucket tokens;
+    private final Timer waitTimer;
+    private final Timer latencyTimer;
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private double expectedOutputTokens;
+
+    public BedrockLimiter(MeterRegistry registry,
+                          @Value("${llm.limiter.enabled:true}") boolean enabled,
+                          @Value("${llm.limiter.initialLimit:4}") int initialLimit,
+                          @Value("${llm.limiter.minLimit:1}") int minLimit,
+                          @Value("${llm.limiter.maxLimit:32}") int maxLimit,
+                          @Value("${llm.limiter.backoffRatio:0.5}") double backoffRatio,
+                          @Value("${llm.limiter.latencyTargetMs:0}") long latencyTargetMs,
+                          @Value("${llm.limiter.requestsPerMinute:0}") int requestsPerMinute,
+                          @Value("${llm.limiter.tokensPerMinute:0}") int tokensPerMinute,
+                          @Value("${llm.limiter.maxWaitMs:300000}") long maxWaitMs,
+                          @Value("${llm.limiter.maxRetries:3}") int maxRetries,
+                          @Value("${llm.limiter.retryBackoffMs:1000}") long retryBackoffMs) {
+        this.registry = registry;
+        this.enabled = enabled;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.backoffRatio = backoffRatio > 0 && backoffRatio < 1 ? backoffRatio : 0.5;
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, latencyTargetMs));
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, maxWaitMs));
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBackoffMs = Math.max(0, retryBackoffMs);
+        this.requests = requestsPerMinute > 0 ? new TokenBucket(requestsPerMinute) : null;
+        this.tokens = tokensPerMinute > 0 ? new TokenBucket(tokensPerMinute) : null;
+        this.expectedOutputTokens = 1000;
+
+        this.waitTimer = Timer.builder("llm.limiter.wait")
+                .description("Tempo aguardando vaga no limitador do Bedrock")
+                .register(registry);
+        this.latencyTimer = Timer.builder("llm.limiter.latency")
+                .description("Latência das chamadas ao Bedrock que passaram pelo limitador")
+                .register(registry);
+        Gauge.builder("llm.limiter.limit", this, l -> l.read(() -> Math.floor(l.limit))).register(registry);
+        Gauge.builder("llm.limiter.inflight", this, l -> l.read(() -> l.inFlight)).register(registry);
+        Gauge.builder("llm.limiter.queue", this, l -> l.read(() -> l.waiting)).register(registry);
+        if (requests != null) {
+            Gauge.builder("llm.limiter.rate.used", this, l -> l.read(() -> l.requests.used())).tag("type", "requests").register(registry);
+        }
+        if (tokens != null) {
+            Gauge.builder("llm.limiter.rate.used", this, l -> l.read(() -> l.tokens.used())).tag("type", "tokens").register(registry);
+        }
+    }
+
+    /**
+     * Executa a chamada respeitando o limite de concorrência e as cotas, com novas tentativas em throttling.
+     *
+     * @param estimatedInputTokens estimativa de tokens de entrada (reserva na cota de TPM)
+     * @param tokensUsed           extrai do resultado os tokens realmente consumidos
+     */
+    public <T> T call(int estimatedInputTokens, Invocation<T> invocation, ToIntFunction<T> tokensUsed) throws Exception {
+        if (!enabled) return invocation.invoke();
+
+        for (int attempt = 0; ; attempt++) {
+            int reserved = acquire(estimatedInputTokens);
+            long start = System.nanoTime();
+            try {
+                T result = invocation.invoke();
+                long latency = System.nanoTime() - start;
+                latencyTimer.record(latency, TimeUnit.NANOSECONDS);
+                onSuccess(latency, reserved, tokensUsed.applyAsInt(result), estimatedInputTokens);
+                return result;
+            } catch (Exception e) {
+                if (!isOverload(e)) {
+                    release();
+                    throw e;
+                }
+                onThrottle();
+                if (attempt >= maxRetries) {
+                    registry.counter("llm.limiter.rejections", "reason", "throttled").increment();
+                    throw new LlmUnavailableException("Bedrock still throttling after " + (attempt + 1) + " attempts", e);
+                }
+                long backoff = retryBackoffMs << Math.min(attempt, 6);
+                log.warn("Bedrock throttled (attempt {}), retrying in {} ms with limit {}", attempt + 1, backoff, currentLimit());
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    public int currentLimit() {
+        return (int) read(() -> Math.floor(limit));
+    }
+
+    static boolean isOverload(Throwable e) {
+        return e instanceof ThrottlingException
+                || e instanceof ServiceQuotaExceededException
+                || e instanceof ServiceUnavailableException;
+    }
+
+    private int acquire(int estimatedInputTokens) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        long waitStart = System.nanoTime();
+        lock.lock();
+        try {
+            waiting++;
+            try {
+                while (true) {
+                    int reserve = estimatedInputTokens + (int) expectedOutputTokens;
+                    long now = System.nanoTime();
+                    long rateWait = Math.max(requests != null ? requests.nanosUntil(1, now) : 0,
+                            tokens != null ? tokens.nanosUntil(Math.min(reserve, tokens.capacity), now) : 0);
+                    if (inFlight < (int) Math.floor(limit) && rateWait == 0) {
+                        inFlight++;
+                        if (requests != null) requests.take(1, now);
+                        if (tokens != null) tokens.take(reserve, now);
+                        return reserve;
+                    }
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        registry.counter("llm.limiter.rejections", "reason", "timeout").increment();
+                        throw new LlmUnavailableException("No Bedrock capacity within " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms", null);
+                    }
+                    // Sem sinal para a cota: acorda quando o bucket tiver reposto o suficiente
+                    changed.awaitNanos(rateWait > 0 ? Math.min(rateWait, remaining) : remaining);
+                }
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+            waitTimer.record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void onSuccess(long latencyNanos, int reserved, int used, int estimatedInputTokens) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (latencyTargetNanos > 0 && latencyNanos > latencyTargetNanos) {
+                limit = Math.max(minLimit, limit * 0.9);
+            } else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            if (tokens != null && used > 0) {
+                // Acerta a reserva com o consumo real (pode devolver ou cobrar a diferença)
+                tokens.adjust(reserved - used);
+            }
+            if (used > 0) {
+                int output = Math.max(0, used - estimatedInputTokens);
+                expectedOutputTokens = 0.8 * expectedOutputTokens + 0.2 * output;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onThrottle() {
+        registry.counter("llm.limiter.throttles").increment();
+        lock.lock();
+        try {
+            inFlight--;
+            limit = Math.max(minLimit, limit * backoffRatio);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double read(DoubleSupplier value) {
+        lock.lock();
+        try {
+            return value.getAsDouble();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bucket reposto continuamente até {@code capacity} por minuto; sempre acessado sob {@link #lock}. */
+    private static final class TokenBucket {
+        final int capacity;
+        final double perNano;
+        double available;
+        long updatedAt;
+
+        TokenBucket(int perMinute) {
+            this.capacity = perMinute;
+            this.perNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.available = perMinute;
+            this.updatedAt = System.nanoTime();
+        }
+
+        long nanosUntil(int amount, long now) {
+            refill(now);
+            return available >= amount ? 0 : (long) Math.ceil((amount - available) / perNano);
+        }
+
+        void take(int amount, long now) {
+            refill(now);
+            available -= amount;
+        }
+
+        void adjust(int delta) {
+            available = Math.min(capacity, available + delta);
+        }
+
+        double used() {
+            refill(System.nanoTime());
+            return capacity - Math.max(0, available);
+        }
+
+        private void refill(long now) {
+            available = Math.min(capacity, available + (now - updatedAt) * perNano);
+            updatedAt = now;
+        }
+    }
+}
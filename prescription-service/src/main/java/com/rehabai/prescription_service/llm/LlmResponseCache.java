@@ -0,0 +1,271 @@
+package com.rehabai.prescription_service.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.rehabai.prescription_service.model.LlmCacheEntry;
+import com.rehabai.prescription_service.repository.LlmCacheRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache de respostas do Bedrock na frente da geração de planos.
+ * <p>
+ * A chave é o SHA-256 do JSON normalizado em forma canônica (chaves ordenadas, textos com espaços/caixa/Unicode
+ * normalizados, listas de valores simples ordenadas) junto com modelo, versão do prompt e configuração de
+ * guardrail, então encaminhamentos equivalentes reaproveitam a mesma resposta. Dois níveis: memória (LRU
+ * limitado por quantidade e TTL) e, opcionalmente, Postgres ({@code llm_response_cache}), compartilhado entre
+ * instâncias. Falhas do cache nunca interrompem a geração: são logadas e tratadas como miss.
+ */
+@Component
+public class LlmResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmResponseCache.class);
+
+    /** Chave lógica; {@link #id()} é o hash usado como PK. */
+    public record Key(String canonicalInput, String modelId, String promptVersion, String guardrailConfig) {
+        public String id() {
+            return sha256Hex(canonicalInput + "|" + modelId + "|" + promptVersion + "|" + guardrailConfig);
+        }
+    }
+
+    /** Resposta guardada e o custo em tokens da chamada que a produziu. */
+    public record Entry(String response, int inputTokens, int outputTokens) {}
+
+    private record LocalEntry(Entry entry, long createdAtMillis) {}
+
+    private final LlmCacheRepository repository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final boolean dbEnabled;
+    private final Duration ttl;
+    private final Map<String, LocalEntry> local;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LlmResponseCache(LlmCacheRepository repository,
+                            ObjectMapper objectMapper,
+                            MeterRegistry registry,
+                            @Value("${llm.cache.enabled:true}") boolean enabled,
+                            @Value("${llm.cache.db.enabled:true}") boolean dbEnabled,
+                            @Value("${llm.cache.ttlHours:168}") long ttlHours,
+                            @Value("${llm.cache.local.maxEntries:1000}") int maxEntries) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.dbEnabled = dbEnabled;
+        this.ttl = Duration.ofHours(Math.max(1, ttlHours));
+        int max = Math.max(1, maxEntries);
+        this.local = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LocalEntry> eldest) {
+                if (size() <= max) return false;
+                registry.counter("llm.cache.evictions", "tier", "local", "reason", "size").increment();
+                return true;
+            }
+        };
+
+        Gauge.builder("llm.cache.local.entries", this, LlmResponseCache::localSize).register(registry);
+        Gauge.builder("llm.cache.hit.ratio", this, LlmResponseCache::hitRatio)
+                .description("Fração das gerações atendidas pelo cache (qualquer nível)")
+                .register(registry);
+    }
+
+    public Key key(String normalizedJson, String modelId, String promptVersion, String guardrailConfig) {
+        return new Key(canonicalize(normalizedJson), modelId, promptVersion, guardrailConfig);
+    }
+
+    public Optional<Entry> get(Key key) {
+        if (!enabled) return Optional.empty();
+        String id = key.id();
+
+        Optional<Entry> hit = getLocal(id);
+        if (hit.isPresent()) {
+            recordHit("local", hit.get());
+            return hit;
+        }
+        registry.counter("llm.cache.requests", "tier", "local", "result", "miss").increment();
+
+        if (dbEnabled) {
+            try {
+                Optional<LlmCacheEntry> row = repository.findById(id);
+                if (row.isPresent() && !isExpired(row.get().getCreatedAt().toInstant().toEpochMilli())) {
+                    LlmCacheEntry e = row.get();
+                    Entry entry = new Entry(e.getResponse(),
+                            e.getInputTokens() != null ? e.getInputTokens() : 0,
+                            e.getOutputTokens() != null ? e.getOutputTokens() : 0);
+                    putLocal(id, entry, e.getCreatedAt().toInstant().toEpochMilli());
+                    recordHit("db", entry);
+                    return Optional.of(entry);
+                }
+            } catch (Exception e) {
+                log.warn("LLM cache lookup failed (db tier): {}", e.getMessage());
+            }
+            registry.counter("llm.cache.requests", "tier", "db", "result", "miss").increment();
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    public void put(Key key, Entry entry) {
+        if (!enabled || entry == null || entry.response() == null || entry.response().isBlank()) return;
+        String id = key.id();
+        long now = System.currentTimeMillis();
+        putLocal(id, entry, now);
+        if (!dbEnabled) return;
+        try {
+            repository.upsert(id, key.modelId(), key.promptVersion(), entry.response(),
+                    entry.inputTokens(), entry.outputTokens(),
+                    OffsetDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneOffset.UTC));
+        } catch (Exception e) {
+            log.warn("LLM cache write failed (db tier): {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${llm.cache.purgeCron:0 45 * * * *}")
+    public void purgeExpired() {
+        if (!enabled) return;
+        try {
+            synchronized (local) {
+                local.entrySet().removeIf(e -> isExpired(e.getValue().createdAtMillis()));
+            }
+            if (dbEnabled) {
+                int removed = repository.deleteByCreatedAtBefore(OffsetDateTime.now(ZoneOffset.UTC).minus(ttl));
+                if (removed > 0) {
+                    registry.counter("llm.cache.evictions", "tier", "db", "reason", "ttl").increment(removed);
+                    log.info("LLM cache purge: removed {} expired rows", removed);
+                }
+            }
+        } catch (Exception e) {
+            log.error("LLM cache purge failed - will retry on next run", e);
+        }
+    }
+
+    /**
+     * Forma canônica do JSON normalizado. Entradas que não são JSON válido só têm espaços e caixa normalizados.
+     */
+    String canonicalize(String normalizedJson) {
+        if (normalizedJson == null) return "";
+        try {
+            JsonNode node = objectMapper.readTree(normalizedJson);
+            if (node == null || node.isMissingNode()) return normalizeText(normalizedJson);
+            return objectMapper.writeValueAsString(canonical(node));
+        } catch (Exception e) {
+            return normalizeText(normalizedJson);
+        }
+    }
+
+    private JsonNode canonical(JsonNode node) {
+        if (node.isObject()) {
+            ObjectNode out = JsonNodeFactory.instance.objectNode();
+            for (String field : new TreeSet<>(fieldNames(node))) {
+                JsonNode value = node.get(field);
+                if (value != null && !value.isNull()) out.set(field, canonical(value));
+            }
+            return out;
+        }
+        if (node.isArray()) {
+            List<JsonNode> items = new ArrayList<>();
+            node.forEach(item -> items.add(canonical(item)));
+            // A ordem de achados/condições não muda o plano; listas de objetos mantêm a ordem original
+            if (items.stream().allMatch(JsonNode::isValueNode)) {
+                items.sort(Comparator.comparing(JsonNode::asText));
+            }
+            ArrayNode out = JsonNodeFactory.instance.arrayNode();
+            items.forEach(out::add);
+            return out;
+        }
+        if (node.isTextual()) {
+            return TextNode.valueOf(normalizeText(node.asText()));
+        }
+        return node;
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    private static String normalizeText(String s) {
+        return Normalizer.normalize(s, Normalizer.Form.NFC).strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private Optional<Entry> getLocal(String id) {
+        synchronized (local) {
+            LocalEntry e = local.get(id);
+            if (e == null) return Optional.empty();
+            if (isExpired(e.createdAtMillis())) {
+                local.remove(id);
+                registry.counter("llm.cache.evictions", "tier", "local", "reason", "ttl").increment();
+                return Optional.empty();
+            }
+            return Optional.of(e.entry());
+        }
+    }
+
+    private void putLocal(String id, Entry entry, long createdAtMillis) {
+        synchronized (local) {
+            local.put(id, new LocalEntry(entry, createdAtMillis));
+        }
+    }
+
+    private void recordHit(String tier, Entry entry) {
+        hits.incrementAndGet();
+        registry.counter("llm.cache.requests", "tier", tier, "result", "hit").increment();
+        registry.counter("llm.cache.tokens.saved", "type", "input").increment(entry.inputTokens());
+        registry.counter("llm.cache.tokens.saved", "type", "output").increment(entry.outputTokens());
+    }
+
+    private int localSize() {
+        synchronized (local) {
+            return local.size();
+        }
+    }
+
+    private double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    private boolean isExpired(long createdAtMillis) {
+        return System.currentTimeMillis() - createdAtMillis > ttl.toMillis();
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
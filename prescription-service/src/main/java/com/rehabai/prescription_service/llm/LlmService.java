@@ -1,19 +1,33 @@
 package com.rehabai.prescription_service.llm;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.rehabai.prescription_service.model.GuardrailStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
-import software.amazon.awssdk.services.bedrockruntime.model.ValidationException;: Para capturar erros de guardrail
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler;
+import software.amazon.awssdk.services.bedrockruntime.model.ValidationException;
 
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 @Service
 public class LlmService {
@@ -30,35 +44,72 @@ public class LlmService {
 
     // Representa a resposta da API Anthropic Messages
     private record AnthropicResponseContent(String type, String text) {}
-    private record AnthropicResponse(List<AnthropicResponseContent> content) {}
+    private record AnthropicUsage(@JsonProperty("input_tokens") int inputTokens,
+                                  @JsonProperty("output_tokens") int outputTokens) {}
+    private record AnthropicResponse(List<AnthropicResponseContent> content, AnthropicUsage usage) {}
+
+    /** Texto gerado e tokens consumidos pela chamada. */
+    public record Completion(String text, int inputTokens, int outputTokens) {}
+
+    public static final String PROMPT_VERSION = "v1";
+    /** Plano gravado quando o guardrail bloqueia a geração, online ou em batch. */
+    public static final String BLOCKED_PLAN = "{\"plan\": \"Geração bloqueada pela política de segurança\"}";
+    private static final int PLAN_MAX_TOKENS = 4096;
 
     private final BedrockRuntimeClient bedrock;
+    private final ObjectProvider<BedrockRuntimeAsyncClient> bedrockAsync;
     private final ObjectMapper objectMapper;
+    private final LlmResponseCache cache;
+    private final BedrockLimiter limiter;
+    private final MeterRegistry meterRegistry;
     private final boolean useBedrock;
     private final String modelId;
     private final boolean guardrailsEnabled;
     private final String guardrailId;
     private final String guardrailVersion;
+    private final boolean streamingEnabled;
+    private final long streamTimeoutSeconds;
     public record Result(String prescriptionText, String parametersJson, String modelUsed, GuardrailStatus guardrailStatus) {}
 
     public LlmService(BedrockRuntimeClient bedrock,
+                      ObjectProvider<BedrockRuntimeAsyncClient> bedrockAsync,
                       ObjectMapper objectMapper,
+                      LlmResponseCache cache,
+                      BedrockLimiter limiter,
+                      MeterRegistry meterRegistry,
                       @Value("${llm.useBedrock:false}") boolean useBedrock,
                       @Value("${llm.modelId:anthropic.claude-haiku-4-5-20251001-v1:0}") String modelId,
                       @Value("${guardrails.enabled:true}") boolean guardrailsEnabled,
                       @Value("${guardrails.id:}") String guardrailId,            
-                      @Value("${guardrails.version:DRAFT}") String guardrailVersion
+                      @Value("${guardrails.version:DRAFT}") String guardrailVersion,
+                      @Value("${llm.streaming.enabled:false}") boolean streamingEnabled,
+                      @Value("${llm.streaming.timeoutSeconds:120}") long streamTimeoutSeconds
     ) {
         this.bedrock = bedrock;
+        this.bedrockAsync = bedrockAsync;
         this.objectMapper = objectMapper;
+        this.cache = cache;
+        this.limiter = limiter;
+        this.meterRegistry = meterRegistry;
         this.useBedrock = useBedrock;
         this.modelId = modelId;
         this.guardrailsEnabled = guardrailsEnabled;
         this.guardrailId = guardrailId;        
         this.guardrailVersion = guardrailVersion;
+        this.streamingEnabled = streamingEnabled;
+        this.streamTimeoutSeconds = streamTimeoutSeconds;
     }
 
     public Result generate(String normalizedJson) {
+        return generate(normalizedJson, null);
+    }
+
+    /**
+     * Gera o plano e, se {@code onPartial} for informado, publica o plano parcial à medida que fica pronto.
+     * Com {@code llm.streaming.enabled} os campos chegam conforme o Bedrock gera os tokens; sem streaming (ou em
+     * hit de cache) o plano completo é publicado uma única vez.
+     */
+    public Result generate(String normalizedJson, Consumer<JsonNode> onPartial) {
         String prompt = buildPrompt(normalizedJson);
         String usedModel = useBedrock ? modelId : "stub";
         String output;
@@ -66,27 +117,46 @@ public class LlmService {
 
         try {
             if (useBedrock) {
-                // MUDANÇA: Chama o método genérico de invocação
-                output = invokeClaude(prompt, 4096);
+                // Encaminhamentos equivalentes (mesmo JSON canônico, modelo, prompt e guardrail) reaproveitam a resposta
+                var key = cache.key(normalizedJson, modelId, PROMPT_VERSION + "#" + PROMPT_TEMPLATE_HASH, guardrailFingerprint());
+                var cached = cache.get(key);
+                if (cached.isPresent()) {
+                    output = cached.get().response();
+                    publishWhole(output, onPartial);
+                } else {
+                    Completion completion;
+                    if (streamingEnabled && onPartial != null) {
+                        completion = invokeClaudeStreaming(prompt, PLAN_MAX_TOKENS, onPartial);
+                    } else {
+                        completion = invokeClaude(prompt, PLAN_MAX_TOKENS);
+                        publishWhole(completion.text(), onPartial);
+                    }
+                    output = completion.text();
+                    cache.put(key, new LlmResponseCache.Entry(output, completion.inputTokens(), completion.outputTokens()));
+                }
             } else {
                 output = "{\"plan\": \"Exemplo de plano gerado\", \"phases\": []}";
+                publishWhole(output, onPartial);
             }
         } catch (ValidationException ve) {
             log.warn("Bedrock call blocked or invalid: {}", ve.getMessage());
-            if (ve.getMessage() != null && ve.getMessage().contains("guardrail")) {
+            if (isGuardrailBlock(ve.getMessage())) {
                 gs = GuardrailStatus.BLOCKED;
-                output = "{\"plan\": \"Geração bloqueada pela política de segurança\"}";
+                output = BLOCKED_PLAN;
             } else {
                 output = "{\"plan\": \"Erro de validação\"}";
             }
             usedModel = "error";
+        } catch (LlmUnavailableException e) {
+            // Sobrecarga não vira prescrição de erro: o estágio falha e o run pode ser reprocessado
+            throw e;
         } catch (Exception e) {
             log.error("Bedrock invocation failed: {}", e.getMessage(), e);
             output = "{\"plan\": \"Erro ao gerar plano\"}";
             usedModel = "error";
         }
 
-        String params = "{\"promptVersion\": \"v1\"}";
+        String params = "{\"promptVersion\": \"" + PROMPT_VERSION + "\"}";
         return new Result(output, params, usedModel, gs);
     }
 
@@ -95,10 +165,13 @@ public class LlmService {
         String output;
         try {
             if (useBedrock) {
-                output = invokeClaude(prompt, 2048); // Tokens menores para normalização
+                output = invokeClaude(prompt, 2048).text(); // Tokens menores para normalização
             } else {
                 output = "{\"findings\":[\"Sample finding\"],\"contraindications\":[],\"conditions\":[],\"codes\":[]}";
             }
+        } catch (LlmUnavailableException e) {
+            // Sobrecarga não vira normalização vazia: o estágio falha e o run pode ser reprocessado
+            throw e;
         } catch (Exception e) {
             log.error("Bedrock normalization failed: {}", e.getMessage(), e);
             output = "{\"findings\":[],\"contraindications\":[],\"conditions\":[],\"codes\":[]}";
@@ -106,18 +179,87 @@ public class LlmService {
         return output;
     }
 
-    private String invokeClaude(String prompt, int maxTokens) throws Exception {
+    /** Modelo registrado nas prescrições geradas com a configuração atual. */
+    public String currentModel() {
+        return useBedrock ? modelId : "stub";
+    }
+
+    /** Corpo da requisição do plano (Messages API), no formato do {@code modelInput} de um registro de batch. */
+    public JsonNode planModelInput(String normalizedJson) throws Exception {
+        return objectMapper.readTree(requestBody(buildPrompt(normalizedJson), PLAN_MAX_TOKENS));
+    }
+
+    /**
+     * Executa um {@code modelInput} de batch como chamada síncrona, passando pelo limitador, e devolve a resposta
+     * bruta da Messages API. Sem Bedrock devolve a resposta stub no mesmo formato.
+     */
+    public JsonNode invokeModelInput(String targetModel, JsonNode modelInput) throws Exception {
+        if (!useBedrock) {
+            ObjectNode stub = objectMapper.createObjectNode();
+            stub.putArray("content").addObject()
+                    .put("type", "text")
+                    .put("text", "{\"plan\": \"Exemplo de plano gerado\", \"phases\": []}");
+            stub.putObject("usage").put("input_tokens", 0).put("output_tokens", 0);
+            return stub;
+        }
+        String body = objectMapper.writeValueAsString(modelInput);
+        return limiter.call(estimateTokens(body), () -> objectMapper.readTree(invokeModel(targetModel, body)),
+                out -> out.path("usage").path("input_tokens").asInt() + out.path("usage").path("output_tokens").asInt());
+    }
+
+    /** Texto e tokens de uma resposta bruta da Messages API (o {@code modelOutput} de um registro de batch). */
+    public Completion readModelOutput(JsonNode modelOutput) throws Exception {
+        return toCompletion(objectMapper.treeToValue(modelOutput, AnthropicResponse.class));
+    }
+
+    /** O Bedrock rejeita com ValidationException citando o guardrail quando ele bloqueia a entrada. */
+    public static boolean isGuardrailBlock(String errorMessage) {
+        return errorMessage != null && errorMessage.contains("guardrail");
+    }
+
+    /**
+     * Status do guardrail de um registro de batch, com a mesma regra da chamada online: erro do Bedrock citando o
+     * guardrail, ou resposta em que o guardrail interveio ({@code amazon-bedrock-guardrailAction}), é BLOCKED.
+     */
+    public static GuardrailStatus guardrailStatus(JsonNode record) {
+        JsonNode modelOutput = record.path("modelOutput");
+        if (modelOutput.isMissingNode() || modelOutput.isNull()) {
+            return isGuardrailBlock(record.path("error").path("errorMessage").asText(null)) ? GuardrailStatus.BLOCKED : GuardrailStatus.OK;
+        }
+        boolean intervened = "INTERVENED".equals(modelOutput.path("amazon-bedrock-guardrailAction").asText())
+                || "guardrail_intervened".equals(modelOutput.path("stop_reason").asText());
+        return intervened ? GuardrailStatus.BLOCKED : GuardrailStatus.OK;
+    }
+
+    private String guardrailFingerprint() {
+        return guardrailsEnabled && guardrailId != null && !guardrailId.isEmpty()
+                ? guardrailId + ":" + guardrailVersion
+                : "none";
+    }
+
+    private String requestBody(String prompt, int maxTokens) throws Exception {
         var message = new AnthropicMessage("user", prompt);
         var requestPayload = new AnthropicRequest(
                 "bedrock-2023-05-31",
                 maxTokens,
                 List.of(message)
         );
+        return objectMapper.writeValueAsString(requestPayload);
+    }
 
-        String requestBody = objectMapper.writeValueAsString(requestPayload);
+    private Completion invokeClaude(String prompt, int maxTokens) throws Exception {
+        return limiter.call(estimateTokens(prompt), () -> doInvokeClaude(prompt, maxTokens),
+                c -> c.inputTokens() + c.outputTokens());
+    }
+
+    private Completion doInvokeClaude(String prompt, int maxTokens) throws Exception {
+        String responseBody = invokeModel(modelId, requestBody(prompt, maxTokens));
+        return toCompletion(objectMapper.readValue(responseBody, AnthropicResponse.class));
+    }
 
+    private String invokeModel(String targetModel, String requestBody) {
         var reqBuilder = InvokeModelRequest.builder()
-                .modelId(modelId)
+                .modelId(targetModel)
                 .body(SdkBytes.fromString(requestBody, StandardCharsets.UTF_8))
                 .accept("application/json")
                 .contentType("application/json");
@@ -128,10 +270,10 @@ public class LlmService {
         }
 
         var resp = bedrock.invokeModel(reqBuilder.build());
-        String responseBody = resp.body().asUtf8String();
-
-        var anthropicResponse = objectMapper.readValue(responseBody, AnthropicResponse.class);
+        return resp.body().asUtf8String();
+    }
 
+    private Completion toCompletion(AnthropicResponse anthropicResponse) {
         var response = anthropicResponse.content().stream()
                 .filter(c -> "text".equals(c.type()))
                 .map(AnthropicResponseContent::text)
@@ -139,11 +281,126 @@ public class LlmService {
                 .orElseThrow(() -> new RuntimeException("No text content in Bedrock response"));
 
         log.debug("Bedrock response = {}",response);
-        return response;
+        var usage = anthropicResponse.usage();
+        int inputTokens = usage != null ? usage.inputTokens() : 0;
+        int outputTokens = usage != null ? usage.outputTokens() : 0;
+        meterRegistry.counter("llm.tokens", "type", "input").increment(inputTokens);
+        meterRegistry.counter("llm.tokens", "type", "output").increment(outputTokens);
+        return new Completion(response, inputTokens, outputTokens);
+    }
+
+    /**
+     * Mesma chamada de {@link #invokeClaude}, via InvokeModelWithResponseStream: cada delta de texto alimenta o
+     * {@link PlanStreamParser}, e cada campo/elemento que fecha é publicado em {@code onPartial}.
+     */
+    private Completion invokeClaudeStreaming(String prompt, int maxTokens, Consumer<JsonNode> onPartial) throws Exception {
+        return limiter.call(estimateTokens(prompt), () -> doInvokeClaudeStreaming(prompt, maxTokens, onPartial),
+                c -> c.inputTokens() + c.outputTokens());
+    }
+
+    private Completion doInvokeClaudeStreaming(String prompt, int maxTokens, Consumer<JsonNode> onPartial) throws Exception {
+        var reqBuilder = InvokeModelWithResponseStreamRequest.builder()
+                .modelId(modelId)
+                .body(SdkBytes.fromString(requestBody(prompt, maxTokens), StandardCharsets.UTF_8))
+                .accept("application/json")
+                .contentType("application/json");
+
+        if (guardrailsEnabled && guardrailId != null && !guardrailId.isEmpty()) {
+            reqBuilder.guardrailIdentifier(guardrailId)
+                    .guardrailVersion(guardrailVersion);
+        }
+
+        StringBuilder text = new StringBuilder();
+        int[] usage = new int[2];
+        PlanStreamParser parser = new PlanStreamParser(objectMapper);
+        Timer.Sample firstToken = Timer.start(meterRegistry);
+        boolean[] started = {false};
+
+        // O SDK entrega os eventos de um stream em série, então o estado local não precisa de sincronização
+        var handler = InvokeModelWithResponseStreamResponseHandler.builder()
+                .subscriber(InvokeModelWithResponseStreamResponseHandler.Visitor.builder()
+                        .onChunk(chunk -> {
+                            String delta = readStreamEvent(chunk.bytes().asUtf8String(), usage);
+                            if (delta == null || delta.isEmpty()) return;
+                            if (!started[0]) {
+                                started[0] = true;
+                                firstToken.stop(meterRegistry.timer("llm.stream.first.token"));
+                            }
+                            text.append(delta);
+                            if (parser.append(delta)) {
+                                publish(parser.snapshot(), onPartial);
+                            }
+                        })
+                        .build())
+                .build();
+
+        CompletableFuture<Void> call = bedrockAsync.getObject().invokeModelWithResponseStream(reqBuilder.build(), handler);
+        try {
+            call.get(streamTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException te) {
+            call.cancel(true);
+            throw te;
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+            if (cause instanceof Exception ex) throw ex;
+            throw ee;
+        }
+
+        if (text.isEmpty()) {
+            throw new RuntimeException("No text content in Bedrock response stream");
+        }
+        meterRegistry.counter("llm.tokens", "type", "input").increment(usage[0]);
+        meterRegistry.counter("llm.tokens", "type", "output").increment(usage[1]);
+        return new Completion(text.toString(), usage[0], usage[1]);
+    }
+
+    /** Lê um evento do stream da Messages API; devolve o texto do delta (ou null) e acumula o uso de tokens. */
+    private String readStreamEvent(String json, int[] usage) {
+        try {
+            JsonNode event = objectMapper.readTree(json);
+            switch (event.path("type").asText()) {
+                case "message_start" -> usage[0] = event.path("message").path("usage").path("input_tokens").asInt(usage[0]);
+                case "message_delta" -> usage[1] = event.path("usage").path("output_tokens").asInt(usage[1]);
+                case "content_block_delta" -> {
+                    JsonNode delta = event.path("delta");
+                    return "text_delta".equals(delta.path("type").asText()) ? delta.path("text").asText() : null;
+                }
+                default -> { }
+            }
+        } catch (Exception e) {
+            log.debug("Ignoring unreadable Bedrock stream event: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /** Estimativa grosseira (≈ 4 caracteres por token) só para reservar cota antes da chamada. */
+    private static int estimateTokens(String prompt) {
+        return prompt == null ? 0 : prompt.length() / 4;
+    }
+
+    private void publishWhole(String output, Consumer<JsonNode> onPartial) {
+        if (onPartial == null) return;
+        PlanStreamParser parser = new PlanStreamParser(objectMapper);
+        if (parser.append(output)) {
+            publish(parser.snapshot(), onPartial);
+        }
+    }
+
+    private void publish(JsonNode partial, Consumer<JsonNode> onPartial) {
+        try {
+            onPartial.accept(partial);
+        } catch (Exception e) {
+            // Falha ao notificar clientes nunca interrompe a geração
+            log.warn("Failed to publish partial plan: {}", e.getMessage());
+        }
     }
 
     private String buildPrompt(String normalizedJson) {
-        return """
+        return PROMPT_TEMPLATE.formatted(normalizedJson);
+    }
+
+    private static final String PROMPT_TEMPLATE = """
             Você é um especialista em reabilitação física e fisioterapia. Baseado nos achados clínicos normalizados fornecidos,
             gere um plano de reabilitação completo e estruturado em formato JSON.
             
@@ -183,6 +440,8 @@ public class LlmService {
             - A duração deve ser realista (geralmente 15-60 dias)
             - Considere contraindicações e limitações do paciente
             - Responda APENAS com o JSON, sem texto adicional
-            """.formatted(normalizedJson);
-    }
+            """;
+
+    // Editar o template sem subir PROMPT_VERSION também invalida o cache
+    private static final String PROMPT_TEMPLATE_HASH = Integer.toHexString(PROMPT_TEMPLATE.hashCode());
 }
\ No newline at end of file
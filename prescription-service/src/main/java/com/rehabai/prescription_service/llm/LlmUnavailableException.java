@@ -0,0 +1,12 @@
+package com.rehabai.prescription_service.llm;
+
+/**
+ * O Bedrock continuou limitando (throttling) depois das novas tentativas, ou não houve vaga no limitador
+ * dentro do tempo máximo de espera. Diferente de um erro de validação, não deve virar uma prescrição:
+ * o estágio falha e o run fica marcado como FAILED para ser reprocessado.
+ */
+public class LlmUnavailableException extends RuntimeException {
+    public LlmUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,135 @@
+package com.rehabai.prescription_service.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Distribui o plano parcial de cada arquivo para os clientes SSE conectados nesta instância.
+ * <p>
+ * Guarda só o último snapshot por arquivo, para que quem conecta no meio da geração já receba o estado atual.
+ * O canal é descartado quando a geração termina (ou falha).
+ */
+@Component
+public class PlanStreamHub {
+
+    private static final Logger log = LoggerFactory.getLogger(PlanStreamHub.class);
+
+    public static final String EVENT_PARTIAL = "plan.partial";
+    public static final String EVENT_DONE = "plan.done";
+    public static final String EVENT_ERROR = "plan.error";
+
+    private static final class Channel {
+        final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        volatile JsonNode last;
+    }
+
+    private final Map<UUID, Channel> channels = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+    private final long timeoutMs;
+
+    public PlanStreamHub(MeterRegistry registry,
+                         @Value("${llm.streaming.sseTimeoutMs:120000}") long timeoutMs) {
+        this.registry = registry;
+        this.timeoutMs = timeoutMs;
+        Gauge.builder("llm.stream.subscribers", channels,
+                c -> c.values().stream().mapToInt(ch -> ch.emitters.size()).sum()).register(registry);
+    }
+
+    public SseEmitter subscribe(UUID fileId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Channel channel = channels.computeIfAbsent(fileId, id -> new Channel());
+        channel.emitters.add(emitter);
+        Runnable remove = () -> detach(fileId, channel, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+
+        JsonNode last = channel.last;
+        if (last != null) {
+            send(fileId, channel, emitter, EVENT_PARTIAL, last);
+        }
+        return emitter;
+    }
+
+    /**
+     * Envia um evento final só para {@code emitter} e o encerra, sem mexer nos outros ouvintes do arquivo. Usado
+     * quando o run já tinha terminado: o cliente se inscreve antes de consultar o run, então um término entre as
+     * duas coisas chega pelo canal e um anterior é visto na consulta.
+     */
+    public void close(UUID fileId, SseEmitter emitter, String event, Object payload) {
+        Channel channel = channels.get(fileId);
+        if (channel != null) {
+            detach(fileId, channel, emitter);
+        }
+        try {
+            emitter.send(SseEmitter.event().name(event).data(payload));
+            emitter.complete();
+        } catch (Exception e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    public void publish(UUID fileId, JsonNode partial) {
+        Channel channel = channels.computeIfAbsent(fileId, id -> new Channel());
+        channel.last = partial;
+        for (SseEmitter emitter : channel.emitters) {
+            send(fileId, channel, emitter, EVENT_PARTIAL, partial);
+        }
+        registry.counter("llm.stream.events", "type", "partial").increment();
+    }
+
+    public void complete(UUID fileId, Object payload) {
+        finish(fileId, EVENT_DONE, payload);
+    }
+
+    public void fail(UUID fileId, String message) {
+        finish(fileId, EVENT_ERROR, errorPayload(message));
+    }
+
+    public static Map<String, String> errorPayload(String message) {
+        return Map.of("message", message != null ? message : "generation failed");
+    }
+
+    private void finish(UUID fileId, String event, Object payload) {
+        Channel channel = channels.remove(fileId);
+        if (channel == null) return;
+        for (SseEmitter emitter : channel.emitters) {
+            try {
+                emitter.send(SseEmitter.event().name(event).data(payload));
+                emitter.complete();
+            } catch (Exception e) {
+                emitter.completeWithError(e);
+            }
+        }
+        registry.counter("llm.stream.events", "type", event.substring(event.indexOf('.') + 1)).increment();
+    }
+
+    private void send(UUID fileId, Channel channel, SseEmitter emitter, String event, Object payload) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(payload));
+        } catch (Exception e) {
+            log.debug("Dropping SSE subscriber for file {}: {}", fileId, e.getMessage());
+            detach(fileId, channel, emitter);
+        }
+    }
+
+    private void detach(UUID fileId, Channel channel, SseEmitter emitter) {
+        channel.emitters.remove(emitter);
+        // Canal sem ouvintes e sem geração em andamento não precisa ficar em memória
+        if (channel.emitters.isEmpty() && channel.last == null) {
+            channels.remove(fileId, channel);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.rehabai.prescription_service.llm;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Parser incremental do JSON do plano enquanto os tokens chegam do Bedrock.
+ * <p>
+ * Não monta uma árvore a cada token: varre o texto uma vez só, acompanhando profundidade e strings, e
+ * publica cada campo de primeiro nível ({@code title}, {@code diagnosis}...) quando o valor fecha e cada
+ * elemento de uma lista de primeiro nível ({@code exercises}, {@code goals}) assim que ele fecha.
+ * Texto antes da primeira chave de abertura (ex.: cerca de markdown) é ignorado.
+ */
+public class PlanStreamParser {
+
+    private enum State { KEY, COLON, VALUE }
+
+    private final ObjectReader reader;
+    private final StringBuilder buf = new StringBuilder();
+    private final ObjectNode partial;
+
+    private int pos;
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+    private boolean complete;
+
+    private State state = State.KEY;
+    private int keyStart = -1;
+    private String currentKey;
+    private int valueStart = -1;
+    private String arrayKey;
+    private int elementStart = -1;
+
+    public PlanStreamParser(ObjectMapper objectMapper) {
+        this.reader = objectMapper.reader().with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+        this.partial = objectMapper.createObjectNode();
+    }
+
+    /**
+     * Acrescenta um pedaço do texto gerado.
+     *
+     * @return {@code true} se algum campo ou elemento novo ficou completo
+     */
+    public boolean append(String chunk) {
+        if (chunk == null || chunk.isEmpty() || complete) return false;
+        buf.append(chunk);
+        boolean changed = false;
+        for (; pos < buf.length() && !complete; pos++) {
+            char c = buf.charAt(pos);
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (c == '\\') {
+                    escape = true;
+                } else if (c == '"') {
+                    inString = false;
+                    if (depth == 1 && state == State.KEY && keyStart >= 0) {
+                        currentKey = buf.substring(keyStart, pos);
+                        keyStart = -1;
+                        state = State.COLON;
+                    }
+                }
+                continue;
+            }
+            if (depth == 0) {
+                if (c == '{') depth = 1;
+                continue;
+            }
+            switch (c) {
+                case '"' -> {
+                    if (depth == 1 && state == State.KEY) keyStart = pos + 1;
+                    else markValueStart();
+                    inString = true;
+                }
+                case '{', '[' -> {
+                    markValueStart();
+                    if (depth == 1 && c == '[' && state == State.VALUE) {
+                        arrayKey = currentKey;
+                        elementStart = -1;
+                        partial.putArray(arrayKey);
+                    }
+                    depth++;
+                }
+                case '}', ']' -> {
+                    depth--;
+                    if (depth == 1 && c == ']' && arrayKey != null) {
+                        changed |= closeElement();
+                        arrayKey = null;
+                    } else if (depth == 0) {
+                        changed |= closeValue();
+                        complete = true;
+                    }
+                }
+                case ',' -> {
+                    if (depth == 1) changed |= closeValue();
+                    else if (depth == 2 && arrayKey != null) changed |= closeElement();
+                }
+                case ':' -> {
+                    if (depth == 1 && state == State.COLON) state = State.VALUE;
+                }
+                default -> {
+                    if (!Character.isWhitespace(c)) markValueStart();
+                }
+            }
+        }
+        return changed;
+    }
+
+    /** Cópia do que já foi reconhecido; segura para enviar a outra thread. */
+    public ObjectNode snapshot() {
+        return partial.deepCopy();
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private void markValueStart() {
+        if (depth == 1 && state == State.VALUE && valueStart < 0) {
+            valueStart = pos;
+        } else if (depth == 2 && arrayKey != null && elementStart < 0) {
+            elementStart = pos;
+        }
+    }
+
+    private boolean closeValue() {
+        boolean changed = false;
+        if (state == State.VALUE && valueStart >= 0 && currentKey != null) {
+            JsonNode value = parse(buf.substring(valueStart, pos));
+            if (value != null) {
+                partial.set(currentKey, value);
+                changed = true;
+            }
+        }
+        state = State.KEY;
+        valueStart = -1;
+        return changed;
+    }
+
+    private boolean closeElement() {
+        if (elementStart < 0) return false;
+        JsonNode element = parse(buf.substring(elementStart, pos));
+        elementStart = -1;
+        if (element == null || !(partial.get(arrayKey) instanceof ArrayNode array)) return false;
+        array.add(element);
+        return true;
+    }
+
+    private JsonNode parse(String text) {
+        try {
+            return reader.readTree(text.trim());
+        } catch (Exception e) {
+            // Valor malformado não derruba o stream; o texto completo ainda é salvo no fim
+            return null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.rehabai.prescription_service.model;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Resultado de extração (PDFBox/OCR) reaproveitável, endereçado pelo conteúdo do arquivo.
+ * A chave é o SHA-256 de (hash do arquivo, engine, configuração da engine).
+ */
+@Entity
+@Table(name = "extraction_cache", indexes = {
+        @Index(name = "idx_extraction_cache_sha256", columnList = "sha256"),
+        @Index(name = "idx_extraction_cache_created", columnList = "created_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString(exclude = "text")
+@EqualsAndHashCode(of = "cacheKey")
+public class ExtractionCacheEntry {
+    @Id
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
+    @Column(name = "sha256", nullable = false, length = 64)
+    private String sha256;
+
+    @Column(name = "engine", nullable = false, length = 50)
+    private String engine;
+
+    @Column(name = "engine_config", length = 500)
+    private String engineConfig;
+
+    @Column(name = "text", columnDefinition = "TEXT")
+    private String text;
+
+    @Column(name = "result_engine", length = 50)
+    private String resultEngine;
+
+    @Column(name = "confidence")
+    private Double confidence;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+}
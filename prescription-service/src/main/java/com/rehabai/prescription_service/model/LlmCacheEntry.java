@@ -0,0 +1,48 @@
+package com.rehabai.prescription_service.model;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Resposta do LLM reaproveitável. A chave é o SHA-256 de (JSON normalizado canônico, modelo,
+ * versão do prompt, configuração de guardrail).
+ */
+@Entity
+@Table(name = "llm_response_cache", indexes = {
+        @Index(name = "idx_llm_cache_created", columnList = "created_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString(exclude = "response")
+@EqualsAndHashCode(of = "cacheKey")
+public class LlmCacheEntry {
+    @Id
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
+    @Column(name = "model_id", nullable = false, length = 200)
+    private String modelId;
+
+    @Column(name = "prompt_version", nullable = false, length = 50)
+    private String promptVersion;
+
+    @Column(name = "response", columnDefinition = "TEXT")
+    private String response;
+
+    @Column(name = "input_tokens")
+    private Integer inputTokens;
+
+    @Column(name = "output_tokens")
+    private Integer outputTokens;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+}
@@ -0,0 +1,113 @@
+package com.rehabai.prescription_service.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Job de regeneração de prescrições em lote. Além dos critérios, guarda o checkpoint de cada fase
+ * (cursor da exportação, bytes já escritos, linhas de saída já ingeridas) para retomar após um restart.
+ */
+@Entity
+@Table(name = "regeneration_jobs", indexes = {
+        @Index(name = "idx_regeneration_jobs_status", columnList = "status")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode(of = "id")
+public class RegenerationJob {
+    @Id
+    @GeneratedValue
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private RegenerationStatus status = RegenerationStatus.EXPORTING;
+
+    // Critérios de seleção das normalizações
+    @Column(name = "created_from")
+    private OffsetDateTime createdFrom;
+
+    @Column(name = "created_to")
+    private OffsetDateTime createdTo;
+
+    @Column(name = "max_records")
+    private Integer maxRecords;
+
+    @Column(name = "model_id", nullable = false, length = 100)
+    private String modelId;
+
+    @Column(name = "prompt_version", nullable = false, length = 50)
+    private String promptVersion;
+
+    @Column(name = "backend", nullable = false, length = 50)
+    private String backend;
+
+    @Column(name = "backend_job_id", length = 200)
+    private String backendJobId;
+
+    // Checkpoint da exportação: último (created_at, id) escrito e tamanho do JSONL nesse ponto
+    @Column(name = "cursor_created_at")
+    private OffsetDateTime cursorCreatedAt;
+
+    @Column(name = "cursor_id")
+    private UUID cursorId;
+
+    @Column(name = "export_bytes", nullable = false)
+    private long exportBytes;
+
+    @Column(name = "exported_count", nullable = false)
+    private long exportedCount;
+
+    // Checkpoint da ingestão: linhas da saída já gravadas como prescrição (ou contadas como falha)
+    @Column(name = "ingested_lines", nullable = false)
+    private long ingestedLines;
+
+    @Column(name = "ingested_count", nullable = false)
+    private long ingestedCount;
+
+    @Column(name = "failed_count", nullable = false)
+    private long failedCount;
+
+    @Column(name = "input_tokens", nullable = false)
+    private long inputTokens;
+
+    @Column(name = "output_tokens", nullable = false)
+    private long outputTokens;
+
+    // Lease da instância que está avançando o job; outra instância só assume depois que expirar
+    @Column(name = "lease_owner", length = 64)
+    private String leaseOwner;
+
+    @Column(name = "lease_until")
+    private OffsetDateTime leaseUntil;
+
+    @Column(name = "error", length = 1000)
+    private String error;
+
+    @Column(name = "report", columnDefinition = "TEXT")
+    private String report;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "exported_at")
+    private OffsetDateTime exportedAt;
+
+    @Column(name = "inferred_at")
+    private OffsetDateTime inferredAt;
+
+    @Column(name = "finished_at")
+    private OffsetDateTime finishedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt = OffsetDateTime.now();
+
+    @PreUpdate
+    public void onUpdate() { this.updatedAt = OffsetDateTime.now(); }
+}
@@ -0,0 +1,10 @@
+package com.rehabai.prescription_service.model;
+
+/** Fases de um job de regeneração em lote, na ordem em que acontecem. */
+public enum RegenerationStatus {
+    EXPORTING,
+    SUBMITTED,
+    INGESTING,
+    COMPLETED,
+    FAILED
+}
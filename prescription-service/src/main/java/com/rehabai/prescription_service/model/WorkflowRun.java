@@ -12,7 +12,8 @@ import lombok.ToString;
 
 @Entity
 @Table(name = "workflow_runs", indexes = {
-        @Index(name = "idx_workflow_trace", columnList = "trace_id")
+        @Index(name = "idx_workflow_trace", columnList = "trace_id"),
+        @Index(name = "idx_workflow_file", columnList = "file_id, created_at")
 })
 @Getter
 @Setter
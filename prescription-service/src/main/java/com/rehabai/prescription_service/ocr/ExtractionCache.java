@@ -0,0 +1,277 @@
+package com.rehabai.prescription_service.ocr;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabai.prescription_service.model.ExtractionCacheEntry;
+import com.rehabai.prescription_service.repository.ExtractionCacheRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Cache de resultados de extração endereçado por conteúdo, em dois níveis:
+ * <ol>
+ *   <li>local: um arquivo JSON por chave em disco, limitado por quantidade/bytes (LRU) e TTL;</li>
+ *   <li>Postgres ({@code extraction_cache}): compartilhado entre instâncias, limitado por TTL.</li>
+ * </ol>
+ * Falhas do cache nunca interrompem a extração: são logadas e tratadas como miss.
+ */
+@Component
+public class ExtractionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ExtractionCache.class);
+
+    /** Chave lógica do cache; {@link #id()} é o hash usado como nome de arquivo e PK. */
+    public record Key(String sha256, String engine, String engineConfig) {
+        public String id() {
+            return sha256Hex((sha256 + "|" + engine + "|" + engineConfig).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private record StoredResult(String text, String engine, double confidence, long createdAtMillis) {}
+
+    private static final class LocalEntry {
+        final long bytes;
+        final long createdAtMillis;
+        volatile long lastAccess;
+
+        LocalEntry(long bytes, long createdAtMillis, long lastAccess) {
+            this.bytes = bytes;
+            this.createdAtMillis = createdAtMillis;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final ExtractionCacheRepository repository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final boolean dbEnabled;
+    private final Path dir;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final Map<String, LocalEntry> localIndex = new ConcurrentHashMap<>();
+    private final AtomicLong localBytes = new AtomicLong();
+    // Relógio lógico do LRU: começa no "agora" para ficar acima dos mtimes carregados do disco
+    private final AtomicLong accessClock = new AtomicLong(System.currentTimeMillis());
+
+    public ExtractionCache(ExtractionCacheRepository repository,
+                           ObjectMapper objectMapper,
+                           MeterRegistry registry,
+                           @Value("${ocr.cache.enabled:true}") boolean enabled,
+                           @Value("${ocr.cache.db.enabled:true}") boolean dbEnabled,
+                           @Value("${ocr.cache.dir:}") String dir,
+                           @Value("${ocr.cache.ttlHours:720}") long ttlHours,
+                           @Value("${ocr.cache.local.maxEntries:5000}") int maxEntries,
+                           @Value("${ocr.cache.local.maxBytes:268435456}") long maxBytes) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.dbEnabled = dbEnabled;
+        this.dir = dir == null || dir.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "rehab-extraction-cache")
+                : Path.of(dir);
+        this.ttl = Duration.ofHours(Math.max(1, ttlHours));
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = Math.max(1, maxBytes);
+
+        Gauge.builder("ocr.cache.local.entries", localIndex, Map::size).register(registry);
+        Gauge.builder("ocr.cache.local.bytes", localBytes, AtomicLong::get).register(registry);
+
+        if (enabled) {
+            loadLocalIndex();
+        }
+    }
+
+    public Optional<OCRService.Result> get(Key key) {
+        if (!enabled) return Optional.empty();
+        String id = key.id();
+
+        Optional<OCRService.Result> local = getLocal(id);
+        if (local.isPresent()) {
+            hit("local");
+            return local;
+        }
+        miss("local");
+
+        if (!dbEnabled) return Optional.empty();
+        try {
+            Optional<ExtractionCacheEntry> row = repository.findById(id);
+            if (row.isPresent() && !isExpired(row.get().getCreatedAt().toInstant().toEpochMilli())) {
+                ExtractionCacheEntry e = row.get();
+                OCRService.Result result = new OCRService.Result(e.getText(), e.getResultEngine(),
+                        e.getConfidence() != null ? e.getConfidence() : 0.0);
+                putLocal(id, result, e.getCreatedAt().toInstant().toEpochMilli());
+                hit("db");
+                return Optional.of(result);
+            }
+        } catch (Exception e) {
+            log.warn("Extraction cache lookup failed (db tier): {}", e.getMessage());
+        }
+        miss("db");
+        return Optional.empty();
+    }
+
+    public void put(Key key, OCRService.Result result) {
+        if (!enabled || result == null || result.text() == null || result.text().isBlank()) return;
+        String id = key.id();
+        long now = System.currentTimeMillis();
+        putLocal(id, result, now);
+        if (!dbEnabled) return;
+        try {
+            repository.upsert(id, key.sha256(), key.engine(), truncate(key.engineConfig(), 500),
+                    result.text(), result.engine(), result.confidence(),
+                    OffsetDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneOffset.UTC));
+        } catch (Exception e) {
+            log.warn("Extraction cache write failed (db tier): {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${ocr.cache.purgeCron:0 15 * * * *}")
+    public void purgeExpired() {
+        if (!enabled) return;
+        try {
+            localIndex.forEach((id, entry) -> {
+                if (isExpired(entry.createdAtMillis)) evictLocal(id, "ttl");
+            });
+            if (dbEnabled) {
+                int removed = repository.deleteByCreatedAtBefore(OffsetDateTime.now(ZoneOffset.UTC).minus(ttl));
+                if (removed > 0) {
+                    registry.counter("ocr.cache.evictions", "tier", "db", "reason", "ttl").increment(removed);
+                    log.info("Extraction cache purge: removed {} expired rows", removed);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Extraction cache purge failed - will retry on next run", e);
+        }
+    }
+
+    static String sha256Hex(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private Optional<OCRService.Result> getLocal(String id) {
+        LocalEntry entry = localIndex.get(id);
+        if (entry == null) return Optional.empty();
+        if (isExpired(entry.createdAtMillis)) {
+            evictLocal(id, "ttl");
+            return Optional.empty();
+        }
+        try {
+            StoredResult stored = objectMapper.readValue(file(id).toFile(), StoredResult.class);
+            entry.lastAccess = accessClock.incrementAndGet();
+            return Optional.of(new OCRService.Result(stored.text(), stored.engine(), stored.confidence()));
+        } catch (IOException e) {
+            log.warn("Discarding unreadable extraction cache file {}: {}", id, e.getMessage());
+            evictLocal(id, "corrupt");
+            return Optional.empty();
+        }
+    }
+
+    private void putLocal(String id, OCRService.Result result, long createdAtMillis) {
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, id, ".tmp");
+            objectMapper.writeValue(tmp.toFile(), new StoredResult(result.text(), result.engine(), result.confidence(), createdAtMillis));
+            long size = Files.size(tmp);
+            Files.move(tmp, file(id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LocalEntry previous = localIndex.put(id, new LocalEntry(size, createdAtMillis, accessClock.incrementAndGet()));
+            localBytes.addAndGet(size - (previous != null ? previous.bytes : 0));
+            enforceLocalBounds();
+        } catch (Exception e) {
+            log.warn("Extraction cache write failed (local tier): {}", e.getMessage());
+        }
+    }
+
+    private synchronized void enforceLocalBounds() {
+        while (localIndex.size() > maxEntries || localBytes.get() > maxBytes) {
+            Optional<String> lru = localIndex.entrySet().stream()
+                    .min(Comparator.comparingLong(e -> e.getValue().lastAccess))
+                    .map(Map.Entry::getKey);
+            if (lru.isEmpty()) return;
+            evictLocal(lru.get(), "size");
+        }
+    }
+
+    private void evictLocal(String id, String reason) {
+        LocalEntry removed = localIndex.remove(id);
+        if (removed == null) return;
+        localBytes.addAndGet(-removed.bytes);
+        try {
+            Files.deleteIfExists(file(id));
+        } catch (IOException e) {
+            log.debug("Could not delete extraction cache file {}: {}", id, e.getMessage());
+        }
+        registry.counter("ocr.cache.evictions", "tier", "local", "reason", reason).increment();
+    }
+
+    private void loadLocalIndex() {
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".json")).forEach(p -> {
+                try {
+                    String name = p.getFileName().toString();
+                    long modified = Files.getLastModifiedTime(p).toMillis();
+                    long size = Files.size(p);
+                    localIndex.put(name.substring(0, name.length() - ".json".length()), new LocalEntry(size, modified, modified));
+                    localBytes.addAndGet(size);
+                } catch (IOException ignore) {
+                    // arquivo removido durante a varredura
+                }
+            });
+            enforceLocalBounds();
+            log.info("Extraction cache: {} local entries ({} bytes) in {}", localIndex.size(), localBytes.get(), dir);
+        } catch (IOException e) {
+            log.warn("Could not scan extraction cache dir {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private boolean isExpired(long createdAtMillis) {
+        return System.currentTimeMillis() - createdAtMillis > ttl.toMillis();
+    }
+
+    private Path file(String id) {
+        return dir.resolve(id + ".json");
+    }
+
+    private void hit(String tier) {
+        registry.counter("ocr.cache.requests", "tier", tier, "result", "hit").increment();
+    }
+
+    private void miss(String tier) {
+        registry.counter("ocr.cache.requests", "tier", tier, "result", "miss").increment();
+    }
+
+    private String truncate(String text, int maxLength) {
+        if (text == null) return null;
+        return text.length() > maxLength ? text.substring(0, maxLength) : text;
+    }
+}
@@ -18,6 +18,7 @@ public class OCRService {
     private final OcrProvider tess4jProvider;
     private final OcrProvider textractProvider;
     private final boolean useTextract;
+    private final ExtractionCache cache;
 
     private final MeterRegistry registry;
     private final Counter pdfTextSuccess;
@@ -34,6 +35,7 @@ public class OCRService {
     public OCRService(Tess4jOcrProvider tess4jProvider,
                       TextractOcrProvider textractOcrProvider,
                       @Value("${ocr.useTextract:false}") boolean useTextract,
+                      ExtractionCache cache,
                       MeterRegistry registry,
                       @Value("${ocr.heuristic.minCharsNoWs:30}") int minCharsNoWs,
                       @Value("${ocr.heuristic.minLetterRatio:0.15}") double minLetterRatio,
@@ -43,6 +45,7 @@ public class OCRService {
         this.tess4jProvider = tess4jProvider;
         this.textractProvider = textractOcrProvider;
         this.useTextract = useTextract;
+        this.cache = cache;
         this.registry = registry;
         this.pdfTextSuccess = registry.counter("ocr.pdf_text.success");
         this.pdfTextFallback = registry.counter("ocr.pdf_text.fallback");
@@ -56,14 +59,45 @@ public class OCRService {
 
     public record Result(String text, String engine, double confidence) {}
 
-    public Result extract(byte[] fileBytes, String filename, String contentType) {
+    public Result extract(SourceDocument document, String filename, String contentType) {
+        return extract(document, filename, contentType, null);
+    }
+
+    /**
+     * Extrai o texto reaproveitando resultados anteriores para o mesmo conteúdo.
+     *
+     * @param sha256 hash do arquivo já calculado pelo file-service; se ausente, usa o calculado no download
+     */
+    public Result extract(SourceDocument document, String filename, String contentType, String sha256) {
+        String hash = sha256 != null && !sha256.isBlank() ? sha256.toLowerCase() : document.sha256();
+        ExtractionCache.Key key = cacheKey(hash, filename, contentType);
+        var cached = cache.get(key);
+        if (cached.isPresent()) {
+            log.info("Extraction cache hit for sha256={} (engine={})", hash, cached.get().engine());
+            return cached.get();
+        }
+        Result result = doExtract(document, filename, contentType);
+        cache.put(key, result);
+        return result;
+    }
+
+    private ExtractionCache.Key cacheKey(String sha256, String filename, String contentType) {
+        OcrProvider provider = chooseProvider(filename, contentType);
+        String config = provider.configFingerprint()
+                + ";pdf=" + isPdf(filename, contentType) + ";image=" + isImage(filename, contentType)
+                + ";heuristic=" + minCharsNoWs + "/" + minLetterRatio + "/" + minUniqueChars + "/" + minNonWsDensity
+                + ";minConf=" + minConfidence;
+        return new ExtractionCache.Key(sha256, provider.name(), config);
+    }
+
+    private Result doExtract(SourceDocument document, String filename, String contentType) {
         boolean isPdf = isPdf(filename, contentType);
         boolean isImage = isImage(filename, contentType);
 
         // 1) PDF: tentar extrair texto "nativo" primeiro (PDFBox)
         if (isPdf) {
             try {
-                String text = PdfTextExtractor.extract(fileBytes);
+                String text = PdfTextExtractor.extract(document);
                 if (hasMeaningfulText(text)) {
                     pdfTextSuccess.increment();
                     return new Result(text, "pdfbox-text", 0.95);
@@ -77,22 +111,22 @@ public class OCRService {
                 log.warn("Falha ao extrair texto nativo do PDF; usando OCR. Causa: {}", e.getMessage());
             }
             // Para PDF, preferimos o provedor de OCR de páginas (tess4j); Textract síncrono não cobre PDF multi-página
-            return timedOcr(fileBytes, filename, contentType, "pdf");
+            return timedOcr(document, filename, contentType, "pdf");
         }
 
         // 2) Imagem: usar OCR direto (Textract AnalyzeDocument quando habilitado)
         if (isImage) {
-            return timedOcr(fileBytes, filename, contentType, "image");
+            return timedOcr(document, filename, contentType, "image");
         }
 
         // 3) Outros tipos (txt etc.): tentar tratar como texto puro
-        String asText = new String(fileBytes, StandardCharsets.UTF_8);
+        String asText = StandardCharsets.UTF_8.decode(document.view()).toString();
         if (hasMeaningfulText(asText)) {
             return new Result(asText, "plain-text", 0.99);
         } else {
             textRejected.increment();
             // Último recurso: empurrar para OCR (tratar como imagem desconhecida)
-            return timedOcr(fileBytes, filename, contentType, "unknown");
+            return timedOcr(document, filename, contentType, "unknown");
         }
     }
 
@@ -110,11 +144,11 @@ public class OCRService {
         return chooseProvider(filename, contentType).name();
     }
 
-    private Result timedOcr(byte[] fileBytes, String filename, String contentType, String typeTag) {
+    private Result timedOcr(SourceDocument document, String filename, String contentType, String typeTag) {
         OcrProvider provider = chooseProvider(filename, contentType);
         Timer.Sample sample = Timer.start(registry);
         try {
-            Result r = provider.ocr(fileBytes, filename, contentType);
+            Result r = provider.ocr(document, filename, contentType);
             // Cross-provider fallback: if Textract yielded vazio/baixo para imagem, tentar Tess4J
             boolean low = r == null || r.text() == null || r.text().isBlank() || r.confidence() < minConfidence;
             if (low && provider == textractProvider && isImage(filename, contentType)) {
@@ -122,7 +156,7 @@ public class OCRService {
                 log.info("Fallback cross-provider: {} -> {}", provider.name(), tess4jProvider.name());
                 // medir também a latência do fallback
                 Timer.Sample fb = Timer.start(registry);
-                Result fbRes = tess4jProvider.ocr(fileBytes, filename, contentType);
+                Result fbRes = tess4jProvider.ocr(document, filename, contentType);
                 fb.stop(Timer.builder("ocr.provider.latency")
                         .tag("provider", tess4jProvider.name())
                         .tag("type", typeTag)
@@ -1,7 +1,9 @@
 package com.rehabai.prescription_service.ocr;
 
 public interface OcrProvider {
-    OCRService.Result ocr(byte[] fileBytes, String filename, String contentType);
+    OCRService.Result ocr(SourceDocument document, String filename, String contentType);
     String name();
-}
 
+    /** Parâmetros que alteram o texto produzido; entram na chave do {@link ExtractionCache}. */
+    default String configFingerprint() { return ""; }
+}
@@ -0,0 +1,141 @@
+package com.rehabai.prescription_service.ocr;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import net.sourceforge.tess4j.Tesseract;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool limitado de workers de OCR: cada thread mantém sua própria instância de {@link Tesseract}
+ * (a API não é thread-safe), permitindo reconhecer várias páginas de um mesmo documento em paralelo.
+ * <p>
+ * O número de rasters vivos (renderizados e ainda não reconhecidos) é limitado globalmente por
+ * {@code ocr.parallel.maxInFlightRasters}: quem renderiza bloqueia até haver vaga, então o heap
+ * ocupado por imagens não cresce com o número de páginas nem de arquivos simultâneos.
+ */
+@Component
+public class ParallelOcrEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelOcrEngine.class);
+
+    private final String tessdataPath;
+    private final String lang;
+    private final int poolSize;
+    private final ThreadPoolExecutor executor;
+    private final ThreadLocal<Tesseract> tesseracts;
+    private final int maxInFlightRasters;
+    private final Semaphore rasterBudget;
+    private final Timer pageLatency;
+    private final Timer rasterWait;
+
+    public ParallelOcrEngine(@Value("${ocr.tessdataPath:}") String tessdataPath,
+                             @Value("${ocr.lang:por+eng}") String lang,
+                             @Value("${ocr.parallel.poolSize:0}") int poolSize,
+                             @Value("${ocr.parallel.maxInFlightRasters:0}") int maxInFlightRasters,
+                             MeterRegistry registry) {
+        this.tessdataPath = tessdataPath;
+        this.lang = lang;
+        this.poolSize = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(this.poolSize, this.poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory());
+        this.tesseracts = ThreadLocal.withInitial(this::newTesseract);
+        this.maxInFlightRasters = maxInFlightRasters > 0 ? maxInFlightRasters : this.poolSize * 2;
+        this.rasterBudget = new Semaphore(this.maxInFlightRasters, true);
+        this.pageLatency = Timer.builder("ocr.tess4j.page.latency")
+                .description("Tempo de reconhecimento de uma página pelo Tesseract")
+                .register(registry);
+        this.rasterWait = Timer.builder("ocr.tess4j.raster.wait")
+                .description("Tempo aguardando vaga no orçamento de rasters em memória")
+                .register(registry);
+
+        Gauge.builder("ocr.tess4j.pool.size", executor, ThreadPoolExecutor::getMaximumPoolSize).register(registry);
+        Gauge.builder("ocr.tess4j.pool.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder("ocr.tess4j.queue.depth", executor, e -> e.getQueue().size()).register(registry);
+        Gauge.builder("ocr.tess4j.rasters.inflight", rasterBudget, b -> this.maxInFlightRasters - b.availablePermits()).register(registry);
+        log.info("OCR engine started with {} Tesseract workers, up to {} rasters in flight (lang={})",
+                this.poolSize, this.maxInFlightRasters, lang);
+    }
+
+    /**
+     * Reserva uma vaga no orçamento de rasters, renderiza a página na thread chamadora e agenda o
+     * reconhecimento. A vaga é devolvida quando o OCR termina, falha ou é cancelado.
+     * O texto retornado já vem sem espaços nas bordas.
+     */
+    public Future<String> submit(Callable<BufferedImage> render) throws Exception {
+        long waitStart = System.nanoTime();
+        rasterBudget.acquire();
+        rasterWait.record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+
+        BufferedImage page;
+        try {
+            page = render.call();
+        } catch (Exception | Error e) {
+            rasterBudget.release();
+            throw e;
+        }
+        PageTask task = new PageTask(() -> pageLatency.recordCallable(() -> {
+            String text = tesseracts.get().doOCR(page);
+            return text != null ? text.trim() : "";
+        }));
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            task.cancel(false);
+            throw e;
+        }
+        return task;
+    }
+
+    public int poolSize() { return poolSize; }
+
+    public String lang() { return lang; }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Tesseract newTesseract() {
+        Tesseract tesseract = new Tesseract();
+        if (tessdataPath != null && !tessdataPath.isBlank()) {
+            tesseract.setDatapath(tessdataPath);
+        }
+        tesseract.setLanguage(lang);
+        return tesseract;
+    }
+
+    /** Devolve a vaga do raster em qualquer desfecho (inclusive cancelamento antes de executar). */
+    private final class PageTask extends FutureTask<String> {
+        PageTask(Callable<String> callable) { super(callable); }
+
+        @Override
+        protected void done() { rasterBudget.release(); }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger seq = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ocr-tess4j-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -1,15 +1,16 @@
 package com.rehabai.prescription_service.ocr;
 
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 
 public class PdfTextExtractor {
-    public static String extract(byte[] pdfBytes) throws Exception {
-        try (PDDocument pdf = Loader.loadPDF(pdfBytes)) {
+    public static String extract(SourceDocument document) throws Exception {
+        // Lido do arquivo sob demanda; streams decodificados vão para arquivo temporário em vez do heap
+        try (PDDocument pdf = Loader.loadPDF(document.openRandomAccess(), "", null, null, IOUtils.createTempFileOnlyStreamCache())) {
             PDFTextStripper stripper = new PDFTextStripper();
             return stripper.getText(pdf);
         }
     }
 }
-
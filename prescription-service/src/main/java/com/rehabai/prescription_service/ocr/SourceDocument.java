@@ -0,0 +1,119 @@
+package com.rehabai.prescription_service.ocr;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Arquivo de entrada da extração, mantido em disco (arquivo temporário) em vez de {@code byte[]} no heap.
+ * <p>
+ * O conteúdo é gravado uma única vez, já calculando o SHA-256 no caminho. Depois os provedores leem do mesmo
+ * arquivo: PDFs via {@link RandomAccessReadBufferedFile} (páginas sob demanda, cache pequeno e fixo), imagens
+ * direto do arquivo e quem precisa do conteúdo inteiro (Textract, texto puro) via {@link #view()}, uma visão
+ * somente leitura mapeada em memória e compartilhada. Assim o heap por arquivo não cresce com o tamanho dele.
+ * <p>
+ * {@link #close()} apaga o arquivo; o mapeamento (se houver) é liberado pelo GC, o que no Linux não impede a remoção.
+ */
+public final class SourceDocument implements AutoCloseable {
+
+    private static final String PREFIX = "rehab-ingest-";
+
+    private final Path path;
+    private final long size;
+    private final String sha256;
+    private MappedByteBuffer mapped;
+
+    private SourceDocument(Path path, long size, String sha256) {
+        this.path = path;
+        this.size = size;
+        this.sha256 = sha256;
+    }
+
+    /** Copia o stream para um arquivo temporário em {@code dir}, calculando o SHA-256 durante a cópia. */
+    public static SourceDocument download(InputStream in, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path file = Files.createTempFile(dir, PREFIX, ".bin");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size;
+            try (DigestInputStream digesting = new DigestInputStream(in, digest);
+                 var out = Files.newOutputStream(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                size = digesting.transferTo(out);
+            }
+            return new SourceDocument(file, size, HexFormat.of().formatHex(digest.digest()));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        } catch (Exception e) {
+            Files.deleteIfExists(file);
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /** Para conteúdo que já está em memória (testes, uploads pequenos). */
+    public static SourceDocument fromBytes(byte[] bytes, Path dir) throws IOException {
+        return download(new ByteArrayInputStream(bytes), dir);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public String sha256() {
+        return sha256;
+    }
+
+    /** Leitura aleatória para o PDFBox; o chamador fecha (o {@code PDDocument} fecha ao ser fechado). */
+    public RandomAccessRead openRandomAccess() throws IOException {
+        return new RandomAccessReadBufferedFile(path);
+    }
+
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    /**
+     * Visão somente leitura do conteúdo inteiro. Cada chamada devolve um buffer com posição própria sobre o mesmo
+     * mapeamento, então pode ser usada por várias threads.
+     */
+    public ByteBuffer view() {
+        synchronized (this) {
+            if (mapped == null) {
+                if (size > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("File too large to map: " + size + " bytes");
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return mapped.asReadOnlyBuffer();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            mapped = null;
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -1,9 +1,12 @@
 package com.rehabai.prescription_service.ocr;
 
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,57 +14,91 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 @Component
 public class Tess4jOcrProvider implements OcrProvider {
     private static final Logger log = LoggerFactory.getLogger(Tess4jOcrProvider.class);
 
-    private final Tesseract tesseract;
+    private final ParallelOcrEngine engine;
     private final int maxPages;
+    private final float dpi;
+    private final ImageType imageType;
+    private final long maxTilePixels;
 
-    public Tess4jOcrProvider(@Value("${ocr.tessdataPath:}") String tessdataPath,
-                             @Value("${ocr.lang:por+eng}") String lang,
-                             @Value("${ocr.maxPages:5}") int maxPages) {
-        this.tesseract = new Tesseract();
-        if (tessdataPath != null && !tessdataPath.isBlank()) {
-            this.tesseract.setDatapath(tessdataPath);
-        }
-        this.tesseract.setLanguage(lang);
+    /** Um pedaço reconhecido de forma independente: a página inteira ou uma faixa horizontal dela. */
+    private record PagePart(int page, Future<String> text) {}
+
+    public Tess4jOcrProvider(ParallelOcrEngine engine,
+                             @Value("${ocr.maxPages:5}") int maxPages,
+                             @Value("${ocr.render.dpi:300}") float dpi,
+                             @Value("${ocr.render.imageType:GRAY}") ImageType imageType,
+                             @Value("${ocr.render.maxTilePixels:16000000}") long maxTilePixels) {
+        this.engine = engine;
         this.maxPages = Math.max(1, maxPages);
+        this.dpi = dpi;
+        this.imageType = imageType;
+        this.maxTilePixels = Math.max(1_000_000L, maxTilePixels);
     }
 
     @Override
-    public OCRService.Result ocr(byte[] fileBytes, String filename, String contentType) {
+    public OCRService.Result ocr(SourceDocument document, String filename, String contentType) {
+        List<PagePart> parts = new ArrayList<>();
         try {
             boolean isPdf = filename != null && filename.toLowerCase().endsWith(".pdf");
-            StringBuilder allText = new StringBuilder();
             if (isPdf) {
-                try (PDDocument pdf = Loader.loadPDF(fileBytes)) {
+                // PDF lido do arquivo sob demanda; streams decodificados vão para arquivo temporário em vez do heap
+                try (PDDocument pdf = Loader.loadPDF(document.openRandomAccess(), "", null, null, IOUtils.createTempFileOnlyStreamCache())) {
                     PDFRenderer renderer = new PDFRenderer(pdf);
-                    int pages = Math.min(pdf.getNumberOfPages(), maxPages);
-                    for (int i = 0; i < pages; i++) {
-                        BufferedImage image = renderer.renderImageWithDPI(i, 300);
-                        String text = tesseract.doOCR(image);
-                        if (text != null && !text.isBlank()) {
-                            if (allText.length() > 0) allText.append("\n\n");
-                            allText.append(text.trim());
-                        }
+                    renderer.setSubsamplingAllowed(true);
+                    int count = Math.min(pdf.getNumberOfPages(), maxPages);
+                    for (int i = 0; i < count; i++) {
+                        // PDFRenderer não é thread-safe: renderiza aqui enquanto o pool reconhece as páginas anteriores
+                        submitPage(renderer, pdf.getPage(i), i, parts);
                     }
                 }
             } else {
-                BufferedImage image = ImageIO.read(new ByteArrayInputStream(fileBytes));
+                BufferedImage image = ImageIO.read(document.path().toFile());
                 if (image != null) {
-                    String text = tesseract.doOCR(image);
-                    if (text != null) allText.append(text.trim());
+                    parts.add(new PagePart(0, engine.submit(() -> image)));
+                }
+            }
+
+            // Junta o texto na ordem original das páginas (e das faixas dentro de cada página)
+            StringBuilder allText = new StringBuilder();
+            int lastPage = -1;
+            for (PagePart part : parts) {
+                String text = part.text().get();
+                if (text != null && !text.isBlank()) {
+                    if (allText.length() > 0) allText.append(part.page() == lastPage ? "\n" : "\n\n");
+                    allText.append(text);
+                    lastPage = part.page();
                 }
             }
             return new OCRService.Result(allText.toString(), name(), allText.length() > 0 ? 0.75 : 0.0);
-        } catch (TesseractException te) {
-            log.error("Tesseract OCR failed: {}", te.getMessage(), te);
+        } catch (ExecutionException ee) {
+            cancel(parts);
+            Throwable cause = ee.getCause() != null ? ee.getCause() : ee;
+            if (cause instanceof TesseractException) {
+                log.error("Tesseract OCR failed: {}", cause.getMessage(), cause);
+            } else {
+                log.error("OCR processing error: {}", cause.getMessage(), cause);
+            }
+            return new OCRService.Result("", name(), 0.0);
+        } catch (InterruptedException ie) {
+            cancel(parts);
+            Thread.currentThread().interrupt();
+            log.warn("OCR interrupted for {}", filename);
             return new OCRService.Result("", name(), 0.0);
         } catch (Exception e) {
+            cancel(parts);
             log.error("OCR processing error: {}", e.getMessage(), e);
             return new OCRService.Result("", name(), 0.0);
         }
@@ -69,4 +106,62 @@ public class Tess4jOcrProvider implements OcrProvider {
 
     @Override
     public String name() { return "tess4j"; }
+
+    @Override
+    public String configFingerprint() {
+        return "lang=" + engine.lang() + ";dpi=" + dpi + ";type=" + imageType + ";maxPages=" + maxPages + ";tile=" + maxTilePixels;
+    }
+
+    /**
+     * Páginas comuns viram um único raster; páginas grandes demais (plantas, exames em A0...)
+     * são renderizadas em faixas horizontais de até {@code maxTilePixels} pixels cada.
+     */
+    private void submitPage(PDFRenderer renderer, PDPage page, int index, List<PagePart> parts) throws Exception {
+        float scale = dpi / 72f;
+        PDRectangle crop = page.getCropBox();
+        boolean rotated = page.getRotation() == 90 || page.getRotation() == 270;
+        int width = (int) Math.max(Math.floor((rotated ? crop.getHeight() : crop.getWidth()) * scale), 1);
+        int height = (int) Math.max(Math.floor((rotated ? crop.getWidth() : crop.getHeight()) * scale), 1);
+
+        if ((long) width * height <= maxTilePixels) {
+            parts.add(new PagePart(index, engine.submit(() -> renderer.renderImageWithDPI(index, dpi, imageType))));
+            return;
+        }
+
+        int bandHeight = (int) Math.max(1, maxTilePixels / width);
+        log.debug("Page {} is {}x{} px; rendering in bands of {} px", index, width, height, bandHeight);
+        for (int y = 0; y < height; y += bandHeight) {
+            int top = y;
+            int h = Math.min(bandHeight, height - y);
+            parts.add(new PagePart(index, engine.submit(() -> renderBand(renderer, index, scale, width, top, h))));
+        }
+    }
+
+    private BufferedImage renderBand(PDFRenderer renderer, int page, float scale, int width, int top, int height) throws IOException {
+        BufferedImage band = new BufferedImage(width, height, bufferedImageType());
+        Graphics2D g = band.createGraphics();
+        try {
+            g.setBackground(Color.WHITE);
+            g.clearRect(0, 0, width, height);
+            g.translate(0, -top);
+            renderer.renderPageToGraphics(page, g, scale);
+        } finally {
+            g.dispose();
+        }
+        return band;
+    }
+
+    private int bufferedImageType() {
+        return switch (imageType) {
+            case BINARY -> BufferedImage.TYPE_BYTE_BINARY;
+            case GRAY -> BufferedImage.TYPE_BYTE_GRAY;
+            case ARGB -> BufferedImage.TYPE_INT_ARGB;
+            case BGR -> BufferedImage.TYPE_3BYTE_BGR;
+            default -> BufferedImage.TYPE_INT_RGB;
+        };
+    }
+
+    private void cancel(List<PagePart> parts) {
+        parts.forEach(p -> p.text().cancel(true));
+    }
 }
@@ -39,8 +39,9 @@ public class TextractOcrProvider implements OcrProvider {
     }
 
     @Override
-    public OCRService.Result ocr(byte[] fileBytes, String filename, String contentType) {
-        Document doc = Document.builder().bytes(SdkBytes.fromByteArray(fileBytes)).build();
+    public OCRService.Result ocr(SourceDocument document, String filename, String contentType) {
+        // A API síncrona recebe o documento inteiro no corpo (até 10 MB), então aqui a cópia é inevitável
+        Document doc = Document.builder().bytes(SdkBytes.fromByteBuffer(document.view())).build();
         try {
             if (useAnalyze) {
                 var req = AnalyzeDocumentRequest.builder()
@@ -97,4 +98,7 @@ public class TextractOcrProvider implements OcrProvider {
 
     @Override
     public String name() { return "textract"; }
+
+    @Override
+    public String configFingerprint() { return "analyze=" + useAnalyze; }
 }
@@ -0,0 +1,39 @@
+package com.rehabai.prescription_service.repository;
+
+import com.rehabai.prescription_service.model.ExtractionCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+
+public interface ExtractionCacheRepository extends JpaRepository<ExtractionCacheEntry, String> {
+
+    /**
+     * Upsert em transação própria: uma falha ao gravar o cache nunca deve marcar
+     * a transação da pipeline como rollback-only.
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = "INSERT INTO extraction_cache (cache_key, sha256, engine, engine_config, text, result_engine, confidence, created_at) " +
+                   "VALUES (:cacheKey, :sha256, :engine, :engineConfig, :text, :resultEngine, :confidence, :createdAt) " +
+                   "ON CONFLICT (cache_key) DO UPDATE SET text = EXCLUDED.text, result_engine = EXCLUDED.result_engine, " +
+                   "confidence = EXCLUDED.confidence, created_at = EXCLUDED.created_at",
+           nativeQuery = true)
+    int upsert(@Param("cacheKey") String cacheKey,
+               @Param("sha256") String sha256,
+               @Param("engine") String engine,
+               @Param("engineConfig") String engineConfig,
+               @Param("text") String text,
+               @Param("resultEngine") String resultEngine,
+               @Param("confidence") Double confidence,
+               @Param("createdAt") OffsetDateTime createdAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ExtractionCacheEntry e WHERE e.createdAt < :cutoff")
+    int deleteByCreatedAtBefore(@Param("cutoff") OffsetDateTime cutoff);
+}
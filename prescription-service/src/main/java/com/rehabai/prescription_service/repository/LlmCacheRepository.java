@@ -0,0 +1,34 @@
+package com.rehabai.prescription_service.repository;
+
+import com.rehabai.prescription_service.model.LlmCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+
+public interface LlmCacheRepository extends JpaRepository<LlmCacheEntry, String> {
+
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = "INSERT INTO llm_response_cache (cache_key, model_id, prompt_version, response, input_tokens, output_tokens, created_at) " +
+                   "VALUES (:cacheKey, :modelId, :promptVersion, :response, :inputTokens, :outputTokens, :createdAt) " +
+                   "ON CONFLICT (cache_key) DO UPDATE SET response = EXCLUDED.response, input_tokens = EXCLUDED.input_tokens, " +
+                   "output_tokens = EXCLUDED.output_tokens, created_at = EXCLUDED.created_at",
+           nativeQuery = true)
+    int upsert(@Param("cacheKey") String cacheKey,
+               @Param("modelId") String modelId,
+               @Param("promptVersion") String promptVersion,
+               @Param("response") String response,
+               @Param("inputTokens") Integer inputTokens,
+               @Param("outputTokens") Integer outputTokens,
+               @Param("createdAt") OffsetDateTime createdAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM LlmCacheEntry e WHERE e.createdAt < :cutoff")
+    int deleteByCreatedAtBefore(@Param("cutoff") OffsetDateTime cutoff);
+}
@@ -1,11 +1,38 @@
 package com.rehabai.prescription_service.repository;
 
 import com.rehabai.prescription_service.model.Normalization;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface NormalizationRepository extends JpaRepository<Normalization, UUID> {
     Optional<Normalization> findTopByExtractionIdOrderByCreatedAtDesc(UUID extractionId);
+
+    /**
+     * Próxima página (keyset por created_at, id) das normalizações no intervalo que ainda não têm prescrição
+     * com o modelo e a versão de prompt alvo; reexecutar um job não duplica prescrições.
+     */
+    @Query("""
+            SELECT n FROM Normalization n
+            WHERE n.createdAt >= :from AND n.createdAt < :to
+              AND (n.createdAt > :afterCreatedAt OR (n.createdAt = :afterCreatedAt AND n.id > :afterId))
+              AND NOT EXISTS (SELECT 1 FROM Prescription p
+                              WHERE p.normalizationId = n.id
+                                AND p.promptVersion = :promptVersion
+                                AND p.modelUsed = :modelId)
+            ORDER BY n.createdAt ASC, n.id ASC
+            """)
+    List<Normalization> findRegenerationPage(@Param("from") OffsetDateTime from,
+                                             @Param("to") OffsetDateTime to,
+                                             @Param("afterCreatedAt") OffsetDateTime afterCreatedAt,
+                                             @Param("afterId") UUID afterId,
+                                             @Param("promptVersion") String promptVersion,
+                                             @Param("modelId") String modelId,
+                                             Pageable page);
 }
@@ -0,0 +1,33 @@
+package com.rehabai.prescription_service.repository;
+
+import com.rehabai.prescription_service.model.RegenerationJob;
+import com.rehabai.prescription_service.model.RegenerationStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface RegenerationJobRepository extends JpaRepository<RegenerationJob, UUID> {
+    List<RegenerationJob> findByStatusInOrderByCreatedAtAsc(Collection<RegenerationStatus> statuses);
+
+    /** Assume o job se ainda estiver ativo e sem lease válido de outra instância; retorna 1 para quem conseguiu. */
+    @Modifying
+    @Query("UPDATE RegenerationJob j SET j.leaseOwner = :owner, j.leaseUntil = :until " +
+           "WHERE j.id = :id AND j.status IN :statuses " +
+           "AND (j.leaseOwner IS NULL OR j.leaseOwner = :owner OR j.leaseUntil < :now)")
+    int claim(@Param("id") UUID id,
+              @Param("statuses") Collection<RegenerationStatus> statuses,
+              @Param("owner") String owner,
+              @Param("until") OffsetDateTime until,
+              @Param("now") OffsetDateTime now);
+
+    /** Estende o lease só se ele ainda for desta instância; 0 significa que outra instância assumiu o job. */
+    @Modifying
+    @Query("UPDATE RegenerationJob j SET j.leaseUntil = :until WHERE j.id = :id AND j.leaseOwner = :owner")
+    int renewLease(@Param("id") UUID id, @Param("owner") String owner, @Param("until") OffsetDateTime until);
+}
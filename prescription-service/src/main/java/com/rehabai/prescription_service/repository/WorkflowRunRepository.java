@@ -1,11 +1,56 @@
 package com.rehabai.prescription_service.repository;
 
 import com.rehabai.prescription_service.model.WorkflowRun;
+import com.rehabai.prescription_service.model.WorkflowStage;
+import com.rehabai.prescription_service.model.WorkflowStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface WorkflowRunRepository extends JpaRepository<WorkflowRun, UUID> {
     Optional<WorkflowRun> findTopByFileIdOrderByCreatedAtDesc(UUID fileId);
+
+    @Query("SELECT r FROM WorkflowRun r WHERE r.status = :status AND r.currentStage IN :stages AND r.updatedAt < :staleBefore")
+    List<WorkflowRun> findStale(@Param("status") WorkflowStatus status,
+                                @Param("stages") Collection<WorkflowStage> stages,
+                                @Param("staleBefore") OffsetDateTime staleBefore);
+
+    /** Reivindica um run parado: só atualiza se ninguém o tocou desde {@code staleBefore}. Retorna 1 para quem venceu. */
+    @Modifying
+    @Query("UPDATE WorkflowRun r SET r.updatedAt = :now WHERE r.id = :id AND r.currentStage = :stage " +
+           "AND r.status = :status AND r.updatedAt < :staleBefore")
+    int claimStale(@Param("id") UUID id,
+                   @Param("stage") WorkflowStage stage,
+                   @Param("status") WorkflowStatus status,
+                   @Param("staleBefore") OffsetDateTime staleBefore,
+                   @Param("now") OffsetDateTime now);
+
+    /**
+     * Transição de estágio num único UPDATE, sem carregar o run (não dispara o @PreUpdate, por isso o updatedAt
+     * explícito). Só avança se o run ainda estiver RUNNING no estágio esperado; 0 significa que outro processo
+     * (retomada, falha, outra instância) já mexeu nele e quem chamou deve abandonar o estágio.
+     */
+    @Modifying
+    @Query("UPDATE WorkflowRun r SET r.currentStage = :stage, r.status = :status, r.updatedAt = :now " +
+           "WHERE r.id = :id AND r.currentStage = :expected AND r.status = :running")
+    int updateState(@Param("id") UUID id,
+                    @Param("expected") WorkflowStage expected,
+                    @Param("running") WorkflowStatus running,
+                    @Param("stage") WorkflowStage stage,
+                    @Param("status") WorkflowStatus status,
+                    @Param("now") OffsetDateTime now);
+
+    /** Renova o updatedAt dos runs em andamento nesta instância, para a varredura não os tomar por parados. */
+    @Modifying
+    @Query("UPDATE WorkflowRun r SET r.updatedAt = :now WHERE r.id IN :ids AND r.status = :status")
+    int touch(@Param("ids") Collection<UUID> ids,
+              @Param("status") WorkflowStatus status,
+              @Param("now") OffsetDateTime now);
 }
@@ -0,0 +1,40 @@
+package com.rehabai.prescription_service.service;
+
+import com.rehabai.prescription_service.model.AiTrace;
+import com.rehabai.prescription_service.repository.AiTraceRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Grava os {@link AiTrace} da pipeline na transação do estágio que os produziu, junto com a saída do estágio e a
+ * transição do {@link com.rehabai.prescription_service.model.WorkflowRun}: o INSERT entra no mesmo batch JDBC
+ * ({@code hibernate.jdbc.batch_size}) e um trace só existe se o estágio foi gravado, e vice-versa.
+ * <p>
+ * Não há buffer em memória: traces de bloqueio pelo guardrail são registro de auditoria e não podem se perder num
+ * crash. Chamar fora de uma transação é erro de programação ({@code PROPAGATION_MANDATORY}).
+ */
+@Component
+public class AiTraceWriter {
+
+    private final AiTraceRepository repository;
+    private final TransactionTemplate mandatory;
+    private final MeterRegistry registry;
+
+    public AiTraceWriter(AiTraceRepository repository,
+                         PlatformTransactionManager transactionManager,
+                         MeterRegistry registry) {
+        this.repository = repository;
+        this.mandatory = new TransactionTemplate(transactionManager);
+        this.mandatory.setPropagationBehavior(TransactionDefinition.PROPAGATION_MANDATORY);
+        this.registry = registry;
+    }
+
+    /** Enfileira o INSERT na transação corrente; uma falha derruba a transação do estágio. */
+    public void record(AiTrace trace) {
+        mandatory.executeWithoutResult(status -> repository.save(trace));
+        registry.counter("pipeline.traces.written").increment();
+    }
+}
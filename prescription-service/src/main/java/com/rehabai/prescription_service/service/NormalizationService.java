@@ -1,6 +1,7 @@
 package com.rehabai.prescription_service.service;
 
 import com.rehabai.prescription_service.llm.LlmService;
+import com.rehabai.prescription_service.llm.LlmUnavailableException;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import io.micrometer.observation.Observation;
@@ -39,6 +40,10 @@ public class NormalizationService {
                     String rules = "{\"rulesApplied\":[\"llm-normalizer\"]}";
                     meterRegistry.counter("normalization.method", "type", "llm").increment();
                     return new Result(normalized, rules, 0.85);
+                } catch (LlmUnavailableException e) {
+                    // Sem capacidade no Bedrock o estágio falha em vez de cair na normalização básica
+                    obs.error(e);
+                    throw e;
                 } catch (Exception e) {
                     obs.error(e);
                     meterRegistry.counter("normalization.llm.failure").increment();
@@ -1,8 +1,12 @@
 package com.rehabai.prescription_service.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rehabai.prescription_service.llm.LlmService;
+import com.rehabai.prescription_service.llm.PlanStreamHub;
 import com.rehabai.prescription_service.model.*;
 import com.rehabai.prescription_service.repository.*;
+import com.rehabai.prescription_service.ocr.SourceDocument;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import io.micrometer.observation.Observation;
@@ -10,11 +14,38 @@ import io.micrometer.observation.ObservationRegistry;
 import io.micrometer.tracing.Tracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
+/**
+ * Pipeline OCR → Normalização → Prescrição executada em estágios.
+ * <p>
+ * Cada estágio roda no executor próprio ({@link StageExecutors}) e grava sua saída junto com o avanço
+ * de {@link WorkflowRun#getCurrentStage()} numa transação curta. O próximo estágio lê a entrada do banco,
+ * então nenhuma conexão fica presa durante OCR ou chamadas ao Bedrock e um run interrompido pode ser
+ * retomado a partir do último estágio gravado.
+ * <p>
+ * Enquanto um run está na fila ou em execução nesta instância, o {@link #heartbeat()} renova o {@code updatedAt}
+ * dele, então a varredura de {@link #resumePending()} (desta ou de outra instância) só enxerga runs cujo dono
+ * morreu. Cada transição é condicional ao estágio esperado e ao status RUNNING: se o run mudou por fora, o
+ * estágio é abandonado e a transação desfeita, sem gravar saída duplicada.
+ */
 @Service
 public class PipelineService {
 
@@ -27,12 +58,23 @@ public class PipelineService {
     private final ExtractionRepository extractionRepo;
     private final NormalizationRepository normalizationRepo;
     private final PrescriptionRepository prescriptionRepo;
-    private final AiTraceRepository aiTraceRepo;
+    private final AiTraceWriter traceWriter;
+    private final PlanStreamHub planStreamHub;
+    private final StageExecutors stageExecutors;
+    private final TransactionTemplate tx;
+    private final ObjectMapper objectMapper;
+    private final boolean resumeEnabled;
+    private final Duration resumeStaleAfter;
+    /** Runs com estágio na fila ou em execução nesta instância. */
+    private final Set<UUID> liveRuns = ConcurrentHashMap.newKeySet();
 
     private final MeterRegistry meterRegistry;
     private final ObservationRegistry observationRegistry;
     private final Tracer tracer;
 
+    /** Estado em memória de um run em andamento (métricas/observação); o estado durável fica no banco. */
+    private record RunContext(UUID runId, UUID fileId, String traceId, Timer.Sample total, Observation observation) {}
+
     public PipelineService(com.rehabai.prescription_service.ocr.OCRService ocrService,
                            NormalizationService normalizationService,
                            LlmService llmService,
@@ -40,7 +82,14 @@ public class PipelineService {
                            ExtractionRepository extractionRepo,
                            NormalizationRepository normalizationRepo,
                            PrescriptionRepository prescriptionRepo,
-                           AiTraceRepository aiTraceRepo,
+                           AiTraceWriter traceWriter,
+                           PlanStreamHub planStreamHub,
+                           StageExecutors stageExecutors,
+                           TransactionTemplate tx,
+                           ObjectMapper objectMapper,
+                           @Value("${pipeline.stages.resume.enabled:true}") boolean resumeEnabled,
+                           @Value("${pipeline.stages.resume.staleAfterMs:900000}") long resumeStaleAfterMs,
+                           @Value("${pipeline.stages.heartbeatMs:60000}") long heartbeatMs,
                            MeterRegistry meterRegistry,
                            ObservationRegistry observationRegistry,
                            Tracer tracer) {
@@ -51,19 +100,27 @@ public class PipelineService {
         this.extractionRepo = extractionRepo;
         this.normalizationRepo = normalizationRepo;
         this.prescriptionRepo = prescriptionRepo;
-        this.aiTraceRepo = aiTraceRepo;
+        this.traceWriter = traceWriter;
+        this.planStreamHub = planStreamHub;
+        this.stageExecutors = stageExecutors;
+        this.tx = tx;
+        this.objectMapper = objectMapper;
+        this.resumeEnabled = resumeEnabled;
+        this.resumeStaleAfter = Duration.ofMillis(resumeStaleAfterMs);
+        if (heartbeatMs >= resumeStaleAfterMs) {
+            throw new IllegalArgumentException("pipeline.stages.heartbeatMs must be shorter than pipeline.stages.resume.staleAfterMs");
+        }
         this.meterRegistry = meterRegistry;
         this.observationRegistry = observationRegistry;
         this.tracer = tracer;
     }
 
-    @Transactional
-    public void processFile(UUID fileId, UUID userId, byte[] content, String filename, String contentType) {
-        WorkflowRun run = new WorkflowRun();
-        run.setFileId(fileId);
-        run.setUserId(userId);
-        run.setCurrentStage(WorkflowStage.EXTRACTION);
-
+    /**
+     * Cria o run e aguarda apenas o estágio de extração: quando este método retorna, o texto extraído já
+     * está persistido e o arquivo temporário pode ser apagado (a mensagem AMQP pode ser confirmada).
+     * Normalização e prescrição seguem de forma assíncrona nos seus executores.
+     */
+    public void processFile(UUID fileId, UUID userId, SourceDocument document, String filename, String contentType, String sha256) {
         String traceId;
         try {
             traceId = tracer != null && tracer.currentSpan() != null ? tracer.currentSpan().context().traceId() : null;
@@ -75,162 +132,376 @@ public class PipelineService {
             traceId = UUID.randomUUID().toString().replace("-", "");
         }
 
+        WorkflowRun run = new WorkflowRun();
+        run.setFileId(fileId);
+        run.setUserId(userId);
+        run.setCurrentStage(WorkflowStage.EXTRACTION);
         run.setTraceId(traceId);
         run = runRepo.save(run);
 
-        Timer.Sample total = Timer.start(meterRegistry);
-        Observation overallObs = Observation.start("pipeline.run", observationRegistry)
-                .lowCardinalityKeyValue("service", "prescription-service");
-        try (Observation.Scope overallScope = overallObs.openScope()) {
-            // Extraction Stage
-            run.setCurrentStage(WorkflowStage.EXTRACTION);
-            runRepo.save(run);
-            Observation extractObs = Observation.createNotStarted("pipeline.stage", observationRegistry)
-                    .lowCardinalityKeyValue("stage", "extraction");
-            Timer.Sample extractTimer = Timer.start(meterRegistry);
-
-            Extraction ext;
-            String extractedText;
-            try (Observation.Scope s = extractObs.start().openScope()) {
-                var ocr = ocrService.extract(content, filename, contentType);
-                log.debug("OCR extracted text: {}", ocr.text());
-                extractedText = ocr.text();
-                ext = new Extraction();
-                ext.setFileId(fileId);
-                ext.setFindingsJson("{\"text\": \"" + escape(extractedText) + "\"}");
-                ext.setContraindicationsJson("[]");
-                ext.setModelUsed(ocr.engine());
-                ext.setConfidenceScore(ocr.confidence());
-                ext = extractionRepo.save(ext);
-                meterRegistry.counter("pipeline.stage.success", "stage", "extraction").increment();
-            } catch (Exception ex) {
-                extractObs.error(ex);
-                meterRegistry.counter("pipeline.stage.failure", "stage", "extraction").increment();
-                throw ex;
-            } finally {
-                extractObs.stop();
-                extractTimer.stop(Timer.builder("pipeline.stage.latency").tag("stage", "extraction").register(meterRegistry));
-            }
+        RunContext ctx = newContext(run);
+        try {
+            stageExecutors.submit(WorkflowStage.EXTRACTION,
+                    () -> runExtraction(ctx, document, filename, contentType, sha256)).join();
+        } catch (RejectedExecutionException e) {
+            // Executor desligando/interrompido: o run fica FAILED e a exceção volta ao listener para a mensagem ser devolvida à fila
+            fail(ctx, WorkflowStage.EXTRACTION, "extraction", e);
+            throw e;
+        } catch (CompletionException e) {
+            // runExtraction já registra a falha no run; aqui só chega erro de agendamento/interrupção
+            fail(ctx, WorkflowStage.EXTRACTION, "extraction", e.getCause() != null ? e.getCause() : e);
+        }
+    }
 
-            // Normalization Stage
-            run.setCurrentStage(WorkflowStage.NORMALIZATION);
-            runRepo.save(run);
-            Observation normObs = Observation.createNotStarted("pipeline.stage", observationRegistry)
-                    .lowCardinalityKeyValue("stage", "normalization");
-            Timer.Sample normTimer = Timer.start(meterRegistry);
-
-            Normalization norm = null;
-            long startNorm = System.currentTimeMillis();
-            try (Observation.Scope s = normObs.start().openScope()) {
-                var normRes = normalizationService.normalize(extractedText);
-                norm = new Normalization();
-                norm.setExtractionId(ext.getId());
-                norm.setNormalizedTerms(normRes.normalizedJson());
-                norm.setRulesApplied(normRes.rulesJson());
-                norm.setConfidence(normRes.confidence());
-                norm = normalizationRepo.save(norm);
-                meterRegistry.counter("pipeline.stage.success", "stage", "normalization").increment();
-            } catch (Exception ex) {
-                normObs.error(ex);
-                meterRegistry.counter("pipeline.stage.failure", "stage", "normalization").increment();
-                throw ex;
-            } finally {
-                int latencyNorm = (int) (System.currentTimeMillis() - startNorm);
-                saveAiTrace(run.getTraceId(), "normalizer",
-                        truncate(extractedText, 500),
-                        truncate(norm != null ? norm.getNormalizedTerms() : null, 500),
-                        latencyNorm, false);
-
-                normObs.stop();
-                normTimer.stop(Timer.builder("pipeline.stage.latency").tag("stage", "normalization").register(meterRegistry));
+    /**
+     * Decide se um {@code file.uploaded} deve iniciar um run. O outbox do file-service entrega at-least-once, então a
+     * mesma mensagem pode chegar de novo (confirm perdido, crash antes do ack):
+     * <ul>
+     *   <li>último run COMPLETED, ou RUNNING já depois da extração (a varredura retoma esses): ignora;</li>
+     *   <li>RUNNING em EXTRACTION nesta instância: é o mesmo arquivo sendo extraído agora, ignora;</li>
+     *   <li>RUNNING em EXTRACTION fora desta instância: a reentrega veio porque quem extraía caiu sem ack. O run
+     *   antigo é encerrado com um UPDATE condicional e um novo começa; se o antigo ainda estiver vivo, o próximo
+     *   avanço dele não casa e ele abandona o estágio;</li>
+     *   <li>sem run, ou último FAILED: processa.</li>
+     * </ul>
+     */
+    public boolean shouldProcess(UUID fileId) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            WorkflowRun latest = runRepo.findTopByFileIdOrderByCreatedAtDesc(fileId).orElse(null);
+            if (latest == null || latest.getStatus() == WorkflowStatus.FAILED) return true;
+            if (latest.getStatus() != WorkflowStatus.RUNNING
+                    || latest.getCurrentStage() != WorkflowStage.EXTRACTION
+                    || liveRuns.contains(latest.getId())) {
+                meterRegistry.counter("pipeline.ingest.duplicates").increment();
+                return false;
+            }
+            Integer superseded = tx.execute(status -> runRepo.updateState(latest.getId(), WorkflowStage.EXTRACTION,
+                    WorkflowStatus.RUNNING, WorkflowStage.ERROR, WorkflowStatus.FAILED, OffsetDateTime.now()));
+            if (superseded != null && superseded == 1) {
+                log.info("Run {} for file {} was interrupted during extraction; starting over", latest.getId(), fileId);
+                return true;
             }
+            // O run mudou entre a leitura e o UPDATE: reavalia com o estado novo
+        }
+        meterRegistry.counter("pipeline.ingest.duplicates").increment();
+        return false;
+    }
 
-            run.setCurrentStage(WorkflowStage.PRESCRIPTION);
-            runRepo.save(run);
-            Observation prescObs = Observation.createNotStarted("pipeline.stage", observationRegistry)
-                    .lowCardinalityKeyValue("stage", "prescription");
-            Timer.Sample prescTimer = Timer.start(meterRegistry);
-
-            long startLlm = System.currentTimeMillis();
-            try (Observation.Scope s = prescObs.start().openScope()) {
-                var llm = llmService.generate(norm.getNormalizedTerms());
-
-                log.info("LLM Response - Prescription Text Length: {}",
-                         llm.prescriptionText() != null ? llm.prescriptionText().length() : 0);
-                log.info("LLM Response - Prescription Text Preview: {}",
-                         truncate(llm.prescriptionText(), 200));
-                log.info("LLM Response - Parameters JSON Length: {}",
-                         llm.parametersJson() != null ? llm.parametersJson().length() : 0);
-                log.info("LLM Response - Model Used: {}", llm.modelUsed());
-                log.info("LLM Response - Guardrail Status: {}", llm.guardrailStatus());
-
-                Prescription pr = new Prescription();
-                pr.setNormalizationId(norm.getId());
-                pr.setPrescriptionText(llm.prescriptionText());
-                pr.setParametersJson(llm.parametersJson());
-                pr.setPromptVersion("v1");
-                pr.setModelUsed(llm.modelUsed());
-                pr.setGuardrailStatus(llm.guardrailStatus());
-                prescriptionRepo.save(pr);
-
-                log.info("Prescription saved with ID: {}", pr.getId());
-
-                boolean blocked = llm.guardrailStatus() == GuardrailStatus.BLOCKED;
-                int latencyLlm = (int) (System.currentTimeMillis() - startLlm);
-                saveAiTrace(run.getTraceId(), "prescription-llm",
-                        truncate(norm.getNormalizedTerms(), 500),
-                        truncate(llm.prescriptionText(), 500),
-                        latencyLlm, blocked);
-
-                meterRegistry.counter("pipeline.stage.success", "stage", "prescription").increment();
-            } catch (Exception ex) {
-                prescObs.error(ex);
-                meterRegistry.counter("pipeline.stage.failure", "stage", "prescription").increment();
-                throw ex;
-            } finally {
-                prescObs.stop();
-                prescTimer.stop(Timer.builder("pipeline.stage.latency").tag("stage", "prescription").register(meterRegistry));
+    /**
+     * Retoma runs que ficaram em NORMALIZATION/PRESCRIPTION (ex.: restart durante uma chamada ao LLM) e encerra
+     * os que pararam em EXTRACTION (a mensagem AMQP é reentregue e cria um run novo). Só considera runs sem
+     * transição há mais de {@code pipeline.stages.resume.staleAfterMs}; cada um é reivindicado com um UPDATE
+     * condicional antes de ser retomado, então com várias instâncias só uma o processa. Runs vivos nesta instância
+     * nunca são tocados, mesmo que o heartbeat tenha falhado.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${pipeline.stages.resume.intervalMs:60000}",
+            fixedDelayString = "${pipeline.stages.resume.intervalMs:60000}")
+    public void resumePending() {
+        if (!resumeEnabled) return;
+        OffsetDateTime staleBefore = OffsetDateTime.now().minus(resumeStaleAfter);
+        List<WorkflowRun> pending = runRepo.findStale(WorkflowStatus.RUNNING,
+                List.of(WorkflowStage.EXTRACTION, WorkflowStage.NORMALIZATION, WorkflowStage.PRESCRIPTION), staleBefore);
+        int resumed = 0;
+        for (WorkflowRun run : pending) {
+            if (liveRuns.contains(run.getId()) || !claim(run, staleBefore)) continue;
+            RunContext ctx = newContext(run);
+            WorkflowStage stage = run.getCurrentStage();
+            if (stage == WorkflowStage.EXTRACTION) {
+                fail(ctx, stage, "resume", new IllegalStateException("Extraction interrupted; source file is redelivered by AMQP"));
+                continue;
             }
+            var extraction = extractionRepo.findTopByFileIdOrderByCreatedAtDesc(run.getFileId()).orElse(null);
+            if (extraction == null) {
+                fail(ctx, stage, "resume", new IllegalStateException("No extraction found for file " + run.getFileId()));
+                continue;
+            }
+            if (stage == WorkflowStage.NORMALIZATION) {
+                handOff(ctx, WorkflowStage.NORMALIZATION, () -> runNormalization(ctx, extraction.getId()));
+            } else {
+                var norm = normalizationRepo.findTopByExtractionIdOrderByCreatedAtDesc(extraction.getId()).orElse(null);
+                if (norm == null) {
+                    fail(ctx, stage, "resume", new IllegalStateException("No normalization found for extraction " + extraction.getId()));
+                    continue;
+                }
+                handOff(ctx, WorkflowStage.PRESCRIPTION, () -> runPrescription(ctx, norm.getId()));
+            }
+            resumed++;
+        }
+        if (resumed > 0) {
+            log.info("Resumed {} pipeline runs left in progress", resumed);
+        }
+    }
 
-            run.setCurrentStage(WorkflowStage.DONE);
-            run.setStatus(WorkflowStatus.COMPLETED);
-            runRepo.save(run);
-            meterRegistry.counter("pipeline.run.completed").increment();
-        } catch (Exception e) {
-            log.error("Pipeline failed for file {}: {}", fileId, e.getMessage(), e);
-            run.setCurrentStage(WorkflowStage.ERROR);
-            run.setStatus(WorkflowStatus.FAILED);
-            runRepo.save(run);
-            meterRegistry.counter("pipeline.run.failed").increment();
-            overallObs.error(e);
+    /** Marca como vivos os runs desta instância; roda bem antes de {@code staleAfterMs} para nenhum parecer parado. */
+    @Scheduled(initialDelayString = "${pipeline.stages.heartbeatMs:60000}",
+            fixedDelayString = "${pipeline.stages.heartbeatMs:60000}")
+    public void heartbeat() {
+        if (liveRuns.isEmpty()) return;
+        List<UUID> ids = List.copyOf(liveRuns);
+        try {
+            tx.executeWithoutResult(status -> runRepo.touch(ids, WorkflowStatus.RUNNING, OffsetDateTime.now()));
+        } catch (RuntimeException e) {
+            log.warn("Could not renew {} live pipeline runs: {}", ids.size(), e.getMessage());
+        }
+    }
+
+    /** Renova o updatedAt só se o run ainda estiver parado no mesmo estágio; outra instância que tente depois perde. */
+    private boolean claim(WorkflowRun run, OffsetDateTime staleBefore) {
+        Integer updated = tx.execute(status -> runRepo.claimStale(run.getId(), run.getCurrentStage(),
+                WorkflowStatus.RUNNING, staleBefore, OffsetDateTime.now()));
+        return updated != null && updated == 1;
+    }
+
+    private void runExtraction(RunContext ctx, SourceDocument document, String filename, String contentType, String sha256) {
+        Observation extractObs = stageObservation(ctx, "extraction");
+        Timer.Sample extractTimer = Timer.start(meterRegistry);
+
+        Extraction saved;
+        try (Observation.Scope s = extractObs.start().openScope()) {
+            var ocr = ocrService.extract(document, filename, contentType, sha256);
+            log.debug("OCR extracted text: {}", ocr.text());
+            Extraction ext = new Extraction();
+            ext.setFileId(ctx.fileId());
+            ext.setFindingsJson(objectMapper.writeValueAsString(Map.of("text", Objects.requireNonNullElse(ocr.text(), ""))));
+            ext.setContraindicationsJson("[]");
+            ext.setModelUsed(ocr.engine());
+            ext.setConfidenceScore(ocr.confidence());
+            saved = persist("extraction", () -> {
+                advance(ctx, WorkflowStage.EXTRACTION, WorkflowStage.NORMALIZATION, WorkflowStatus.RUNNING);
+                return extractionRepo.save(ext);
+            });
+            meterRegistry.counter("pipeline.stage.success", "stage", "extraction").increment();
+        } catch (StageAbortedException ex) {
+            abandon(ctx, ex);
+            return;
+        } catch (Exception ex) {
+            extractObs.error(ex);
+            meterRegistry.counter("pipeline.stage.failure", "stage", "extraction").increment();
+            fail(ctx, WorkflowStage.EXTRACTION, "extraction", ex);
+            return;
         } finally {
-            overallObs.stop();
-            total.stop(Timer.builder("pipeline.run.latency").register(meterRegistry));
+            extractObs.stop();
+            extractTimer.stop(Timer.builder("pipeline.stage.latency").tag("stage", "extraction").register(meterRegistry));
         }
+
+        UUID extractionId = saved.getId();
+        handOff(ctx, WorkflowStage.NORMALIZATION, () -> runNormalization(ctx, extractionId));
     }
 
-    private void saveAiTrace(String traceId, String agentName, String inputSummary,
-                             String outputSummary, int latencyMs, boolean blockedByGuardrail) {
+    private void runNormalization(RunContext ctx, UUID extractionId) {
+        Observation normObs = stageObservation(ctx, "normalization");
+        Timer.Sample normTimer = Timer.start(meterRegistry);
+
+        String extractedText = null;
+        Normalization saved = null;
+        long startNorm = System.currentTimeMillis();
+        try (Observation.Scope s = normObs.start().openScope()) {
+            Extraction ext = extractionRepo.findById(extractionId)
+                    .orElseThrow(() -> new IllegalStateException("Extraction not found: " + extractionId));
+            extractedText = readExtractedText(ext);
+            var normRes = normalizationService.normalize(extractedText);
+            Normalization norm = new Normalization();
+            norm.setExtractionId(extractionId);
+            norm.setNormalizedTerms(normRes.normalizedJson());
+            norm.setRulesApplied(normRes.rulesJson());
+            norm.setConfidence(normRes.confidence());
+
+            AiTrace trace = aiTrace(ctx.traceId(), "normalizer", truncate(extractedText, 500),
+                    truncate(norm.getNormalizedTerms(), 500), (int) (System.currentTimeMillis() - startNorm), false);
+            saved = persist("normalization", () -> {
+                advance(ctx, WorkflowStage.NORMALIZATION, WorkflowStage.PRESCRIPTION, WorkflowStatus.RUNNING);
+                traceWriter.record(trace);
+                return normalizationRepo.save(norm);
+            });
+            meterRegistry.counter("pipeline.stage.success", "stage", "normalization").increment();
+        } catch (StageAbortedException ex) {
+            abandon(ctx, ex);
+            return;
+        } catch (Exception ex) {
+            normObs.error(ex);
+            meterRegistry.counter("pipeline.stage.failure", "stage", "normalization").increment();
+            int latencyNorm = (int) (System.currentTimeMillis() - startNorm);
+            fail(ctx, WorkflowStage.NORMALIZATION, "normalization", ex,
+                    aiTrace(ctx.traceId(), "normalizer", truncate(extractedText, 500), "", latencyNorm, false));
+            return;
+        } finally {
+            normObs.stop();
+            normTimer.stop(Timer.builder("pipeline.stage.latency").tag("stage", "normalization").register(meterRegistry));
+        }
+
+        UUID normalizationId = saved.getId();
+        handOff(ctx, WorkflowStage.PRESCRIPTION, () -> runPrescription(ctx, normalizationId));
+    }
+
+    private void runPrescription(RunContext ctx, UUID normalizationId) {
+        Observation prescObs = stageObservation(ctx, "prescription");
+        Timer.Sample prescTimer = Timer.start(meterRegistry);
+
+        long startLlm = System.currentTimeMillis();
+        try (Observation.Scope s = prescObs.start().openScope()) {
+            Normalization norm = normalizationRepo.findById(normalizationId)
+                    .orElseThrow(() -> new IllegalStateException("Normalization not found: " + normalizationId));
+            var llm = llmService.generate(norm.getNormalizedTerms(), partial -> planStreamHub.publish(ctx.fileId(), partial));
+
+            log.info("LLM Response - Prescription Text Length: {}",
+                     llm.prescriptionText() != null ? llm.prescriptionText().length() : 0);
+            log.info("LLM Response - Prescription Text Preview: {}",
+                     truncate(llm.prescriptionText(), 200));
+            log.info("LLM Response - Parameters JSON Length: {}",
+                     llm.parametersJson() != null ? llm.parametersJson().length() : 0);
+            log.info("LLM Response - Model Used: {}", llm.modelUsed());
+            log.info("LLM Response - Guardrail Status: {}", llm.guardrailStatus());
+
+            Prescription pr = new Prescription();
+            pr.setNormalizationId(norm.getId());
+            pr.setPrescriptionText(llm.prescriptionText());
+            pr.setParametersJson(llm.parametersJson());
+            pr.setPromptVersion(LlmService.PROMPT_VERSION);
+            pr.setModelUsed(llm.modelUsed());
+            pr.setGuardrailStatus(llm.guardrailStatus());
+
+            boolean blocked = llm.guardrailStatus() == GuardrailStatus.BLOCKED;
+            int latencyLlm = (int) (System.currentTimeMillis() - startLlm);
+            AiTrace trace = aiTrace(ctx.traceId(), "prescription-llm",
+                    truncate(norm.getNormalizedTerms(), 500),
+                    truncate(llm.prescriptionText(), 500),
+                    latencyLlm, blocked);
+            persist("prescription", () -> {
+                advance(ctx, WorkflowStage.PRESCRIPTION, WorkflowStage.DONE, WorkflowStatus.COMPLETED);
+                traceWriter.record(trace);
+                return prescriptionRepo.save(pr);
+            });
+
+            log.info("Prescription saved with ID: {}", pr.getId());
+            planStreamHub.complete(ctx.fileId(), Map.of("prescriptionId", pr.getId(), "guardrailStatus", llm.guardrailStatus()));
+            meterRegistry.counter("pipeline.stage.success", "stage", "prescription").increment();
+        } catch (StageAbortedException ex) {
+            abandon(ctx, ex);
+            return;
+        } catch (Exception ex) {
+            prescObs.error(ex);
+            meterRegistry.counter("pipeline.stage.failure", "stage", "prescription").increment();
+            fail(ctx, WorkflowStage.PRESCRIPTION, "prescription", ex);
+            return;
+        } finally {
+            prescObs.stop();
+            prescTimer.stop(Timer.builder("pipeline.stage.latency").tag("stage", "prescription").register(meterRegistry));
+        }
+
+        liveRuns.remove(ctx.runId());
+        meterRegistry.counter("pipeline.run.completed").increment();
+        ctx.observation().stop();
+        ctx.total().stop(Timer.builder("pipeline.run.latency").register(meterRegistry));
+    }
+
+    /** Contexto de um run que passa a ser executado nesta instância (entra no heartbeat até terminar). */
+    private RunContext newContext(WorkflowRun run) {
+        liveRuns.add(run.getId());
+        Observation overallObs = Observation.start("pipeline.run", observationRegistry)
+                .lowCardinalityKeyValue("service", "prescription-service");
+        return new RunContext(run.getId(), run.getFileId(), run.getTraceId(), Timer.start(meterRegistry), overallObs);
+    }
+
+    private Observation stageObservation(RunContext ctx, String stage) {
+        return Observation.createNotStarted("pipeline.stage", observationRegistry)
+                .parentObservation(ctx.observation())
+                .lowCardinalityKeyValue("stage", stage);
+    }
+
+    /** Saída do estágio + transição do run + trace numa única transação (batch JDBC), medida em pipeline.persistence.flush. */
+    private <T> T persist(String stage, Supplier<T> work) {
+        return Timer.builder("pipeline.persistence.flush").tag("writer", stage).register(meterRegistry)
+                .record(() -> tx.execute(status -> work.get()));
+    }
+
+    /**
+     * Deve ser chamado dentro de uma transação, para gravar junto com a saída do estágio. Se o run não estiver mais
+     * RUNNING em {@code expected}, lança {@link StageAbortedException} e a transação do estágio é desfeita.
+     */
+    private void advance(RunContext ctx, WorkflowStage expected, WorkflowStage next, WorkflowStatus status) {
+        int updated = runRepo.updateState(ctx.runId(), expected, WorkflowStatus.RUNNING, next, status, OffsetDateTime.now());
+        if (updated == 0) {
+            throw new StageAbortedException(ctx.runId(), expected);
+        }
+    }
+
+    private void handOff(RunContext ctx, WorkflowStage stage, Runnable task) {
         try {
-            AiTrace trace = new AiTrace();
-            trace.setTraceId(traceId);
-            trace.setAgentName(agentName);
-            trace.setInputSummary(inputSummary);
-            trace.setOutputSummary(outputSummary);
-            trace.setLatencyMs(latencyMs);
-            trace.setBlockedByGuardrail(blockedByGuardrail);
-            aiTraceRepo.save(trace);
+            stageExecutors.submit(stage, task);
         } catch (Exception e) {
-            log.warn("Failed to save AI trace: {}", e.getMessage());
+            fail(ctx, stage, stage.name().toLowerCase(), e);
         }
     }
 
-    private String truncate(String text, int maxLength) {
-        if (text == null) return "";
-        return text.length() > maxLength ? text.substring(0, maxLength) + "..." : text;
+    private void fail(RunContext ctx, WorkflowStage expected, String stage, Throwable e) {
+        fail(ctx, expected, stage, e, null);
+    }
+
+    /**
+     * Marca o run como FAILED se ele ainda estiver em {@code expected}; o trace da tentativa, se houver, é gravado na
+     * mesma transação. Se o run já mudou por fora, só abandona o estágio.
+     */
+    private void fail(RunContext ctx, WorkflowStage expected, String stage, Throwable e, AiTrace trace) {
+        log.error("Pipeline failed for file {} at {}: {}", ctx.fileId(), stage, e.getMessage(), e);
+        try {
+            tx.executeWithoutResult(status -> {
+                advance(ctx, expected, WorkflowStage.ERROR, WorkflowStatus.FAILED);
+                if (trace != null) traceWriter.record(trace);
+            });
+        } catch (StageAbortedException aborted) {
+            abandon(ctx, aborted);
+            return;
+        } catch (Exception persistError) {
+            log.error("Could not mark run {} as failed: {}", ctx.runId(), persistError.getMessage());
+        }
+        liveRuns.remove(ctx.runId());
+        planStreamHub.fail(ctx.fileId(), "Pipeline failed at " + stage);
+        meterRegistry.counter("pipeline.run.failed").increment();
+        ctx.observation().error(e);
+        ctx.observation().stop();
+        ctx.total().stop(Timer.builder("pipeline.run.latency").register(meterRegistry));
+    }
+
+    /**
+     * O run mudou por fora (retomado, falhado ou concluído em outro lugar): descarta o estágio sem mexer no run.
+     * Os ouvintes SSE desta instância recebem {@code plan.error}, já que a geração não continua aqui.
+     */
+    private void abandon(RunContext ctx, StageAbortedException e) {
+        log.warn("Abandoning stage for file {}: {}", ctx.fileId(), e.getMessage());
+        liveRuns.remove(ctx.runId());
+        planStreamHub.fail(ctx.fileId(), "Generation was interrupted; reconnect to follow the current run");
+        meterRegistry.counter("pipeline.stage.aborted").increment();
+        ctx.observation().stop();
     }
 
-    private String escape(String s) {
-        return s == null ? "" : s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ").replace("\r", " ");
+    /** Transição condicional perdida: o run não está mais no estágio que este processo estava executando. */
+    static final class StageAbortedException extends RuntimeException {
+        StageAbortedException(UUID runId, WorkflowStage expected) {
+            super("Run " + runId + " is no longer RUNNING at " + expected);
+        }
+    }
+
+    private String readExtractedText(Extraction ext) throws Exception {
+        if (ext.getFindingsJson() == null) return "";
+        JsonNode text = objectMapper.readTree(ext.getFindingsJson()).get("text");
+        return text != null && !text.isNull() ? text.asText() : "";
+    }
+
+    private static AiTrace aiTrace(String traceId, String agentName, String inputSummary,
+                                   String outputSummary, int latencyMs, boolean blockedByGuardrail) {
+        AiTrace trace = new AiTrace();
+        trace.setTraceId(traceId);
+        trace.setAgentName(agentName);
+        trace.setInputSummary(inputSummary);
+        trace.setOutputSummary(outputSummary);
+        trace.setLatencyMs(latencyMs);
+        trace.setBlockedByGuardrail(blockedByGuardrail);
+        return trace;
+    }
+
+    private static String truncate(String text, int maxLength) {
+        if (text == null) return "";
+        return text.length() > maxLength ? text.substring(0, maxLength) + "..." : text;
     }
 }
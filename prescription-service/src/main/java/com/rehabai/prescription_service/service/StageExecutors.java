@@ -0,0 +1,133 @@
+package com.rehabai.prescription_service.service;
+
+import com.rehabai.prescription_service.model.WorkflowStage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Um executor limitado por estágio da pipeline (EXTRACTION, NORMALIZATION, PRESCRIPTION), para que OCR
+ * (CPU) e chamadas ao LLM (I/O) sejam dimensionados de forma independente.
+ * <p>
+ * Quando a fila de um estágio enche, quem submete bloqueia até abrir espaço: a pressão volta para o
+ * estágio anterior e, no fim, para o consumidor AMQP, em vez de descartar trabalho.
+ * <p>
+ * Com {@code pipeline.stages.virtualThreads=true} os estágios de I/O (normalização e prescrição, que esperam
+ * Bedrock e JDBC) usam virtual threads; a extração continua em threads de plataforma porque o Tesseract
+ * é CPU e chamada nativa (JNI prende a virtual thread ao carrier de qualquer forma).
+ */
+@Component
+public class StageExecutors {
+
+    private static final Logger log = LoggerFactory.getLogger(StageExecutors.class);
+
+    private final Map<WorkflowStage, ThreadPoolExecutor> executors = new EnumMap<>(WorkflowStage.class);
+    private final Map<WorkflowStage, Timer> queueWait = new EnumMap<>(WorkflowStage.class);
+    private final MeterRegistry registry;
+
+    public StageExecutors(MeterRegistry registry,
+                          @Value("${pipeline.stages.extraction.threads:0}") int extractionThreads,
+                          @Value("${pipeline.stages.extraction.queue:16}") int extractionQueue,
+                          @Value("${pipeline.stages.normalization.threads:2}") int normalizationThreads,
+                          @Value("${pipeline.stages.normalization.queue:100}") int normalizationQueue,
+                          @Value("${pipeline.stages.prescription.threads:8}") int prescriptionThreads,
+                          @Value("${pipeline.stages.prescription.queue:200}") int prescriptionQueue,
+                          @Value("${pipeline.stages.virtualThreads:false}") boolean virtualThreads) {
+        this.registry = registry;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        register(WorkflowStage.EXTRACTION, extractionThreads > 0 ? extractionThreads : cpus, extractionQueue, false);
+        register(WorkflowStage.NORMALIZATION, normalizationThreads, normalizationQueue, virtualThreads);
+        register(WorkflowStage.PRESCRIPTION, prescriptionThreads, prescriptionQueue, virtualThreads);
+    }
+
+    /**
+     * Enfileira a tarefa no executor do estágio, bloqueando se a fila estiver cheia.
+     */
+    public CompletableFuture<Void> submit(WorkflowStage stage, Runnable task) {
+        ThreadPoolExecutor executor = executors.get(stage);
+        if (executor == null) {
+            throw new IllegalArgumentException("No executor for stage " + stage);
+        }
+        long enqueuedAt = System.nanoTime();
+        Timer wait = queueWait.get(stage);
+        return CompletableFuture.runAsync(() -> {
+            wait.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+            task.run();
+        }, executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(ThreadPoolExecutor::shutdown);
+        for (var entry : executors.entrySet()) {
+            try {
+                if (!entry.getValue().awaitTermination(10, TimeUnit.SECONDS)) {
+                    log.warn("Stage {} still had work on shutdown; runs left RUNNING will need a retry", entry.getKey());
+                    entry.getValue().shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                entry.getValue().shutdownNow();
+            }
+        }
+    }
+
+    private void register(WorkflowStage stage, int threads, int queueCapacity, boolean virtual) {
+        int size = Math.max(1, threads);
+        int capacity = Math.max(1, queueCapacity);
+        String tag = stage.name().toLowerCase();
+        Counter saturated = registry.counter("pipeline.stage.saturated", "stage", tag);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), namedThreads("pipeline-" + tag + "-", virtual),
+                (r, ex) -> {
+                    if (ex.isShutdown()) {
+                        throw new RejectedExecutionException("Stage " + stage + " executor is shut down");
+                    }
+                    saturated.increment();
+                    try {
+                        ex.getQueue().put(r);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for stage " + stage, e);
+                    }
+                });
+        executors.put(stage, executor);
+        queueWait.put(stage, Timer.builder("pipeline.stage.queue.wait").tag("stage", tag).register(registry));
+
+        Gauge.builder("pipeline.stage.queue.depth", executor, e -> e.getQueue().size()).tag("stage", tag).register(registry);
+        Gauge.builder("pipeline.stage.active", executor, ThreadPoolExecutor::getActiveCount).tag("stage", tag).register(registry);
+        Gauge.builder("pipeline.stage.saturation", executor,
+                        e -> (double) (e.getActiveCount() + e.getQueue().size()) / (size + capacity))
+                .tag("stage", tag).register(registry);
+        log.info("Stage {} executor: {} {} threads, queue {}", stage, size, virtual ? "virtual" : "platform", capacity);
+    }
+
+    private static ThreadFactory namedThreads(String prefix, boolean virtual) {
+        if (virtual) {
+            return Thread.ofVirtual().name(prefix, 1).factory();
+        }
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
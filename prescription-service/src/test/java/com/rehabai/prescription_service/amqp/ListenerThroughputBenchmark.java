@@ -0,0 +1,101 @@
+package com.rehabai.prescription_service.amqp;
+
+import com.rehabai.prescription_service.model.WorkflowStage;
+import com.rehabai.prescription_service.service.StageExecutors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark de vazão do consumidor de file.uploaded: threads de plataforma x virtual threads.
+ * <p>
+ * Não faz parte da suíte (o nome não casa com o padrão do surefire); rode explicitamente:
+ * <pre>
+ * mvn test -Dtest=ListenerThroughputBenchmark [-Dbench.s3Ms=40 -Dbench.extractMs=25 -Dbench.consumers=8,256]
+ * </pre>
+ * Os dois modos rodam com o mesmo número de consumidores em cada linha, para que a diferença medida seja só o tipo
+ * de thread e não a concorrência.
+ * Cada consumidor imita o {@code SimpleMessageListenerContainer}: tira uma mensagem da fila, faz o
+ * download bloqueante (S3) e espera a extração no {@link StageExecutors} real, como o
+ * {@code FileUploadedListener}. As latências são simuladas com sleep, então o resultado mede o custo
+ * de threads bloqueadas, não o do OCR.
+ */
+class ListenerThroughputBenchmark {
+
+    private static final long S3_MS = Long.getLong("bench.s3Ms", 40);
+    private static final long EXTRACT_MS = Long.getLong("bench.extractMs", 25);
+    private static final int[] CONSUMERS = Arrays.stream(System.getProperty("bench.consumers", "8,256").split(","))
+            .map(String::trim).mapToInt(Integer::parseInt).toArray();
+    private static final int EXTRACTION_THREADS = Integer.getInteger("bench.extractionThreads", 32);
+
+    @Test
+    void compareThreadModes() throws Exception {
+        System.out.printf("%n%-6s %-9s %9s %10s %10s %12s%n", "files", "mode", "consumers", "elapsed", "files/s", "peakThreads");
+        for (int files : new int[]{10, 100, 1000}) {
+            for (int consumers : CONSUMERS) {
+                print(files, "platform", consumers, run(files, consumers, false));
+                print(files, "virtual", consumers, run(files, consumers, true));
+            }
+        }
+    }
+
+    private record Outcome(long elapsedMs, int peakThreads) {}
+
+    private Outcome run(int files, int consumers, boolean virtual) throws Exception {
+        StageExecutors stages = new StageExecutors(new SimpleMeterRegistry(),
+                EXTRACTION_THREADS, 16, 2, 100, 8, 200, virtual);
+        BlockingQueue<Integer> queue = new LinkedBlockingQueue<>();
+        for (int i = 0; i < files; i++) queue.add(i);
+        CountDownLatch done = new CountDownLatch(files);
+
+        SimpleAsyncTaskExecutor containerExecutor = new SimpleAsyncTaskExecutor(virtual ? "bench-vt-" : "bench-pt-");
+        containerExecutor.setVirtualThreads(virtual);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+        try {
+            for (int c = 0; c < consumers; c++) {
+                containerExecutor.execute(() -> {
+                    Integer msg;
+                    while ((msg = queue.poll()) != null) {
+                        handle(stages);
+                        done.countDown();
+                    }
+                });
+            }
+            assertThat(done.await(10, TimeUnit.MINUTES)).isTrue();
+            return new Outcome(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), threads.getPeakThreadCount());
+        } finally {
+            stages.shutdown();
+        }
+    }
+
+    private void handle(StageExecutors stages) {
+        sleep(S3_MS);
+        stages.submit(WorkflowStage.EXTRACTION, () -> sleep(EXTRACT_MS)).join();
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void print(int files, String mode, int consumers, Outcome o) {
+        System.out.printf("%-6d %-9s %9d %8dms %10.1f %12d%n", files, mode, consumers, o.elapsedMs(),
+                files * 1000.0 / Math.max(1, o.elapsedMs()), o.peakThreads());
+    }
+}
@@ -0,0 +1,122 @@
+package com.rehabai.prescription_service.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabai.prescription_service.llm.LlmService;
+import com.rehabai.prescription_service.llm.LlmUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LocalBatchInferenceBackendTest {
+
+    @Mock LlmService llmService;
+    @TempDir Path dir;
+
+    final ObjectMapper objectMapper = new ObjectMapper();
+    LocalBatchInferenceBackend backend;
+
+    @AfterEach
+    void tearDown() {
+        if (backend != null) backend.shutdown();
+    }
+
+    @Test
+    void resumesAfterLastCompleteLine_andKeepsInputOrder() throws Exception {
+        Path input = writeInput("r1", "r2", "r3", "r4");
+        // Saída de uma execução anterior interrompida: r1 completo, r2 pela metade
+        Files.writeString(dir.resolve("output.jsonl"), "{\"recordId\":\"r1\",\"modelOutput\":{}}\n{\"recordId\":\"r2\",\"mod");
+        when(llmService.invokeModelInput(eq("model-x"), any())).thenAnswer(inv -> response(inv.getArgument(1)));
+        when(llmService.invokeModelInput(eq("model-x"), argThat(n -> n != null && "r3".equals(n.path("id").asText()))))
+                .thenThrow(new IllegalArgumentException("bad input"));
+        backend = new LocalBatchInferenceBackend(llmService, objectMapper, new SimpleMeterRegistry(), 2);
+
+        String id = backend.submit("job", "model-x", input);
+
+        assertThat(await(id).state()).isEqualTo(BatchInferenceBackend.State.COMPLETED);
+        List<JsonNode> out = readOutput(id);
+        assertThat(out).extracting(n -> n.path("recordId").asText()).containsExactly("r1", "r2", "r3", "r4");
+        assertThat(out.get(1).path("modelOutput").path("content").get(0).path("text").asText()).isEqualTo("plan r2");
+        assertThat(out.get(2).path("error").path("errorMessage").asText()).isEqualTo("bad input");
+        verify(llmService, never()).invokeModelInput(any(), argThat(n -> n != null && "r1".equals(n.path("id").asText())));
+    }
+
+    @Test
+    void unavailableModel_failsJob_andResubmitContinues() throws Exception {
+        Path input = writeInput("r1", "r2");
+        when(llmService.invokeModelInput(eq("model-x"), any()))
+                .thenAnswer(inv -> response(inv.getArgument(1)))
+                .thenThrow(new LlmUnavailableException("throttled", null))
+                .thenAnswer(inv -> response(inv.getArgument(1)));
+        backend = new LocalBatchInferenceBackend(llmService, objectMapper, new SimpleMeterRegistry(), 1);
+
+        String id = backend.submit("job", "model-x", input);
+        BatchInferenceBackend.Status failed = await(id);
+        assertThat(failed.state()).isEqualTo(BatchInferenceBackend.State.FAILED);
+        assertThat(failed.error()).contains("throttled");
+        assertThat(readOutput(id)).hasSize(1);
+
+        backend.submit("job", "model-x", input);
+
+        assertThat(await(id).state()).isEqualTo(BatchInferenceBackend.State.COMPLETED);
+        assertThat(readOutput(id)).extracting(n -> n.path("recordId").asText()).containsExactly("r1", "r2");
+    }
+
+    @Test
+    void inputFromAnotherInstance_isUnavailableAndNeverRestarted() {
+        backend = new LocalBatchInferenceBackend(llmService, objectMapper, new SimpleMeterRegistry(), 1);
+        String id = dir.resolve("missing").resolve("input.jsonl").toUri().toString();
+
+        assertThat(backend.available(id)).isFalse();
+        assertThat(backend.status(id).state()).isEqualTo(BatchInferenceBackend.State.FAILED);
+        verifyNoInteractions(llmService);
+    }
+
+    private Path writeInput(String... ids) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (String id : ids) {
+            sb.append("{\"recordId\":\"").append(id).append("\",\"modelInput\":{\"id\":\"").append(id).append("\"}}\n");
+        }
+        Path input = dir.resolve("input.jsonl");
+        Files.writeString(input, sb.toString());
+        return input;
+    }
+
+    private JsonNode response(JsonNode modelInput) throws Exception {
+        return objectMapper.readTree("{\"content\":[{\"type\":\"text\",\"text\":\"plan " + modelInput.path("id").asText() + "\"}]}");
+    }
+
+    private BatchInferenceBackend.Status await(String id) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            BatchInferenceBackend.Status status = backend.status(id);
+            if (status.state() != BatchInferenceBackend.State.IN_PROGRESS) return status;
+            Thread.sleep(10);
+        }
+        throw new AssertionError("batch did not finish");
+    }
+
+    private List<JsonNode> readOutput(String id) throws Exception {
+        return Files.readAllLines(backend.output(id)).stream().map(line -> {
+            try {
+                return objectMapper.readTree(line);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).toList();
+    }
+}
@@ -0,0 +1,127 @@
+package com.rehabai.prescription_service.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabai.prescription_service.llm.LlmService;
+import com.rehabai.prescription_service.model.Normalization;
+import com.rehabai.prescription_service.model.RegenerationJob;
+import com.rehabai.prescription_service.model.RegenerationStatus;
+import com.rehabai.prescription_service.repository.NormalizationRepository;
+import com.rehabai.prescription_service.repository.PrescriptionRepository;
+import com.rehabai.prescription_service.repository.RegenerationJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RegenerationServiceTest {
+
+    @Mock RegenerationJobRepository jobRepo;
+    @Mock NormalizationRepository normalizationRepo;
+    @Mock PrescriptionRepository prescriptionRepo;
+    @Mock BatchInferenceBackend backend;
+    @Mock LlmService llmService;
+    @Mock TransactionTemplate tx;
+    @TempDir Path workDir;
+
+    final ObjectMapper objectMapper = new ObjectMapper();
+    RegenerationService service;
+
+    @BeforeEach
+    void setup() {
+        lenient().when(backend.name()).thenReturn("local");
+        service = new RegenerationService(jobRepo, normalizationRepo, prescriptionRepo, List.of(backend), llmService,
+                objectMapper, tx, new SimpleMeterRegistry(), true, "local", workDir.toString(), 500, 200, 600_000);
+        doAnswer(inv -> {
+            inv.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(tx).executeWithoutResult(any());
+        when(jobRepo.renewLease(any(), anyString(), any())).thenReturn(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void takenOverJobWithoutLocalFiles_exportsAgainFromTheStart() throws Exception {
+        RegenerationJob job = job();
+        job.setStatus(RegenerationStatus.SUBMITTED);
+        job.setBackendJobId("file:///elsewhere/input.jsonl");
+        job.setCursorCreatedAt(OffsetDateTime.now().minusDays(1));
+        job.setCursorId(UUID.randomUUID());
+        job.setExportBytes(4096);
+        job.setExportedCount(7);
+        job.setExportedAt(OffsetDateTime.now().minusHours(1));
+        Normalization n = new Normalization();
+        n.setId(UUID.randomUUID());
+        n.setNormalizedTerms("{}");
+        when(backend.available("file:///elsewhere/input.jsonl")).thenReturn(false);
+        when(normalizationRepo.findRegenerationPage(any(), any(), any(), any(), any(), any(), any())).thenReturn(List.of(n));
+        when(llmService.planModelInput("{}")).thenReturn(objectMapper.createObjectNode().put("max_tokens", 10));
+        when(backend.submit(anyString(), anyString(), any())).thenReturn("file:///here/input.jsonl");
+        when(backend.status("file:///here/input.jsonl"))
+                .thenReturn(new BatchInferenceBackend.Status(BatchInferenceBackend.State.IN_PROGRESS, 0, null));
+
+        service.advance(job);
+
+        verify(normalizationRepo).findRegenerationPage(any(), any(), eq(job.getCreatedFrom()), eq(new UUID(0L, 0L)),
+                any(), any(), any());
+        Path input = workDir.resolve(job.getId().toString()).resolve("input.jsonl");
+        List<String> lines = Files.readAllLines(input, StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(1);
+        assertThat(lines.get(0)).startsWith("{\"recordId\":\"" + n.getId());
+        assertThat(job.getExportBytes()).isEqualTo(Files.size(input));
+        assertThat(job.getExportedCount()).isEqualTo(1);
+        assertThat(job.getBackendJobId()).isEqualTo("file:///here/input.jsonl");
+        assertThat(job.getStatus()).isEqualTo(RegenerationStatus.SUBMITTED);
+    }
+
+    @Test
+    void exportCheckpointLongerThanLocalFile_restartsExport() throws Exception {
+        RegenerationJob job = job();
+        job.setCursorId(UUID.randomUUID());
+        job.setCursorCreatedAt(OffsetDateTime.now().minusDays(1));
+        job.setExportBytes(4096);
+        job.setExportedCount(7);
+        when(normalizationRepo.findRegenerationPage(any(), any(), any(), any(), any(), any(), any())).thenReturn(List.of());
+
+        service.advance(job);
+
+        verify(normalizationRepo).findRegenerationPage(any(), any(), eq(job.getCreatedFrom()), eq(new UUID(0L, 0L)),
+                any(), any(), any());
+        verify(backend, never()).submit(anyString(), anyString(), any());
+        assertThat(job.getExportedCount()).isZero();
+        assertThat(job.getStatus()).isEqualTo(RegenerationStatus.COMPLETED);
+    }
+
+    private static RegenerationJob job() {
+        RegenerationJob job = new RegenerationJob();
+        job.setId(UUID.randomUUID());
+        job.setCreatedFrom(OffsetDateTime.now().minusDays(30));
+        job.setCreatedTo(OffsetDateTime.now());
+        job.setModelId("model-x");
+        job.setPromptVersion(LlmService.PROMPT_VERSION);
+        job.setBackend("local");
+        job.setStatus(RegenerationStatus.EXPORTING);
+        return job;
+    }
+}
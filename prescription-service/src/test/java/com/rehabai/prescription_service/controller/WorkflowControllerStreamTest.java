@@ -0,0 +1,75 @@
+package com.rehabai.prescription_service.controller;
+
+import com.rehabai.prescription_service.llm.PlanStreamHub;
+import com.rehabai.prescription_service.model.WorkflowRun;
+import com.rehabai.prescription_service.model.WorkflowStatus;
+import com.rehabai.prescription_service.repository.*;
+import com.rehabai.prescription_service.security.SecurityHelper;
+import com.rehabai.prescription_service.service.PlanDraftService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WorkflowControllerStreamTest {
+
+    @Mock WorkflowRunRepository runRepo;
+    @Mock ExtractionRepository extractionRepo;
+    @Mock NormalizationRepository normalizationRepo;
+    @Mock PrescriptionRepository prescriptionRepo;
+    @Mock AiTraceRepository aiTraceRepo;
+    @Mock PlanDraftService planDraftService;
+    @Mock PlanStreamHub planStreamHub;
+    @Mock SecurityHelper securityHelper;
+
+    WorkflowController controller;
+    final UUID fileId = UUID.randomUUID();
+    final SseEmitter emitter = new SseEmitter();
+
+    @BeforeEach
+    void setup() {
+        controller = new WorkflowController(runRepo, extractionRepo, normalizationRepo, prescriptionRepo, aiTraceRepo,
+                planDraftService, planStreamHub, securityHelper);
+        when(planStreamHub.subscribe(fileId)).thenReturn(emitter);
+    }
+
+    @Test
+    void failedRun_subscribesFirstThenSendsTerminalError() {
+        when(runRepo.findTopByFileIdOrderByCreatedAtDesc(fileId)).thenReturn(Optional.of(run(WorkflowStatus.FAILED)));
+
+        assertThat(controller.streamPlan(fileId)).isSameAs(emitter);
+
+        InOrder order = inOrder(planStreamHub, runRepo);
+        order.verify(planStreamHub).subscribe(fileId);
+        order.verify(runRepo).findTopByFileIdOrderByCreatedAtDesc(fileId);
+        order.verify(planStreamHub).close(eq(fileId), same(emitter), eq(PlanStreamHub.EVENT_ERROR), any());
+    }
+
+    @Test
+    void runningRun_keepsSubscriptionOpen() {
+        when(runRepo.findTopByFileIdOrderByCreatedAtDesc(fileId)).thenReturn(Optional.of(run(WorkflowStatus.RUNNING)));
+
+        assertThat(controller.streamPlan(fileId)).isSameAs(emitter);
+
+        verify(planStreamHub, never()).close(any(), any(), any(), any());
+    }
+
+    private WorkflowRun run(WorkflowStatus status) {
+        WorkflowRun run = new WorkflowRun();
+        run.setId(UUID.randomUUID());
+        run.setFileId(fileId);
+        run.setStatus(status);
+        return run;
+    }
+}
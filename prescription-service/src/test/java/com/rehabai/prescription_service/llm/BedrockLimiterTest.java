@@ -0,0 +1,74 @@
+package com.rehabai.prescription_service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
+import software.amazon.awssdk.services.bedrockruntime.model.ValidationException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BedrockLimiterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private BedrockLimiter limiter(int initial, int maxRetries, int tokensPerMinute, long maxWaitMs) {
+        return new BedrockLimiter(registry, true, initial, 1, 32, 0.5, 0, 0, tokensPerMinute, maxWaitMs, maxRetries, 0);
+    }
+
+    @Test
+    void success_increasesLimitAdditively() throws Exception {
+        BedrockLimiter limiter = limiter(4, 0, 0, 1000);
+        for (int i = 0; i < 8; i++) limiter.call(10, () -> "ok", r -> 0);
+
+        assertThat(limiter.currentLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void throttling_halvesLimitAndRetries() throws Exception {
+        BedrockLimiter limiter = limiter(8, 2, 0, 1000);
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = limiter.call(10, () -> {
+            if (calls.incrementAndGet() == 1) throw ThrottlingException.builder().message("slow down").build();
+            return "ok";
+        }, r -> 0);
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(limiter.currentLimit()).isEqualTo(4);
+        assertThat(registry.counter("llm.limiter.throttles").count()).isEqualTo(1.0);
+        assertThat(registry.get("llm.limiter.inflight").gauge().value()).isZero();
+    }
+
+    @Test
+    void persistentThrottling_surfacesAsUnavailable() {
+        BedrockLimiter limiter = limiter(4, 1, 0, 1000);
+
+        assertThatThrownBy(() -> limiter.call(10, () -> {
+            throw ThrottlingException.builder().message("slow down").build();
+        }, r -> 0)).isInstanceOf(LlmUnavailableException.class);
+        assertThat(registry.counter("llm.limiter.rejections", "reason", "throttled").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void otherErrors_passThroughAndReleaseTheSlot() {
+        BedrockLimiter limiter = limiter(1, 3, 0, 1000);
+
+        assertThatThrownBy(() -> limiter.call(10, () -> {
+            throw ValidationException.builder().message("guardrail").build();
+        }, r -> 0)).isInstanceOf(ValidationException.class);
+        assertThat(registry.get("llm.limiter.inflight").gauge().value()).isZero();
+    }
+
+    @Test
+    void exhaustedTokenQuota_rejectsAfterMaxWait() throws Exception {
+        BedrockLimiter limiter = limiter(4, 0, 1500, 50);
+        limiter.call(400, () -> "ok", r -> 1500);
+
+        assertThatThrownBy(() -> limiter.call(400, () -> "ok", r -> 0)).isInstanceOf(LlmUnavailableException.class);
+        assertThat(registry.counter("llm.limiter.rejections", "reason", "timeout").count()).isEqualTo(1.0);
+    }
+}
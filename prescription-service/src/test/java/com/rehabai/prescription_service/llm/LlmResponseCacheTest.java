@@ -0,0 +1,71 @@
+package com.rehabai.prescription_service.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabai.prescription_service.repository.LlmCacheRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LlmResponseCacheTest {
+
+    @Mock LlmCacheRepository repository;
+
+    SimpleMeterRegistry registry;
+    LlmResponseCache cache;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        cache = new LlmResponseCache(repository, new ObjectMapper(), registry, true, true, 24, 10);
+    }
+
+    @Test
+    void equivalentNormalizedJson_mapsToSameKey() {
+        var a = cache.key("{\"findings\":[\"Dor no joelho\",\"Edema\"],\"conditions\":[]}", "m", "v1", "none");
+        var b = cache.key("{ \"conditions\": [], \"findings\": [\"edema\", \"dor  no JOELHO \"] }", "m", "v1", "none");
+
+        assertThat(a.id()).isEqualTo(b.id());
+    }
+
+    @Test
+    void modelPromptOrGuardrailChange_mapsToDifferentKey() {
+        String json = "{\"findings\":[\"edema\"]}";
+        var base = cache.key(json, "m", "v1", "none");
+
+        assertThat(cache.key(json, "other", "v1", "none").id()).isNotEqualTo(base.id());
+        assertThat(cache.key(json, "m", "v2", "none").id()).isNotEqualTo(base.id());
+        assertThat(cache.key(json, "m", "v1", "gr:1").id()).isNotEqualTo(base.id());
+    }
+
+    @Test
+    void hit_countsSavedTokens() {
+        var key = cache.key("{\"findings\":[\"edema\"]}", "m", "v1", "none");
+        cache.put(key, new LlmResponseCache.Entry("{\"title\":\"plano\"}", 1200, 800));
+
+        assertThat(cache.get(key)).contains(new LlmResponseCache.Entry("{\"title\":\"plano\"}", 1200, 800));
+        verify(repository, never()).findById(anyString());
+        assertThat(registry.counter("llm.cache.tokens.saved", "type", "input").count()).isEqualTo(1200.0);
+        assertThat(registry.counter("llm.cache.tokens.saved", "type", "output").count()).isEqualTo(800.0);
+        assertThat(registry.get("llm.cache.hit.ratio").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void miss_fallsThroughToDbTier() {
+        when(repository.findById(anyString())).thenReturn(Optional.empty());
+        var key = cache.key("{\"findings\":[\"edema\"]}", "m", "v1", "none");
+
+        assertThat(cache.get(key)).isEmpty();
+        verify(repository).findById(key.id());
+        assertThat(registry.get("llm.cache.hit.ratio").gauge().value()).isZero();
+    }
+}
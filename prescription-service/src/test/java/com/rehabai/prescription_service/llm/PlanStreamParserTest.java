@@ -0,0 +1,50 @@
+package com.rehabai.prescription_service.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlanStreamParserTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void publishesFieldsAndExercisesAsTheyClose() {
+        PlanStreamParser parser = new PlanStreamParser(mapper);
+
+        assertThat(parser.append("```json\n{\"title\": \"Plano de ")).isFalse();
+        assertThat(parser.append("Joelho\", \"exercises\": [{\"name\": \"Ponte, com {apoio}\", \"sets\": 3}")).isTrue();
+        assertThat(parser.snapshot().get("title").asText()).isEqualTo("Plano de Joelho");
+        assertThat(parser.snapshot().get("exercises")).isEmpty();
+
+        assertThat(parser.append(", {\"name\": \"Agachamento\"")).isTrue();
+        assertThat(parser.snapshot().get("exercises")).hasSize(1);
+        assertThat(parser.snapshot().get("exercises").get(0).get("name").asText()).isEqualTo("Ponte, com {apoio}");
+
+        parser.append("}], \"goals\": [\"Reduzir dor\", \"Ganhar \\\"ADM\\\"\"], \"duration\": 30}\n```");
+        assertThat(parser.isComplete()).isTrue();
+        var plan = parser.snapshot();
+        assertThat(plan.get("exercises")).hasSize(2);
+        assertThat(plan.get("goals").get(1).asText()).isEqualTo("Ganhar \"ADM\"");
+        assertThat(plan.get("duration").asInt()).isEqualTo(30);
+    }
+
+    @Test
+    void tokenByTokenMatchesWholeDocument() throws Exception {
+        String json = "{\"title\":\"T\",\"exercises\":[{\"name\":\"a\",\"sets\":[1,2]},{\"name\":\"b\"}],\"goals\":[\"g1\"],\"confidence\":0.85}";
+        PlanStreamParser parser = new PlanStreamParser(mapper);
+        for (char c : json.toCharArray()) parser.append(String.valueOf(c));
+
+        assertThat(parser.snapshot()).isEqualTo(mapper.readTree(json));
+    }
+
+    @Test
+    void malformedValue_isSkippedWithoutBreakingTheStream() {
+        PlanStreamParser parser = new PlanStreamParser(mapper);
+        parser.append("{\"duration\": null ou número, \"title\": \"ok\"}");
+
+        assertThat(parser.snapshot().has("duration")).isFalse();
+        assertThat(parser.snapshot().get("title").asText()).isEqualTo("ok");
+    }
+}
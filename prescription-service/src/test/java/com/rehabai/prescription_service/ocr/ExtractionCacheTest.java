@@ -0,0 +1,78 @@
+package com.rehabai.prescription_service.ocr;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabai.prescription_service.repository.ExtractionCacheRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExtractionCacheTest {
+
+    @Mock ExtractionCacheRepository repository;
+    @TempDir Path dir;
+
+    SimpleMeterRegistry registry;
+    ExtractionCache cache;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        cache = new ExtractionCache(repository, new ObjectMapper(), registry, true, true, dir.toString(), 24, 2, 1_000_000);
+    }
+
+    @Test
+    void put_then_get_isServedFromLocalTier() {
+        var key = new ExtractionCache.Key("abc", "tess4j", "lang=por");
+        cache.put(key, new OCRService.Result("laudo", "pdfbox-text", 0.95));
+
+        var hit = cache.get(key);
+
+        assertThat(hit).contains(new OCRService.Result("laudo", "pdfbox-text", 0.95));
+        verify(repository, never()).findById(anyString());
+        assertThat(registry.counter("ocr.cache.requests", "tier", "local", "result", "hit").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void differentEngineConfig_isAMiss() {
+        cache.put(new ExtractionCache.Key("abc", "tess4j", "lang=por"), new OCRService.Result("laudo", "tess4j", 0.75));
+        when(repository.findById(anyString())).thenReturn(Optional.empty());
+
+        assertThat(cache.get(new ExtractionCache.Key("abc", "tess4j", "lang=eng"))).isEmpty();
+    }
+
+    @Test
+    void blankResults_areNotCached() {
+        cache.put(new ExtractionCache.Key("abc", "tess4j", ""), new OCRService.Result("", "tess4j", 0.0));
+
+        verify(repository, never()).upsert(any(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void localTier_evictsLeastRecentlyUsed_whenFull() {
+        var a = new ExtractionCache.Key("a", "tess4j", "");
+        var b = new ExtractionCache.Key("b", "tess4j", "");
+        var c = new ExtractionCache.Key("c", "tess4j", "");
+        cache.put(a, new OCRService.Result("A", "tess4j", 0.75));
+        cache.put(b, new OCRService.Result("B", "tess4j", 0.75));
+        cache.get(a);
+        cache.put(c, new OCRService.Result("C", "tess4j", 0.75));
+        when(repository.findById(anyString())).thenReturn(Optional.empty());
+
+        assertThat(cache.get(b)).isEmpty();
+        assertThat(cache.get(a)).isPresent();
+        assertThat(registry.counter("ocr.cache.evictions", "tier", "local", "reason", "size").count()).isEqualTo(1.0);
+    }
+}
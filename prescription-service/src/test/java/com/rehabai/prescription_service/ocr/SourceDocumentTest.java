@@ -0,0 +1,68 @@
+package com.rehabai.prescription_service.ocr;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SourceDocumentTest {
+
+    @TempDir Path dir;
+
+    @Test
+    void download_writesToTempFile_withSizeAndSha256() throws Exception {
+        byte[] content = "laudo de fisioterapia".getBytes(StandardCharsets.UTF_8);
+
+        try (SourceDocument doc = SourceDocument.download(new ByteArrayInputStream(content), dir)) {
+            assertThat(doc.path()).exists().startsWith(dir);
+            assertThat(doc.size()).isEqualTo(content.length);
+            assertThat(doc.sha256()).isEqualTo(ExtractionCache.sha256Hex(content));
+
+            ByteBuffer first = doc.view();
+            ByteBuffer second = doc.view();
+            first.get(new byte[5]);
+            assertThat(second.position()).isZero();
+            assertThat(StandardCharsets.UTF_8.decode(second).toString()).isEqualTo("laudo de fisioterapia");
+            assertThatThrownBy(() -> first.put((byte) 1)).isInstanceOf(ReadOnlyBufferException.class);
+        }
+
+        try (var files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void pdfText_isReadFromFile() throws Exception {
+        ByteArrayOutputStream pdfBytes = new ByteArrayOutputStream();
+        try (PDDocument pdf = new PDDocument()) {
+            PDPage page = new PDPage();
+            pdf.addPage(page);
+            try (PDPageContentStream cs = new PDPageContentStream(pdf, page)) {
+                cs.beginText();
+                cs.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                cs.newLineAtOffset(50, 700);
+                cs.showText("Lombalgia cronica");
+                cs.endText();
+            }
+            pdf.save(pdfBytes);
+        }
+
+        try (SourceDocument doc = SourceDocument.fromBytes(pdfBytes.toByteArray(), dir)) {
+            assertThat(PdfTextExtractor.extract(doc)).contains("Lombalgia cronica");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.rehabai.prescription_service.service;
+
+import com.rehabai.prescription_service.model.AiTrace;
+import com.rehabai.prescription_service.repository.AiTraceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AiTraceWriterTest {
+
+    @Mock AiTraceRepository repository;
+    @Mock PlatformTransactionManager txManager;
+
+    SimpleMeterRegistry registry;
+    AiTraceWriter writer;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        writer = new AiTraceWriter(repository, txManager, registry);
+    }
+
+    @Test
+    void record_joinsCallerTransaction() {
+        writer.record(trace("a"));
+
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(txManager).getTransaction(definition.capture());
+        assertThat(definition.getValue().getPropagationBehavior()).isEqualTo(TransactionDefinition.PROPAGATION_MANDATORY);
+        verify(repository).save(any(AiTrace.class));
+        assertThat(registry.counter("pipeline.traces.written").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void record_withoutTransaction_fails() {
+        when(txManager.getTransaction(any())).thenThrow(new IllegalTransactionStateException("no transaction"));
+
+        assertThatThrownBy(() -> writer.record(trace("a"))).isInstanceOf(IllegalTransactionStateException.class);
+
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void record_failedInsert_propagatesToStageTransaction() {
+        when(repository.save(any())).thenThrow(new RuntimeException("db down"));
+
+        assertThatThrownBy(() -> writer.record(trace("a"))).hasMessage("db down");
+
+        assertThat(registry.counter("pipeline.traces.written").count()).isZero();
+    }
+
+    private AiTrace trace(String traceId) {
+        AiTrace t = new AiTrace();
+        t.setTraceId(traceId);
+        t.setAgentName("normalizer");
+        return t;
+    }
+}
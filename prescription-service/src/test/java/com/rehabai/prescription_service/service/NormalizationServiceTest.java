@@ -0,0 +1,49 @@
+package com.rehabai.prescription_service.service;
+
+import com.rehabai.prescription_service.llm.LlmService;
+import com.rehabai.prescription_service.llm.LlmUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NormalizationServiceTest {
+
+    @Mock LlmService llmService;
+
+    SimpleMeterRegistry registry;
+    NormalizationService service;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        service = new NormalizationService(true, llmService, registry, ObservationRegistry.NOOP);
+    }
+
+    @Test
+    void llmUnavailable_failsStageInsteadOfFallingBack() {
+        when(llmService.normalizeText("dor lombar")).thenThrow(new LlmUnavailableException("throttled", null));
+
+        assertThatThrownBy(() -> service.normalize("dor lombar")).isInstanceOf(LlmUnavailableException.class);
+
+        assertThat(registry.find("normalization.method").counter()).isNull();
+    }
+
+    @Test
+    void otherLlmFailure_fallsBackToBasicNormalization() {
+        when(llmService.normalizeText("dor lombar")).thenThrow(new IllegalStateException("bad json"));
+
+        NormalizationService.Result result = service.normalize("dor lombar");
+
+        assertThat(result.normalizedJson()).contains("dor lombar");
+        assertThat(registry.counter("normalization.llm.failure").count()).isEqualTo(1.0);
+    }
+}
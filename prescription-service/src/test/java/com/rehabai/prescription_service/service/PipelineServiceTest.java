@@ -0,0 +1,167 @@
+package com.rehabai.prescription_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabai.prescription_service.llm.LlmService;
+import com.rehabai.prescription_service.llm.PlanStreamHub;
+import com.rehabai.prescription_service.model.WorkflowRun;
+import com.rehabai.prescription_service.model.WorkflowStage;
+import com.rehabai.prescription_service.model.WorkflowStatus;
+import com.rehabai.prescription_service.ocr.OCRService;
+import com.rehabai.prescription_service.repository.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PipelineServiceTest {
+
+    @Mock OCRService ocrService;
+    @Mock NormalizationService normalizationService;
+    @Mock LlmService llmService;
+    @Mock WorkflowRunRepository runRepo;
+    @Mock ExtractionRepository extractionRepo;
+    @Mock NormalizationRepository normalizationRepo;
+    @Mock PrescriptionRepository prescriptionRepo;
+    @Mock AiTraceWriter traceWriter;
+    @Mock PlanStreamHub planStreamHub;
+    @Mock StageExecutors stageExecutors;
+    @Mock TransactionTemplate tx;
+
+    SimpleMeterRegistry registry;
+    PipelineService service;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        service = new PipelineService(ocrService, normalizationService, llmService, runRepo, extractionRepo,
+                normalizationRepo, prescriptionRepo, traceWriter, planStreamHub, stageExecutors, tx, new ObjectMapper(),
+                true, 900_000, 60_000, registry, ObservationRegistry.NOOP, null);
+        lenient().when(tx.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().doAnswer(inv -> {
+            inv.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(tx).executeWithoutResult(any());
+        lenient().when(runRepo.save(any())).thenAnswer(inv -> {
+            WorkflowRun run = inv.getArgument(0);
+            run.setId(UUID.randomUUID());
+            return run;
+        });
+        lenient().when(ocrService.extract(any(), any(), any(), any())).thenReturn(new OCRService.Result("dor lombar", "pdfbox", 0.9));
+        lenient().when(stageExecutors.submit(eq(WorkflowStage.EXTRACTION), any())).thenAnswer(inv -> {
+            inv.<Runnable>getArgument(1).run();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    @Test
+    void runChangedElsewhere_abortsStageWithoutSavingOrFailing() {
+        when(runRepo.updateState(any(), eq(WorkflowStage.EXTRACTION), eq(WorkflowStatus.RUNNING),
+                eq(WorkflowStage.NORMALIZATION), eq(WorkflowStatus.RUNNING), any())).thenReturn(0);
+
+        service.processFile(UUID.randomUUID(), UUID.randomUUID(), null, "laudo.pdf", "application/pdf", "h");
+
+        verify(extractionRepo, never()).save(any());
+        verify(stageExecutors, never()).submit(eq(WorkflowStage.NORMALIZATION), any());
+        verify(runRepo, never()).updateState(any(), any(), any(), eq(WorkflowStage.ERROR), any(), any());
+        verify(planStreamHub).fail(any(), contains("interrupted"));
+        assertThat(registry.counter("pipeline.stage.aborted").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void queuedRun_isKeptAliveAndNeverResumedBySweep() {
+        when(runRepo.updateState(any(), any(), any(), any(), any(), any())).thenReturn(1);
+        when(extractionRepo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+        // A normalização fica na fila: o run continua vivo nesta instância
+        when(stageExecutors.submit(eq(WorkflowStage.NORMALIZATION), any())).thenReturn(new CompletableFuture<>());
+
+        service.processFile(UUID.randomUUID(), UUID.randomUUID(), null, "laudo.pdf", "application/pdf", "h");
+        WorkflowRun run = mockingDetails(runRepo).getInvocations().stream()
+                .filter(i -> i.getMethod().getName().equals("save"))
+                .map(i -> (WorkflowRun) i.getArgument(0)).findFirst().orElseThrow();
+
+        service.heartbeat();
+        verify(runRepo).touch(eq(List.of(run.getId())), eq(WorkflowStatus.RUNNING), any());
+
+        run.setCurrentStage(WorkflowStage.NORMALIZATION);
+        when(runRepo.findStale(any(), any(), any())).thenReturn(List.of(run));
+        service.resumePending();
+
+        verify(runRepo, never()).claimStale(any(), any(), any(), any(), any());
+        verify(stageExecutors, times(1)).submit(eq(WorkflowStage.NORMALIZATION), any());
+    }
+
+    @Test
+    void redeliveryOfCompletedOrLaterStageRun_isSkipped() {
+        UUID fileId = UUID.randomUUID();
+        WorkflowRun run = run(fileId, WorkflowStage.NORMALIZATION, WorkflowStatus.RUNNING);
+        when(runRepo.findTopByFileIdOrderByCreatedAtDesc(fileId)).thenReturn(Optional.of(run));
+
+        assertThat(service.shouldProcess(fileId)).isFalse();
+
+        run.setStatus(WorkflowStatus.COMPLETED);
+        run.setCurrentStage(WorkflowStage.DONE);
+        assertThat(service.shouldProcess(fileId)).isFalse();
+        verify(runRepo, never()).updateState(any(), any(), any(), any(), any(), any());
+        assertThat(registry.counter("pipeline.ingest.duplicates").count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void redeliveryWhileExtractingHere_isSkipped() {
+        UUID fileId = UUID.randomUUID();
+        // A extração fica presa no executor: o run continua vivo nesta instância
+        when(stageExecutors.submit(eq(WorkflowStage.EXTRACTION), any())).thenReturn(new CompletableFuture<>());
+        service.processFile(fileId, UUID.randomUUID(), null, "laudo.pdf", "application/pdf", "h");
+        WorkflowRun run = mockingDetails(runRepo).getInvocations().stream()
+                .filter(i -> i.getMethod().getName().equals("save"))
+                .map(i -> (WorkflowRun) i.getArgument(0)).findFirst().orElseThrow();
+        when(runRepo.findTopByFileIdOrderByCreatedAtDesc(fileId)).thenReturn(Optional.of(run));
+
+        assertThat(service.shouldProcess(fileId)).isFalse();
+        verify(runRepo, never()).updateState(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void redeliveryAfterExtractorDied_supersedesOldRun() {
+        UUID fileId = UUID.randomUUID();
+        WorkflowRun run = run(fileId, WorkflowStage.EXTRACTION, WorkflowStatus.RUNNING);
+        when(runRepo.findTopByFileIdOrderByCreatedAtDesc(fileId)).thenReturn(Optional.of(run));
+        when(runRepo.updateState(eq(run.getId()), eq(WorkflowStage.EXTRACTION), eq(WorkflowStatus.RUNNING),
+                eq(WorkflowStage.ERROR), eq(WorkflowStatus.FAILED), any())).thenReturn(1);
+
+        assertThat(service.shouldProcess(fileId)).isTrue();
+    }
+
+    @Test
+    void failedRun_isProcessedAgain() {
+        UUID fileId = UUID.randomUUID();
+        when(runRepo.findTopByFileIdOrderByCreatedAtDesc(fileId))
+                .thenReturn(Optional.of(run(fileId, WorkflowStage.ERROR, WorkflowStatus.FAILED)));
+
+        assertThat(service.shouldProcess(fileId)).isTrue();
+    }
+
+    private static WorkflowRun run(UUID fileId, WorkflowStage stage, WorkflowStatus status) {
+        WorkflowRun run = new WorkflowRun();
+        run.setId(UUID.randomUUID());
+        run.setFileId(fileId);
+        run.setCurrentStage(stage);
+        run.setStatus(status);
+        return run;
+    }
+}
@@ -0,0 +1,40 @@
+package com.rehabai.user_service.amqp;
+
+import com.rehabai.user_service.events.UserChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Forwards {@link UserChangedEvent}s to RabbitMQ once the transaction that produced them has committed, so
+ * consumers never invalidate on a change that was rolled back. Delivery is best-effort: consumers treat the
+ * event as a cache hint and still expire entries on their own TTL.
+ */
+@Component
+public class UserEventPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(UserEventPublisher.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final String exchange;
+
+    public UserEventPublisher(RabbitTemplate rabbitTemplate,
+                              @Value("${amqp.userExchange:user.events}") String exchange) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.exchange = exchange;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onUserChanged(UserChangedEvent event) {
+        try {
+            rabbitTemplate.convertAndSend(exchange, event.routingKey(), event);
+            log.debug("Published {}: userId={}, change={}", event.routingKey(), event.userId(), event.change());
+        } catch (Exception e) {
+            log.warn("Failed to publish {} for userId={}: {}", event.routingKey(), event.userId(), e.getMessage());
+        }
+    }
+}
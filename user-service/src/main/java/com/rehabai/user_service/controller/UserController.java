@@ -18,6 +18,7 @@ import jakarta.validation.constraints.Email;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -390,6 +391,36 @@ public class UserController {
         return ResponseEntity.ok(service.getCredentialsByEmail(email));
     }
 
+    @Operation(
+        summary = "🔒 INTERNO - Verificar existência de usuários em lote",
+        description = "⚠️ **Endpoint interno** usado pelo auth-service na limpeza de refresh tokens órfãos. Recebe até 5000 IDs e devolve os que não existem.",
+        tags = {"Internal APIs"}
+    )
+    @ApiResponse(responseCode = "200", description = "✅ IDs inexistentes retornados")
+    @PostMapping("/internal/users/missing")
+    public ResponseEntity<UserDtos.MissingUsersResponse> findMissing(@Valid @RequestBody UserDtos.MissingUsersRequest req) {
+        return ResponseEntity.ok(new UserDtos.MissingUsersResponse(service.findMissing(req.ids())));
+    }
+
+    @Operation(
+        summary = "🔒 INTERNO - Refazer hash da senha",
+        description = "⚠️ **Endpoint interno** usado pelo auth-service para regravar com custo maior o hash de uma senha após o login. Só aplica se o hash atual ainda for `expectedPasswordHash`.",
+        tags = {"Internal APIs"}
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "204", description = "✅ Hash atualizado"),
+        @ApiResponse(responseCode = "409", description = "❌ A senha mudou desde o login; nada foi alterado")
+    })
+    @PostMapping("/internal/users/{id}/password-hash")
+    public ResponseEntity<Void> upgradePasswordHash(
+            @Parameter(description = "UUID do usuário") @PathVariable UUID id,
+            @Valid @RequestBody UserDtos.UpgradePasswordHashRequest req) {
+        if (!service.upgradePasswordHash(id, req.expectedPasswordHash(), req.passwordHash())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
     @Operation(
         summary = "🔒 INTERNO - Contar total de usuários",
         description = "⚠️ **Endpoint interno** - Retorna contagem total de usuários no sistema.",
@@ -5,7 +5,9 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 
+import java.util.Set;
 import java.util.UUID;
 
 public class UserDtos {
@@ -71,6 +73,16 @@ public class UserDtos {
         String passwordHash
     ) {}
 
+    @Schema(description = "🔒 INTERNO - Troca condicional do hash da senha (rehash com custo maior)")
+    public record UpgradePasswordHashRequest(
+        @Schema(description = "Hash que precisa estar gravado para a troca valer", required = true)
+        @NotBlank
+        String expectedPasswordHash,
+        @Schema(description = "Novo hash BCrypt da mesma senha", required = true)
+        @NotBlank
+        String passwordHash
+    ) {}
+
     @Schema(description = "Requisição para trocar role do usuário")
     public record ChangeRoleRequest(
         @Schema(
@@ -101,6 +113,20 @@ public class UserDtos {
         Boolean active
     ) {}
 
+    @Schema(description = "🔒 INTERNO - IDs de usuários a verificar")
+    public record MissingUsersRequest(
+        @Schema(description = "IDs a verificar (até 5000 por chamada)", required = true)
+        @NotNull
+        @Size(max = 5000)
+        Set<UUID> ids
+    ) {}
+
+    @Schema(description = "🔒 INTERNO - IDs que não correspondem a nenhum usuário")
+    public record MissingUsersResponse(
+        @Schema(description = "IDs inexistentes")
+        Set<UUID> missing
+    ) {}
+
     @Schema(description = "🔒 INTERNO - Resposta com credenciais completas (inclui passwordHash)")
     public record CredentialsResponse(
         @Schema(description = "UUID do usuário")
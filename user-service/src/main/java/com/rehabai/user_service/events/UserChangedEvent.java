@@ -0,0 +1,19 @@
+package com.rehabai.user_service.events;
+
+import java.util.UUID;
+
+/**
+ * Published on the {@code user.events} exchange after a user row changes. Consumers that cache user data
+ * (auth-service credentials) drop their entries for {@code userId} and {@code email}.
+ */
+public record UserChangedEvent(
+        UUID userId,
+        String email,
+        Change change
+) {
+    public enum Change { UPDATED, ACTIVATED, DEACTIVATED, ROLE_CHANGED, PASSWORD_CHANGED, DELETED }
+
+    public String routingKey() {
+        return change == Change.DELETED ? "user.deleted" : "user.changed";
+    }
+}
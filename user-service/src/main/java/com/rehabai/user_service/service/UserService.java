@@ -1,17 +1,22 @@
 package com.rehabai.user_service.service;
 
 import com.rehabai.user_service.dto.UserDtos;
+import com.rehabai.user_service.events.UserChangedEvent;
+import com.rehabai.user_service.events.UserChangedEvent.Change;
 import com.rehabai.user_service.model.User;
 import com.rehabai.user_service.model.UserRole;
 import com.rehabai.user_service.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -20,9 +25,11 @@ public class UserService {
     private static final Logger log = LoggerFactory.getLogger(UserService.class);
 
     private final UserRepository repository;
+    private final ApplicationEventPublisher events;
 
-    public UserService(UserRepository repository) {
+    public UserService(UserRepository repository, ApplicationEventPublisher events) {
         this.repository = repository;
+        this.events = events;
     }
 
     @Transactional
@@ -108,25 +115,24 @@ public class UserService {
 
         User updated = repository.save(user);
         log.info("User updated: id={}, email={}", updated.getId(), updated.getEmail());
+        publish(updated, Change.UPDATED);
 
         return toDto(updated);
     }
 
     @Transactional
     public void delete(UUID id, UUID authenticatedUserId) {
-        if (!repository.existsById(id)) {
-            throw new IllegalArgumentException("Usuário não encontrado: " + id);
-        }
+        User user = repository.findById(id)
+            .orElseThrow(() -> new IllegalArgumentException("Usuário não encontrado: " + id));
 
         // Prevent self-deletion
         if (id.equals(authenticatedUserId)) {
             throw new IllegalArgumentException("Não é permitido deletar seu próprio usuário. Use deactivate se necessário.");
         }
 
-        repository.deleteById(id);
+        repository.delete(user);
         log.warn("User deleted: id={} by admin={}", id, authenticatedUserId);
-
-        // TODO: Publish UserDeletedEvent to RabbitMQ for other services to react
+        publish(user, Change.DELETED);
     }
 
 
@@ -134,14 +140,14 @@ public class UserService {
     public UserDtos.Response activate(UUID id) {
         User user = repository.findById(id).orElseThrow(() -> new IllegalArgumentException("Usuário não encontrado: " + id));
         user.setActive(true);
-        return toDto(repository.save(user));
+        return toDto(publish(repository.save(user), Change.ACTIVATED));
     }
 
     @Transactional
     public UserDtos.Response deactivate(UUID id) {
         User user = repository.findById(id).orElseThrow(() -> new IllegalArgumentException("Usuário não encontrado: " + id));
         user.setActive(false);
-        return toDto(repository.save(user));
+        return toDto(publish(repository.save(user), Change.DEACTIVATED));
     }
 
     @Transactional
@@ -149,7 +155,7 @@ public class UserService {
         if (role == null) throw new IllegalArgumentException("role_required");
         User user = repository.findById(id).orElseThrow(() -> new IllegalArgumentException("Usuário não encontrado: " + id));
         user.setRole(role);
-        return toDto(repository.save(user));
+        return toDto(publish(repository.save(user), Change.ROLE_CHANGED));
     }
 
     @Transactional
@@ -157,7 +163,33 @@ public class UserService {
         if (passwordHash == null || passwordHash.isBlank()) throw new IllegalArgumentException("password_hash_required");
         User user = repository.findById(id).orElseThrow(() -> new IllegalArgumentException("Usuário não encontrado: " + id));
         user.setPasswordHash(passwordHash);
-        return toDto(repository.save(user));
+        return toDto(publish(repository.save(user), Change.PASSWORD_CHANGED));
+    }
+
+    /**
+     * Compare-and-set of the password hash: applies only while the stored hash still equals {@code expectedHash},
+     * under a row lock. Returns false when the password changed in between, so a background rehash cannot revert it.
+     */
+    @Transactional
+    public boolean upgradePasswordHash(UUID id, String expectedHash, String passwordHash) {
+        User user = repository.findByIdWithLock(id).orElseThrow(() -> new IllegalArgumentException("Usuário não encontrado: " + id));
+        if (!expectedHash.equals(user.getPasswordHash())) {
+            return false;
+        }
+        user.setPasswordHash(passwordHash);
+        publish(repository.save(user), Change.PASSWORD_CHANGED);
+        return true;
+    }
+
+    /** Of {@code ids}, the ones with no user row: one {@code IN} query per call. */
+    @Transactional(readOnly = true)
+    public Set<UUID> findMissing(Set<UUID> ids) {
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+        Set<UUID> missing = new HashSet<>(ids);
+        repository.findExistingIds(ids).forEach(missing::remove);
+        return missing;
     }
 
     @Transactional(readOnly = true)
@@ -170,6 +202,12 @@ public class UserService {
         return repository.existsByRole(UserRole.ADMIN);
     }
 
+    /** Queued for {@code UserEventPublisher}, which sends it only after this transaction commits. */
+    private User publish(User user, Change change) {
+        events.publishEvent(new UserChangedEvent(user.getId(), user.getEmail(), change));
+        return user;
+    }
+
     private UserDtos.Response toDto(User user) {
         return new UserDtos.Response(
             user.getId(),